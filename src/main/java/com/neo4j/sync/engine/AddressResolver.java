@@ -5,6 +5,8 @@ import org.neo4j.driver.Config;
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.GraphDatabase;
 import org.neo4j.driver.net.ServerAddress;
+import org.neo4j.logging.Log;
+import org.neo4j.logging.NullLog;
 
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -12,12 +14,14 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * com.neo4j.sync.engine.Address Resolver allows you to provide a virtual uri, username, password and array of hostnames
  * to construct a set of real URIs that the resolver can use to connect to an available host in a cluster.
  * The class encapsulates the logic provided by Neo4j to build and pass configuration information
- * to the driver method of the GraphDatabase object.
+ * to the driver method of the GraphDatabase object.  The hosts are tracked by a ClusterHealthMonitor, which
+ * probes them in the background and orders them by health and latency when the driver resolves its seed router.
  *
  * @author Chris Upkes
  */
@@ -26,23 +30,41 @@ public class AddressResolver {
 
     public static Driver createDriver(String virtualUri, String user, String password, Set<String> hostNames ) throws URISyntaxException
     {
-        // *** UNTESTED ***
-        // pass the array of host names and get back ServerAddress objects
-        Set<ServerAddress> servers = getClusterAddresses(virtualUri, hostNames);
-        // build the configuration object with a resolver
-        Config config = Config.builder()
-                .withResolver( address -> servers )
+        return createDriver(virtualUri, user, password, healthMonitor(virtualUri, hostNames));
+    }
+
+    // the resolver answers with the members the monitor finds healthy, fastest first, so the driver
+    // establishes its connections with the best available host.
+    public static Driver createDriver(String virtualUri, String user, String password, ClusterHealthMonitor monitor)
+    {
+        Config config = configBuilder()
+                .withResolver( address -> monitor.resolve() )
                 .build();
-        // the driver construction method will now use the configuration to
-        // round-robin choose an available host to establish a connection.
         return GraphDatabase.driver( virtualUri, AuthTokens.basic( user, password ), config );
     }
 
+    // pass the array of host names and get back a monitor over their ServerAddress objects
+    public static ClusterHealthMonitor healthMonitor(String virtualUri, Set<String> hostNames) throws URISyntaxException {
+        return healthMonitor(virtualUri, hostNames, NullLog.getInstance());
+    }
+
+    public static ClusterHealthMonitor healthMonitor(String virtualUri, Set<String> hostNames, Log log) throws URISyntaxException {
+        return new ClusterHealthMonitor(getClusterAddresses(virtualUri, hostNames), log);
+    }
+
     /*
     DA - added for testing
      */
     public static Driver createDriver(String virtualUri, String user, String password) throws URISyntaxException {
-        return GraphDatabase.driver(virtualUri, AuthTokens.basic( user, password ));
+        return GraphDatabase.driver(virtualUri, AuthTokens.basic( user, password ), configBuilder().build());
+    }
+
+    // the connection pool and Bolt fetch size settings every replication driver is built with.
+    public static Config.ConfigBuilder configBuilder() {
+        return Config.builder()
+                .withMaxConnectionPoolSize(Configuration.getMaxConnectionPoolSize())
+                .withConnectionAcquisitionTimeout(Configuration.getConnectionAcquisitionTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .withFetchSize(Configuration.getFetchSize());
     }
 
     private static Set<ServerAddress> getClusterAddresses(String virtualUri, Set<String> hostNames) throws URISyntaxException {
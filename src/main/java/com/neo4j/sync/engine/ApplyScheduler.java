@@ -0,0 +1,183 @@
+package com.neo4j.sync.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * com.neo4j.sync.engine.ApplyScheduler applies decoded TransactionRecords concurrently on a pool of workers.
+ * A record's footprint is the set of primary keys its events touch.  Each record waits for the last record
+ * submitted before it that shares a key, so records touching the same entity still apply in source order while
+ * disjoint records run side by side.  A record without a footprint (a statement, an undecodable payload or an
+ * event without a primary key) is a barrier: it waits for everything before it and everything after it waits
+ * for it.  The watermark only moves over a contiguous prefix of applied records and is persisted every
+ * watermarkInterval records and when the scheduler is drained.  Records applied past the persisted watermark
+ * are found again by the next run should the target stop before it is next persisted, so the applier must be
+ * able to tell a record it already applied.  An applier that throws holds the watermark before the failed
+ * record: nothing that starts after the failure is applied, and drain throws it once the watermark is persisted.
+ */
+
+final class ApplyScheduler {
+
+    // completed chains are dropped from the key map once it grows past this many keys.
+    private static final int MAX_TRACKED_KEYS = 16 * 1024;
+
+    private final ExecutorService workers;
+    private final Consumer<ReplicationPipeline.DecodedRecord> applier;
+    private final LongConsumer watermark;
+    private final int watermarkInterval;
+    private final Semaphore permits;
+
+    // touched by the submitting thread only.
+    private final Map<String, CompletableFuture<Void>> lastByKey = new HashMap<>();
+    private CompletableFuture<Void> barrier = CompletableFuture.completedFuture(null);
+
+    private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+    // guarded by this.
+    private final Deque<Slot> order = new ArrayDeque<>();
+    private long appliedSequence;
+    private long requestedSequence;
+    private final Object persistLock = new Object();
+    // guarded by persistLock.
+    private long persistedSequence;
+    private final AtomicLong applied = new AtomicLong();
+    private volatile RuntimeException failure;
+
+    ApplyScheduler(ExecutorService workers, Consumer<ReplicationPipeline.DecodedRecord> applier, LongConsumer watermark,
+                   long cursor, int maxInFlight, int watermarkInterval) {
+        this.workers = workers;
+        this.applier = applier;
+        this.watermark = watermark;
+        this.watermarkInterval = Math.max(1, watermarkInterval);
+        this.permits = new Semaphore(Math.max(1, maxInFlight));
+        this.appliedSequence = cursor;
+        this.requestedSequence = cursor;
+        this.persistedSequence = cursor;
+    }
+
+    // schedules the record behind whatever it conflicts with; blocks while maxInFlight records are outstanding.
+    void submit(ReplicationPipeline.DecodedRecord record) throws InterruptedException {
+        permits.acquire();
+        Slot slot = new Slot(record.sequence());
+        synchronized (this) {
+            order.addLast(slot);
+        }
+
+        Collection<String> footprint = record.footprint();
+        CompletableFuture<Void> task;
+        if (footprint == null) {
+            task = CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0]))
+                    .thenRunAsync(() -> run(record, slot), workers);
+            barrier = task;
+            lastByKey.clear();
+        } else {
+            List<CompletableFuture<Void>> dependencies = new ArrayList<>(footprint.size() + 1);
+            dependencies.add(barrier);
+            for (String key : footprint) {
+                CompletableFuture<Void> previous = lastByKey.get(key);
+                if (previous != null) {
+                    dependencies.add(previous);
+                }
+            }
+            task = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+                    .thenRunAsync(() -> run(record, slot), workers);
+            for (String key : footprint) {
+                lastByKey.put(key, task);
+            }
+            if (lastByKey.size() > MAX_TRACKED_KEYS) {
+                lastByKey.values().removeIf(CompletableFuture::isDone);
+            }
+        }
+        inFlight.add(task);
+        task.whenComplete((ignored, e) -> inFlight.remove(task));
+    }
+
+    // waits for every submitted record and persists the final watermark; returns the number of records applied,
+    // or throws the first failure of the applier.
+    long drain() {
+        while (!inFlight.isEmpty()) {
+            CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])).join();
+        }
+        long sequence;
+        synchronized (this) {
+            sequence = appliedSequence;
+        }
+        persist(sequence);
+        if (failure != null) {
+            throw failure;
+        }
+        return applied.get();
+    }
+
+    // nothing may complete a task exceptionally or its dependents never run, and their permits are never released.
+    // Once a record has failed the ones still to start are only completed: a record sharing a key with it must
+    // not be applied ahead of it.
+    private void run(ReplicationPipeline.DecodedRecord record, Slot slot) {
+        try {
+            if (failure == null) {
+                applier.accept(record);
+                slot.applied = true;
+            }
+        } catch (RuntimeException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        } finally {
+            completed(slot);
+            permits.release();
+        }
+    }
+
+    private void completed(Slot slot) {
+        long toPersist = -1;
+        synchronized (this) {
+            slot.done = true;
+            // an unapplied record stays at the head, so the watermark never passes it.
+            while (!order.isEmpty() && order.peekFirst().done && order.peekFirst().applied) {
+                appliedSequence = order.pollFirst().sequence;
+            }
+            if (appliedSequence - requestedSequence >= watermarkInterval) {
+                requestedSequence = appliedSequence;
+                toPersist = appliedSequence;
+            }
+        }
+        if (slot.applied) {
+            applied.incrementAndGet();
+        }
+        if (toPersist >= 0) {
+            persist(toPersist);
+        }
+    }
+
+    // completions race each other here, so an older watermark must never overwrite a newer one.
+    private void persist(long sequence) {
+        synchronized (persistLock) {
+            if (sequence > persistedSequence) {
+                watermark.accept(sequence);
+                persistedSequence = sequence;
+            }
+        }
+    }
+
+    private static final class Slot {
+        private final long sequence;
+        private boolean done;
+        private boolean applied;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
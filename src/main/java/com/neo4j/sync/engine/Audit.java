@@ -26,6 +26,7 @@ public class Audit {
     private Long timestamp;
     private String transactionId;
     private Map<String, Object> targetNodeKey;
+    private Map<String, Object> relationshipKey;
 
     public Map<String, Object> getNodeKey() {
         return nodeKey;
@@ -149,6 +150,8 @@ public class Audit {
                 + targetPrimaryKey
                 + ", allProperties="
                 + allProperties
+                + ", relationshipKey="
+                + relationshipKey
                 + ", timestamp="
                 + timestamp
                 + ", transactionId='"
@@ -164,4 +167,12 @@ public class Audit {
     public void setTargetNodeKey(Map<String, Object> targetNodeKey) {
         this.targetNodeKey = targetNodeKey;
     }
+
+    public Map<String, Object> getRelationshipKey() {
+        return relationshipKey;
+    }
+
+    public void setRelationshipKey(Map<String, Object> relationshipKey) {
+        this.relationshipKey = relationshipKey;
+    }
 }
@@ -0,0 +1,28 @@
+package com.neo4j.sync.engine;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * com.neo4j.sync.engine.Backoff computes jittered exponential delays for reconnecting to the source.  The n-th
+ * retry waits a random time between half and all of baseMillis * 2^n, capped at maxMillis, so members of a
+ * cluster that come back together are not all hit again at the same moment.
+ */
+
+public class Backoff {
+
+    private static final int MAX_DOUBLINGS = 30;
+
+    private final long baseMillis;
+    private final long maxMillis;
+
+    public Backoff(long baseMillis, long maxMillis) {
+        this.baseMillis = Math.max(1, baseMillis);
+        this.maxMillis = Math.max(this.baseMillis, maxMillis);
+    }
+
+    // the delay before retry number attempt, counting from 0.
+    public long delayMillis(int attempt) {
+        long ceiling = Math.min(maxMillis, baseMillis << Math.min(MAX_DOUBLINGS, Math.max(0, attempt)));
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+}
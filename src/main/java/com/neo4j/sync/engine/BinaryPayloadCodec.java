@@ -0,0 +1,604 @@
+package com.neo4j.sync.engine;
+
+import com.neo4j.sync.exceptions.TransactionDataParseException;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import org.neo4j.graphdb.spatial.Point;
+import org.neo4j.values.storable.CoordinateReferenceSystem;
+import org.neo4j.values.storable.DurationValue;
+import org.neo4j.values.storable.PointValue;
+import org.neo4j.values.storable.Values;
+
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * com.neo4j.sync.engine.BinaryPayloadCodec encodes the audit records of a transaction into the compact, versioned
+ * binary payload stored on BINARY TransactionRecords, and decodes it again on the target.
+ * <p>
+ * Layout (version 2): two magic bytes and a version byte, then a dictionary of every label, relationship type,
+ * property key, change type and time zone used by the record, then the events.  Each event starts with a
+ * bit set of the Audit fields it carries, followed by those fields in a fixed order.  Names are written as
+ * dictionary references, so a key is spelled once per record however many events use it.  All lengths,
+ * counts and references are unsigned varints; integral values are zig-zag varints.  Property values are tagged
+ * with their type, so longs, doubles, arrays, temporal and spatial values arrive on the target as the same
+ * types they had at the source.  Values of any other type are written as their string form.  Version 2 added the
+ * relationship key field; version 1 payloads still decode.
+ * </p>
+ */
+
+public final class BinaryPayloadCodec {
+
+    public static final int VERSION = 2;
+
+    private static final byte MAGIC_0 = 'N';
+    private static final byte MAGIC_1 = 'S';
+
+    // Audit fields, in the order they are written.
+    private static final int CHANGE_TYPE = 1;
+    private static final int NODE_LABELS = 1 << 1;
+    private static final int PRIMARY_KEY = 1 << 2;
+    private static final int NODE_KEY = 1 << 3;
+    private static final int RELATIONSHIP_LABEL = 1 << 4;
+    private static final int TARGET_NODE_LABELS = 1 << 5;
+    private static final int TARGET_PRIMARY_KEY = 1 << 6;
+    private static final int PROPERTIES = 1 << 7;
+    private static final int ALL_PROPERTIES = 1 << 8;
+    private static final int UUID = 1 << 9;
+    private static final int TIMESTAMP = 1 << 10;
+    private static final int TRANSACTION_ID = 1 << 11;
+    private static final int TARGET_NODE_KEY = 1 << 12;
+    private static final int RELATIONSHIP_KEY = 1 << 13;
+
+    // value type tags.
+    private static final int NULL = 0;
+    private static final int BOOLEAN = 1;
+    private static final int BYTE = 2;
+    private static final int SHORT = 3;
+    private static final int INT = 4;
+    private static final int LONG = 5;
+    private static final int FLOAT = 6;
+    private static final int DOUBLE = 7;
+    private static final int CHAR = 8;
+    private static final int STRING = 9;
+    private static final int DATE = 10;
+    private static final int LOCAL_TIME = 11;
+    private static final int TIME = 12;
+    private static final int LOCAL_DATE_TIME = 13;
+    private static final int DATE_TIME = 14;
+    private static final int DURATION = 15;
+    private static final int POINT = 16;
+    private static final int ARRAY = 17;
+
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private static final ThreadLocal<Encoder> ENCODER = ThreadLocal.withInitial(Encoder::new);
+
+    private BinaryPayloadCodec() {
+    }
+
+    public static byte[] encode(List<Audit> audits) {
+        Encoder encoder = ENCODER.get();
+        try {
+            return encoder.encode(audits);
+        } finally {
+            if (encoder.body.buffer.length > MAX_RETAINED_CAPACITY) {
+                ENCODER.remove();
+            } else {
+                encoder.clear();
+            }
+        }
+    }
+
+    public static List<Audit> decode(byte[] payload) throws TransactionDataParseException {
+        try {
+            return new Decoder(payload).decode();
+        } catch (RuntimeException e) {
+            throw new TransactionDataParseException("corrupt binary transaction payload: " + e);
+        }
+    }
+
+    private static final class Encoder {
+
+        private final ByteSink body = new ByteSink();
+        private final ObjectIntHashMap<String> references = new ObjectIntHashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+
+        private byte[] encode(List<Audit> audits) {
+            body.writeVarInt(audits.size());
+            for (Audit audit : audits) {
+                writeAudit(audit);
+            }
+
+            ByteSink header = new ByteSink();
+            header.writeByte(MAGIC_0);
+            header.writeByte(MAGIC_1);
+            header.writeByte(VERSION);
+            header.writeVarInt(dictionary.size());
+            for (String name : dictionary) {
+                header.writeString(name);
+            }
+            byte[] payload = Arrays.copyOf(header.buffer, header.size + body.size);
+            System.arraycopy(body.buffer, 0, payload, header.size, body.size);
+            return payload;
+        }
+
+        private void clear() {
+            body.size = 0;
+            references.clear();
+            dictionary.clear();
+        }
+
+        private void writeAudit(Audit audit) {
+            int fields = (audit.getChangeType() != null ? CHANGE_TYPE : 0)
+                    | (audit.getNodeLabels() != null ? NODE_LABELS : 0)
+                    | (audit.getPrimaryKey() != null ? PRIMARY_KEY : 0)
+                    | (audit.getNodeKey() != null ? NODE_KEY : 0)
+                    | (audit.getRelationshipLabel() != null ? RELATIONSHIP_LABEL : 0)
+                    | (audit.getTargetNodeLabels() != null ? TARGET_NODE_LABELS : 0)
+                    | (audit.getTargetPrimaryKey() != null ? TARGET_PRIMARY_KEY : 0)
+                    | (audit.getProperties() != null ? PROPERTIES : 0)
+                    | (audit.getAllProperties() != null ? ALL_PROPERTIES : 0)
+                    | (audit.getUuid() != null ? UUID : 0)
+                    | (audit.getTimestamp() != null ? TIMESTAMP : 0)
+                    | (audit.getTransactionId() != null ? TRANSACTION_ID : 0)
+                    | (audit.getTargetNodeKey() != null ? TARGET_NODE_KEY : 0)
+                    | (audit.getRelationshipKey() != null ? RELATIONSHIP_KEY : 0);
+            body.writeVarInt(fields);
+
+            if ((fields & CHANGE_TYPE) != 0) writeName(audit.getChangeType());
+            if ((fields & NODE_LABELS) != 0) writeNames(audit.getNodeLabels());
+            if ((fields & PRIMARY_KEY) != 0) writeMap(audit.getPrimaryKey());
+            if ((fields & NODE_KEY) != 0) writeMap(audit.getNodeKey());
+            if ((fields & RELATIONSHIP_LABEL) != 0) writeName(audit.getRelationshipLabel());
+            if ((fields & TARGET_NODE_LABELS) != 0) writeNames(audit.getTargetNodeLabels());
+            if ((fields & TARGET_PRIMARY_KEY) != 0) writeMap(audit.getTargetPrimaryKey());
+            if ((fields & PROPERTIES) != 0) writeChanges(audit.getProperties());
+            if ((fields & ALL_PROPERTIES) != 0) writeMap(audit.getAllProperties());
+            if ((fields & UUID) != 0) body.writeString(audit.getUuid());
+            if ((fields & TIMESTAMP) != 0) body.writeVarLong(zigZag(audit.getTimestamp()));
+            if ((fields & TRANSACTION_ID) != 0) body.writeString(audit.getTransactionId());
+            if ((fields & TARGET_NODE_KEY) != 0) writeMap(audit.getTargetNodeKey());
+            if ((fields & RELATIONSHIP_KEY) != 0) writeMap(audit.getRelationshipKey());
+        }
+
+        private void writeName(String name) {
+            int reference = references.getIfAbsent(name, -1);
+            if (reference < 0) {
+                reference = dictionary.size();
+                dictionary.add(name);
+                references.put(name, reference);
+            }
+            body.writeVarInt(reference);
+        }
+
+        private void writeNames(List<String> names) {
+            body.writeVarInt(names.size());
+            for (String name : names) {
+                writeName(name);
+            }
+        }
+
+        private void writeMap(Map<String, Object> values) {
+            body.writeVarInt(values.size());
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                writeName(entry.getKey());
+                writeValue(entry.getValue());
+            }
+        }
+
+        private void writeChanges(List<PropertyChange> changes) {
+            body.writeVarInt(changes.size());
+            for (PropertyChange change : changes) {
+                writeName(change.getPropertyName());
+                writeValue(change.getOldValue());
+                writeValue(change.getNewValue());
+            }
+        }
+
+        private void writeValue(Object value) {
+            int tag = tagOf(value);
+            if (tag < 0) {
+                body.writeByte(STRING);
+                body.writeString(String.valueOf(value));
+                return;
+            }
+            body.writeByte(tag);
+            if (tag == ARRAY) {
+                int elementTag = tagOf(value.getClass().getComponentType());
+                int length = Array.getLength(value);
+                body.writeByte(elementTag);
+                body.writeVarInt(length);
+                for (int i = 0; i < length; i++) {
+                    writePayload(elementTag, Array.get(value, i));
+                }
+            } else {
+                writePayload(tag, value);
+            }
+        }
+
+        private void writePayload(int tag, Object value) {
+            switch (tag) {
+                case NULL:
+                    break;
+                case BOOLEAN:
+                    body.writeByte((Boolean) value ? 1 : 0);
+                    break;
+                case BYTE:
+                    body.writeByte((Byte) value);
+                    break;
+                case SHORT:
+                case INT:
+                case LONG:
+                    body.writeVarLong(zigZag(((Number) value).longValue()));
+                    break;
+                case FLOAT:
+                    body.writeInt(Float.floatToIntBits((Float) value));
+                    break;
+                case DOUBLE:
+                    body.writeLong(Double.doubleToLongBits((Double) value));
+                    break;
+                case CHAR:
+                    body.writeVarInt((Character) value);
+                    break;
+                case STRING:
+                    body.writeString((String) value);
+                    break;
+                case DATE:
+                    body.writeVarLong(zigZag(((LocalDate) value).toEpochDay()));
+                    break;
+                case LOCAL_TIME:
+                    body.writeVarLong(((LocalTime) value).toNanoOfDay());
+                    break;
+                case TIME:
+                    OffsetTime time = (OffsetTime) value;
+                    body.writeVarLong(time.toLocalTime().toNanoOfDay());
+                    body.writeVarLong(zigZag(time.getOffset().getTotalSeconds()));
+                    break;
+                case LOCAL_DATE_TIME:
+                    LocalDateTime localDateTime = (LocalDateTime) value;
+                    body.writeVarLong(zigZag(localDateTime.toEpochSecond(ZoneOffset.UTC)));
+                    body.writeVarInt(localDateTime.getNano());
+                    break;
+                case DATE_TIME:
+                    ZonedDateTime dateTime = (ZonedDateTime) value;
+                    body.writeVarLong(zigZag(dateTime.toEpochSecond()));
+                    body.writeVarInt(dateTime.getNano());
+                    writeName(dateTime.getZone().getId());
+                    break;
+                case DURATION:
+                    DurationValue duration = (DurationValue) value;
+                    body.writeVarLong(zigZag(duration.get(ChronoUnit.MONTHS)));
+                    body.writeVarLong(zigZag(duration.get(ChronoUnit.DAYS)));
+                    body.writeVarLong(zigZag(duration.get(ChronoUnit.SECONDS)));
+                    body.writeVarLong(duration.get(ChronoUnit.NANOS));
+                    break;
+                case POINT:
+                    PointValue point = value instanceof PointValue ? (PointValue) value : Values.point((Point) value);
+                    double[] coordinates = point.coordinate();
+                    body.writeVarInt(point.getCoordinateReferenceSystem().getCode());
+                    body.writeVarInt(coordinates.length);
+                    for (double coordinate : coordinates) {
+                        body.writeLong(Double.doubleToLongBits(coordinate));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unsupported value tag " + tag);
+            }
+        }
+    }
+
+    private static final class Decoder {
+
+        private final byte[] payload;
+        private int position;
+        private String[] dictionary;
+
+        private Decoder(byte[] payload) {
+            this.payload = payload;
+        }
+
+        private List<Audit> decode() throws TransactionDataParseException {
+            if (payload.length < 3 || payload[0] != MAGIC_0 || payload[1] != MAGIC_1) {
+                throw new TransactionDataParseException("not a binary transaction payload");
+            }
+            int version = payload[2];
+            if (version < 1 || version > VERSION) {
+                throw new TransactionDataParseException("unsupported binary transaction payload version " + version);
+            }
+            position = 3;
+
+            dictionary = new String[readVarInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = readString();
+            }
+
+            int count = readVarInt();
+            List<Audit> audits = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                audits.add(readAudit());
+            }
+            return audits;
+        }
+
+        private Audit readAudit() {
+            Audit audit = new Audit();
+            int fields = readVarInt();
+            if ((fields & CHANGE_TYPE) != 0) audit.setChangeType(readName());
+            if ((fields & NODE_LABELS) != 0) audit.setNodeLabels(readNames());
+            if ((fields & PRIMARY_KEY) != 0) audit.setPrimaryKey(readMap());
+            if ((fields & NODE_KEY) != 0) audit.setNodeKey(readMap());
+            if ((fields & RELATIONSHIP_LABEL) != 0) audit.setRelationshipLabel(readName());
+            if ((fields & TARGET_NODE_LABELS) != 0) audit.setTargetNodeLabels(readNames());
+            if ((fields & TARGET_PRIMARY_KEY) != 0) audit.setTargetPrimaryKey(readMap());
+            if ((fields & PROPERTIES) != 0) audit.setProperties(readChanges());
+            if ((fields & ALL_PROPERTIES) != 0) audit.setAllProperties(readMap());
+            if ((fields & UUID) != 0) audit.setUuid(readString());
+            if ((fields & TIMESTAMP) != 0) audit.setTimestamp(unZigZag(readVarLong()));
+            if ((fields & TRANSACTION_ID) != 0) audit.setTransactionId(readString());
+            if ((fields & TARGET_NODE_KEY) != 0) audit.setTargetNodeKey(readMap());
+            if ((fields & RELATIONSHIP_KEY) != 0) audit.setRelationshipKey(readMap());
+            return audit;
+        }
+
+        private String readName() {
+            return dictionary[readVarInt()];
+        }
+
+        private List<String> readNames() {
+            int count = readVarInt();
+            List<String> names = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                names.add(readName());
+            }
+            return names;
+        }
+
+        private Map<String, Object> readMap() {
+            int count = readVarInt();
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = readName();
+                values.put(key, readValue());
+            }
+            return values;
+        }
+
+        private List<PropertyChange> readChanges() {
+            int count = readVarInt();
+            List<PropertyChange> changes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                PropertyChange change = new PropertyChange();
+                change.setPropertyName(readName());
+                change.setOldValue(readValue());
+                change.setNewValue(readValue());
+                changes.add(change);
+            }
+            return changes;
+        }
+
+        private Object readValue() {
+            int tag = payload[position++];
+            if (tag != ARRAY) {
+                return readPayload(tag);
+            }
+            int elementTag = payload[position++];
+            int length = readVarInt();
+            Object array = Array.newInstance(componentType(elementTag), length);
+            for (int i = 0; i < length; i++) {
+                Array.set(array, i, readPayload(elementTag));
+            }
+            return array;
+        }
+
+        private Object readPayload(int tag) {
+            switch (tag) {
+                case NULL:
+                    return null;
+                case BOOLEAN:
+                    return payload[position++] != 0;
+                case BYTE:
+                    return payload[position++];
+                case SHORT:
+                    return (short) unZigZag(readVarLong());
+                case INT:
+                    return (int) unZigZag(readVarLong());
+                case LONG:
+                    return unZigZag(readVarLong());
+                case FLOAT:
+                    return Float.intBitsToFloat(readInt());
+                case DOUBLE:
+                    return Double.longBitsToDouble(readLong());
+                case CHAR:
+                    return (char) readVarInt();
+                case STRING:
+                    return readString();
+                case DATE:
+                    return LocalDate.ofEpochDay(unZigZag(readVarLong()));
+                case LOCAL_TIME:
+                    return LocalTime.ofNanoOfDay(readVarLong());
+                case TIME:
+                    LocalTime localTime = LocalTime.ofNanoOfDay(readVarLong());
+                    return OffsetTime.of(localTime, ZoneOffset.ofTotalSeconds((int) unZigZag(readVarLong())));
+                case LOCAL_DATE_TIME:
+                    long localSeconds = unZigZag(readVarLong());
+                    return LocalDateTime.ofEpochSecond(localSeconds, readVarInt(), ZoneOffset.UTC);
+                case DATE_TIME:
+                    long seconds = unZigZag(readVarLong());
+                    int nanos = readVarInt();
+                    return ZonedDateTime.ofInstant(java.time.Instant.ofEpochSecond(seconds, nanos), ZoneId.of(readName()));
+                case DURATION:
+                    long months = unZigZag(readVarLong());
+                    long days = unZigZag(readVarLong());
+                    long durationSeconds = unZigZag(readVarLong());
+                    return DurationValue.duration(months, days, durationSeconds, readVarLong());
+                case POINT:
+                    CoordinateReferenceSystem crs = CoordinateReferenceSystem.get(readVarInt());
+                    double[] coordinates = new double[readVarInt()];
+                    for (int i = 0; i < coordinates.length; i++) {
+                        coordinates[i] = Double.longBitsToDouble(readLong());
+                    }
+                    return Values.pointValue(crs, coordinates);
+                default:
+                    throw new IllegalArgumentException("unknown value tag " + tag);
+            }
+        }
+
+        private String readString() {
+            int length = readVarInt();
+            String value = new String(payload, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = payload[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private int readInt() {
+            int value = (payload[position] & 0xFF) << 24 | (payload[position + 1] & 0xFF) << 16
+                    | (payload[position + 2] & 0xFF) << 8 | (payload[position + 3] & 0xFF);
+            position += 4;
+            return value;
+        }
+
+        private long readLong() {
+            long high = readInt() & 0xFFFFFFFFL;
+            long low = readInt() & 0xFFFFFFFFL;
+            return high << 32 | low;
+        }
+    }
+
+    // growable output buffer.
+    private static final class ByteSink {
+
+        private byte[] buffer = new byte[1024];
+        private int size;
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            buffer[size++] = (byte) b;
+        }
+
+        private void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        private void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void writeInt(int value) {
+            ensure(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        private void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+    }
+
+    private static int tagOf(Object value) {
+        if (value == null) return NULL;
+        if (value.getClass().isArray()) {
+            return tagOf(value.getClass().getComponentType()) >= 0 ? ARRAY : -1;
+        }
+        return tagOf(value.getClass());
+    }
+
+    private static int tagOf(Class<?> type) {
+        if (type == Boolean.class || type == boolean.class) return BOOLEAN;
+        if (type == Byte.class || type == byte.class) return BYTE;
+        if (type == Short.class || type == short.class) return SHORT;
+        if (type == Integer.class || type == int.class) return INT;
+        if (type == Long.class || type == long.class) return LONG;
+        if (type == Float.class || type == float.class) return FLOAT;
+        if (type == Double.class || type == double.class) return DOUBLE;
+        if (type == Character.class || type == char.class) return CHAR;
+        if (type == String.class) return STRING;
+        if (type == LocalDate.class) return DATE;
+        if (type == LocalTime.class) return LOCAL_TIME;
+        if (type == OffsetTime.class) return TIME;
+        if (type == LocalDateTime.class) return LOCAL_DATE_TIME;
+        if (type == ZonedDateTime.class) return DATE_TIME;
+        if (DurationValue.class.isAssignableFrom(type)) return DURATION;
+        if (Point.class.isAssignableFrom(type)) return POINT;
+        return -1;
+    }
+
+    private static Class<?> componentType(int tag) {
+        switch (tag) {
+            case BOOLEAN: return boolean.class;
+            case BYTE: return byte.class;
+            case SHORT: return short.class;
+            case INT: return int.class;
+            case LONG: return long.class;
+            case FLOAT: return float.class;
+            case DOUBLE: return double.class;
+            case CHAR: return char.class;
+            case STRING: return String.class;
+            case DATE: return LocalDate.class;
+            case LOCAL_TIME: return LocalTime.class;
+            case TIME: return OffsetTime.class;
+            case LOCAL_DATE_TIME: return LocalDateTime.class;
+            case DATE_TIME: return ZonedDateTime.class;
+            case DURATION: return DurationValue.class;
+            case POINT: return Point.class;
+            default: throw new IllegalArgumentException("unknown array element tag " + tag);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,17 @@
+package com.neo4j.sync.engine;
+
+/**
+ * com.neo4j.sync.engine.CaptureMode enum provides an enumeration of the ways the
+ * CaptureTransactionEventListenerAdapter can persist TransactionRecord nodes.
+ * NESTED writes the record in its own transaction from beforeCommit (the original behaviour).
+ * ATOMIC writes the record through the captured transaction itself, so it commits or rolls back with the user's data.
+ * Its records carry no internalTransactionId or commitTime, which are only known once the transaction has committed;
+ * the sequence orders them instead.  The write lock on the ReplicationSequence counter is taken in beforeCommit and
+ * held by the user's transaction until it ends, so capturing transactions commit one at a time.
+ * ASYNC hands the committed record to the TransactionRecordWriter, which persists records in batches.
+ */
+
+public enum CaptureMode {
+
+    NESTED, ATOMIC, ASYNC
+}
@@ -0,0 +1,12 @@
+package com.neo4j.sync.engine;
+
+/**
+ * com.neo4j.sync.engine.CaptureQueuePolicy enum provides an enumeration of what the
+ * com.neo4j.sync.engine.TransactionRecordWriter does when its queue is full.
+ * BLOCK makes the committing thread wait for room, DROP discards the record and counts it.
+ */
+
+public enum CaptureQueuePolicy {
+
+    BLOCK, DROP
+}
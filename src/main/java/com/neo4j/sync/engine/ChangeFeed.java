@@ -0,0 +1,48 @@
+package com.neo4j.sync.engine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * com.neo4j.sync.engine.ChangeFeed lets the changeFeed procedure wait for new TransactionRecords instead of
+ * having targets poll for them.  Whatever persists a TransactionRecord publishes once the record is committed;
+ * waiters remember the generation they last saw before reading, so a record committed between their read
+ * and their wait still wakes them.
+ */
+
+public final class ChangeFeed {
+
+    private static final Object MONITOR = new Object();
+    private static long generation;
+
+    private ChangeFeed() {
+    }
+
+    // called after TransactionRecords have been committed.
+    public static void publish() {
+        synchronized (MONITOR) {
+            generation++;
+            MONITOR.notifyAll();
+        }
+    }
+
+    public static long generation() {
+        synchronized (MONITOR) {
+            return generation;
+        }
+    }
+
+    // waits until something is published after the given generation; returns false on timeout.
+    public static boolean awaitPublished(long seenGeneration, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (MONITOR) {
+            while (generation == seenGeneration) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                MONITOR.wait(remaining);
+            }
+            return true;
+        }
+    }
+}
@@ -2,11 +2,27 @@ package com.neo4j.sync.engine;
 
 /**
  * com.neo4j.sync.engine.ChangeType enum provides an enumeration of transaction events.
+ * Each change type carries the event name written to the changeType field of the transaction data.
  *
  * @author Chris Upkes
  */
 
 public enum ChangeType {
 
-    ADD_NODE, DELETE_NODE, ADD_RELATION, DELETE_RELATION, NODE_PROPERTY_CHANGE, RELATION_PROPERTY_CHANGE
+    ADD_NODE("AddNode"),
+    DELETE_NODE("DeleteNode"),
+    ADD_RELATION("AddRelation"),
+    DELETE_RELATION("DeleteRelation"),
+    NODE_PROPERTY_CHANGE("NodePropertyChange"),
+    RELATION_PROPERTY_CHANGE("RelationPropertyChange");
+
+    private final String eventName;
+
+    ChangeType(String eventName) {
+        this.eventName = eventName;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
 }
@@ -0,0 +1,79 @@
+package com.neo4j.sync.engine;
+
+import java.util.function.LongSupplier;
+
+/**
+ * com.neo4j.sync.engine.CircuitBreaker stops the ReplicationEngine polling a source that keeps failing.  After
+ * failureThreshold polls in a row fail the breaker opens and polls are skipped for a jittered, exponentially
+ * growing time.  The first poll after that is a trial: if it succeeds the breaker closes, if it fails the breaker
+ * opens again for longer.  Nothing is lost while it is open; the next poll resumes from the watermark on the
+ * target.
+ */
+
+public class CircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final int failureThreshold;
+    private final Backoff backoff;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private int openings;
+    private long openUntil;
+
+    public CircuitBreaker() {
+        this(Configuration.getCircuitFailureThreshold(),
+                new Backoff(Configuration.getReconnectBaseMillis(), Configuration.getReconnectMaxMillis()),
+                System::currentTimeMillis);
+    }
+
+    public CircuitBreaker(int failureThreshold, Backoff backoff, LongSupplier clock) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.backoff = backoff;
+        this.clock = clock;
+    }
+
+    // whether a poll may go ahead now; lets a single trial through once the open time has passed.
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() < openUntil) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        openings = 0;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openUntil = clock.getAsLong() + backoff.delayMillis(openings++);
+        }
+    }
+
+    // how long until a poll is worth trying again: what is left of the open time, or a backoff delay after
+    // failures that have not yet opened the breaker.
+    public synchronized long retryDelayMillis() {
+        if (state == State.OPEN) {
+            return Math.max(0, openUntil - clock.getAsLong());
+        }
+        return failures == 0 ? 0 : backoff.delayMillis(failures - 1);
+    }
+
+    public synchronized boolean hasFailures() {
+        return failures > 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
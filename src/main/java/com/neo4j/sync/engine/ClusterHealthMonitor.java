@@ -0,0 +1,166 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.driver.net.ServerAddress;
+import org.neo4j.logging.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * com.neo4j.sync.engine.ClusterHealthMonitor keeps track of the health and connect latency of each member of
+ * the source cluster and answers the driver's resolver with the members in order of preference.  The members
+ * are probed with a TCP connect on a schedule of their own, started the first time the driver resolves the
+ * cluster, so resolving never waits on the network: healthy members are listed fastest first, a member that
+ * failed is only probed again after a jittered exponential backoff and is listed after the healthy ones.  Should
+ * nothing be known to be healthy every member is returned, so the driver always has somewhere to try.
+ * The driver only consults its resolver for the seed router, when it first builds its routing table and when it
+ * has to fall back to the seed to rebuild it.  Which member serves a read or a write is still decided by the
+ * routing table the cluster returns; the monitor only decides which member that table is fetched from.
+ */
+
+public class ClusterHealthMonitor {
+
+    // weight of the newest probe in the moving average of a member's latency.
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    @FunctionalInterface
+    interface Prober {
+        // the time in nanoseconds it took to reach the member.
+        long probe(ServerAddress address) throws IOException;
+    }
+
+    private final Map<ServerAddress, Member> members = new LinkedHashMap<>();
+    private final Prober prober;
+    private final Backoff backoff;
+    private final long probeIntervalMillis;
+    private final Log log;
+    private ScheduledExecutorService probeService;
+    private boolean stopped;
+
+    public ClusterHealthMonitor(Collection<ServerAddress> addresses, Log log) {
+        this(addresses, connectProber(Configuration.getProbeTimeoutMillis()),
+                new Backoff(Configuration.getReconnectBaseMillis(), Configuration.getReconnectMaxMillis()),
+                Configuration.getProbeIntervalMillis(), log);
+    }
+
+    ClusterHealthMonitor(Collection<ServerAddress> addresses, Prober prober, Backoff backoff, long probeIntervalMillis, Log log) {
+        for (ServerAddress address : addresses) {
+            members.put(address, new Member());
+        }
+        this.prober = prober;
+        this.backoff = backoff;
+        this.probeIntervalMillis = probeIntervalMillis;
+        this.log = log;
+    }
+
+    // returns the members, preferred first, from what the last probes found.
+    public Set<ServerAddress> resolve() {
+        start();
+        synchronized (this) {
+            List<ServerAddress> healthy = new ArrayList<>();
+            List<ServerAddress> recovering = new ArrayList<>();
+            members.forEach((address, member) -> (member.failures == 0 ? healthy : recovering).add(address));
+            healthy.sort(Comparator.comparingDouble(address -> members.get(address).latencyNanos));
+
+            Set<ServerAddress> resolved = new LinkedHashSet<>(healthy);
+            resolved.addAll(recovering);
+            return resolved;
+        }
+    }
+
+    // starts probing in the background; does nothing once started or stopped.
+    public synchronized void start() {
+        if (probeService != null || stopped) {
+            return;
+        }
+        probeService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ClusterHealthMonitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        probeService.scheduleWithFixedDelay(this::probeDue, 0, probeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        if (probeService != null) {
+            probeService.shutdownNow();
+        }
+    }
+
+    public synchronized Map<String, Object> getHealth() {
+        Map<String, Object> health = new LinkedHashMap<>();
+        members.forEach((address, member) -> health.put(address.host() + ":" + address.port(),
+                member.failures == 0
+                        ? String.format("healthy %.1f ms", member.latencyNanos / 1_000_000.0)
+                        : String.format("down, %d failed probes", member.failures)));
+        return health;
+    }
+
+    // probes the members that are due.  The connects are made without holding the lock resolve takes.
+    void probeDue() {
+        long now = System.currentTimeMillis();
+        List<ServerAddress> due = new ArrayList<>();
+        synchronized (this) {
+            members.forEach((address, member) -> {
+                if (now >= member.nextProbeAt) {
+                    due.add(address);
+                }
+            });
+        }
+        for (ServerAddress address : due) {
+            try {
+                reached(address, prober.probe(address), now);
+            } catch (IOException e) {
+                unreachable(address, now);
+                log.warn("Cluster member %s:%d is unreachable: %s", address.host(), address.port(), e.getMessage());
+            } catch (RuntimeException e) {
+                // keep the schedule alive for the other members.
+                unreachable(address, now);
+                log.error("Probing cluster member " + address.host() + ":" + address.port() + " failed", e);
+            }
+        }
+    }
+
+    private synchronized void reached(ServerAddress address, long latency, long now) {
+        Member member = members.get(address);
+        member.latencyNanos = member.failures > 0 || member.latencyNanos == 0
+                ? latency : LATENCY_WEIGHT * latency + (1 - LATENCY_WEIGHT) * member.latencyNanos;
+        member.failures = 0;
+        member.nextProbeAt = now;
+    }
+
+    private synchronized void unreachable(ServerAddress address, long now) {
+        Member member = members.get(address);
+        member.nextProbeAt = now + backoff.delayMillis(member.failures);
+        member.failures++;
+    }
+
+    private static Prober connectProber(int timeoutMillis) {
+        return address -> {
+            long started = System.nanoTime();
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(address.host(), address.port()), timeoutMillis);
+            }
+            return System.nanoTime() - started;
+        };
+    }
+
+    private static final class Member {
+        private double latencyNanos;
+        private int failures;
+        private long nextProbeAt;
+    }
+}
@@ -10,6 +10,7 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +36,50 @@ public class Configuration {
     private boolean useDefaults = true;
     private static boolean initialized = false;
     private static int BATCH_SIZE = 100;
+    private static CaptureMode CAPTURE_MODE = CaptureMode.NESTED;
+    private static int CAPTURE_QUEUE_CAPACITY = 10000;
+    private static CaptureQueuePolicy CAPTURE_QUEUE_POLICY = CaptureQueuePolicy.BLOCK;
+    private static int CAPTURE_WRITE_BATCH_SIZE = 500;
+    private static List<String> EXCLUDE_LABELS = List.of();
+    private static List<String> EXCLUDE_ASSIGNED_LABELS = ReplicationFilter.DEFAULT_EXCLUDE_ASSIGNED_LABELS;
+    private static List<String> EXCLUDE_UPDATED_LABELS = ReplicationFilter.DEFAULT_EXCLUDE_UPDATED_LABELS;
+    private static List<String> EXCLUDE_ENDPOINT_LABELS = ReplicationFilter.DEFAULT_EXCLUDE_ENDPOINT_LABELS;
+    private static List<String> INCLUDE_LABELS = List.of();
+    private static List<String> EXCLUDE_RELATIONSHIP_TYPES = List.of();
+    private static List<String> INCLUDE_RELATIONSHIP_TYPES = List.of();
+    private static List<String> REQUIRED_NODE_PROPERTIES = ReplicationFilter.DEFAULT_REQUIRED_PROPERTIES;
+    private static List<String> REQUIRED_RELATIONSHIP_PROPERTIES = ReplicationFilter.DEFAULT_REQUIRED_PROPERTIES;
+    private static PayloadFormat PAYLOAD_FORMAT = PayloadFormat.JSON;
+    private static PayloadCodec PAYLOAD_CODEC = PayloadCodec.GZIP;
+    private static int PAYLOAD_COMPRESSION_THRESHOLD = 1024 * 1024;
+    private static boolean CAPTURE_PROPERTY_DELTAS = false;
+    private static int APPLY_GROUP_SIZE = 1;
+    private static int APPLY_GROUP_BYTES = 4 * 1024 * 1024;
+    private static int DECODER_THREADS = 2;
+    private static int PIPELINE_QUEUE_CAPACITY = 256;
+    private static int APPLY_PARALLELISM = 1;
+    private static FeedMode FEED_MODE = FeedMode.POLL;
+    private static int LONG_POLL_TIMEOUT_MILLIS = 10000;
+    private static boolean ADAPTIVE_FLOW_CONTROL = false;
+    private static long MIN_POLL_INTERVAL_MILLIS = 1000L;
+    private static long MAX_POLL_INTERVAL_MILLIS = 60000L;
+    private static int MAX_BATCH_SIZE = 5000;
+    private static long APPLY_LATENCY_BUDGET_MILLIS = 2000L;
+    private static long LAG_BUDGET_MILLIS = 10000L;
+    private static long FETCH_SIZE = 1000L;
+    private static int MAX_CONNECTION_POOL_SIZE = 10;
+    private static long CONNECTION_ACQUISITION_TIMEOUT_MILLIS = 30000L;
+    private static boolean REACTIVE_FETCH = false;
+    private static ReadConsistency READ_CONSISTENCY = ReadConsistency.CAUSAL;
+    private static int PROBE_TIMEOUT_MILLIS = 1000;
+    private static long PROBE_INTERVAL_MILLIS = 5000;
+    private static long RECONNECT_BASE_MILLIS = 500L;
+    private static long RECONNECT_MAX_MILLIS = 60000L;
+    private static int CIRCUIT_FAILURE_THRESHOLD = 3;
+    private static String LOCAL_TARGET_DATABASE = "";
+    private static boolean PROVISION_INDEXES = true;
+    // off by default: when on, the capture writes a uuid onto the user's relationships that lack one.
+    private static boolean ASSIGN_RELATIONSHIP_KEYS = false;
 
     public static final String REPLICATION_SETTINGS_LABEL = "ReplicationSettings";
     public static final String REPLICATION_SETTINGS_PK_VALUE = "singleton";
@@ -49,6 +94,49 @@ public class Configuration {
     public static final String POLLING_FILE_KEY = "pollingFile";
     public static final String CONFIGURATION_KEY = "configuration";
     public static final String REPLICATION_SETTINGS_PK = "id";
+    public static final String CAPTURE_MODE_KEY = "captureMode";
+    public static final String CAPTURE_QUEUE_CAPACITY_KEY = "captureQueueCapacity";
+    public static final String CAPTURE_QUEUE_POLICY_KEY = "captureQueuePolicy";
+    public static final String CAPTURE_WRITE_BATCH_SIZE_KEY = "captureWriteBatchSize";
+    public static final String EXCLUDE_LABELS_KEY = "excludeLabels";
+    public static final String EXCLUDE_ASSIGNED_LABELS_KEY = "excludeAssignedLabels";
+    public static final String EXCLUDE_UPDATED_LABELS_KEY = "excludeUpdatedLabels";
+    public static final String EXCLUDE_ENDPOINT_LABELS_KEY = "excludeEndpointLabels";
+    public static final String INCLUDE_LABELS_KEY = "includeLabels";
+    public static final String EXCLUDE_RELATIONSHIP_TYPES_KEY = "excludeRelationshipTypes";
+    public static final String INCLUDE_RELATIONSHIP_TYPES_KEY = "includeRelationshipTypes";
+    public static final String REQUIRED_NODE_PROPERTIES_KEY = "requiredNodeProperties";
+    public static final String REQUIRED_RELATIONSHIP_PROPERTIES_KEY = "requiredRelationshipProperties";
+    public static final String PAYLOAD_FORMAT_KEY = "payloadFormat";
+    public static final String PAYLOAD_CODEC_KEY = "payloadCodec";
+    public static final String PAYLOAD_COMPRESSION_THRESHOLD_KEY = "payloadCompressionThreshold";
+    public static final String CAPTURE_PROPERTY_DELTAS_KEY = "capturePropertyDeltas";
+    public static final String APPLY_GROUP_SIZE_KEY = "applyGroupSize";
+    public static final String APPLY_GROUP_BYTES_KEY = "applyGroupBytes";
+    public static final String DECODER_THREADS_KEY = "decoderThreads";
+    public static final String PIPELINE_QUEUE_CAPACITY_KEY = "pipelineQueueCapacity";
+    public static final String APPLY_PARALLELISM_KEY = "applyParallelism";
+    public static final String FEED_MODE_KEY = "feedMode";
+    public static final String LONG_POLL_TIMEOUT_MILLIS_KEY = "longPollTimeoutMillis";
+    public static final String ADAPTIVE_FLOW_CONTROL_KEY = "adaptiveFlowControl";
+    public static final String MIN_POLL_INTERVAL_MILLIS_KEY = "minPollIntervalMillis";
+    public static final String MAX_POLL_INTERVAL_MILLIS_KEY = "maxPollIntervalMillis";
+    public static final String MAX_BATCH_SIZE_KEY = "maxBatchSize";
+    public static final String APPLY_LATENCY_BUDGET_MILLIS_KEY = "applyLatencyBudgetMillis";
+    public static final String LAG_BUDGET_MILLIS_KEY = "lagBudgetMillis";
+    public static final String FETCH_SIZE_KEY = "fetchSize";
+    public static final String MAX_CONNECTION_POOL_SIZE_KEY = "maxConnectionPoolSize";
+    public static final String CONNECTION_ACQUISITION_TIMEOUT_MILLIS_KEY = "connectionAcquisitionTimeoutMillis";
+    public static final String REACTIVE_FETCH_KEY = "reactiveFetch";
+    public static final String READ_CONSISTENCY_KEY = "readConsistency";
+    public static final String PROBE_TIMEOUT_MILLIS_KEY = "probeTimeoutMillis";
+    public static final String PROBE_INTERVAL_MILLIS_KEY = "probeIntervalMillis";
+    public static final String RECONNECT_BASE_MILLIS_KEY = "reconnectBaseMillis";
+    public static final String RECONNECT_MAX_MILLIS_KEY = "reconnectMaxMillis";
+    public static final String CIRCUIT_FAILURE_THRESHOLD_KEY = "circuitFailureThreshold";
+    public static final String LOCAL_TARGET_DATABASE_KEY = "localTargetDatabase";
+    public static final String PROVISION_INDEXES_KEY = "provisionIndexes";
+    public static final String ASSIGN_RELATIONSHIP_KEYS_KEY = "assignRelationshipKeys";
 
     // TODO:  if setAllParameters is tested, then don't initialize with defaults here.
     public static String TX_LOG_FILE_DIR = "c:/OUTBOUND_TX";
@@ -87,19 +175,194 @@ public class Configuration {
         return BATCH_SIZE;
     }
 
+    public static CaptureMode getCaptureMode() {
+        return CAPTURE_MODE;
+    }
+
+    public static int getCaptureQueueCapacity() {
+        return CAPTURE_QUEUE_CAPACITY;
+    }
+
+    public static CaptureQueuePolicy getCaptureQueuePolicy() {
+        return CAPTURE_QUEUE_POLICY;
+    }
+
+    public static int getCaptureWriteBatchSize() {
+        return CAPTURE_WRITE_BATCH_SIZE;
+    }
+
+    public static List<String> getExcludeLabels() {
+        return EXCLUDE_LABELS;
+    }
+
+    public static List<String> getExcludeAssignedLabels() {
+        return EXCLUDE_ASSIGNED_LABELS;
+    }
+
+    public static List<String> getExcludeUpdatedLabels() {
+        return EXCLUDE_UPDATED_LABELS;
+    }
+
+    public static List<String> getExcludeEndpointLabels() {
+        return EXCLUDE_ENDPOINT_LABELS;
+    }
+
+    public static List<String> getIncludeLabels() {
+        return INCLUDE_LABELS;
+    }
+
+    public static List<String> getExcludeRelationshipTypes() {
+        return EXCLUDE_RELATIONSHIP_TYPES;
+    }
+
+    public static List<String> getIncludeRelationshipTypes() {
+        return INCLUDE_RELATIONSHIP_TYPES;
+    }
+
+    public static List<String> getRequiredNodeProperties() {
+        return REQUIRED_NODE_PROPERTIES;
+    }
+
+    public static List<String> getRequiredRelationshipProperties() {
+        return REQUIRED_RELATIONSHIP_PROPERTIES;
+    }
+
+    public static PayloadFormat getPayloadFormat() {
+        return PAYLOAD_FORMAT;
+    }
+
+    public static PayloadCodec getPayloadCodec() {
+        return PAYLOAD_CODEC;
+    }
+
+    public static int getPayloadCompressionThreshold() {
+        return PAYLOAD_COMPRESSION_THRESHOLD;
+    }
+
+    public static boolean isCapturePropertyDeltas() {
+        return CAPTURE_PROPERTY_DELTAS;
+    }
+
+    public static int getApplyGroupSize() {
+        return APPLY_GROUP_SIZE;
+    }
+
+    public static int getApplyGroupBytes() {
+        return APPLY_GROUP_BYTES;
+    }
+
+    public static int getDecoderThreads() {
+        return DECODER_THREADS;
+    }
+
+    public static int getPipelineQueueCapacity() {
+        return PIPELINE_QUEUE_CAPACITY;
+    }
+
+    public static int getApplyParallelism() {
+        return APPLY_PARALLELISM;
+    }
+
+    public static FeedMode getFeedMode() {
+        return FEED_MODE;
+    }
+
+    public static int getLongPollTimeoutMillis() {
+        return LONG_POLL_TIMEOUT_MILLIS;
+    }
+
+    public static boolean isAdaptiveFlowControl() {
+        return ADAPTIVE_FLOW_CONTROL;
+    }
+
+    public static long getMinPollIntervalMillis() {
+        return MIN_POLL_INTERVAL_MILLIS;
+    }
+
+    public static long getMaxPollIntervalMillis() {
+        return MAX_POLL_INTERVAL_MILLIS;
+    }
+
+    public static int getMaxBatchSize() {
+        return MAX_BATCH_SIZE;
+    }
+
+    public static long getApplyLatencyBudgetMillis() {
+        return APPLY_LATENCY_BUDGET_MILLIS;
+    }
+
+    public static long getLagBudgetMillis() {
+        return LAG_BUDGET_MILLIS;
+    }
+
+    public static long getFetchSize() {
+        return FETCH_SIZE;
+    }
+
+    public static int getMaxConnectionPoolSize() {
+        return MAX_CONNECTION_POOL_SIZE;
+    }
+
+    public static long getConnectionAcquisitionTimeoutMillis() {
+        return CONNECTION_ACQUISITION_TIMEOUT_MILLIS;
+    }
+
+    public static boolean isReactiveFetch() {
+        return REACTIVE_FETCH;
+    }
+
+    public static ReadConsistency getReadConsistency() {
+        return READ_CONSISTENCY;
+    }
+
+    public static int getProbeTimeoutMillis() {
+        return PROBE_TIMEOUT_MILLIS;
+    }
+
+    public static long getProbeIntervalMillis() {
+        return PROBE_INTERVAL_MILLIS;
+    }
+
+    public static long getReconnectBaseMillis() {
+        return RECONNECT_BASE_MILLIS;
+    }
+
+    public static long getReconnectMaxMillis() {
+        return RECONNECT_MAX_MILLIS;
+    }
+
+    public static int getCircuitFailureThreshold() {
+        return CIRCUIT_FAILURE_THRESHOLD;
+    }
+
+    public static String getLocalTargetDatabase() {
+        return LOCAL_TARGET_DATABASE;
+    }
+
+    public static boolean isProvisionIndexes() {
+        return PROVISION_INDEXES;
+    }
+
+    // whether relationships created without a uuid are given one before commit.  This modifies the user's data.
+    public static boolean isAssignRelationshipKeys() {
+        return ASSIGN_RELATIONSHIP_KEYS;
+    }
+
     public static boolean isInitialized() {
         return initialized;
     }
 
-    // *** UNTESTED ***
+    // reads the ReplicationSettings node of the database; settings it does not carry keep their current values,
+    // and without the node every setting keeps its default.  Can be called again to pick up changed settings.
     public static void InitializeFromDB(GraphDatabaseService gdb) {
-        // TODO: initialize ReplicationSettings node in database
-        if (isInitialized()) {
-            try (Transaction tx = gdb.beginTx()) {
-                setAllParameters(tx.findNode(Label.label(REPLICATION_SETTINGS_LABEL), REPLICATION_SETTINGS_PK, REPLICATION_SETTINGS_PK_VALUE));
-                initialized = true;
+        try (Transaction tx = gdb.beginTx()) {
+            Node settings = tx.findNode(Label.label(REPLICATION_SETTINGS_LABEL), REPLICATION_SETTINGS_PK, REPLICATION_SETTINGS_PK_VALUE);
+            if (settings != null) {
+                setAllParameters(settings);
             }
+            tx.commit();
         }
+        initialized = true;
     }
 
     private static void initializeJSON() throws JSONException {
@@ -130,6 +393,49 @@ public class Configuration {
 
         // **** UNTESTED ****
         BATCH_SIZE = Integer.parseInt(parameters.getProperty(BATCH_SIZE_KEY, 100).toString());
+        CAPTURE_MODE = CaptureMode.valueOf(parameters.getProperty(CAPTURE_MODE_KEY, CAPTURE_MODE.name()).toString().toUpperCase());
+        CAPTURE_QUEUE_CAPACITY = Integer.parseInt(parameters.getProperty(CAPTURE_QUEUE_CAPACITY_KEY, CAPTURE_QUEUE_CAPACITY).toString());
+        CAPTURE_QUEUE_POLICY = CaptureQueuePolicy.valueOf(parameters.getProperty(CAPTURE_QUEUE_POLICY_KEY, CAPTURE_QUEUE_POLICY.name()).toString().toUpperCase());
+        CAPTURE_WRITE_BATCH_SIZE = Integer.parseInt(parameters.getProperty(CAPTURE_WRITE_BATCH_SIZE_KEY, CAPTURE_WRITE_BATCH_SIZE).toString());
+        EXCLUDE_LABELS = getStringList(parameters, EXCLUDE_LABELS_KEY, EXCLUDE_LABELS);
+        EXCLUDE_ASSIGNED_LABELS = getStringList(parameters, EXCLUDE_ASSIGNED_LABELS_KEY, EXCLUDE_ASSIGNED_LABELS);
+        EXCLUDE_UPDATED_LABELS = getStringList(parameters, EXCLUDE_UPDATED_LABELS_KEY, EXCLUDE_UPDATED_LABELS);
+        EXCLUDE_ENDPOINT_LABELS = getStringList(parameters, EXCLUDE_ENDPOINT_LABELS_KEY, EXCLUDE_ENDPOINT_LABELS);
+        INCLUDE_LABELS = getStringList(parameters, INCLUDE_LABELS_KEY, INCLUDE_LABELS);
+        EXCLUDE_RELATIONSHIP_TYPES = getStringList(parameters, EXCLUDE_RELATIONSHIP_TYPES_KEY, EXCLUDE_RELATIONSHIP_TYPES);
+        INCLUDE_RELATIONSHIP_TYPES = getStringList(parameters, INCLUDE_RELATIONSHIP_TYPES_KEY, INCLUDE_RELATIONSHIP_TYPES);
+        REQUIRED_NODE_PROPERTIES = getStringList(parameters, REQUIRED_NODE_PROPERTIES_KEY, REQUIRED_NODE_PROPERTIES);
+        REQUIRED_RELATIONSHIP_PROPERTIES = getStringList(parameters, REQUIRED_RELATIONSHIP_PROPERTIES_KEY, REQUIRED_RELATIONSHIP_PROPERTIES);
+        PAYLOAD_FORMAT = PayloadFormat.valueOf(parameters.getProperty(PAYLOAD_FORMAT_KEY, PAYLOAD_FORMAT.name()).toString().toUpperCase());
+        PAYLOAD_CODEC = PayloadCodec.valueOf(parameters.getProperty(PAYLOAD_CODEC_KEY, PAYLOAD_CODEC.name()).toString().toUpperCase());
+        PAYLOAD_COMPRESSION_THRESHOLD = Integer.parseInt(parameters.getProperty(PAYLOAD_COMPRESSION_THRESHOLD_KEY, PAYLOAD_COMPRESSION_THRESHOLD).toString());
+        CAPTURE_PROPERTY_DELTAS = Boolean.parseBoolean(parameters.getProperty(CAPTURE_PROPERTY_DELTAS_KEY, CAPTURE_PROPERTY_DELTAS).toString());
+        APPLY_GROUP_SIZE = Integer.parseInt(parameters.getProperty(APPLY_GROUP_SIZE_KEY, APPLY_GROUP_SIZE).toString());
+        APPLY_GROUP_BYTES = Integer.parseInt(parameters.getProperty(APPLY_GROUP_BYTES_KEY, APPLY_GROUP_BYTES).toString());
+        DECODER_THREADS = Integer.parseInt(parameters.getProperty(DECODER_THREADS_KEY, DECODER_THREADS).toString());
+        PIPELINE_QUEUE_CAPACITY = Integer.parseInt(parameters.getProperty(PIPELINE_QUEUE_CAPACITY_KEY, PIPELINE_QUEUE_CAPACITY).toString());
+        APPLY_PARALLELISM = Integer.parseInt(parameters.getProperty(APPLY_PARALLELISM_KEY, APPLY_PARALLELISM).toString());
+        FEED_MODE = FeedMode.valueOf(parameters.getProperty(FEED_MODE_KEY, FEED_MODE.name()).toString().toUpperCase());
+        LONG_POLL_TIMEOUT_MILLIS = Integer.parseInt(parameters.getProperty(LONG_POLL_TIMEOUT_MILLIS_KEY, LONG_POLL_TIMEOUT_MILLIS).toString());
+        ADAPTIVE_FLOW_CONTROL = Boolean.parseBoolean(parameters.getProperty(ADAPTIVE_FLOW_CONTROL_KEY, ADAPTIVE_FLOW_CONTROL).toString());
+        MIN_POLL_INTERVAL_MILLIS = Long.parseLong(parameters.getProperty(MIN_POLL_INTERVAL_MILLIS_KEY, MIN_POLL_INTERVAL_MILLIS).toString());
+        MAX_POLL_INTERVAL_MILLIS = Long.parseLong(parameters.getProperty(MAX_POLL_INTERVAL_MILLIS_KEY, MAX_POLL_INTERVAL_MILLIS).toString());
+        MAX_BATCH_SIZE = Integer.parseInt(parameters.getProperty(MAX_BATCH_SIZE_KEY, MAX_BATCH_SIZE).toString());
+        APPLY_LATENCY_BUDGET_MILLIS = Long.parseLong(parameters.getProperty(APPLY_LATENCY_BUDGET_MILLIS_KEY, APPLY_LATENCY_BUDGET_MILLIS).toString());
+        LAG_BUDGET_MILLIS = Long.parseLong(parameters.getProperty(LAG_BUDGET_MILLIS_KEY, LAG_BUDGET_MILLIS).toString());
+        FETCH_SIZE = Long.parseLong(parameters.getProperty(FETCH_SIZE_KEY, FETCH_SIZE).toString());
+        MAX_CONNECTION_POOL_SIZE = Integer.parseInt(parameters.getProperty(MAX_CONNECTION_POOL_SIZE_KEY, MAX_CONNECTION_POOL_SIZE).toString());
+        CONNECTION_ACQUISITION_TIMEOUT_MILLIS = Long.parseLong(parameters.getProperty(CONNECTION_ACQUISITION_TIMEOUT_MILLIS_KEY, CONNECTION_ACQUISITION_TIMEOUT_MILLIS).toString());
+        REACTIVE_FETCH = Boolean.parseBoolean(parameters.getProperty(REACTIVE_FETCH_KEY, REACTIVE_FETCH).toString());
+        READ_CONSISTENCY = ReadConsistency.valueOf(parameters.getProperty(READ_CONSISTENCY_KEY, READ_CONSISTENCY.name()).toString().toUpperCase());
+        PROBE_TIMEOUT_MILLIS = Integer.parseInt(parameters.getProperty(PROBE_TIMEOUT_MILLIS_KEY, PROBE_TIMEOUT_MILLIS).toString());
+        PROBE_INTERVAL_MILLIS = Long.parseLong(parameters.getProperty(PROBE_INTERVAL_MILLIS_KEY, PROBE_INTERVAL_MILLIS).toString());
+        RECONNECT_BASE_MILLIS = Long.parseLong(parameters.getProperty(RECONNECT_BASE_MILLIS_KEY, RECONNECT_BASE_MILLIS).toString());
+        RECONNECT_MAX_MILLIS = Long.parseLong(parameters.getProperty(RECONNECT_MAX_MILLIS_KEY, RECONNECT_MAX_MILLIS).toString());
+        CIRCUIT_FAILURE_THRESHOLD = Integer.parseInt(parameters.getProperty(CIRCUIT_FAILURE_THRESHOLD_KEY, CIRCUIT_FAILURE_THRESHOLD).toString());
+        LOCAL_TARGET_DATABASE = parameters.getProperty(LOCAL_TARGET_DATABASE_KEY, LOCAL_TARGET_DATABASE).toString();
+        PROVISION_INDEXES = Boolean.parseBoolean(parameters.getProperty(PROVISION_INDEXES_KEY, PROVISION_INDEXES).toString());
+        ASSIGN_RELATIONSHIP_KEYS = Boolean.parseBoolean(parameters.getProperty(ASSIGN_RELATIONSHIP_KEYS_KEY, ASSIGN_RELATIONSHIP_KEYS).toString());
         logSettings = new HashMap<>();
         logSettings.put("TX_LOG_FILE_DIR", parameters.getProperty(OUT_BOUND_TX_DIR_KEY, TX_LOG_FILE_DIR));
         logSettings.put("TX_RB_LOG_FILE_DIR" ,parameters.getProperty(OUT_BOUND_RB_DIR_KEY, TX_RB_LOG_FILE_DIR));
@@ -141,6 +447,24 @@ public class Configuration {
         logSettings.put("POLLING_LOG", parameters.getProperty(POLLING_FILE_KEY, POLLING_LOG));
     }
 
+    // list settings may be stored as a string array or as a comma separated string.
+    private static List<String> getStringList(Node parameters, String key, List<String> defaultValue) {
+        Object value = parameters.getProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof String[]) {
+            return List.of((String[]) value);
+        }
+        List<String> values = new ArrayList<>();
+        for (String item : value.toString().split(",")) {
+            if (!item.isBlank()) {
+                values.add(item.trim());
+            }
+        }
+        return values;
+    }
+
     private static void setAllParameters(Config neo4jConfig) {
 
         // **** UNTESTED ****
@@ -0,0 +1,31 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+import org.neo4j.logging.NullLog;
+import org.neo4j.logging.internal.LogService;
+
+/**
+ * com.neo4j.sync.engine.DatabaseLogs finds the Neo4j user log (neo4j.log) of a database for the engine classes
+ * that are handed a GraphDatabaseService rather than a Log.
+ */
+
+public final class DatabaseLogs {
+
+    private DatabaseLogs() {
+    }
+
+    // the database's user log for the given class, or a NullLog if there is no database or it has no log service.
+    public static Log userLog(GraphDatabaseService gds, Class<?> loggingClass) {
+        if (gds instanceof GraphDatabaseAPI) {
+            try {
+                return ((GraphDatabaseAPI) gds).getDependencyResolver().resolveDependency(LogService.class)
+                        .getUserLog(loggingClass);
+            } catch (RuntimeException e) {
+                // not every database exposes its log service through the resolver.
+            }
+        }
+        return NullLog.getInstance();
+    }
+}
@@ -0,0 +1,14 @@
+package com.neo4j.sync.engine;
+
+/**
+ * com.neo4j.sync.engine.FeedMode enum provides an enumeration of the ways the ReplicationEngine
+ * learns about new TransactionRecords at the source.
+ * POLL queries the source every 60 seconds (the original behaviour).
+ * LONG_POLL calls the changeFeed procedure in a loop; the source answers as soon as a record is committed
+ * or the long poll timeout passes.
+ */
+
+public enum FeedMode {
+
+    POLL, LONG_POLL
+}
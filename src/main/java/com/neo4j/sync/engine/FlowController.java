@@ -0,0 +1,87 @@
+package com.neo4j.sync.engine;
+
+/**
+ * com.neo4j.sync.engine.FlowController decides how often the ReplicationEngine polls and how many records it
+ * pulls per page.  After every poll it is told how much was pulled, how far behind the source the target was,
+ * the longest target commit and the largest payload.  With adaptiveFlowControl set it adjusts both AIMD style:
+ * a poll that filled a page or found the target lagging grows the batch by the configured batchSize and halves
+ * the interval; a commit over the apply latency budget or a payload over applyGroupBytes halves the batch; an
+ * empty poll backs the interval off by minPollIntervalMillis at a time.  Without it the configured batchSize
+ * and the 60 second interval are kept and the controller only reports.
+ */
+
+public class FlowController {
+
+    private static final long FIXED_INTERVAL_MILLIS = 60_000L;
+    private static final int MIN_BATCH_SIZE = 1;
+
+    private final boolean adaptive;
+    private final int batchStep;
+    private final int maxBatchSize;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final long applyLatencyBudgetMillis;
+    private final long payloadBudgetBytes;
+    private final long lagBudgetMillis;
+
+    private int batchSize;
+    private long intervalMillis;
+    private long lagMillis;
+
+    public FlowController() {
+        this(Configuration.isAdaptiveFlowControl(), Configuration.getBatchSize(), Configuration.getMaxBatchSize(),
+                Configuration.getMinPollIntervalMillis(), Configuration.getMaxPollIntervalMillis(),
+                Configuration.getApplyLatencyBudgetMillis(), Configuration.getApplyGroupBytes(),
+                Configuration.getLagBudgetMillis());
+    }
+
+    public FlowController(boolean adaptive, int batchSize, int maxBatchSize, long minIntervalMillis,
+                          long maxIntervalMillis, long applyLatencyBudgetMillis, long payloadBudgetBytes,
+                          long lagBudgetMillis) {
+        this.adaptive = adaptive;
+        this.batchStep = Math.max(MIN_BATCH_SIZE, batchSize);
+        this.maxBatchSize = Math.max(batchStep, maxBatchSize);
+        this.minIntervalMillis = Math.max(1, minIntervalMillis);
+        this.maxIntervalMillis = Math.max(this.minIntervalMillis, maxIntervalMillis);
+        this.applyLatencyBudgetMillis = applyLatencyBudgetMillis;
+        this.payloadBudgetBytes = payloadBudgetBytes;
+        this.lagBudgetMillis = lagBudgetMillis;
+        this.batchSize = batchStep;
+        this.intervalMillis = adaptive ? this.maxIntervalMillis : FIXED_INTERVAL_MILLIS;
+    }
+
+    // called after every poll with what it saw.
+    public synchronized void onPoll(long records, long lagMillis, long maxApplyMillis, long maxPayloadBytes) {
+        this.lagMillis = lagMillis;
+        if (!adaptive) {
+            return;
+        }
+        boolean behind = records >= batchSize || lagMillis > lagBudgetMillis;
+        if (maxApplyMillis > applyLatencyBudgetMillis || maxPayloadBytes > payloadBudgetBytes) {
+            batchSize = Math.max(MIN_BATCH_SIZE, batchSize / 2);
+        } else if (behind) {
+            batchSize = Math.min(maxBatchSize, batchSize + batchStep);
+        }
+        if (behind) {
+            intervalMillis = Math.max(minIntervalMillis, intervalMillis / 2);
+        } else if (records == 0) {
+            intervalMillis = Math.min(maxIntervalMillis, intervalMillis + minIntervalMillis);
+        }
+    }
+
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    public synchronized long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public synchronized long getLagMillis() {
+        return lagMillis;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+}
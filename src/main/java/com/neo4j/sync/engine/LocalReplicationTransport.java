@@ -0,0 +1,391 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+/**
+ * com.neo4j.sync.engine.LocalReplicationTransport replicates to another database in the same DBMS without Bolt,
+ * JSON text or TransactionRecord nodes.  The capture listener numbers a transaction's changes in beforeCommit from
+ * a counter on a LocalReplicationSequence node, whose lock the transaction holds until it ends, so change sets are
+ * numbered in commit order and a rolled back transaction gives its number back.  The changes are written in the
+ * same transaction as a binary LocalChangeSet node, the durable handoff; after the commit the captured Audit
+ * objects are handed over with their number as well, so the applier does not read them back.  A single applier
+ * thread applies the change sets in sequence order, up to applyGroupSize of them per target transaction, and
+ * moves the target's lastLocalSequenceReplicated watermark in the same transaction; it is kept apart from the
+ * watermark of pulled TransactionRecords.  When the transport starts, the LocalChangeSet nodes past the target's
+ * watermark are read back from the source, so change sets whose handoff was lost when the DBMS stopped are
+ * applied all the same, and the nodes the watermark has passed are deleted as it moves.  A change set that fails
+ * on a transient error is retried until it applies or the transport stops; one that fails otherwise is logged,
+ * counted and skipped.  Lookup indexes missing on the target are provisioned by a SchemaProvisioner, as they are
+ * for pulled records.
+ */
+
+public class LocalReplicationTransport {
+
+    public static final String CHANGE_SET_LABEL = "LocalChangeSet";
+    public static final String CHANGES_KEY = "changes";
+
+    private static final long POLL_TIMEOUT_MILLIS = 250L;
+    // committing threads wait at most this long for room before handing over anyway; blocking them
+    // indefinitely could wait on a transaction whose locks they hold.
+    private static final long SUBMIT_WAIT_MILLIS = 1000L;
+    private static final long UNAVAILABLE_WAIT_MILLIS = 1000L;
+    private static final long TRANSIENT_BACKOFF_MILLIS = 100L;
+    // the handoff nodes behind the watermark are deleted once this many have piled up, and when the transport stops.
+    private static final long PRUNE_INTERVAL = 100L;
+    private static final String CHANGE_SET_INDEX_NAME = "local_change_set_sequence";
+    private static final String CREATE_CHANGE_SET_INDEX = "CREATE INDEX " + CHANGE_SET_INDEX_NAME + " IF NOT EXISTS " +
+            "FOR (cs:" + CHANGE_SET_LABEL + ") ON (cs." + TransactionSequence.SEQUENCE_KEY + ")";
+    private static final String COMMITTED_CHANGE_SETS = "MATCH (cs:" + CHANGE_SET_LABEL + ") WHERE cs." +
+            TransactionSequence.SEQUENCE_KEY + " > %d RETURN cs ORDER BY cs." + TransactionSequence.SEQUENCE_KEY;
+    private static final String PRUNE_CHANGE_SETS = "MATCH (cs:" + CHANGE_SET_LABEL + ") WHERE cs." +
+            TransactionSequence.SEQUENCE_KEY + " <= %d DELETE cs";
+
+    // a change set handed to the transport.
+    public static final class ChangeSet {
+        private final long sequence;
+        private final List<Audit> changes;
+
+        private ChangeSet(long sequence, List<Audit> changes) {
+            this.sequence = sequence;
+            this.changes = changes;
+        }
+
+        public long sequence() {
+            return sequence;
+        }
+    }
+
+    private final GraphDatabaseService source;
+    private final Supplier<GraphDatabaseService> target;
+    private final Log log;
+    private final int capacity;
+    private final int groupSize;
+    private final AtomicLong appliedChangeSets = new AtomicLong();
+    private final AtomicLong failedChangeSets = new AtomicLong();
+    private final Thread applierThread;
+    // guarded by this.
+    private final TreeMap<Long, ChangeSet> pending = new TreeMap<>();
+    private long nextToApply = 1;
+    private volatile boolean running;
+    private volatile boolean recovered;
+    private volatile long lastAppliedSequence;
+    // touched by the applier thread only.
+    private long prunedSequence;
+    // touched by the applier thread only; replaced when the target database is.
+    private GraphDatabaseService provisionedDatabase;
+    private SchemaProvisioner schemaProvisioner;
+
+    public LocalReplicationTransport(GraphDatabaseService source, Supplier<GraphDatabaseService> target, Log log) {
+        this(source, target, log, Configuration.getCaptureQueueCapacity(), Configuration.getApplyGroupSize());
+    }
+
+    public LocalReplicationTransport(GraphDatabaseService source, Supplier<GraphDatabaseService> target, Log log,
+                                     int capacity, int groupSize) {
+        this.source = source;
+        this.target = target;
+        this.log = log;
+        this.capacity = Math.max(1, capacity);
+        this.groupSize = Math.max(1, groupSize);
+        this.applierThread = new Thread(this::drain, "LocalReplicationTransport");
+        this.applierThread.setDaemon(true);
+    }
+
+    // creates the handoff index and the counter on the source, then starts the applier.
+    public synchronized void start() {
+        if (!running) {
+            try (Transaction tx = source.beginTx()) {
+                tx.execute(CREATE_CHANGE_SET_INDEX);
+                tx.commit();
+            }
+            TransactionSequence.initializeCounter(source, TransactionSequence.LOCAL_SEQUENCE_LABEL);
+            running = true;
+            applierThread.start();
+        }
+    }
+
+    // called from beforeCommit.  Numbers the changes and writes them to the source in the committing transaction;
+    // the lock on the counter is held until that transaction ends.
+    public ChangeSet reserve(Transaction tx, List<Audit> changes) {
+        long sequence = TransactionSequence.next(tx, TransactionSequence.LOCAL_SEQUENCE_LABEL);
+        Node handoff = tx.createNode(Label.label(CHANGE_SET_LABEL), Label.label(TransactionRecord.LOCAL_TX_LABEL));
+        handoff.setProperty(TransactionSequence.SEQUENCE_KEY, sequence);
+        handoff.setProperty(CHANGES_KEY, BinaryPayloadCodec.encode(changes));
+        return new ChangeSet(sequence, changes);
+    }
+
+    // called from afterCommit.  A committed change set is never turned away, or the applier would wait for it forever.
+    public synchronized void submit(ChangeSet changeSet) {
+        long deadline = System.currentTimeMillis() + SUBMIT_WAIT_MILLIS;
+        // the change set the applier is waiting for always goes straight in.
+        while (changeSet.sequence != nextToApply && pending.size() >= capacity) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // recovery may have read it back from the source already.
+        if (changeSet.sequence >= nextToApply) {
+            pending.putIfAbsent(changeSet.sequence, changeSet);
+        }
+        notifyAll();
+    }
+
+    // stops once everything handed over so far has been applied.
+    public void stop() throws InterruptedException {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        applierThread.join();
+        if (schemaProvisioner != null) {
+            schemaProvisioner.shutdown();
+        }
+    }
+
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    public long getAppliedChangeSets() {
+        return appliedChangeSets.get();
+    }
+
+    public long getFailedChangeSets() {
+        return failedChangeSets.get();
+    }
+
+    // the watermark on the target.
+    public long getLastAppliedSequence() {
+        return lastAppliedSequence;
+    }
+
+    // true once the change sets committed before the transport started have been read back from the source.
+    public boolean isRecovered() {
+        return recovered;
+    }
+
+    private void drain() {
+        List<ChangeSet> group = new ArrayList<>(groupSize);
+        try {
+            if (!recover()) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        while (running || getQueueDepth() > 0) {
+            try {
+                if (takeReady(group)) {
+                    apply(group);
+                } else if (!running) {
+                    // whatever is left waits on a transaction that will not hand its change set over now;
+                    // it is read back from the source when the transport starts again.
+                    break;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                group.clear();
+            }
+        }
+        prune(true);
+    }
+
+    // reads back the change sets committed on the source past the target's watermark.  Returns false if the
+    // transport stopped before the target became available.
+    private boolean recover() throws InterruptedException {
+        GraphDatabaseService database = awaitTarget();
+        if (database == null) {
+            return false;
+        }
+        long watermark = TransactionHistoryManager.getLastLocalReplicatedSequence(database);
+        List<ChangeSet> committed = new ArrayList<>();
+        long counter;
+        try (Transaction tx = source.beginTx()) {
+            // read first: a change set committed after this is handed over and numbered past it.
+            counter = TransactionSequence.current(tx, TransactionSequence.LOCAL_SEQUENCE_LABEL);
+            try (Result result = tx.execute(format(COMMITTED_CHANGE_SETS, watermark))) {
+                while (result.hasNext()) {
+                    Node handoff = (Node) result.next().get("cs");
+                    long sequence = (long) handoff.getProperty(TransactionSequence.SEQUENCE_KEY);
+                    committed.add(new ChangeSet(sequence, BinaryPayloadCodec.decode((byte[]) handoff.getProperty(CHANGES_KEY))));
+                }
+            }
+            tx.commit();
+        } catch (Exception e) {
+            // without them the applier would wait for the first missing change set forever.
+            log.error("Could not read back the change sets committed before the local transport started", e);
+            running = false;
+            return false;
+        }
+
+        long first = committed.isEmpty() ? counter + 1 : committed.get(0).sequence;
+        if (first != watermark + 1) {
+            log.warn(format("Local replication target is at change set %d but the source resumes at %d", watermark, first));
+        }
+        synchronized (this) {
+            nextToApply = first;
+            pending.headMap(first).clear();
+            for (ChangeSet changeSet : committed) {
+                pending.putIfAbsent(changeSet.sequence, changeSet);
+            }
+            notifyAll();
+        }
+        lastAppliedSequence = first - 1;
+        prunedSequence = Math.min(watermark, first - 1);
+        recovered = true;
+        return true;
+    }
+
+    // takes the next run of consecutive change sets, waiting a while for the first of them.
+    private synchronized boolean takeReady(List<ChangeSet> group) throws InterruptedException {
+        if (!pending.containsKey(nextToApply)) {
+            wait(POLL_TIMEOUT_MILLIS);
+        }
+        while (group.size() < groupSize && pending.containsKey(nextToApply)) {
+            group.add(pending.remove(nextToApply++));
+        }
+        if (!group.isEmpty()) {
+            notifyAll();
+        }
+        return !group.isEmpty();
+    }
+
+    private void apply(List<ChangeSet> group) throws InterruptedException {
+        GraphDatabaseService database = awaitTarget();
+        if (database == null) {
+            return;
+        }
+        if (database != provisionedDatabase) {
+            if (schemaProvisioner != null) {
+                schemaProvisioner.shutdown();
+            }
+            schemaProvisioner = new SchemaProvisioner(database);
+            provisionedDatabase = database;
+        }
+        try (Transaction tx = database.beginTx()) {
+            NodeLookupCache nodeLookupCache = new NodeLookupCache();
+            for (ChangeSet changeSet : group) {
+                applyChanges(changeSet, tx, nodeLookupCache);
+            }
+            TransactionHistoryManager.setLastLocalReplicatedSequence(tx, group.get(group.size() - 1).sequence);
+            tx.commit();
+            applied(group);
+        } catch (Exception e) {
+            // apply the group again one change set at a time, so only the one that fails is skipped.
+            log.warn(format("Applying %d local change sets one at a time: %s", group.size(), e.getMessage()));
+            for (ChangeSet changeSet : group) {
+                if (!applyAlone(changeSet, database)) {
+                    return;
+                }
+            }
+        }
+        prune(false);
+    }
+
+    // returns false if the transport stopped while the change set kept failing on a transient error; it is read
+    // back from the source when the transport starts again.
+    private boolean applyAlone(ChangeSet changeSet, GraphDatabaseService database) throws InterruptedException {
+        while (true) {
+            try (Transaction tx = database.beginTx()) {
+                applyChanges(changeSet, tx, new NodeLookupCache());
+                TransactionHistoryManager.setLastLocalReplicatedSequence(tx, changeSet.sequence);
+                tx.commit();
+                applied(List.of(changeSet));
+                return true;
+            } catch (Exception e) {
+                if (!ReplicationPipeline.isTransient(e)) {
+                    log.error(format("Skipping local change set %d, which cannot be applied", changeSet.sequence), e);
+                    failedChangeSets.incrementAndGet();
+                    skip(changeSet, database);
+                    return true;
+                }
+                if (!running) {
+                    return false;
+                }
+                Thread.sleep(TRANSIENT_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    // moves the watermark past a change set that cannot be applied.  Should that fail as well, the next change
+    // set applied moves it.
+    private void skip(ChangeSet changeSet, GraphDatabaseService database) {
+        try (Transaction tx = database.beginTx()) {
+            TransactionHistoryManager.setLastLocalReplicatedSequence(tx, changeSet.sequence);
+            tx.commit();
+        } catch (Exception e) {
+            log.warn(format("Could not move the local watermark past change set %d: %s", changeSet.sequence, e.getMessage()));
+        }
+        lastAppliedSequence = changeSet.sequence;
+    }
+
+    private void applyChanges(ChangeSet changeSet, Transaction tx, NodeLookupCache nodeLookupCache) throws Exception {
+        if (changeSet.changes != null && !changeSet.changes.isEmpty()) {
+            TransactionEvents events = TransactionEventDecoder.decode(changeSet.changes);
+            schemaProvisioner.observe(events);
+            new TransactionDataHandler(events, tx, schemaProvisioner, nodeLookupCache).executeCRUDOperation();
+        }
+    }
+
+    private void applied(List<ChangeSet> group) {
+        for (ChangeSet changeSet : group) {
+            if (changeSet.changes != null && !changeSet.changes.isEmpty()) {
+                appliedChangeSets.incrementAndGet();
+            }
+        }
+        lastAppliedSequence = group.get(group.size() - 1).sequence;
+    }
+
+    // deletes the handoff nodes the watermark has passed.  A failure only leaves them for the next time.
+    private void prune(boolean force) {
+        long watermark = lastAppliedSequence;
+        if (watermark <= prunedSequence || (!force && watermark - prunedSequence < PRUNE_INTERVAL)) {
+            return;
+        }
+        try (Transaction tx = source.beginTx()) {
+            tx.execute(format(PRUNE_CHANGE_SETS, watermark));
+            tx.commit();
+            prunedSequence = watermark;
+        } catch (Exception e) {
+            log.warn(format("Could not prune the local change sets up to %d: %s", watermark, e.getMessage()));
+        }
+    }
+
+    // the target may not have started yet, or may be restarting; wait for it rather than skip change sets.
+    private GraphDatabaseService awaitTarget() throws InterruptedException {
+        do {
+            try {
+                GraphDatabaseService database = target.get();
+                if (database != null && database.isAvailable(UNAVAILABLE_WAIT_MILLIS)) {
+                    return database;
+                }
+            } catch (RuntimeException e) {
+                log.warn(format("Local replication target unavailable: %s", e.getMessage()));
+                Thread.sleep(UNAVAILABLE_WAIT_MILLIS);
+            }
+        } while (running);
+        return null;
+    }
+}
@@ -3,6 +3,10 @@ package com.neo4j.sync.engine;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -14,56 +18,94 @@ import java.util.Map;
  */
 
 public class NodeFinder {
-    private final JSONObject event;
+    private final TransactionEvent event;
+    // null when lookups simply use the first label.
+    private final SchemaProvisioner schemaProvisioner;
+    // null when every lookup goes to the index.
+    private final NodeLookupCache nodeLookupCache;
+
+    public NodeFinder(TransactionEvent event) {
+        this(event, null, null);
+    }
 
-    public NodeFinder(JSONObject event) {
+    // the search label is the most selective of the node's labels indexed on the primary key, and nodes already
+    // resolved in the transaction are taken from the cache.
+    public NodeFinder(TransactionEvent event, SchemaProvisioner schemaProvisioner, NodeLookupCache nodeLookupCache) {
         this.event = event;
+        this.schemaProvisioner = schemaProvisioner;
+        this.nodeLookupCache = nodeLookupCache;
     }
+
+    public NodeFinder(JSONObject event) throws JSONException {
+        this.schemaProvisioner = null;
+        this.nodeLookupCache = null;
+        try {
+            this.event = TransactionEventDecoder.decodeEvent(event);
+        } catch (IOException e) {
+            throw new JSONException(e.getMessage());
+        }
+    }
+
+    // finds the node by its search label and primary key, the key value compared with the type it was captured with.
+    public Node findNode(Transaction tx) {
+        return findNode(tx, NodeDirection.START);
+    }
+
+    public Node findNode(Transaction tx, NodeDirection direction) {
+        Map<String, Object> primaryKey = event.getPrimaryKey(direction);
+        for (Map.Entry<String, Object> entry : primaryKey.entrySet()) {
+            Label searchLabel = searchLabel(direction, entry.getKey());
+            if (nodeLookupCache != null) {
+                return nodeLookupCache.find(tx, searchLabel, entry.getKey(), entry.getValue());
+            }
+            return tx.findNode(searchLabel, entry.getKey(), entry.getValue());
+        }
+        return null;
+    }
+
     // I chose to use arrays because all results are finite...maybe I'm old-school.
-    public String[] getPrimaryKey() throws JSONException {
+    // The key value is in its string form; findNode looks nodes up by the typed value.
+    public String[] getPrimaryKey() {
 
         // in this case the primary key should always be the uuid of the node
         // regardless of what the client believes to be the primary key
         // therefore there will be only one primary key value.
-        Map<String, Object> pk = TransactionDataParser.getPrimaryKey(event);
-        String[] primaryKey = new String[2];
-        for (Map.Entry<String, Object> entry : pk.entrySet()) {
-            primaryKey[0] = entry.getKey();
-            primaryKey[1] = entry.getValue().toString();
-        }
-
-        return primaryKey;
+        return toArray(event.getPrimaryKey());
     }
 
-    public String[] getPrimaryKey(NodeDirection direction) throws JSONException {
+    public String[] getPrimaryKey(NodeDirection direction) {
 
         // in this case the primary key should always be the uuid of the node
         // regardless of what the client believes to be the primary key
         // therefore there will be only one primary key value.
-        Map<String, Object> pk = TransactionDataParser.getPrimaryKey(event, direction);
-        String[] primaryKey = new String[2];
-        for (Map.Entry<String, Object> entry : pk.entrySet()) {
-            primaryKey[0] = entry.getKey();
-            primaryKey[1] = entry.getValue().toString();
-        }
-        return primaryKey;
+        return toArray(event.getPrimaryKey(direction));
     }
 
-    public Label getSearchLabel() throws JSONException {
+    public Label getSearchLabel() {
 
-        // grab the labels from the transaction
-        String[] labels = TransactionDataParser.getNodeLabels(event);
         // only need to grab the first label - that should be the primary
-        return Label.label(labels[0]);
+        return event.getLabels().get(0);
     }
 
-    public Label getSearchLabel(NodeDirection direction) throws JSONException {
+    public Label getSearchLabel(NodeDirection direction) {
 
-        // grab the labels from the transaction
-        String[] labels = TransactionDataParser.getNodeLabels(event, direction);
         // only need to grab the first label-  that should be the primary
-        return Label.label(labels[0]);
+        return event.getLabels(direction).get(0);
     }
 
+    private Label searchLabel(NodeDirection direction, String key) {
+        if (schemaProvisioner == null) {
+            return getSearchLabel(direction);
+        }
+        return schemaProvisioner.searchLabel(event.getLabels(direction), key);
+    }
 
+    private static String[] toArray(Map<String, Object> pk) {
+        String[] primaryKey = new String[2];
+        for (Map.Entry<String, Object> entry : pk.entrySet()) {
+            primaryKey[0] = entry.getKey();
+            primaryKey[1] = entry.getValue().toString();
+        }
+        return primaryKey;
+    }
 }
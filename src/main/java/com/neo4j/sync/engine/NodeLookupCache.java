@@ -0,0 +1,123 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * com.neo4j.sync.engine.NodeLookupCache remembers the nodes the apply side has resolved by label and primary key
+ * within one target transaction, so each distinct node of a batch is looked up through the index once however
+ * many relationship events name it.  Nodes created by the batch are entered as they are created, lookups that
+ * found nothing are remembered as misses, and a deleted node is remembered as gone.  A change to a property the
+ * entries are keyed by empties the cache.  Nodes belong to the transaction that read them: a cache must not
+ * outlive it, nor be kept when it rolls back.  Not thread safe; each applying thread keeps its own.
+ */
+
+public class NodeLookupCache {
+
+    // marks a lookup that found nothing.
+    private static final Object ABSENT = new Object();
+
+    private final Map<Key, Object> nodes = new HashMap<>();
+    // the property keys the entries are keyed by.
+    private final Set<String> keys = new HashSet<>();
+    private long hits;
+    private long misses;
+
+    // the node with the label and key value, looked up in the transaction the first time it is asked for.
+    public Node find(Transaction tx, Label label, String key, Object value) {
+        Key lookup = new Key(label.name(), key, value);
+        Object cached = nodes.get(lookup);
+        if (cached != null) {
+            hits++;
+            return cached == ABSENT ? null : (Node) cached;
+        }
+        misses++;
+        Node node = tx.findNode(label, key, value);
+        nodes.put(lookup, node != null ? node : ABSENT);
+        keys.add(key);
+        return node;
+    }
+
+    // a node created by the batch, entered under each of its labels.
+    public void created(Node node, List<Label> labels, Map<String, Object> primaryKey) {
+        if (primaryKey == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : primaryKey.entrySet()) {
+            for (Label label : labels) {
+                nodes.put(new Key(label.name(), entry.getKey(), entry.getValue()), node);
+            }
+            keys.add(entry.getKey());
+        }
+    }
+
+    // a node deleted by the batch; lookups for it find nothing from now on.
+    public void deleted(List<Label> labels, Map<String, Object> primaryKey) {
+        if (primaryKey == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : primaryKey.entrySet()) {
+            for (Label label : labels) {
+                nodes.put(new Key(label.name(), entry.getKey(), entry.getValue()), ABSENT);
+            }
+            keys.add(entry.getKey());
+        }
+    }
+
+    // forgets everything if the property is one the entries are keyed by; its values may have moved.
+    public void propertyChanged(String property) {
+        if (keys.contains(property)) {
+            nodes.clear();
+            keys.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    private static final class Key {
+        private final String label;
+        private final String key;
+        private final Object value;
+        private final int hash;
+
+        private Key(String label, String key, Object value) {
+            this.label = label;
+            this.key = key;
+            // a key read as an int at the source is the same key as the long it is stored as.
+            this.value = value instanceof Integer || value instanceof Short || value instanceof Byte
+                    ? (Object) ((Number) value).longValue() : value;
+            this.hash = Objects.hash(label, key, this.value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return label.equals(other.label) && key.equals(other.key) && Objects.equals(value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.neo4j.sync.engine;
+
+/**
+ * com.neo4j.sync.engine.PayloadCodec enum lists the compression applied to the payload of a TransactionRecord.
+ * NONE leaves the payload as written by its PayloadFormat; compressed payloads are always stored in the
+ * transactionPayload byte array property.
+ */
+
+public enum PayloadCodec {
+
+    NONE, GZIP
+}
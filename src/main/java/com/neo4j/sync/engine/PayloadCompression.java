@@ -0,0 +1,61 @@
+package com.neo4j.sync.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * com.neo4j.sync.engine.PayloadCompression compresses TransactionRecord payloads above the configured size threshold
+ * at capture time and decompresses them again before they are applied on the target.
+ * Only large payloads are compressed, so the ordinary small transaction pays nothing for it; those that are
+ * use the fastest deflate level because the work happens on the commit path.
+ */
+
+public final class PayloadCompression {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private PayloadCompression() {
+    }
+
+    // the codec the configuration asks for a payload of the given size.
+    public static PayloadCodec codecFor(int payloadSize) {
+        return payloadSize > Configuration.getPayloadCompressionThreshold() ? Configuration.getPayloadCodec() : PayloadCodec.NONE;
+    }
+
+    public static byte[] compress(PayloadCodec codec, byte[] payload) throws IOException {
+        switch (codec) {
+            case GZIP:
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(512, payload.length / 4));
+                try (GZIPOutputStream out = new GZIPOutputStream(compressed, BUFFER_SIZE) {
+                    {
+                        def.setLevel(Deflater.BEST_SPEED);
+                    }
+                }) {
+                    out.write(payload);
+                }
+                return compressed.toByteArray();
+            case NONE:
+            default:
+                return payload;
+        }
+    }
+
+    public static byte[] decompress(PayloadCodec codec, byte[] payload) throws IOException {
+        switch (codec) {
+            case GZIP:
+                ByteArrayOutputStream decompressed = new ByteArrayOutputStream(payload.length * 4);
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload), BUFFER_SIZE)) {
+                    in.transferTo(decompressed);
+                }
+                return decompressed.toByteArray();
+            case NONE:
+            default:
+                return payload;
+        }
+    }
+}
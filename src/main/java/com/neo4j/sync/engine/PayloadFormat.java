@@ -0,0 +1,12 @@
+package com.neo4j.sync.engine;
+
+/**
+ * com.neo4j.sync.engine.PayloadFormat enum lists the encodings of the change events stored on a TransactionRecord.
+ * JSON records keep the events in the transactionData string property, BINARY records keep them in the
+ * transactionPayload byte array property written by the BinaryPayloadCodec.
+ */
+
+public enum PayloadFormat {
+
+    JSON, BINARY
+}
@@ -0,0 +1,196 @@
+package com.neo4j.sync.engine;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.neo4j.graphdb.spatial.Point;
+import org.neo4j.values.storable.CoordinateReferenceSystem;
+import org.neo4j.values.storable.DurationValue;
+import org.neo4j.values.storable.PointValue;
+import org.neo4j.values.storable.Values;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetTime;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAmount;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * com.neo4j.sync.engine.PropertyValues carries property values through JSON payloads without losing their type.
+ * Strings, numbers and booleans are written as themselves and arrays as JSON arrays.  Temporal values, durations
+ * and points, which JSON has no type for, are written as an object holding their type and their ISO form (or
+ * their coordinate reference system and coordinates).  Neo4j has no map-valued properties, so an object found
+ * where a property value belongs is always one of these.  On the way back integers arrive as longs, decimals as
+ * doubles and arrays as the typed array of their elements, which is what Neo4j stores and indexes.
+ */
+
+public final class PropertyValues {
+
+    static final String TYPE_KEY = "type";
+    static final String VALUE_KEY = "value";
+    static final String CRS_KEY = "crs";
+    static final String COORDINATES_KEY = "coordinates";
+
+    static final String DATE = "date";
+    static final String LOCAL_TIME = "localtime";
+    static final String TIME = "time";
+    static final String LOCAL_DATE_TIME = "localdatetime";
+    static final String DATE_TIME = "datetime";
+    static final String DURATION = "duration";
+    static final String POINT = "point";
+
+    private PropertyValues() {
+    }
+
+    // writes a value the payload writer has no JSON type for.
+    public static void write(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String || value instanceof Character) {
+            generator.writeString(value.toString());
+        } else if (value instanceof Double || value instanceof Float) {
+            generator.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value.getClass().isArray()) {
+            generator.writeStartArray();
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                write(generator, Array.get(value, i));
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Point) {
+            PointValue point = value instanceof PointValue ? (PointValue) value : Values.point((Point) value);
+            generator.writeStartObject();
+            generator.writeStringField(TYPE_KEY, POINT);
+            generator.writeNumberField(CRS_KEY, point.getCoordinateReferenceSystem().getCode());
+            generator.writeArrayFieldStart(COORDINATES_KEY);
+            for (double coordinate : point.coordinate()) {
+                generator.writeNumber(coordinate);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } else {
+            String type = temporalType(value);
+            if (type == null) {
+                // the factory's codec is the shared ObjectMapper.
+                generator.writeObject(value);
+                return;
+            }
+            generator.writeStartObject();
+            generator.writeStringField(TYPE_KEY, type);
+            generator.writeStringField(VALUE_KEY, value.toString());
+            generator.writeEndObject();
+        }
+    }
+
+    // the typed array holding the elements of a JSON array.  An empty array is an empty String array.
+    public static Object toArray(List<Object> values) {
+        if (values.isEmpty()) {
+            return new String[0];
+        }
+        Object first = values.get(0);
+        if (first instanceof Long) {
+            boolean integral = true;
+            for (Object value : values) {
+                integral &= value instanceof Long;
+            }
+            if (!integral) {
+                return toDoubles(values);
+            }
+            long[] longs = new long[values.size()];
+            for (int i = 0; i < longs.length; i++) {
+                longs[i] = (Long) values.get(i);
+            }
+            return longs;
+        }
+        if (first instanceof Double) {
+            return toDoubles(values);
+        }
+        if (first instanceof Boolean) {
+            boolean[] booleans = new boolean[values.size()];
+            for (int i = 0; i < booleans.length; i++) {
+                booleans[i] = (Boolean) values.get(i);
+            }
+            return booleans;
+        }
+        if (first == null || first instanceof String) {
+            return values.toArray(new String[0]);
+        }
+        Class<?> componentType = first instanceof PointValue ? PointValue.class
+                : first instanceof DurationValue ? DurationValue.class : first.getClass();
+        Object array = Array.newInstance(componentType, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            Array.set(array, i, values.get(i));
+        }
+        return array;
+    }
+
+    // the temporal, duration or point value an object written by write stands for; any other object as it is.
+    public static Object fromObject(Map<String, Object> object) {
+        Object type = object.get(TYPE_KEY);
+        if (!(type instanceof String)) {
+            return object;
+        }
+        Object value = object.get(VALUE_KEY);
+        switch ((String) type) {
+            case DATE:
+                return LocalDate.parse(value.toString());
+            case LOCAL_TIME:
+                return LocalTime.parse(value.toString());
+            case TIME:
+                return OffsetTime.parse(value.toString());
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.parse(value.toString());
+            case DATE_TIME:
+                return ZonedDateTime.parse(value.toString());
+            case DURATION:
+                return DurationValue.parse(value.toString());
+            case POINT:
+                Object coordinates = object.get(COORDINATES_KEY);
+                double[] values = coordinates instanceof double[] ? (double[]) coordinates
+                        : toDoubles((long[]) coordinates);
+                return Values.pointValue(CoordinateReferenceSystem.get(((Number) object.get(CRS_KEY)).intValue()), values);
+            default:
+                return object;
+        }
+    }
+
+    private static String temporalType(Object value) {
+        if (value instanceof LocalDate) {
+            return DATE;
+        } else if (value instanceof LocalTime) {
+            return LOCAL_TIME;
+        } else if (value instanceof OffsetTime) {
+            return TIME;
+        } else if (value instanceof LocalDateTime) {
+            return LOCAL_DATE_TIME;
+        } else if (value instanceof ZonedDateTime) {
+            return DATE_TIME;
+        } else if (value instanceof TemporalAmount) {
+            return DURATION;
+        }
+        return null;
+    }
+
+    private static double[] toDoubles(List<Object> values) {
+        double[] doubles = new double[values.size()];
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i] = ((Number) values.get(i)).doubleValue();
+        }
+        return doubles;
+    }
+
+    private static double[] toDoubles(long[] values) {
+        double[] doubles = new double[values.length];
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i] = values[i];
+        }
+        return doubles;
+    }
+}
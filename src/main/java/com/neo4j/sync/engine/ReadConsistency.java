@@ -0,0 +1,18 @@
+package com.neo4j.sync.engine;
+
+/**
+ * com.neo4j.sync.engine.ReadConsistency enum provides an enumeration of where the ReplicationEngine may read
+ * TransactionRecords from when the source is a cluster reached through a neo4j:// routing driver.
+ * LEADER reads from the leader, as every pull did before.
+ * CAUSAL reads from a follower or read replica, passing the bookmark of the previous pull so the member
+ * serving the next one has caught up at least as far; the cursor never moves back behind what was already
+ * read and applied.
+ * ANY reads from whichever follower or read replica the driver picks without waiting for it to catch up; a
+ * lagging member only returns fewer records.
+ * Pruning always runs on the leader, and so do pulls in the LONG_POLL feed mode, whatever the setting.
+ */
+
+public enum ReadConsistency {
+
+    LEADER, CAUSAL, ANY
+}
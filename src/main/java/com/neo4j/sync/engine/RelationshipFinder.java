@@ -0,0 +1,86 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * com.neo4j.sync.engine.RelationshipFinder locates the relationship a replicated DeleteRelation or
+ * RelationPropertyChange names, given its start and target nodes on the target.  Only the relationships of the
+ * event's type between the two nodes are read, expanded from whichever end has fewer of them, so a change to a
+ * relationship of a supernode costs as many reads as the other end has relationships of that type.  Among those,
+ * the one carrying the event's relationship key is the one the event names.  Relationships replicated before the
+ * source assigned keys carry none; when the event has no key, or no relationship between the two nodes carries
+ * it, every relationship of the type between them that has no key of its own is returned, as before.
+ */
+
+public class RelationshipFinder {
+
+    private final TransactionEvent.RelationshipEvent event;
+
+    public RelationshipFinder(TransactionEvent.RelationshipEvent event) {
+        this.event = event;
+    }
+
+    public List<Relationship> findRelationships(Node startNode, Node targetNode) {
+        List<Relationship> between = between(startNode, targetNode);
+        Map<String, Object> relationshipKey = event.getRelationshipKey();
+        if (relationshipKey == null || relationshipKey.isEmpty()) {
+            return between;
+        }
+
+        List<Relationship> unkeyed = new ArrayList<>();
+        for (Relationship relationship : between) {
+            boolean keyed = false;
+            boolean matches = true;
+            for (Map.Entry<String, Object> entry : relationshipKey.entrySet()) {
+                Object value = relationship.getProperty(entry.getKey(), null);
+                keyed |= value != null;
+                matches &= sameValue(value, entry.getValue());
+            }
+            if (matches) {
+                return Collections.singletonList(relationship);
+            }
+            if (!keyed) {
+                unkeyed.add(relationship);
+            }
+        }
+        return unkeyed;
+    }
+
+    // the relationships of the event's type from the start node to the target node.
+    private List<Relationship> between(Node startNode, Node targetNode) {
+        List<Relationship> between = new ArrayList<>();
+        if (startNode.getDegree(event.getRelationshipType(), Direction.OUTGOING)
+                <= targetNode.getDegree(event.getRelationshipType(), Direction.INCOMING)) {
+            for (Relationship relationship : startNode.getRelationships(Direction.OUTGOING, event.getRelationshipType())) {
+                if (relationship.getEndNode().equals(targetNode)) {
+                    between.add(relationship);
+                }
+            }
+        } else {
+            for (Relationship relationship : targetNode.getRelationships(Direction.INCOMING, event.getRelationshipType())) {
+                if (relationship.getStartNode().equals(startNode)) {
+                    between.add(relationship);
+                }
+            }
+        }
+        return between;
+    }
+
+    // a key read as an int at the source is the same key as the long it is stored as.
+    private static boolean sameValue(Object stored, Object key) {
+        if (stored instanceof Number && key instanceof Number
+                && !(stored instanceof Double || stored instanceof Float)
+                && !(key instanceof Double || key instanceof Float)) {
+            return ((Number) stored).longValue() == ((Number) key).longValue();
+        }
+        return Objects.equals(stored, key);
+    }
+}
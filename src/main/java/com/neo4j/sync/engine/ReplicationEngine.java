@@ -1,7 +1,5 @@
 package com.neo4j.sync.engine;
 
-import org.codehaus.jettison.json.JSONException;
-import org.neo4j.driver.Record;
 import org.neo4j.driver.*;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.logging.Log;
@@ -10,12 +8,12 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.Date;
 import java.util.Calendar;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
 
 import static com.neo4j.sync.engine.ReplicationEngine.Status.RUNNING;
 import static com.neo4j.sync.engine.ReplicationEngine.Status.STOPPED;
@@ -27,6 +25,14 @@ import static java.lang.String.format;
  * The replication engine accepts a URI and authentication information and uses a scheduled executor service
  * to set up interval polling of a remote database for replicated transactions.  It also is responsible
  * for keeping track of the latest replicated transaction and for pruning replicated transactions at the source.
+ * TransactionRecords are pulled in the order of their sequence, which follows commit order at the source, and
+ * the sequence of the last record applied is the watermark for the next poll and for pruning.  Each poll
+ * hands the records past the watermark to a ReplicationPipeline, which fetches them in pages of at most
+ * batchSize records, decodes them on a pool of threads and applies them in group commits that also move the
+ * watermark.  In the LONG_POLL feed mode the engine follows the source's changeFeed procedure instead of
+ * polling every 60 seconds.  A FlowController picks the batch size and, with adaptiveFlowControl set, the
+ * polling interval from what each poll saw.  A poll that fails is retried after a jittered backoff, and a
+ * CircuitBreaker pauses polling while the source keeps failing; the watermark stays on the target throughout.
  * </p>
  *
  * @author Chris Upkes
@@ -34,38 +40,49 @@ import static java.lang.String.format;
  */
 
 public class ReplicationEngine {
-    private static final String PRUNE_QUERY = "MATCH (tr:TransactionRecord) WHERE tr.timeCreated < %d DETACH DELETE tr " +
-            "RETURN COUNT(tr) as deleted";
-    private final static String ST_DATA_JSON = "{\"statement\":\"true\"}";
+    // only records this target has already applied are pruned; the sequence range comes off the index.
+    private static final String PRUNE_QUERY = "MATCH (tr:TransactionRecord) WHERE tr.sequence <= %d AND tr.timeCreated < %d " +
+            "DETACH DELETE tr RETURN COUNT(tr) as deleted";
+    private static final long POLLING_INTERVAL_SECONDS = 60L;
+    private static final long LONG_POLL_PAUSE_MILLIS = 10L;
     private static ReplicationEngine instance;
     private static int runCount = 0;
     private final Driver driver;
     private final ScheduledExecutorService execService;
     private final String LOCAL_TIMESTAMP_QUERY = "MATCH (ltr:LastTransactionReplicated {id:'SINGLETON'}) RETURN ltr.lastTimeRecorded";
-    private final String REPLICATION_QUERY = "MATCH (tr:TransactionRecord) " +
-            "WHERE tr.timeCreated > %d " +
-            "RETURN tr.uuid, tr.timeCreated, tr.transactionData, tr.transactionStatement";
     private final String UPDATE_LAST_TRANSACTION_TIMESTAMP_QUERY = "MERGE (ltr:LastTransactionReplicated {id:'SINGLETON'}) " +
             "SET tr.lastTimeRecorded = %d";
-    private final String ST_DATA_VALUE = "NO_STATEMENT";
     private ScheduledFuture<?> scheduledFuture;
     private GraphDatabaseService gds;
     private Log log;
-    private long lastTransactionTimestamp;
+    private long lastReplicatedSequence;
     private long transactionRecordTimestamp;
-    private Status status;
-    private int records = 0;
-
-
-    private ReplicationEngine(Driver driver) {
+    private volatile Status status;
+    private long records = 0;
+    private long lastPruneTime = 0;
+    private final ReplicationPipeline pipeline;
+    private final FlowController flowController = new FlowController();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    // null unless the engine was given the hostnames of a cluster.
+    private final ClusterHealthMonitor healthMonitor;
+    private ScheduledFuture<?> retryFuture;
+
+
+    private ReplicationEngine(Driver driver, ClusterHealthMonitor healthMonitor) {
         this.driver = driver;
         this.execService = Executors.newScheduledThreadPool(1);
+        this.log = DatabaseLogs.userLog(gds, ReplicationEngine.class);
+        this.pipeline = new ReplicationPipeline(driver, gds, DatabaseLogs.userLog(gds, ReplicationPipeline.class));
+        this.healthMonitor = healthMonitor;
     }
 
-    private ReplicationEngine(Driver driver, GraphDatabaseService gds) {
+    private ReplicationEngine(Driver driver, GraphDatabaseService gds, ClusterHealthMonitor healthMonitor) {
         this.driver = driver;
         this.execService = Executors.newScheduledThreadPool(1);
         this.gds = gds;
+        this.log = DatabaseLogs.userLog(gds, ReplicationEngine.class);
+        this.pipeline = new ReplicationPipeline(driver, gds, DatabaseLogs.userLog(gds, ReplicationPipeline.class));
+        this.healthMonitor = healthMonitor;
     }
 
     public synchronized static ReplicationEngine initialize(String remoteDatabaseURI, String username, String password, Set<String> hostNames) throws URISyntaxException {
@@ -73,7 +90,8 @@ public class ReplicationEngine {
             instance.stop();
         }
 
-        instance = new ReplicationEngine(AddressResolver.createDriver(remoteDatabaseURI, username, password, hostNames));
+        ClusterHealthMonitor healthMonitor = AddressResolver.healthMonitor(remoteDatabaseURI, hostNames);
+        instance = new ReplicationEngine(AddressResolver.createDriver(remoteDatabaseURI, username, password, healthMonitor), healthMonitor);
         return instance();
     }
 
@@ -85,7 +103,7 @@ public class ReplicationEngine {
             instance.stop();
         }
 
-        instance = new ReplicationEngine(AddressResolver.createDriver(remoteDatabaseURI, username, password));
+        instance = new ReplicationEngine(AddressResolver.createDriver(remoteDatabaseURI, username, password), null);
         return instance();
     }
 
@@ -94,8 +112,10 @@ public class ReplicationEngine {
             instance.stop();
         }
 
+        ClusterHealthMonitor healthMonitor = AddressResolver.healthMonitor(remoteDatabaseURI, hostNames,
+                DatabaseLogs.userLog(gds, ClusterHealthMonitor.class));
         instance = new ReplicationEngine(
-                AddressResolver.createDriver(remoteDatabaseURI, username, password, hostNames), gds);
+                AddressResolver.createDriver(remoteDatabaseURI, username, password, healthMonitor), gds, healthMonitor);
         return instance();
     }
 
@@ -105,7 +125,7 @@ public class ReplicationEngine {
         }
 
         instance = new ReplicationEngine(
-                GraphDatabase.driver(remoteDatabaseURI, AuthTokens.basic(username, password)), gds);
+                GraphDatabase.driver(remoteDatabaseURI, AuthTokens.basic(username, password), AddressResolver.configBuilder().build()), gds, null);
         return instance();
     }
 
@@ -114,111 +134,51 @@ public class ReplicationEngine {
     }
 
     public synchronized void start() {
-        scheduledFuture = execService.scheduleAtFixedRate(() -> {
-            try {
-                TransactionFileLogger.AppendPollingLog(String.format("Polling starting: %d", new Date(System.currentTimeMillis()).getTime()));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            System.out.println("Grabbing the last timestamp");
-            // find the last transaction replicated and get it's timestamp
-            this.lastTransactionTimestamp = TransactionHistoryManager.getLastReplicationTimestamp(gds);
-            System.out.println("Grabbed the last timestamp");
-            // pull all TransactionRecord nodes newer than last replicated.
-            Result runReplication = driver.session().run(format(REPLICATION_QUERY, lastTransactionTimestamp));
-
-
-            if (runReplication.keys() != null && runReplication.hasNext()) {
-                try {
-                    runReplication.forEachRemaining((a) -> {
-                                try {
-                                    replicate(a);
-                                    TransactionFileLogger.AppendPollingLog(String.format("Polling source: %d", new Date(System.currentTimeMillis()).getTime()));
-
-                                } catch (JSONException | IOException e) {
-                                    e.printStackTrace();
-                                }
-                            }
-                    );
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-            System.out.println("Starting pruning");
-            // TODO: run pruning locally
-            // change to run this locally
-            // instead of using the driver and running the query at the remote
-            // do Transaction tx = gdbs.beginTx(format(PRUNE_QUERY, getThreeDaysAgo()));
-
-            Result runPrune = driver.session().run(format(PRUNE_QUERY, getThreeDaysAgo()));
-            int recordsPruned = runPrune.single().get("deleted").asInt();
-
-            System.out.println(String.format("Pruning complete %d records pruned", recordsPruned));
-
-            try {
-                TransactionFileLogger.AppendPollingLog(String.format("Polling stopping: %d", new Date(System.currentTimeMillis()).getTime()));
-                TransactionFileLogger.AppendPollingLog("Records written since engine start: " + records);
-                TransactionFileLogger.AppendPollingLog("Records pruned: " + recordsPruned);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
-        }, 0, 60L, TimeUnit.SECONDS);
+        if (Configuration.getFeedMode() == FeedMode.LONG_POLL || flowController.isAdaptive()) {
+            // a long poll follows the last one straight away unless the source is failing, and the adaptive
+            // interval changes from one poll to the next, so every poll schedules the one after it.
+            scheduledFuture = execService.schedule(this::pollAndReschedule, 0, TimeUnit.MILLISECONDS);
+        } else {
+            scheduledFuture = execService.scheduleAtFixedRate(this::pollOnce, 0, POLLING_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
 
 
         this.status = RUNNING;
     }
 
+    private void pollAndReschedule() {
+        try {
+            pollOnce();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                if (status == RUNNING) {
+                    long delay;
+                    if (Configuration.getFeedMode() == FeedMode.LONG_POLL) {
+                        // each poll blocks in the source's changeFeed procedure until there is something to pull;
+                        // while the breaker has failures the next one waits out the retry delay instead of spinning.
+                        delay = circuitBreaker.hasFailures()
+                                ? Math.max(LONG_POLL_PAUSE_MILLIS, circuitBreaker.retryDelayMillis()) : LONG_POLL_PAUSE_MILLIS;
+                    } else {
+                        delay = flowController.getIntervalMillis();
+                        if (circuitBreaker.hasFailures()) {
+                            delay = Math.min(delay, circuitBreaker.retryDelayMillis());
+                        }
+                    }
+                    scheduledFuture = execService.schedule(this::pollAndReschedule, delay, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
     public synchronized void testPolling(int polls) throws InterruptedException {
 
         Runnable replicationRoutine = () -> {
 
             runCount++;
             System.out.println("Im running a task!");
-            try {
-                TransactionFileLogger.AppendPollingLog(String.format("Polling starting: %d", new Date(System.currentTimeMillis()).getTime()));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            System.out.println("Grabbing the last timestamp");
-            this.lastTransactionTimestamp = TransactionHistoryManager.getLastReplicationTimestamp(gds);
-            System.out.println("Grabbed the last timestamp");
-
-            Result runReplication = driver.session().run(format(REPLICATION_QUERY, lastTransactionTimestamp));
-
-
-            if (runReplication.keys() != null && runReplication.hasNext()) {
-                try {
-                    runReplication.forEachRemaining((a) -> {
-                                try {
-                                    replicate(a);
-                                    TransactionFileLogger.AppendPollingLog(String.format("Polling source: %d", new Date(System.currentTimeMillis()).getTime()));
-
-
-                                } catch (JSONException | IOException e) {
-                                    e.printStackTrace();
-                                }
-                            }
-                    );
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-            System.out.println("Starting pruning");
-
-            Result runPrune = driver.session().run(format(PRUNE_QUERY, getThreeDaysAgo()));
-            int recordsPruned = runPrune.single().get("deleted").asInt();
-
-            System.out.println(String.format("Pruning complete %d records pruned", recordsPruned));
-
-            try {
-                TransactionFileLogger.AppendPollingLog(String.format("Polling stopping: %d", new Date(System.currentTimeMillis()).getTime()));
-                TransactionFileLogger.AppendPollingLog("Records written since engine start: " + records);
-                TransactionFileLogger.AppendPollingLog("Records pruned: " + recordsPruned);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
+            pollOnce();
         };
         ScheduledFuture<?> scheduledFuture = execService.scheduleAtFixedRate(replicationRoutine, 5, 60, TimeUnit.SECONDS);
 
@@ -234,56 +194,127 @@ public class ReplicationEngine {
         }
     }
 
-    private Consumer<? super Record> replicate(Record record) throws JSONException {
-
-        // grab the timestamp from the TransactionRecord node
-        Value transactionTime = record.get("tr.timeCreated");
-        if (!record.get("tr.transactionData").asString().equals(ST_DATA_JSON)) {
-
-            // grab the transaction JSON data from the TransactionRecord node
-
-            String transactionData = record.get("tr.transactionData").asString();
+    // one polling round, unless the circuit breaker is open.  A failed round is retried after a jittered
+    // backoff rather than at the next 60 second tick; the watermark on the target is where it resumes.
+    private void pollOnce() {
+        if (!circuitBreaker.allowRequest()) {
+            return;
+        }
+        if (poll()) {
+            circuitBreaker.onSuccess();
+        } else {
+            circuitBreaker.onFailure();
+            scheduleRetry();
+        }
+    }
 
+    // the fixed 60 second schedule would leave a failed poll until the next tick; the adaptive and long poll
+    // schedules come round soon enough on their own.
+    private synchronized void scheduleRetry() {
+        if (status != RUNNING || Configuration.getFeedMode() == FeedMode.LONG_POLL || flowController.isAdaptive()) {
+            return;
+        }
+        if (retryFuture == null || retryFuture.isDone()) {
+            retryFuture = execService.schedule(this::pollOnce, circuitBreaker.retryDelayMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
 
-            try (org.neo4j.graphdb.Transaction tx = gds.beginTx()) {
-                TransactionDataHandler txHandler = new TransactionDataHandler(transactionData, tx);
-                txHandler.executeCRUDOperation();
-                tx.commit();
+    // pull every TransactionRecord past the watermark through the pipeline, then prune what has been applied.
+    // Returns false if the source could not be read or pruned.
+    private boolean poll() {
+        boolean healthy = true;
+        try {
+            TransactionFileLogger.AppendPollingLog(String.format("Polling starting: %d", new Date(System.currentTimeMillis()).getTime()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        System.out.println("Grabbing the last sequence");
+        // find the last transaction replicated and get its sequence
+        this.lastReplicatedSequence = TransactionHistoryManager.getLastReplicatedSequence(gds);
+        System.out.println("Grabbed the last sequence");
+
+        long applied = 0;
+        try {
+            applied = pipeline.run(lastReplicatedSequence, flowController.getBatchSize());
+        } catch (Exception e) {
+            e.printStackTrace();
+            healthy = false;
+        }
+        this.records += applied;
+        this.lastReplicatedSequence = pipeline.getLastAppliedSequence();
+        flowController.onPoll(applied, pipeline.getLastRunLagMillis(), pipeline.getLastRunMaxApplyMillis(),
+                pipeline.getLastRunMaxPayloadBytes());
+
+        System.out.println("Starting pruning");
+        // TODO: run pruning locally
+        // change to run this locally
+        // instead of using the driver and running the query at the remote
+        // do Transaction tx = gdbs.beginTx(format(PRUNE_QUERY, getThreeDaysAgo()));
+
+        int recordsPruned = 0;
+        // a long poll comes round every few seconds; pruning still runs once a polling interval.
+        if (System.currentTimeMillis() - lastPruneTime >= TimeUnit.SECONDS.toMillis(POLLING_INTERVAL_SECONDS)) {
+            try (Session session = driver.session(SessionConfig.builder().withDefaultAccessMode(AccessMode.WRITE).build())) {
+                recordsPruned = session.run(format(PRUNE_QUERY, lastReplicatedSequence, getThreeDaysAgo())).single().get("deleted").asInt();
+                lastPruneTime = System.currentTimeMillis();
             } catch (Exception e) {
-                System.out.printf("Exception: %s%n", e.getMessage());
-            } finally {
-                System.out.println("completed replication tx");
+                e.printStackTrace();
+                healthy = false;
             }
+        }
 
-
-        } else if (!record.get("tr.transactionStatement").asString().equals(ST_DATA_VALUE)) {
-
-            try (org.neo4j.graphdb.Transaction tx = gds.beginTx()) {
-                tx.execute(record.get("tr.transactionStatement").asString());
-            } catch (Exception e) {
-                System.out.printf("Exception: %s%n", e.getMessage());
-            } finally {
-                System.out.println("completed replication tx");
+        System.out.println(String.format("Pruning complete %d records pruned", recordsPruned));
+
+        try {
+            TransactionFileLogger.AppendPollingLog(String.format("Polling stopping: %d", new Date(System.currentTimeMillis()).getTime()));
+            TransactionFileLogger.AppendPollingLog("Records written since engine start: " + records);
+            TransactionFileLogger.AppendPollingLog("Records pruned: " + recordsPruned);
+            TransactionFileLogger.AppendPollingLog("Pipeline: " + pipeline.getStatistics());
+            TransactionFileLogger.AppendPollingLog(String.format("Flow control: interval %d ms, batch size %d, lag %d ms",
+                    flowController.getIntervalMillis(), flowController.getBatchSize(), flowController.getLagMillis()));
+            TransactionFileLogger.AppendPollingLog("Circuit breaker: " + circuitBreaker.getState());
+            if (healthMonitor != null) {
+                TransactionFileLogger.AppendPollingLog("Cluster: " + healthMonitor.getHealth());
             }
-
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        TransactionHistoryManager.setLastReplicationTimestamp(gds, transactionTime.asLong());
-        this.records++;
-
-        return null;
+        return healthy;
     }
 
-    public void stop() {
+    public synchronized void stop() {
         if (this.status == RUNNING) {
             scheduledFuture.cancel(true);
+            if (retryFuture != null) {
+                retryFuture.cancel(true);
+            }
+        }
+        // engines are not restarted; initialize builds a new one with its own pipeline.
+        pipeline.shutdown();
+        // every engine builds its own driver; its connection pool goes with it.
+        driver.close();
+        if (healthMonitor != null) {
+            healthMonitor.stop();
         }
         this.status = STOPPED;
     }
 
+    public Map<String, Object> pipelineStatistics() {
+        return pipeline.getStatistics();
+    }
+
     public Status status() {
         return status;
     }
 
+    public FlowController flowController() {
+        return flowController;
+    }
+
+    public CircuitBreaker circuitBreaker() {
+        return circuitBreaker;
+    }
+
     private long getThreeDaysAgo() {
         return daysAgo(3);
     }
@@ -0,0 +1,177 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.graphdb.Entity;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * com.neo4j.sync.engine.ReplicationFilter holds the include / exclude rules the ReplicationJudge and the TransactionRecorder
+ * apply to a transaction.
+ * Rules are read from the Configuration and compiled once, when the extension starts: every label and relationship
+ * type named by any rule gets a small token id and each rule becomes a BitSet over those ids, so checking an entity
+ * against a rule is a token lookup and a bit probe instead of a series of string comparisons.
+ * Entity rules leave nodes and relationships out of the record, the rest of the transaction is still replicated:
+ * <ul>
+ *     <li>excludeLabels - nodes carrying the label, and the relationships attached to them, are left out</li>
+ *     <li>includeLabels - when not empty, nodes carrying none of them are left out, with their relationships</li>
+ *     <li>excludeRelationshipTypes / includeRelationshipTypes - relationships of an excluded type, or of a type
+ *     not included, are left out</li>
+ * </ul>
+ * Marker rules veto the whole transaction; they recognize the writes of the replication itself:
+ * <ul>
+ *     <li>excludeAssignedLabels - vetoes when the label is assigned in the transaction</li>
+ *     <li>excludeUpdatedLabels - vetoes when a node carrying the label has properties assigned</li>
+ *     <li>excludeEndpointLabels - vetoes when a deleted node, or the start node of a changed relationship, carries the label</li>
+ * </ul>
+ * The defaults reproduce the original hard-coded judge.
+ */
+
+public class ReplicationFilter {
+
+    public static final List<String> DEFAULT_EXCLUDE_ASSIGNED_LABELS = List.of("LocalTx", "DoNotReplicate", "TransactionRecord");
+    public static final List<String> DEFAULT_EXCLUDE_UPDATED_LABELS = List.of("LastTransactionReplicated");
+    public static final List<String> DEFAULT_EXCLUDE_ENDPOINT_LABELS = List.of("LocalTx");
+    public static final List<String> DEFAULT_REQUIRED_PROPERTIES = List.of("uuid");
+
+    private final Map<String, Integer> labelTokens = new HashMap<>();
+    private final Map<String, Integer> typeTokens = new HashMap<>();
+    private final BitSet excludedLabels;
+    private final BitSet excludedAssignedLabels;
+    private final BitSet excludedUpdatedLabels;
+    private final BitSet excludedEndpointLabels;
+    private final BitSet includedLabels;
+    private final BitSet excludedTypes;
+    private final BitSet includedTypes;
+    private final String[] requiredNodeProperties;
+    private final String[] requiredRelationshipProperties;
+
+    public ReplicationFilter(Collection<String> excludeLabels, Collection<String> excludeAssignedLabels,
+                             Collection<String> excludeUpdatedLabels, Collection<String> excludeEndpointLabels,
+                             Collection<String> includeLabels, Collection<String> excludeRelationshipTypes,
+                             Collection<String> includeRelationshipTypes, Collection<String> requiredNodeProperties,
+                             Collection<String> requiredRelationshipProperties) {
+
+        this.excludedLabels = compile(excludeLabels, labelTokens);
+        this.excludedAssignedLabels = compile(excludeAssignedLabels, labelTokens);
+        this.excludedUpdatedLabels = compile(excludeUpdatedLabels, labelTokens);
+        this.excludedEndpointLabels = compile(excludeEndpointLabels, labelTokens);
+        this.includedLabels = compile(includeLabels, labelTokens);
+        this.excludedTypes = compile(excludeRelationshipTypes, typeTokens);
+        this.includedTypes = compile(includeRelationshipTypes, typeTokens);
+        this.requiredNodeProperties = requiredNodeProperties.toArray(new String[0]);
+        this.requiredRelationshipProperties = requiredRelationshipProperties.toArray(new String[0]);
+    }
+
+    // compiles the rules currently held by the Configuration.
+    public static ReplicationFilter compile() {
+        return new ReplicationFilter(Configuration.getExcludeLabels(), Configuration.getExcludeAssignedLabels(),
+                Configuration.getExcludeUpdatedLabels(), Configuration.getExcludeEndpointLabels(),
+                Configuration.getIncludeLabels(), Configuration.getExcludeRelationshipTypes(),
+                Configuration.getIncludeRelationshipTypes(), Configuration.getRequiredNodeProperties(),
+                Configuration.getRequiredRelationshipProperties());
+    }
+
+    public static ReplicationFilter defaults() {
+        return new ReplicationFilter(List.of(), DEFAULT_EXCLUDE_ASSIGNED_LABELS, DEFAULT_EXCLUDE_UPDATED_LABELS,
+                DEFAULT_EXCLUDE_ENDPOINT_LABELS, List.of(), List.of(), List.of(), DEFAULT_REQUIRED_PROPERTIES,
+                DEFAULT_REQUIRED_PROPERTIES);
+    }
+
+    public boolean isExcludedLabel(Label label) {
+        return probe(excludedLabels, labelTokens, label.name());
+    }
+
+    public boolean isExcludedAssignedLabel(Label label) {
+        return probe(excludedAssignedLabels, labelTokens, label.name());
+    }
+
+    public boolean isExcludedUpdatedLabel(Label label) {
+        return probe(excludedUpdatedLabels, labelTokens, label.name());
+    }
+
+    public boolean isExcludedEndpointLabel(Label label) {
+        return probe(excludedEndpointLabels, labelTokens, label.name());
+    }
+
+    public boolean isIncludedLabel(Label label) {
+        return probe(includedLabels, labelTokens, label.name());
+    }
+
+    public boolean hasIncludedLabels() {
+        return !includedLabels.isEmpty();
+    }
+
+    public boolean hasEndpointExclusions() {
+        return !excludedEndpointLabels.isEmpty();
+    }
+
+    public boolean hasExcludedLabels() {
+        return !excludedLabels.isEmpty();
+    }
+
+    // true if the entity rules leave some nodes out.
+    public boolean filtersNodes() {
+        return !excludedLabels.isEmpty() || !includedLabels.isEmpty();
+    }
+
+    // false if a node with these labels is left out: it carries an excluded label, or none of the included ones.
+    public boolean isReplicatedNode(Collection<String> labels) {
+        if (!filtersNodes()) {
+            return true;
+        }
+        boolean included = includedLabels.isEmpty();
+        for (String label : labels) {
+            if (probe(excludedLabels, labelTokens, label)) {
+                return false;
+            }
+            if (!included && probe(includedLabels, labelTokens, label)) {
+                included = true;
+            }
+        }
+        return included;
+    }
+
+    public boolean isReplicatedType(RelationshipType type) {
+        String name = type.name();
+        if (probe(excludedTypes, typeTokens, name)) {
+            return false;
+        }
+        return includedTypes.isEmpty() || probe(includedTypes, typeTokens, name);
+    }
+
+    public boolean hasRequiredNodeProperties(Entity node) {
+        return hasAll(node, requiredNodeProperties);
+    }
+
+    public boolean hasRequiredRelationshipProperties(Entity relationship) {
+        return hasAll(relationship, requiredRelationshipProperties);
+    }
+
+    private static boolean hasAll(Entity entity, String[] keys) {
+        for (String key : keys) {
+            if (!entity.hasProperty(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean probe(BitSet rule, Map<String, Integer> tokens, String name) {
+        Integer token = tokens.get(name);
+        return token != null && rule.get(token);
+    }
+
+    private static BitSet compile(Collection<String> names, Map<String, Integer> tokens) {
+        BitSet rule = new BitSet();
+        for (String name : names) {
+            rule.set(tokens.computeIfAbsent(name, k -> tokens.size()));
+        }
+        return rule;
+    }
+}
@@ -1,5 +1,6 @@
 package com.neo4j.sync.engine;
 
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
@@ -12,120 +13,210 @@ import java.util.Map;
 /**
  * com.neo4j.sync.engine.ReplicationJudge class is used to determine whether the transaction we are intercepting
  * should be replicated.
+ * The include / exclude rules come from a ReplicationFilter compiled when the extension starts; the judge itself
+ * only adds the structural rules (created nodes must have labels and properties).  The judge vetoes transactions
+ * that carry a marker of our own writes (LocalTx, TransactionRecord, ...).  Nodes and relationships excluded by
+ * excludeLabels, includeLabels or the relationship type rules do not veto the transaction: the TransactionRecorder
+ * leaves them, and only them, out of the record.
+ * The judge runs on every write in the database, so it decides in a single pass over each part of the
+ * TransactionData, checks labels and types through the filter's precompiled token bitsets and caches what it
+ * learns about a node for the rest of the transaction.  The diagnostic dump is opt-in through the
+ * com.neo4j.sync.judge.diagnostics system property or setDiagnosticsEnabled.
  *
  * @author Chris Upkes
  */
 public class ReplicationJudge {
 
-    private static final String LOCAL_TX = "LocalTx";
-    private static final String DO_NOT_REPLICATE = "DoNotReplicate";
+    public static final String DIAGNOSTICS_PROPERTY = "com.neo4j.sync.judge.diagnostics";
 
     // if you must defy Neo4j coding conventions and define properties with uppercase names then
     //TODO: consider either changing properties to lowercase or change all uuid references to UUID.
     private static final String UUID = "uuid";
-    private static final String TRANSACTION_RECORD = "TransactionRecord";
-    private static final String LAST_TRANSACTION_REPLICATED = "LastTransactionReplicated";
 
+    // per-node verdict bits kept for the duration of one approved() call.
+    private static final int ENDPOINT_KNOWN = 1;
+    private static final int ENDPOINT_EXCLUDED = 1 << 1;
+    private static final int UPDATE_KNOWN = 1 << 2;
+    private static final int UPDATE_REJECTED = 1 << 3;
+    private static final int EXCLUDED = 1 << 4;
 
-    // if you must defy Neo4j coding conventions and define properties with uppercase names then
-    //TODO: consider either changing properties to lowercase or change all uuid references to UUID.
+    // large transactions can grow the cache; don't hold on to that memory between transactions.
+    private static final int MAX_RETAINED_VERDICTS = 4096;
+    private static final ThreadLocal<LongIntHashMap> VERDICTS = ThreadLocal.withInitial(LongIntHashMap::new);
 
-    public static boolean approved(TransactionData data) {
+    private static volatile ReplicationFilter filter = ReplicationFilter.defaults();
+    private static volatile boolean diagnosticsEnabled = Boolean.getBoolean(DIAGNOSTICS_PROPERTY);
 
-        logTransactionForTesting(data);
+    public static boolean approved(TransactionData data) {
 
-        if (data.createdNodes().iterator().hasNext() && !data.assignedLabels().iterator().hasNext()) {
-            System.out.println("nodes were created without labels: NAY");
-            return false;
+        if (diagnosticsEnabled) {
+            logTransactionForTesting(data);
         }
-        if (data.assignedLabels().iterator().hasNext()) {
-
-            Iterable<LabelEntry> labels = data.assignedLabels();
-            for (LabelEntry le : labels)
-                if (le.label().name().equals(LOCAL_TX) || le.label().name().equals(DO_NOT_REPLICATE) ||
-                        le.label().name().equals(TRANSACTION_RECORD)) {
-                    System.out.println("an assigned label either was LocaTx or DoNotReplicate: NAY");
-                    return false;
-                }
+        ReplicationFilter rules = filter;
+
+        // label rules first: they are the cheapest and they veto most of our own local writes.
+        boolean labelsAssigned = false;
+        for (LabelEntry le : data.assignedLabels()) {
+            labelsAssigned = true;
+            if (rules.isExcludedAssignedLabel(le.label())) {
+                return reject("an excluded label was assigned: " + le.label().name());
+            }
         }
 
-        if (data.createdNodes().iterator().hasNext() && !data.assignedNodeProperties().iterator().hasNext()) {
-            System.out.println("nodes were created without properties : NAY");
-            return false;
+        boolean nodesCreated = data.createdNodes().iterator().hasNext();
+        if (nodesCreated && !labelsAssigned) {
+            return reject("nodes were created without labels: NAY");
         }
 
-        if (data.deletedRelationships().iterator().hasNext()) {
+        LongIntHashMap verdicts = VERDICTS.get();
+        try {
+            boolean nodePropertiesAssigned = false;
+            for (PropertyEntry<Node> ne : data.assignedNodeProperties()) {
+                nodePropertiesAssigned = true;
+                if ((updateVerdict(ne.entity(), rules, verdicts) & UPDATE_REJECTED) != 0) {
+                    return reject("node properties were assigned to an excluded node or one without its required properties: NAY");
+                }
+            }
+
+            if (nodesCreated && !nodePropertiesAssigned) {
+                return reject("nodes were created without properties : NAY");
+            }
 
-            Iterable<Relationship> rels = data.deletedRelationships();
-            for (Relationship rel : rels) {
-                if (rel.getStartNode().hasLabel(Label.label(LOCAL_TX))) {
-                    System.out.println("relationships were deleted but were attached to nodes with LocalTX Label : NAY");
-                    return false;
+            for (Relationship rel : data.deletedRelationships()) {
+                if (isLocalRelationship(rel, rules, verdicts)) {
+                    return reject("relationships were deleted but were excluded by start node : NAY");
                 }
             }
-        }
-        if (data.deletedNodes().iterator().hasNext()) {
-            Iterable<Node> nodes = data.deletedNodes();
-            for (Node node : nodes) {
-                if (node.hasLabel(Label.label(LOCAL_TX))) {
-                    System.out.println("nodes were deleted but had LocalTx label: NAY");
-                    return false;
+
+            for (Node node : data.deletedNodes()) {
+                if ((endpointVerdict(node, rules, verdicts) & ENDPOINT_EXCLUDED) != 0) {
+                    return reject("nodes were deleted but carried an excluded label: NAY");
                 }
             }
-        }
 
-        if (data.createdRelationships().iterator().hasNext()) {
-            Iterable<Relationship> rels = data.createdRelationships();
-            for (Relationship rel : rels) {
-                if (rel.getStartNode().hasLabel(Label.label(LOCAL_TX))) {
-                    System.out.println("relationships were created but were attached to nodes with LocalTX Label: NAY");
-                    return false;
+            for (Relationship rel : data.createdRelationships()) {
+                if (isLocalRelationship(rel, rules, verdicts)) {
+                    return reject("relationships were created but were excluded by start node: NAY");
                 }
+            }
 
+            for (PropertyEntry<Relationship> pe : data.assignedRelationshipProperties()) {
+                Relationship rel = pe.entity();
+                if (isLocalRelationship(rel, rules, verdicts)
+                        || (!isDroppedRelationship(rel, rules, verdicts) && !rules.hasRequiredRelationshipProperties(rel))) {
+                    return reject("relationship properties were assigned to an excluded relationship or one without its required properties: NAY");
+                }
+            }
+        } finally {
+            if (verdicts.size() > MAX_RETAINED_VERDICTS) {
+                VERDICTS.remove();
+            } else {
+                verdicts.clear();
             }
         }
 
-        if (data.assignedRelationshipProperties().iterator().hasNext()) {
-            Iterable<PropertyEntry<Relationship>> relPropEntry = data.assignedRelationshipProperties();
+        if (diagnosticsEnabled) {
+            System.out.println("ReplicationJudge validation passed; returning TRUE");
+        }
+        return true;
+    }
 
-            for (PropertyEntry<Relationship> pe : relPropEntry) {
+    public static ReplicationFilter getFilter() {
+        return filter;
+    }
 
-                if (pe.entity().getStartNode().hasLabel(Label.label(LOCAL_TX)) || !pe.entity().hasProperty(UUID)) {
-                    System.out.println("relationship properties were assigned to nodes with LocalTX label : NAY\n");
-                    System.out.println(" or uuid was assigned to relationship");
-                    return false;
-                }
+    // swaps in a newly compiled rule set; called when the extension starts.
+    public static void setFilter(ReplicationFilter replicationFilter) {
+        filter = replicationFilter;
+    }
 
-            }
+    public static boolean isDiagnosticsEnabled() {
+        return diagnosticsEnabled;
+    }
 
-        }
+    public static void setDiagnosticsEnabled(boolean enabled) {
+        diagnosticsEnabled = enabled;
+    }
 
-        if (data.assignedNodeProperties().iterator().hasNext()) {
-            Iterable<PropertyEntry<Node>> nodePropEntry = data.assignedNodeProperties();
+    // a relationship whose start node carries an excluded endpoint label, such as LocalTx, marks a local write.
+    private static boolean isLocalRelationship(Relationship rel, ReplicationFilter rules, LongIntHashMap verdicts) {
+        return (endpointVerdict(rel.getStartNode(), rules, verdicts) & ENDPOINT_EXCLUDED) != 0;
+    }
 
-            for (PropertyEntry<Node> ne : nodePropEntry) {
-                if (!ne.entity().hasProperty(UUID)) {
-                    System.out.println("no uuid was assigned to node");
-                    return false;
-                } else {
-                    if (lastTransactionReplicatedNodeLabelExists(ne.entity().getLabels())) {
-                        return false;
-                    }
+    // a relationship the TransactionRecorder leaves out, by its type or by either end.
+    private static boolean isDroppedRelationship(Relationship rel, ReplicationFilter rules, LongIntHashMap verdicts) {
+        if (!rules.isReplicatedType(rel.getType())) {
+            return true;
+        }
+        return rules.filtersNodes() && ((endpointVerdict(rel.getStartNode(), rules, verdicts) & EXCLUDED) != 0
+                || (endpointVerdict(rel.getEndNode(), rules, verdicts) & EXCLUDED) != 0);
+    }
+
+    private static int endpointVerdict(Node node, ReplicationFilter rules, LongIntHashMap verdicts) {
+        if (!rules.hasEndpointExclusions() && !rules.filtersNodes()) {
+            return 0;
+        }
+        long id = node.getId();
+        int verdict = verdicts.get(id);
+        if ((verdict & ENDPOINT_KNOWN) == 0) {
+            verdict |= ENDPOINT_KNOWN;
+            boolean included = !rules.hasIncludedLabels();
+            for (Label label : node.getLabels()) {
+                if (rules.isExcludedEndpointLabel(label)) {
+                    verdict |= ENDPOINT_EXCLUDED;
+                }
+                if (rules.isExcludedLabel(label)) {
+                    verdict |= EXCLUDED;
+                }
+                if (!included && rules.isIncludedLabel(label)) {
+                    included = true;
                 }
             }
+            if (!included) {
+                verdict |= EXCLUDED;
+            }
+            verdicts.put(id, verdict);
         }
-        System.out.println("ReplicationJudge validation passed; returning TRUE");
-        return true;
+        return verdict;
     }
 
-    private static boolean lastTransactionReplicatedNodeLabelExists(Iterable<Label> labels) {
-        if (labels.iterator().hasNext()) {
-            for (Label label : labels) {
-                if (label.name().equals(LAST_TRANSACTION_REPLICATED)) {
-                    System.out.println("Transaction counter. Ignore and skip replication.");
-                    return true;
+    // one label scan and one round of property probes per node, however many of its properties were assigned.
+    // A node the TransactionRecorder leaves out is not held to the required properties.
+    private static int updateVerdict(Node node, ReplicationFilter rules, LongIntHashMap verdicts) {
+        long id = node.getId();
+        int verdict = verdicts.get(id);
+        if ((verdict & UPDATE_KNOWN) == 0) {
+            verdict |= UPDATE_KNOWN | ENDPOINT_KNOWN;
+            boolean rejected = false;
+            boolean included = !rules.hasIncludedLabels();
+            for (Label label : node.getLabels()) {
+                if (rules.isExcludedUpdatedLabel(label)) {
+                    rejected = true;
+                }
+                if (rules.isExcludedEndpointLabel(label)) {
+                    verdict |= ENDPOINT_EXCLUDED;
                 }
+                if (rules.isExcludedLabel(label)) {
+                    verdict |= EXCLUDED;
+                }
+                if (!included && rules.isIncludedLabel(label)) {
+                    included = true;
+                }
+            }
+            if (!included) {
+                verdict |= EXCLUDED;
             }
+            if (rejected || ((verdict & EXCLUDED) == 0 && !rules.hasRequiredNodeProperties(node))) {
+                verdict |= UPDATE_REJECTED;
+            }
+            verdicts.put(id, verdict);
+        }
+        return verdict;
+    }
+
+    private static boolean reject(String reason) {
+        if (diagnosticsEnabled) {
+            System.out.println(reason);
         }
         return false;
     }
@@ -186,5 +277,3 @@ public class ReplicationJudge {
     }
 
 }
-
-
@@ -0,0 +1,797 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Bookmark;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.reactive.RxSession;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.TransientFailureException;
+import org.neo4j.kernel.api.exceptions.Status;
+import org.neo4j.logging.Log;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+/**
+ * com.neo4j.sync.engine.ReplicationPipeline pulls TransactionRecords from the source and applies them to the
+ * target in three overlapping stages.  The polling thread fetches pages of records and hands each one to a pool
+ * of decoders; the pending decodes are queued in sequence order in a bounded queue, so the fetcher waits when
+ * the applier falls behind.  A single applier thread takes the decoded records off the queue in that order and
+ * commits them in groups of up to applyGroupSize records or applyGroupBytes of payload, moving the watermark
+ * in the same target transaction.  A transaction that fails on a deadlock, lock timeout or other transient error
+ * is retried; a group that fails otherwise is applied again one record at a time, so only the failing record is
+ * skipped, and a record still failing on a transient error stops the run with the watermark before it.  With
+ * applyParallelism above 1 the applier hands the records to an ApplyScheduler instead, which applies records
+ * touching different primary keys concurrently, each committed with a marker of its sequence so that the ones
+ * past the persisted watermark are not applied twice after a restart.  Pages are read through READ
+ * sessions streaming fetchSize records at a time, or with reactiveFetch set through the driver's reactive API,
+ * requesting records only as the fetcher hands them on.  Against a cluster the readConsistency setting decides
+ * whether pulls go to the leader or may be served by followers and read replicas; long polls always go to the
+ * leader.  Record counts, busy time and
+ * queue depth of each stage are kept for the polling log.  A SchemaProvisioner sees the label and key pairs of
+ * every decoded record, has missing lookup indexes created on the target and picks the search labels.
+ */
+
+public class ReplicationPipeline {
+
+    private static final String REPLICATION_QUERY = "MATCH (tr:TransactionRecord) " +
+            "WHERE tr.sequence > %d " +
+            "RETURN tr.uuid, tr.sequence, tr.timeCreated, tr.transactionData, tr.transactionStatement, tr.payloadFormat, tr.payloadCodec, tr.transactionPayload " +
+            "ORDER BY tr.sequence LIMIT %d";
+    // the same columns, from the source's changeFeed procedure; it waits for new records when there are none.
+    private static final String LONG_POLL_QUERY = "CALL changeFeed(%%d, %%d, %d) " +
+            "YIELD uuid, sequence, timeCreated, transactionData, transactionStatement, payloadFormat, payloadCodec, transactionPayload " +
+            "RETURN uuid AS `tr.uuid`, sequence AS `tr.sequence`, timeCreated AS `tr.timeCreated`, " +
+            "transactionData AS `tr.transactionData`, transactionStatement AS `tr.transactionStatement`, " +
+            "payloadFormat AS `tr.payloadFormat`, payloadCodec AS `tr.payloadCodec`, transactionPayload AS `tr.transactionPayload`";
+    private static final String ST_DATA_JSON = "{\"statement\":\"true\"}";
+    private static final String ST_DATA_VALUE = "NO_STATEMENT";
+    private static final long OFFER_TIMEOUT_MILLIS = 100L;
+    private static final int TRANSIENT_ATTEMPTS = 5;
+    private static final long TRANSIENT_BACKOFF_MILLIS = 50L;
+    // marks the end of a run on the decoded queue.
+    private static final CompletableFuture<DecodedRecord> END_OF_RUN = CompletableFuture.completedFuture(null);
+
+    private final Driver driver;
+    private final GraphDatabaseService gds;
+    private final ExecutorService decoders;
+    private final ExecutorService applier;
+    // null unless applyParallelism is above 1.
+    private final ExecutorService workers;
+    private final int queueCapacity;
+    private final String fetchQuery;
+    private final boolean longPoll;
+    private final long fetchSize;
+    private final boolean reactiveFetch;
+    private final ReadConsistency readConsistency;
+    private final SchemaProvisioner schemaProvisioner;
+    private final Log log;
+    // the bookmark of the last completed pull, kept across runs so the next one never reads an older state.
+    private volatile Bookmark bookmark;
+    private final BlockingQueue<CompletableFuture<DecodedRecord>> decoded;
+    private final Stage fetchStage = new Stage();
+    private final Stage decodeStage = new Stage();
+    private final Stage applyStage = new Stage();
+    private volatile long lastAppliedSequence;
+    // the fetcher's position, touched by the polling thread only.
+    private long fetchCursor;
+    private boolean fetchedFirst;
+    // what the last run saw, for the FlowController.
+    private volatile long runLagMillis;
+    private final AtomicLong runMaxApplyNanos = new AtomicLong();
+    private final AtomicLong runMaxPayloadBytes = new AtomicLong();
+
+    public ReplicationPipeline(Driver driver, GraphDatabaseService gds) {
+        this(driver, gds, DatabaseLogs.userLog(gds, ReplicationPipeline.class));
+    }
+
+    public ReplicationPipeline(Driver driver, GraphDatabaseService gds, Log log) {
+        this(driver, gds, Configuration.getDecoderThreads(), Configuration.getPipelineQueueCapacity(),
+                Configuration.getApplyParallelism(), log);
+    }
+
+    public ReplicationPipeline(Driver driver, GraphDatabaseService gds, int decoderThreads, int queueCapacity,
+                               int applyParallelism) {
+        this(driver, gds, decoderThreads, queueCapacity, applyParallelism, DatabaseLogs.userLog(gds, ReplicationPipeline.class));
+    }
+
+    public ReplicationPipeline(Driver driver, GraphDatabaseService gds, int decoderThreads, int queueCapacity,
+                               int applyParallelism, Log log) {
+        this.driver = driver;
+        this.gds = gds;
+        this.log = log;
+        this.decoders = Executors.newFixedThreadPool(Math.max(1, decoderThreads), daemonThreads("ReplicationDecoder"));
+        this.applier = Executors.newSingleThreadExecutor(daemonThreads("ReplicationApplier"));
+        this.workers = applyParallelism > 1
+                ? Executors.newFixedThreadPool(applyParallelism, daemonThreads("ReplicationWorker")) : null;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.decoded = new ArrayBlockingQueue<>(this.queueCapacity);
+        this.longPoll = Configuration.getFeedMode() == FeedMode.LONG_POLL;
+        this.fetchQuery = longPoll ? format(LONG_POLL_QUERY, Configuration.getLongPollTimeoutMillis()) : REPLICATION_QUERY;
+        this.fetchSize = Configuration.getFetchSize();
+        this.reactiveFetch = Configuration.isReactiveFetch();
+        this.readConsistency = Configuration.getReadConsistency();
+        this.schemaProvisioner = new SchemaProvisioner(gds, Configuration.isProvisionIndexes(),
+                DatabaseLogs.userLog(gds, SchemaProvisioner.class));
+    }
+
+    // pulls and applies every TransactionRecord after the cursor; returns the number of records applied.
+    public long run(long cursor, int batchSize) throws Exception {
+        lastAppliedSequence = cursor;
+        runLagMillis = 0;
+        runMaxApplyNanos.set(0);
+        runMaxPayloadBytes.set(0);
+        // whatever a failed run left behind must not be applied by this one.
+        decoded.clear();
+        Future<Long> applied = applier.submit(this::applyAll);
+        try {
+            fetchAll(cursor, Math.max(1, batchSize), applied);
+        } catch (Throwable e) {
+            cancel(applied);
+            throw e;
+        }
+        enqueue(END_OF_RUN, applied);
+        return applied.get();
+    }
+
+    // ends a run whose fetch failed.  The records not yet taken off the queue are dropped, to be fetched again
+    // by the next run, and the applier finishes the ones it holds; it is gone before this returns, so it can
+    // never take records meant for the next run.
+    private void cancel(Future<Long> applied) {
+        decoded.clear();
+        // the fetcher is the only producer, so there is room after the clear.
+        decoded.offer(END_OF_RUN);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                applied.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException | CancellationException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // the sequence of the last record applied, i.e. the watermark on the target.
+    public long getLastAppliedSequence() {
+        return lastAppliedSequence;
+    }
+
+    // how old the first record pulled by the last run was when it was fetched.
+    public long getLastRunLagMillis() {
+        return runLagMillis;
+    }
+
+    // the longest single target commit of the last run.
+    public long getLastRunMaxApplyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(runMaxApplyNanos.get());
+    }
+
+    // the largest payload pulled by the last run.
+    public long getLastRunMaxPayloadBytes() {
+        return runMaxPayloadBytes.get();
+    }
+
+    public int getQueueDepth() {
+        return decoded.size();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        fetchStage.report("fetch", statistics);
+        decodeStage.report("decode", statistics);
+        applyStage.report("apply", statistics);
+        statistics.put("queueDepth", getQueueDepth());
+        statistics.put("provisionedIndexes", schemaProvisioner.getProvisioned());
+        return statistics;
+    }
+
+    public void shutdown() {
+        schemaProvisioner.shutdown();
+        decoders.shutdownNow();
+        applier.shutdownNow();
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    // the fetch stage, run on the polling thread.  The cursor follows what was fetched, not what was applied,
+    // so the next page is requested while earlier ones are still being decoded and applied.
+    private void fetchAll(long cursor, int batchSize, Future<Long> applied) throws InterruptedException {
+        fetchCursor = cursor;
+        fetchedFirst = false;
+        int pageSize;
+        do {
+            String query = format(fetchQuery, fetchCursor, batchSize);
+            pageSize = reactiveFetch ? fetchReactive(query, applied) : fetchPage(query, applied);
+        } while (pageSize == batchSize);
+    }
+
+    // pulls one page through a read session; the driver streams it in fetchSize chunks.  Returns -1 if the
+    // applier stopped taking records.
+    private int fetchPage(String query, Future<Long> applied) throws InterruptedException {
+        int pageSize = 0;
+        long started = System.nanoTime();
+        try (Session session = driver.session(readSession())) {
+            Result page = session.run(query);
+            while (page.hasNext()) {
+                Record record = page.next();
+                pageSize++;
+                if (!accept(record, started, applied)) {
+                    return -1;
+                }
+                started = System.nanoTime();
+            }
+            remember(session.lastBookmark());
+        }
+        return pageSize;
+    }
+
+    // pulls one page through the driver's reactive API.  Records are only requested from the source as the
+    // fetcher hands them on, so a full decoded queue stops the flow at the server rather than in driver buffers.
+    private int fetchReactive(String query, Future<Long> applied) throws InterruptedException {
+        int pageSize = 0;
+        long started = System.nanoTime();
+        RxSession session = driver.rxSession(readSession());
+        RecordSubscriber subscriber = new RecordSubscriber(fetchSize);
+        try {
+            session.run(query).records().subscribe(subscriber);
+            Record record;
+            while ((record = subscriber.next()) != null) {
+                pageSize++;
+                if (!accept(record, started, applied)) {
+                    return -1;
+                }
+                started = System.nanoTime();
+            }
+            remember(session.lastBookmark());
+        } finally {
+            // a no-op once the result completed; stops the stream when the fetcher gave up early.
+            subscriber.cancel();
+            awaitClose(session);
+        }
+        return pageSize;
+    }
+
+    private boolean accept(Record record, long started, Future<Long> applied) throws InterruptedException {
+        fetchCursor = record.get("tr.sequence").asLong();
+        if (!fetchedFirst) {
+            long now = System.currentTimeMillis();
+            runLagMillis = Math.max(0, now - record.get("tr.timeCreated").asLong(now));
+            fetchedFirst = true;
+        }
+        fetchStage.record(started);
+        return enqueue(CompletableFuture.supplyAsync(() -> decode(record), decoders), applied);
+    }
+
+    // LEADER pulls go through a write session, which the routing driver sends to the leader; the others may be
+    // served by a follower or read replica.  A long poll always goes to the leader: the changeFeed procedure is
+    // woken by commits on the member it runs on, and a follower's never are.
+    private SessionConfig readSession() {
+        boolean leader = longPoll || readConsistency == ReadConsistency.LEADER;
+        SessionConfig.Builder config = SessionConfig.builder()
+                .withDefaultAccessMode(leader ? AccessMode.WRITE : AccessMode.READ)
+                .withFetchSize(fetchSize);
+        Bookmark previous = bookmark;
+        if (readConsistency == ReadConsistency.CAUSAL && previous != null) {
+            config.withBookmarks(previous);
+        }
+        return config.build();
+    }
+
+    private void remember(Bookmark lastBookmark) {
+        if (readConsistency == ReadConsistency.CAUSAL && lastBookmark != null) {
+            bookmark = lastBookmark;
+        }
+    }
+
+    private static void awaitClose(RxSession session) throws InterruptedException {
+        CountDownLatch closed = new CountDownLatch(1);
+        session.<Void>close().subscribe(new Subscriber<Void>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Void ignored) {
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                closed.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                closed.countDown();
+            }
+        });
+        closed.await();
+    }
+
+    // blocks while the queue is full; gives up if the applier has stopped taking records.
+    private boolean enqueue(CompletableFuture<DecodedRecord> pending, Future<Long> applied) throws InterruptedException {
+        while (!decoded.offer(pending, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (applied.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the decode stage, run on the decoder pool.  Failures travel with the record and surface when it is applied.
+    private DecodedRecord decode(Record record) {
+        long started = System.nanoTime();
+        long sequence = record.get("tr.sequence").asLong();
+        Value transactionPayload = record.get("tr.transactionPayload");
+        String transactionData = record.get("tr.transactionData").asString(null);
+        long payloadSize = !transactionPayload.isNull() ? transactionPayload.size()
+                : transactionData != null ? transactionData.length() : 0;
+        runMaxPayloadBytes.accumulateAndGet(payloadSize, Math::max);
+        try {
+            // records written before the payload format and codec were recorded are plain JSON.
+            PayloadFormat payloadFormat = PayloadFormat.valueOf(record.get("tr.payloadFormat").asString(PayloadFormat.JSON.name()));
+            PayloadCodec payloadCodec = PayloadCodec.valueOf(record.get("tr.payloadCodec").asString(PayloadCodec.NONE.name()));
+            if (payloadFormat == PayloadFormat.JSON && payloadCodec == PayloadCodec.NONE) {
+                if (ST_DATA_JSON.equals(transactionData)) {
+                    String statement = record.get("tr.transactionStatement").asString(ST_DATA_VALUE);
+                    return DecodedRecord.statement(sequence, ST_DATA_VALUE.equals(statement) ? null : statement);
+                }
+                // grab the transaction JSON data from the TransactionRecord node
+                return decoded(sequence, payloadSize, TransactionEventDecoder.decode(transactionData));
+            }
+            return decoded(sequence, payloadSize,
+                    decodeTransactionEvents(payloadFormat, payloadCodec, transactionPayload.asByteArray()));
+        } catch (Exception e) {
+            return DecodedRecord.failed(sequence, payloadSize, e);
+        } finally {
+            decodeStage.record(started);
+        }
+    }
+
+    // the label and key pairs are taken in here, so missing indexes are under way before the record is applied.
+    private DecodedRecord decoded(long sequence, long payloadSize, TransactionEvents transactionEvents) {
+        schemaProvisioner.observe(transactionEvents);
+        return DecodedRecord.events(sequence, payloadSize, transactionEvents);
+    }
+
+    // decompresses an encoded payload and decodes it into the events the TransactionDataHandler applies.
+    private TransactionEvents decodeTransactionEvents(PayloadFormat payloadFormat, PayloadCodec payloadCodec,
+                                                      byte[] transactionPayload) throws Exception {
+
+        byte[] payload = PayloadCompression.decompress(payloadCodec, transactionPayload);
+        if (payloadFormat == PayloadFormat.BINARY) {
+            return TransactionEventDecoder.decode(BinaryPayloadCodec.decode(payload));
+        }
+        // streamed straight from the UTF-8 bytes.
+        return TransactionEventDecoder.decode(payload);
+    }
+
+    // the apply stage, run on the applier thread until the end of the run is taken off the queue.
+    private long applyAll() throws Exception {
+        if (workers != null) {
+            return applyConcurrently();
+        }
+        int groupSize = Math.max(1, Configuration.getApplyGroupSize());
+        long groupBytesBudget = Configuration.getApplyGroupBytes();
+        List<DecodedRecord> group = new ArrayList<>(groupSize);
+        long groupBytes = 0;
+        long applied = 0;
+        DecodedRecord record;
+        while ((record = decoded.take().get()) != null) {
+            if (record.isStatement()) {
+                // a statement may be schema, which cannot share a transaction with data writes.
+                applied += applyGroup(group);
+                group.clear();
+                groupBytes = 0;
+                applied += replicate(record);
+                continue;
+            }
+            group.add(record);
+            groupBytes += record.payloadSize;
+            if (group.size() >= groupSize || groupBytes >= groupBytesBudget) {
+                applied += applyGroup(group);
+                group.clear();
+                groupBytes = 0;
+            }
+        }
+        applied += applyGroup(group);
+        return applied;
+    }
+
+    // hands the records to an ApplyScheduler; the watermark is persisted every applyGroupSize records.
+    private long applyConcurrently() throws Exception {
+        ApplyScheduler scheduler = new ApplyScheduler(workers, this::applyAlone, this::persistWatermark,
+                lastAppliedSequence, queueCapacity, Configuration.getApplyGroupSize());
+        long applied;
+        try {
+            DecodedRecord record;
+            while ((record = decoded.take().get()) != null) {
+                scheduler.submit(record);
+            }
+        } finally {
+            applied = scheduler.drain();
+        }
+        return applied;
+    }
+
+    // applies a record in its own target transaction, without touching the watermark.  The record's marker
+    // commits with it, so a record applied past the persisted watermark is not applied again after a restart.
+    // Throws if a transient failure outlasts the retries; the ApplyScheduler then holds the watermark before it.
+    private void applyAlone(DecodedRecord record) {
+        long started = System.nanoTime();
+        try {
+            retryTransient(() -> {
+                boolean fresh;
+                try (Transaction tx = gds.beginTx()) {
+                    fresh = apply(record, tx, new NodeLookupCache());
+                    if (fresh && !record.isStatement()) {
+                        TransactionHistoryManager.markApplied(tx, record.sequence);
+                    }
+                    tx.commit();
+                }
+                if (fresh && record.isStatement()) {
+                    // a schema statement cannot share its transaction with the marker.
+                    try (Transaction tx = gds.beginTx()) {
+                        TransactionHistoryManager.markApplied(tx, record.sequence);
+                        tx.commit();
+                    }
+                }
+            });
+        } catch (Exception e) {
+            if (isTransient(e)) {
+                throw new IllegalStateException(format("Record %d could not be applied", record.sequence), e);
+            }
+            // a record that cannot be applied is skipped rather than retried forever.
+            log.error(format("Record %d could not be applied and was skipped", record.sequence), e);
+        }
+        applied(started, 1);
+    }
+
+    // moves the watermark and drops the markers it covers in one transaction.  A watermark that cannot be
+    // persisted is left to the next one; the markers keep the records past it from being applied twice.
+    private void persistWatermark(long sequence) {
+        try {
+            retryTransient(() -> {
+                try (Transaction tx = gds.beginTx()) {
+                    TransactionHistoryManager.setLastReplicatedSequenceAndClearApplied(tx, sequence);
+                    tx.commit();
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Could not persist the watermark at %d: %s", sequence, e.getMessage());
+            return;
+        }
+        lastAppliedSequence = sequence;
+        try {
+            TransactionFileLogger.AppendPollingLog(String.format("Polling source: %d", new Date(System.currentTimeMillis()).getTime()));
+        } catch (IOException e) {
+            log.warn("Could not write the polling log: %s", e.getMessage());
+        }
+    }
+
+    // applies the group and moves the watermark past it in a single target transaction.
+    private int applyGroup(List<DecodedRecord> group) throws Exception {
+        if (group.isEmpty()) {
+            return 0;
+        }
+        if (group.size() == 1) {
+            return replicate(group.get(0));
+        }
+        long started = System.nanoTime();
+        long groupSequence = group.get(group.size() - 1).sequence;
+        try {
+            retryTransient(() -> {
+                try (Transaction tx = gds.beginTx()) {
+                    // the records of the group often name the same nodes; each is looked up once.
+                    NodeLookupCache nodeLookupCache = new NodeLookupCache();
+                    for (DecodedRecord record : group) {
+                        apply(record, tx, nodeLookupCache);
+                    }
+                    TransactionHistoryManager.setLastReplicatedSequence(tx, groupSequence);
+                    tx.commit();
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Applying %d records one at a time after their group failed: %s", group.size(), e.getMessage());
+            int applied = 0;
+            for (DecodedRecord record : group) {
+                applied += replicate(record);
+            }
+            return applied;
+        }
+        lastAppliedSequence = groupSequence;
+        applied(started, group.size());
+        TransactionFileLogger.AppendPollingLog(String.format("Polling source: %d", new Date(System.currentTimeMillis()).getTime()));
+        return group.size();
+    }
+
+    // applies a single record and moves the watermark past it in the same target transaction.  A statement is
+    // committed on its own and the watermark moved after it, as schema cannot share a transaction with data writes.
+    // A record that cannot be applied is skipped, unless it failed on a transient error that outlasted the
+    // retries: then the run stops with the watermark before it, and the next run fetches it again.
+    private int replicate(DecodedRecord record) throws Exception {
+        long started = System.nanoTime();
+        try {
+            retryTransient(() -> {
+                try (Transaction tx = gds.beginTx()) {
+                    apply(record, tx, new NodeLookupCache());
+                    if (!record.isStatement()) {
+                        TransactionHistoryManager.setLastReplicatedSequence(tx, record.sequence);
+                    }
+                    tx.commit();
+                }
+            });
+            if (record.isStatement()) {
+                retryTransient(() -> TransactionHistoryManager.setLastReplicatedSequence(gds, record.sequence));
+            }
+        } catch (Exception e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            log.error(format("Record %d could not be applied and was skipped", record.sequence), e);
+            // a record that cannot be applied is skipped rather than retried forever.
+            retryTransient(() -> TransactionHistoryManager.setLastReplicatedSequence(gds, record.sequence));
+        }
+        lastAppliedSequence = record.sequence;
+        applied(started, 1);
+        TransactionFileLogger.AppendPollingLog(String.format("Polling source: %d", new Date(System.currentTimeMillis()).getTime()));
+        return 1;
+    }
+
+    // runs a target transaction again while it fails on a deadlock, a lock timeout or another transient error,
+    // backing off a little longer each time; any other failure, or the last transient one, is thrown.
+    private static void retryTransient(TargetWork work) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                work.run();
+                return;
+            } catch (Exception e) {
+                if (attempt >= TRANSIENT_ATTEMPTS || !isTransient(e)) {
+                    throw e;
+                }
+                Thread.sleep(TRANSIENT_BACKOFF_MILLIS * attempt);
+            }
+        }
+    }
+
+    static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientFailureException) {
+                return true;
+            }
+            if (cause instanceof Status.HasStatus
+                    && ((Status.HasStatus) cause).status().code().classification() == Status.Classification.TransientError) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // replays the record's events, or its statement, in the supplied target transaction.  Returns false for a
+    // record a concurrent run already applied past the watermark.
+    private boolean apply(DecodedRecord record, Transaction tx, NodeLookupCache nodeLookupCache) throws Exception {
+        if (TransactionHistoryManager.isApplied(tx, record.sequence)) {
+            return false;
+        }
+        if (record.failure != null) {
+            throw record.failure;
+        }
+        if (record.statement != null) {
+            tx.execute(record.statement);
+        } else {
+            new TransactionDataHandler(record.transactionEvents, tx, schemaProvisioner, nodeLookupCache).executeCRUDOperation();
+        }
+        return true;
+    }
+
+    private void applied(long startedNanos, int count) {
+        applyStage.record(startedNanos, count);
+        runMaxApplyNanos.accumulateAndGet(System.nanoTime() - startedNanos, Math::max);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // a TransactionRecord as the applier sees it: its events or statement, or why it could not be decoded.
+    static final class DecodedRecord {
+        private final long sequence;
+        private final long payloadSize;
+        private final String statement;
+        private final boolean isStatement;
+        private final TransactionEvents transactionEvents;
+        private final Exception failure;
+        private final Set<String> footprint;
+
+        private DecodedRecord(long sequence, long payloadSize, String statement, boolean isStatement,
+                              TransactionEvents transactionEvents, Exception failure) {
+            this.sequence = sequence;
+            this.payloadSize = payloadSize;
+            this.statement = statement;
+            this.isStatement = isStatement;
+            this.transactionEvents = transactionEvents;
+            this.failure = failure;
+            this.footprint = transactionEvents != null && !isStatement ? footprintOf(transactionEvents) : null;
+        }
+
+        // a null statement is a StatementRecord with nothing to replay.
+        static DecodedRecord statement(long sequence, String statement) {
+            return new DecodedRecord(sequence, 0, statement, true, new TransactionEvents(), null);
+        }
+
+        static DecodedRecord events(long sequence, long payloadSize, TransactionEvents transactionEvents) {
+            return new DecodedRecord(sequence, payloadSize, null, false, transactionEvents, null);
+        }
+
+        static DecodedRecord failed(long sequence, long payloadSize, Exception failure) {
+            return new DecodedRecord(sequence, payloadSize, null, false, null, failure);
+        }
+
+        private boolean isStatement() {
+            return isStatement;
+        }
+
+        long sequence() {
+            return sequence;
+        }
+
+        // the primary keys the record's events touch, or null if it must be applied on its own.
+        Set<String> footprint() {
+            return footprint;
+        }
+
+        private static Set<String> footprintOf(TransactionEvents transactionEvents) {
+            Set<String> keys = new HashSet<>();
+            for (TransactionEvent event : transactionEvents) {
+                Map<String, Object> primaryKey = event.getPrimaryKey();
+                if (primaryKey == null || !addKeys(primaryKey, keys)) {
+                    return null;
+                }
+                Map<String, Object> targetPrimaryKey = event.getPrimaryKey(NodeDirection.TARGET);
+                if (targetPrimaryKey != null) {
+                    addKeys(targetPrimaryKey, keys);
+                }
+            }
+            return keys;
+        }
+
+        // returns false for an empty key, which identifies nothing.
+        private static boolean addKeys(Map<String, Object> primaryKey, Set<String> keys) {
+            for (Map.Entry<String, Object> entry : primaryKey.entrySet()) {
+                keys.add(entry.getKey() + '=' + entry.getValue());
+            }
+            return !primaryKey.isEmpty();
+        }
+    }
+
+    // one attempt at a target transaction.
+    @FunctionalInterface
+    private interface TargetWork {
+        void run() throws Exception;
+    }
+
+    // hands the records of a reactive result to the fetcher.  At most demand records are outstanding: half of it
+    // is requested again each time the fetcher has taken that many.
+    private static final class RecordSubscriber implements Subscriber<Record> {
+        private static final Object COMPLETE = new Object();
+
+        private final BlockingQueue<Object> arrived = new LinkedBlockingQueue<>();
+        private final long demand;
+        private final long replenish;
+        private volatile Subscription subscription;
+        private long taken;
+
+        private RecordSubscriber(long demand) {
+            this.demand = Math.max(1, demand);
+            this.replenish = Math.max(1, this.demand / 2);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(demand);
+        }
+
+        @Override
+        public void onNext(Record record) {
+            arrived.add(record);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            arrived.add(e);
+        }
+
+        @Override
+        public void onComplete() {
+            arrived.add(COMPLETE);
+        }
+
+        // the next record, or null once the result is exhausted.
+        private Record next() throws InterruptedException {
+            Object item = arrived.take();
+            if (item == COMPLETE) {
+                return null;
+            }
+            if (item instanceof Throwable) {
+                Throwable e = (Throwable) item;
+                throw e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+            }
+            if (++taken % replenish == 0) {
+                subscription.request(replenish);
+            }
+            return (Record) item;
+        }
+
+        private void cancel() {
+            Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+
+    // what one stage has done: records handled and the time spent handling them.
+    private static final class Stage {
+        private final AtomicLong records = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        private void record(long startedNanos) {
+            record(startedNanos, 1);
+        }
+
+        private void record(long startedNanos, int count) {
+            busyNanos.addAndGet(System.nanoTime() - startedNanos);
+            records.addAndGet(count);
+        }
+
+        private void report(String name, Map<String, Object> statistics) {
+            long handled = records.get();
+            long nanos = busyNanos.get();
+            statistics.put(name + "Records", handled);
+            statistics.put(name + "RecordsPerSecond", nanos == 0 ? 0L : handled * TimeUnit.SECONDS.toNanos(1) / nanos);
+        }
+    }
+}
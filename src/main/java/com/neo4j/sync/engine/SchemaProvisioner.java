@@ -0,0 +1,229 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * com.neo4j.sync.engine.SchemaProvisioner makes sure the nodes the apply side looks up by primary key can be
+ * found through an index on the target.  It keeps an inventory of the online single property node indexes of the
+ * target, which include the ones backing uniqueness constraints, and of the number of nodes carrying each indexed
+ * label.  The label and primary key pairs of the change stream are observed as records are decoded; the first
+ * time a pair shows up that none of the node's labels has an index for, an index on its first label is created
+ * on a background thread, once, and reported.  NodeFinder asks it for the search label of a lookup: the indexed
+ * label with the fewest nodes, or the first label when none of them is indexed yet.  The inventory is refreshed
+ * in the background every REFRESH_INTERVAL_MILLIS and after every index it creates.
+ */
+
+public class SchemaProvisioner {
+
+    private static final String LOCAL_TRANSACTION_LABEL = "LocalTx";
+    private static final long REFRESH_INTERVAL_MILLIS = 30_000L;
+    private static final long INDEX_ONLINE_TIMEOUT_SECONDS = 300L;
+    private static final String INDEXES_QUERY = "CALL db.indexes() " +
+            "YIELD name, state, type, entityType, labelsOrTypes, properties " +
+            "RETURN name, state, type, entityType, labelsOrTypes, properties";
+    private static final String CREATE_INDEX = "CREATE INDEX %s IF NOT EXISTS FOR (n:%s) ON (n.%s)";
+    private static final String COUNT_NODES = "MATCH (n:%s) RETURN count(n) AS nodes";
+
+    private final GraphDatabaseService gds;
+    private final boolean provision;
+    private final Log log;
+    private final ExecutorService background;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    // label -> keys with an online index, and label -> node count.  Replaced as a whole on every refresh.
+    private volatile Map<String, Set<String>> indexed = Collections.emptyMap();
+    private volatile Map<String, Long> nodeCounts = Collections.emptyMap();
+    private volatile long refreshedAt;
+
+    // label -> keys already observed, so each pair is considered once.
+    private final Map<String, Set<String>> observed = new ConcurrentHashMap<>();
+    // label:key -> what became of the index provisioned for it.
+    private final Map<String, String> provisioned = new ConcurrentHashMap<>();
+
+    public SchemaProvisioner(GraphDatabaseService gds) {
+        this(gds, Configuration.isProvisionIndexes());
+    }
+
+    public SchemaProvisioner(GraphDatabaseService gds, boolean provision) {
+        this(gds, provision, DatabaseLogs.userLog(gds, SchemaProvisioner.class));
+    }
+
+    public SchemaProvisioner(GraphDatabaseService gds, boolean provision, Log log) {
+        this.gds = gds;
+        this.provision = provision;
+        this.log = log;
+        this.background = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ReplicationSchemaProvisioner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresh();
+    }
+
+    // called as records are decoded, from any thread.
+    public void observe(TransactionEvents events) {
+        for (TransactionEvent event : events) {
+            observe(event.getLabels(NodeDirection.START), event.getPrimaryKey(NodeDirection.START));
+            observe(event.getLabels(NodeDirection.TARGET), event.getPrimaryKey(NodeDirection.TARGET));
+        }
+    }
+
+    // the label to look the node up by: the indexed label with the fewest nodes, else the first label.
+    public Label searchLabel(List<Label> labels, String key) {
+        refreshIfStale();
+        Map<String, Set<String>> indexed = this.indexed;
+        Map<String, Long> nodeCounts = this.nodeCounts;
+        Label searchLabel = null;
+        long fewest = Long.MAX_VALUE;
+        for (Label label : labels) {
+            Set<String> keys = indexed.get(label.name());
+            if (keys != null && keys.contains(key)) {
+                long count = nodeCounts.getOrDefault(label.name(), Long.MAX_VALUE);
+                if (searchLabel == null || count < fewest) {
+                    searchLabel = label;
+                    fewest = count;
+                }
+            }
+        }
+        return searchLabel != null ? searchLabel : labels.get(0);
+    }
+
+    public boolean isIndexed(String label, String key) {
+        Set<String> keys = indexed.get(label);
+        return keys != null && keys.contains(key);
+    }
+
+    // label:key -> CREATED, FAILED: reason, or PENDING while the index is being created.
+    public Map<String, String> getProvisioned() {
+        return new LinkedHashMap<>(provisioned);
+    }
+
+    public void shutdown() {
+        background.shutdownNow();
+    }
+
+    private void observe(List<Label> labels, Map<String, Object> primaryKey) {
+        if (labels == null || primaryKey == null || labels.isEmpty()) {
+            return;
+        }
+        String first = labels.get(0).name();
+        if (LOCAL_TRANSACTION_LABEL.equals(first)) {
+            // a node captured without labels of its own.
+            return;
+        }
+        for (String key : primaryKey.keySet()) {
+            if (!observed.computeIfAbsent(first, label -> ConcurrentHashMap.newKeySet()).add(key)) {
+                continue;
+            }
+            if (!provision || anyIndexed(labels, key)) {
+                continue;
+            }
+            String pair = first + ":" + key;
+            if (provisioned.putIfAbsent(pair, "PENDING") == null) {
+                background.execute(() -> createIndex(first, key, pair));
+            }
+        }
+    }
+
+    private boolean anyIndexed(List<Label> labels, String key) {
+        for (Label label : labels) {
+            if (isIndexed(label.name(), key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // runs on the background thread.  Schema cannot share a transaction with the writes of the apply side.
+    private void createIndex(String label, String key, String pair) {
+        String name = "replication_" + label + "_" + key;
+        try {
+            try (Transaction tx = gds.beginTx()) {
+                tx.execute(String.format(CREATE_INDEX, quote(name), quote(label), quote(key)));
+                tx.commit();
+            }
+            // IF NOT EXISTS leaves an equivalent index under another name alone, so wait on them all.
+            try (Transaction tx = gds.beginTx()) {
+                tx.schema().awaitIndexesOnline(INDEX_ONLINE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                tx.commit();
+            }
+            provisioned.put(pair, "CREATED");
+            log.info("Created index %s on :%s(%s) for replicated lookups", name, label, key);
+        } catch (Exception e) {
+            // not retried: lookups on the pair keep using the label it was captured with.
+            provisioned.put(pair, "FAILED: " + e.getMessage());
+            log.warn("Could not create index on :%s(%s): %s", label, key, e.getMessage());
+        }
+        refresh();
+    }
+
+    private void refreshIfStale() {
+        if (System.currentTimeMillis() - refreshedAt > REFRESH_INTERVAL_MILLIS && refreshing.compareAndSet(false, true)) {
+            try {
+                background.execute(() -> {
+                    try {
+                        refresh();
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // shut down.
+                refreshing.set(false);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void refresh() {
+        Map<String, Set<String>> indexed = new HashMap<>();
+        Map<String, Long> nodeCounts = new HashMap<>();
+        try (Transaction tx = gds.beginTx()) {
+            try (Result result = tx.execute(INDEXES_QUERY)) {
+                while (result.hasNext()) {
+                    Map<String, Object> index = result.next();
+                    List<String> labels = (List<String>) index.get("labelsOrTypes");
+                    List<String> properties = (List<String>) index.get("properties");
+                    if ("ONLINE".equals(index.get("state")) && "BTREE".equals(index.get("type"))
+                            && "NODE".equals(index.get("entityType"))
+                            && labels != null && labels.size() == 1 && properties != null && properties.size() == 1) {
+                        indexed.computeIfAbsent(labels.get(0), label -> new HashSet<>()).add(properties.get(0));
+                    }
+                }
+            }
+            for (String label : indexed.keySet()) {
+                try (Result result = tx.execute(String.format(COUNT_NODES, quote(label)))) {
+                    nodeCounts.put(label, ((Number) result.next().get("nodes")).longValue());
+                }
+            }
+            tx.commit();
+            this.indexed = indexed;
+            this.nodeCounts = nodeCounts;
+        } catch (Exception e) {
+            // keep the last inventory; the target may be restarting.
+            log.warn("Could not read the target schema: %s", e.getMessage());
+        }
+        refreshedAt = System.currentTimeMillis();
+    }
+
+    private static String quote(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+}
@@ -4,12 +4,16 @@ import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
+
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
 /**
  * com.neo4j.sync.engine.TransactionDataHandler is to translate JSON into database writes.
- * The JSON is provided by the TransactionDataParser.  All of the events are ordered
+ * The events are decoded by the TransactionEventDecoder into typed events, which are dispatched to
+ * the writer method for their type with their values as captured.  Nodes resolved by primary key are
+ * remembered in a NodeLookupCache for the rest of the target transaction.  All of the events are ordered
  * and written to the database in one transaction, reflecting the entirety of the transaction
  * captured from the source.
  *
@@ -25,31 +29,58 @@ public class TransactionDataHandler {
     public static final String ADD_RELATION = "AddRelation";
     public static final String DELETE_RELATION = "DeleteRelation";
     public static final String RELATIONSHIP_PROPERTY_CHANGE = "RelationPropertyChange";
-    private final List<Map<String, JSONObject>> transactionEvents;
+    private final TransactionEvents transactionEvents;
     private final Transaction tx;
+    // null unless the caller keeps one for the target.
+    private final SchemaProvisioner schemaProvisioner;
+    // shared by every handler applying in the same target transaction.
+    private final NodeLookupCache nodeLookupCache;
     private Log log;
 
 
     public TransactionDataHandler(String transactionData, Transaction tx) throws JSONException {
-        this.transactionEvents = TransactionDataParser.getTransactionEvents(new JSONObject(transactionData));
-        this.tx = tx;
+        this(decode(transactionData), tx, null);
     }
 
     public TransactionDataHandler(String transactionData, List<Map<String, JSONObject>> transactionEvents, Transaction tx, Log log) throws JSONException {
-        this.transactionEvents = TransactionDataParser.getTransactionEvents(new JSONObject(transactionData));
+        this(decode(transactionData), tx, null);
         this.log = log;
+    }
+
+    // events already decoded by the TransactionEventDecoder.
+    public TransactionDataHandler(TransactionEvents transactionEvents, Transaction tx) {
+        this(transactionEvents, tx, null);
+    }
+
+    // nodes are looked up by the search labels the SchemaProvisioner picks.
+    public TransactionDataHandler(TransactionEvents transactionEvents, Transaction tx, SchemaProvisioner schemaProvisioner) {
+        this(transactionEvents, tx, schemaProvisioner, new NodeLookupCache());
+    }
+
+    // the cache must belong to the supplied transaction; handlers applying a batch in one transaction share it.
+    public TransactionDataHandler(TransactionEvents transactionEvents, Transaction tx, SchemaProvisioner schemaProvisioner,
+                                  NodeLookupCache nodeLookupCache) {
+        this.transactionEvents = transactionEvents;
         this.tx = tx;
+        this.schemaProvisioner = schemaProvisioner;
+        this.nodeLookupCache = nodeLookupCache;
     }
 
     public TransactionDataHandler(JSONObject transactionData, Transaction tx) throws JSONException {
-        this.transactionEvents = TransactionDataParser.getTransactionEvents(transactionData);
-        this.tx = tx;
+        this(transactionData.toString(), tx);
     }
 
     public TransactionDataHandler(JSONObject transactionData, Transaction tx, Log log) throws JSONException {
-        this.transactionEvents = TransactionDataParser.getTransactionEvents(transactionData);
+        this(transactionData.toString(), tx);
         this.log = log;
-        this.tx = tx;
+    }
+
+    private static TransactionEvents decode(String transactionData) throws JSONException {
+        try {
+            return TransactionEventDecoder.decode(transactionData);
+        } catch (IOException e) {
+            throw new JSONException(e.getMessage());
+        }
     }
 
     // I do a lot of the same stuff in each delegate CRUD operation, however I'm not really
@@ -59,187 +90,100 @@ public class TransactionDataHandler {
 
     public void executeCRUDOperation() throws JSONException {
 
-        // logic to loop through all events in the event array and determine change type and then call delegate.
-
-        for (Map<String, JSONObject> entry : transactionEvents) {
-            for (Map.Entry<String, JSONObject> e : entry.entrySet()) {
-                String k = e.getKey();
-                JSONObject v = e.getValue();
-                switch (k) {
-                    case ADD_NODE:
-                        this.delegateCRUDOperation(v, ChangeType.ADD_NODE);
-                        break;
-                    case DELETE_NODE:
-                        this.delegateCRUDOperation(v, ChangeType.DELETE_NODE);
-                        break;
-                    case NODE_PROPERTY_CHANGE:
-                        this.delegateCRUDOperation(v, ChangeType.NODE_PROPERTY_CHANGE);
-                        break;
-                    case ADD_RELATION:
-                        this.delegateCRUDOperation(v, ChangeType.ADD_RELATION);
-                        break;
-                    case DELETE_RELATION:
-                        this.delegateCRUDOperation(v, ChangeType.DELETE_RELATION);
-                        break;
-                    case RELATIONSHIP_PROPERTY_CHANGE:
-                        this.delegateCRUDOperation(v, ChangeType.RELATION_PROPERTY_CHANGE);
-                        break;
-
-
-                }
-
-            }
-
+        // the events come bucketed by change type, already in the order they must be applied,
+        // and each is handed to the writer method for its type.
+        EventWriter writer = new EventWriter();
+        for (TransactionEvent event : transactionEvents) {
+            event.accept(writer);
         }
 
     }
 
-    private void delegateCRUDOperation(JSONObject event, ChangeType changeType) throws JSONException {
-
-        switch (changeType) {
-            case ADD_NODE:
-                this.addNode(event);
-                break;
-            case NODE_PROPERTY_CHANGE:
-                this.changeNodeProperties(event);
-                break;
-            case DELETE_NODE:
-                this.deleteNodes(event);
-                break;
-            case DELETE_RELATION:
-                this.deleteRelation(event);
-                break;
-            case ADD_RELATION:
-                this.addRelation(event);
-                break;
-            case RELATION_PROPERTY_CHANGE:
-                this.changeRelationProperties(event);
-        }
-    }
+    private final class EventWriter implements TransactionEvent.Visitor {
 
-    private void addNode(JSONObject event) throws JSONException {
+        @Override
+        public void addNode(TransactionEvent.AddNode event) {
 
-        // get the array of labels
-        String[] labels = (String[]) TransactionDataParser.getNodeLabels(event);
-        // get the collection of properties
-        Map<String, Object> properties = TransactionDataParser.getNodeProperties(event);
+            Node newNode = tx.createNode();
 
-        Node newNode = tx.createNode();
+            // add labels
+            for (Label label : event.getLabels()) {
+                newNode.addLabel(label);
+            }
+            // add properties
+            event.getProperties().forEach(newNode::setProperty);
+            nodeLookupCache.created(newNode, event.getLabels(), event.getPrimaryKey());
 
-        // add labels
-        for (String label : labels) {
-            newNode.addLabel(Label.label(label));
         }
-        // add properties
-        properties.forEach(newNode::setProperty);
-
-
-    }
-
-    private void deleteNodes(JSONObject event) throws JSONException {
 
-        // the only time we don't do this is if we are adding a node
-        // could consolidate this into one call of a private method.
-        NodeFinder finder = new NodeFinder(event);
-        Label searchLabel = finder.getSearchLabel();
-        String[] primaryKey = finder.getPrimaryKey();
+        @Override
+        public void deleteNode(TransactionEvent.DeleteNode event) {
 
-        Node foundNode = tx.findNode(searchLabel, primaryKey[0], primaryKey[1]);
-        foundNode.delete();
+            Node foundNode = new NodeFinder(event, schemaProvisioner, nodeLookupCache).findNode(tx);
+            foundNode.delete();
+            nodeLookupCache.deleted(event.getLabels(), event.getPrimaryKey());
 
-    }
-
-    private void addRelation(JSONObject event) throws JSONException {
-
-        NodeFinder finder = new NodeFinder(event);
-        Label startSearchLabel = finder.getSearchLabel(NodeDirection.START);
-        Label targetSearchLabel = finder.getSearchLabel(NodeDirection.TARGET);
-
-        String[] startPrimaryKey = finder.getPrimaryKey(NodeDirection.START);
-        String[] targetPrimaryKey = finder.getPrimaryKey(NodeDirection.TARGET);
-
-        //Map<String, String> properties = TransactionDataParser.getRelationProperties(event);
-        Map<String, Object> properties = TransactionDataParser.getRelationProperties(event);
-
-        // first try and find the nodes.  If they don't exist we must create them.
-        Node startNode = tx.findNode(startSearchLabel, startPrimaryKey[0], startPrimaryKey[1]);
-
-        Node targetNode = tx.findNode(targetSearchLabel, targetPrimaryKey[0], targetPrimaryKey[1]);
-
-        Relationship relationshipFrom = startNode.createRelationshipTo(targetNode, RelationshipType.withName(TransactionDataParser.getRelationType(event)));
-        if (properties.size() > 0) properties.forEach(relationshipFrom::setProperty);
-
-    }
-
-    private void deleteRelation(JSONObject event) throws JSONException {
-
-        NodeFinder finder = new NodeFinder(event);
-        Label startSearchLabel = finder.getSearchLabel(NodeDirection.START);
-        Label targetSearchLabel = finder.getSearchLabel(NodeDirection.TARGET);
-
-        String[] startPrimaryKey = finder.getPrimaryKey(NodeDirection.START);
-        String[] targetPrimaryKey = finder.getPrimaryKey(NodeDirection.TARGET);
-
-
-        Node startNode = tx.findNode(startSearchLabel, startPrimaryKey[0], startPrimaryKey[1]);
-        Node targetNode = tx.findNode(targetSearchLabel, targetPrimaryKey[0], targetPrimaryKey[1]);
-
-        for (Relationship relationship : startNode.getRelationships(Direction.OUTGOING, RelationshipType.withName(TransactionDataParser.getRelationType(event)))) {
-            if (relationship.getEndNode().equals(targetNode)) relationship.delete();
         }
 
-    }
+        @Override
+        public void addRelation(TransactionEvent.AddRelation event) {
 
+            NodeFinder finder = new NodeFinder(event, schemaProvisioner, nodeLookupCache);
 
+            // first try and find the nodes.  If they don't exist we must create them.
+            Node startNode = finder.findNode(tx, NodeDirection.START);
+            Node targetNode = finder.findNode(tx, NodeDirection.TARGET);
 
-    private void changeNodeProperties(JSONObject event) throws JSONException {
+            Relationship relationshipFrom = startNode.createRelationshipTo(targetNode, event.getRelationshipType());
+            event.getProperties().forEach(relationshipFrom::setProperty);
 
-        // not very elegant, but works.  Might be able to make a little less verbose
-        // without being cryptic.
+        }
 
-        NodeFinder finder = new NodeFinder(event);
-        Label searchLabel = finder.getSearchLabel();
-        String[] primaryKey = finder.getPrimaryKey();
-        Map<String, Object> changedProperties = TransactionDataParser.getChangedProperties(event);
-        String[] removedPropertyKeys = TransactionDataParser.getRemovedProperties(event);
-        // we need the primary key to find the node
+        @Override
+        public void deleteRelation(TransactionEvent.DeleteRelation event) {
 
-        Node foundNode = tx.findNode(searchLabel, primaryKey[0], primaryKey[1]);
+            NodeFinder finder = new NodeFinder(event, schemaProvisioner, nodeLookupCache);
+            Node startNode = finder.findNode(tx, NodeDirection.START);
+            Node targetNode = finder.findNode(tx, NodeDirection.TARGET);
 
-        for (String removedPropertyKey : removedPropertyKeys) {
-            foundNode.removeProperty(removedPropertyKey);
-        }
+            for (Relationship relationship : new RelationshipFinder(event).findRelationships(startNode, targetNode)) {
+                relationship.delete();
+            }
 
-        for (Map.Entry<String, Object> entry : changedProperties.entrySet()) {
-            foundNode.setProperty(entry.getKey(), entry.getValue());
         }
 
-    }
+        @Override
+        public void changeNodeProperties(TransactionEvent.NodePropertyChange event) {
 
-    private void changeRelationProperties(JSONObject event) throws JSONException {
+            // we need the primary key to find the node
+            Node foundNode = new NodeFinder(event, schemaProvisioner, nodeLookupCache).findNode(tx);
 
-        NodeFinder finder = new NodeFinder(event);
-        Label startSearchLabel = finder.getSearchLabel(NodeDirection.START);
-        Label targetSearchLabel = finder.getSearchLabel(NodeDirection.TARGET);
+            for (String removedPropertyKey : event.getRemovedProperties()) {
+                foundNode.removeProperty(removedPropertyKey);
+                nodeLookupCache.propertyChanged(removedPropertyKey);
+            }
 
-        String[] startPrimaryKey = finder.getPrimaryKey(NodeDirection.START);
-        String[] targetPrimaryKey = finder.getPrimaryKey(NodeDirection.TARGET);
-        Map<String, Object> properties = TransactionDataParser.getChangedProperties(event);
-        String[] removedProperties = TransactionDataParser.getRemovedProperties(event);
+            for (Map.Entry<String, Object> entry : event.getChangedProperties().entrySet()) {
+                foundNode.setProperty(entry.getKey(), entry.getValue());
+                nodeLookupCache.propertyChanged(entry.getKey());
+            }
 
-        Node startNode = tx.findNode(startSearchLabel, startPrimaryKey[0], startPrimaryKey[1]);
-        Node targetNode = tx.findNode(targetSearchLabel, targetPrimaryKey[0], targetPrimaryKey[1]);
-        Relationship singleRelationship = startNode.getSingleRelationship(RelationshipType.withName(TransactionDataParser.getRelationType(event)), Direction.OUTGOING);
-        // make sure it's the relationship between the start and target nodes.
+        }
 
-        if (singleRelationship.getEndNode().equals(targetNode)) {
+        @Override
+        public void changeRelationProperties(TransactionEvent.RelationPropertyChange event) {
 
-            for (String removedProperty : removedProperties) {
-                singleRelationship.removeProperty(removedProperty);
+            NodeFinder finder = new NodeFinder(event, schemaProvisioner, nodeLookupCache);
+            Node startNode = finder.findNode(tx, NodeDirection.START);
+            Node targetNode = finder.findNode(tx, NodeDirection.TARGET);
+            for (Relationship relationship : new RelationshipFinder(event).findRelationships(startNode, targetNode)) {
+                for (String removedProperty : event.getRemovedProperties()) {
+                    relationship.removeProperty(removedProperty);
+                }
+                event.getChangedProperties().forEach(relationship::setProperty);
             }
-            if (properties.size() > 0) properties.forEach(singleRelationship::setProperty);
-        }
 
+        }
     }
 
 }
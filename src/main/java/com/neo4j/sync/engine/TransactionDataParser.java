@@ -5,14 +5,17 @@ import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * com.neo4j.sync.engine.TransactionDataParser class is used to decode the JSON transaction data message recorded
- * by the transaction event listener to a TransactionRecord node in the database.  It is used by both the
- * GraphWriter and the TransactionDataHandler.
+ * by the transaction event listener to a TransactionRecord node in the database into a tree of JSONObjects.
+ * The apply path no longer uses it; the GraphWriter and the TransactionDataHandler consume the typed events of
+ * the streaming TransactionEventDecoder instead.
  *
  * @author Chris Upkes
  */
@@ -34,12 +37,17 @@ public class TransactionDataParser {
     public static final String PRIMARY_KEY1 = PRIMARY_KEY;
     public static final String PROPERTIES_KEY = "propertyName";
     public static final String NEW_VALUE = "newValue";
+    public static final String OLD_VALUE = "oldValue";
     public static final String ALL_PROPERTIES_KEY = "allProperties";
     public static final String CHANGE_TYPE_KEY = "changeType";
     public static final String RELATIONSHIP_LABEL_KEY = "relationshipLabel";
     public static final String TRANSACTION_EVENTS_KEY = "transactionEvents";
     public static final String CHANGED_PROPERTIES_KEY = "properties";
     public static final String REGEX = ",";
+    // delete nodes, delete relationships, add nodes, add relations, add node properties,
+    // node property changes and relation property changes.
+    private static final String[] APPLY_ORDER = {DELETE_NODE, DELETE_RELATION, ADD_NODE, ADD_RELATION,
+            ADD_NODE_PROPERTIES, NODE_PROPERTY_CHANGE, RELATION_PROPERTY_CHANGE};
 
 
     public static JSONObject TranslateTransactionData(String transactionData) throws JSONException {
@@ -59,39 +67,79 @@ public class TransactionDataParser {
 
 
         // now that we have our list, we need to segregate into event change types.
-        // so here we add each event to a list of maps: (change type string, event jason object)
-
+        // so here we add each event to a list of maps: (change type string, event jason object),
+        // bucketed in one pass in the order the change types are applied.
+        Map<String, List<Map<String, JSONObject>>> buckets = new LinkedHashMap<>();
+        for (String changeType : APPLY_ORDER) {
+            buckets.put(changeType, new ArrayList<>());
+        }
+        for (int i = 0; i < events.length(); i++) {
+            JSONObject event = (JSONObject) events.get(i);
+            String changeType = event.get(CHANGE_TYPE_KEY).toString();
+            List<Map<String, JSONObject>> bucket = buckets.get(changeType);
+            if (bucket != null) {
+                bucket.add(Collections.singletonMap(changeType, event));
+            }
+        }
+        for (List<Map<String, JSONObject>> bucket : buckets.values()) {
+            eventsList.addAll(bucket);
+        }
 
-        // delete nodes sorted first
-        sortEvents(events, eventsList, DELETE_NODE);
-        // delete relationships second
-        sortEvents(events, eventsList, DELETE_RELATION);
-        // add nodes third
-        sortEvents(events, eventsList, ADD_NODE);
-        // add relation fourth
-        sortEvents(events, eventsList, ADD_RELATION);
-        // add node properties fifth
-        sortEvents(events, eventsList,  ADD_NODE_PROPERTIES);
-        // add node property change sixth
-        sortEvents(events, eventsList, NODE_PROPERTY_CHANGE);
-        // rel property change seventh
-        sortEvents(events, eventsList, RELATION_PROPERTY_CHANGE);
+        return eventsList;
+    }
 
+    // events decoded from a BINARY payload, shaped and sorted exactly like the ones parsed from JSON.
+    public static List<Map<String, JSONObject>> getTransactionEvents(List<Audit> audits) throws JSONException {
 
-        return eventsList;
+        JSONArray events = new JSONArray();
+        for (Audit audit : audits) {
+            events.put(toEvent(audit));
+        }
+        return getTransactionEvents(new JSONObject().put(TRANSACTION_EVENTS_KEY, events));
     }
 
-    private static void sortEvents(JSONArray events, List<Map<String, JSONObject>> eventsList, String changeType) throws JSONException {
-        for (int i = 0; i < events.length(); i++)  {
-            JSONObject event = (JSONObject) events.get(i);
-            if (event.get(CHANGE_TYPE_KEY).toString().equals(changeType)) {
-                Map<String,JSONObject> changeTypeEventMap = new HashMap<>();
-                changeTypeEventMap.put(event.get(CHANGE_TYPE_KEY).toString(), event);
-                eventsList.add(changeTypeEventMap);
+    private static JSONObject toEvent(Audit audit) throws JSONException {
+
+        JSONObject event = new JSONObject();
+        event.put(CHANGE_TYPE_KEY, orNull(audit.getChangeType()));
+        event.put(ADD_NODE_LABEL_KEY, audit.getNodeLabels() == null ? JSONObject.NULL : new JSONArray(audit.getNodeLabels()));
+        event.put(PRIMARY_KEY, toJSONObject(audit.getPrimaryKey()));
+        event.put(RELATIONSHIP_LABEL_KEY, orNull(audit.getRelationshipLabel()));
+        event.put(TARGET_NODE_LABEL_KEY, audit.getTargetNodeLabels() == null ? JSONObject.NULL : new JSONArray(audit.getTargetNodeLabels()));
+        event.put(TARGET_PRIMARY_KEY, toJSONObject(audit.getTargetPrimaryKey()));
+        event.put(ALL_PROPERTIES_KEY, toJSONObject(audit.getAllProperties()));
+        if (audit.getProperties() == null) {
+            event.put(CHANGED_PROPERTIES_KEY, JSONObject.NULL);
+        } else {
+            JSONArray changes = new JSONArray();
+            for (PropertyChange change : audit.getProperties()) {
+                JSONObject banda = new JSONObject();
+                banda.put(PROPERTIES_KEY, change.getPropertyName());
+                banda.put(OLD_VALUE, orNull(change.getOldValue()));
+                banda.put(NEW_VALUE, orNull(change.getNewValue()));
+                changes.put(banda);
             }
+            event.put(CHANGED_PROPERTIES_KEY, changes);
+        }
+        return event;
+    }
+
+    private static Object toJSONObject(Map<String, Object> values) throws JSONException {
+
+        if (values == null) {
+            return JSONObject.NULL;
         }
+        JSONObject object = new JSONObject();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            object.put(entry.getKey(), orNull(entry.getValue()));
+        }
+        return object;
     }
 
+    // Jettison drops keys put with a null value.
+    private static Object orNull(Object value) {
+        return value == null ? JSONObject.NULL : value;
+    }
 
     private static Map<String,Object> getKeyValueComponents(JSONObject event, ParseType parseType) throws JSONException {
 
@@ -0,0 +1,315 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * com.neo4j.sync.engine.TransactionEvent is one change of a replicated transaction as the apply side sees it.
+ * There is one immutable subclass per change type: AddNode, DeleteNode and NodePropertyChange carry the labels
+ * and primary key of the node; AddRelation, DeleteRelation and RelationPropertyChange carry the relationship
+ * type, the labels and primary keys of both ends and, when the source had one, the key of the relationship
+ * itself.  Property values and primary keys keep the type they had
+ * at the source.  Events are built by the TransactionEventDecoder and handed to a Visitor, so the
+ * TransactionDataHandler and GraphWriter get the event type they apply without switching on the change type.
+ */
+
+public abstract class TransactionEvent {
+
+    private static final Label LOCAL_TRANSACTION_LABEL = Label.label("LocalTx");
+
+    private final List<Label> labels;
+    private final Map<String, Object> primaryKey;
+
+    private TransactionEvent(List<String> labels, Map<String, Object> primaryKey) {
+        this.labels = withLocalTx(labels);
+        this.primaryKey = readOnly(primaryKey);
+    }
+
+    // the event for a decoded change; changed and removed are only used by property changes.
+    static TransactionEvent of(ChangeType changeType, List<String> nodeLabels, Map<String, Object> primaryKey,
+                               String relationshipType, List<String> targetNodeLabels,
+                               Map<String, Object> targetPrimaryKey, Map<String, Object> relationshipKey,
+                               Map<String, Object> allProperties,
+                               Map<String, Object> changed, List<String> removed) {
+        switch (changeType) {
+            case ADD_NODE:
+                return new AddNode(nodeLabels, primaryKey, allProperties);
+            case DELETE_NODE:
+                return new DeleteNode(nodeLabels, primaryKey);
+            case NODE_PROPERTY_CHANGE:
+                return new NodePropertyChange(nodeLabels, primaryKey, changed, removed);
+            case ADD_RELATION:
+                return new AddRelation(nodeLabels, primaryKey, relationshipType, targetNodeLabels, targetPrimaryKey,
+                        relationshipKey, allProperties);
+            case DELETE_RELATION:
+                return new DeleteRelation(nodeLabels, primaryKey, relationshipType, targetNodeLabels,
+                        targetPrimaryKey, relationshipKey);
+            case RELATION_PROPERTY_CHANGE:
+                return new RelationPropertyChange(nodeLabels, primaryKey, relationshipType, targetNodeLabels,
+                        targetPrimaryKey, relationshipKey, changed, removed);
+            default:
+                throw new IllegalArgumentException("unknown change type " + changeType);
+        }
+    }
+
+    public abstract ChangeType getChangeType();
+
+    public abstract void accept(Visitor visitor);
+
+    // the captured labels followed by LocalTx, which every replicated node carries.
+    public List<Label> getLabels() {
+        return labels;
+    }
+
+    // the labels of the node, or of one end of a relationship; null for the target of a node event.
+    public List<Label> getLabels(NodeDirection direction) {
+        return direction == NodeDirection.TARGET ? null : labels;
+    }
+
+    // null for an event captured without a primary key.
+    public Map<String, Object> getPrimaryKey() {
+        return primaryKey;
+    }
+
+    public Map<String, Object> getPrimaryKey(NodeDirection direction) {
+        return direction == NodeDirection.TARGET ? null : primaryKey;
+    }
+
+    private static List<Label> withLocalTx(List<String> labels) {
+        if (labels == null) {
+            return Collections.singletonList(LOCAL_TRANSACTION_LABEL);
+        }
+        Label[] withLocalTx = new Label[labels.size() + 1];
+        for (int i = 0; i < labels.size(); i++) {
+            withLocalTx[i] = Label.label(labels.get(i));
+        }
+        withLocalTx[labels.size()] = LOCAL_TRANSACTION_LABEL;
+        return Collections.unmodifiableList(Arrays.asList(withLocalTx));
+    }
+
+    private static Map<String, Object> readOnly(Map<String, Object> values) {
+        return values == null ? null : Collections.unmodifiableMap(values);
+    }
+
+    private static Map<String, Object> readOnlyOrEmpty(Map<String, Object> values) {
+        return values == null ? Collections.emptyMap() : Collections.unmodifiableMap(values);
+    }
+
+    private static List<String> readOnlyOrEmpty(List<String> values) {
+        return values == null ? Collections.emptyList() : Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Receives each event as its own type.
+     */
+    public interface Visitor {
+
+        void addNode(AddNode event);
+
+        void deleteNode(DeleteNode event);
+
+        void changeNodeProperties(NodePropertyChange event);
+
+        void addRelation(AddRelation event);
+
+        void deleteRelation(DeleteRelation event);
+
+        void changeRelationProperties(RelationPropertyChange event);
+    }
+
+    public static final class AddNode extends TransactionEvent {
+        private final Map<String, Object> properties;
+
+        AddNode(List<String> labels, Map<String, Object> primaryKey, Map<String, Object> properties) {
+            super(labels, primaryKey);
+            this.properties = readOnlyOrEmpty(properties);
+        }
+
+        public Map<String, Object> getProperties() {
+            return properties;
+        }
+
+        @Override
+        public ChangeType getChangeType() {
+            return ChangeType.ADD_NODE;
+        }
+
+        @Override
+        public void accept(Visitor visitor) {
+            visitor.addNode(this);
+        }
+    }
+
+    public static final class DeleteNode extends TransactionEvent {
+
+        DeleteNode(List<String> labels, Map<String, Object> primaryKey) {
+            super(labels, primaryKey);
+        }
+
+        @Override
+        public ChangeType getChangeType() {
+            return ChangeType.DELETE_NODE;
+        }
+
+        @Override
+        public void accept(Visitor visitor) {
+            visitor.deleteNode(this);
+        }
+    }
+
+    public static final class NodePropertyChange extends TransactionEvent {
+        private final Map<String, Object> changedProperties;
+        private final List<String> removedProperties;
+
+        NodePropertyChange(List<String> labels, Map<String, Object> primaryKey, Map<String, Object> changed,
+                           List<String> removed) {
+            super(labels, primaryKey);
+            this.changedProperties = readOnlyOrEmpty(changed);
+            this.removedProperties = readOnlyOrEmpty(removed);
+        }
+
+        // the new values of the properties the change sets.
+        public Map<String, Object> getChangedProperties() {
+            return changedProperties;
+        }
+
+        // the names of the properties the change removes.
+        public List<String> getRemovedProperties() {
+            return removedProperties;
+        }
+
+        @Override
+        public ChangeType getChangeType() {
+            return ChangeType.NODE_PROPERTY_CHANGE;
+        }
+
+        @Override
+        public void accept(Visitor visitor) {
+            visitor.changeNodeProperties(this);
+        }
+    }
+
+    /**
+     * A change to a relationship, identified by its type and the primary keys of its start and end nodes, and
+     * among the relationships of that type between them by its relationship key.
+     */
+    public abstract static class RelationshipEvent extends TransactionEvent {
+        private final RelationshipType relationshipType;
+        private final List<Label> targetLabels;
+        private final Map<String, Object> targetPrimaryKey;
+        private final Map<String, Object> relationshipKey;
+
+        private RelationshipEvent(List<String> labels, Map<String, Object> primaryKey, String relationshipType,
+                                  List<String> targetLabels, Map<String, Object> targetPrimaryKey,
+                                  Map<String, Object> relationshipKey) {
+            super(labels, primaryKey);
+            this.relationshipType = relationshipType == null ? null : RelationshipType.withName(relationshipType);
+            this.targetLabels = withLocalTx(targetLabels);
+            this.targetPrimaryKey = readOnly(targetPrimaryKey);
+            this.relationshipKey = readOnly(relationshipKey);
+        }
+
+        public RelationshipType getRelationshipType() {
+            return relationshipType;
+        }
+
+        // the property that tells the relationship apart from others of its type between the same nodes; null for
+        // a relationship captured without one.
+        public Map<String, Object> getRelationshipKey() {
+            return relationshipKey;
+        }
+
+        @Override
+        public List<Label> getLabels(NodeDirection direction) {
+            return direction == NodeDirection.TARGET ? targetLabels : getLabels();
+        }
+
+        @Override
+        public Map<String, Object> getPrimaryKey(NodeDirection direction) {
+            return direction == NodeDirection.TARGET ? targetPrimaryKey : getPrimaryKey();
+        }
+    }
+
+    public static final class AddRelation extends RelationshipEvent {
+        private final Map<String, Object> properties;
+
+        AddRelation(List<String> labels, Map<String, Object> primaryKey, String relationshipType,
+                    List<String> targetLabels, Map<String, Object> targetPrimaryKey, Map<String, Object> relationshipKey,
+                    Map<String, Object> properties) {
+            super(labels, primaryKey, relationshipType, targetLabels, targetPrimaryKey, relationshipKey);
+            this.properties = readOnlyOrEmpty(properties);
+        }
+
+        public Map<String, Object> getProperties() {
+            return properties;
+        }
+
+        @Override
+        public ChangeType getChangeType() {
+            return ChangeType.ADD_RELATION;
+        }
+
+        @Override
+        public void accept(Visitor visitor) {
+            visitor.addRelation(this);
+        }
+    }
+
+    public static final class DeleteRelation extends RelationshipEvent {
+
+        DeleteRelation(List<String> labels, Map<String, Object> primaryKey, String relationshipType,
+                       List<String> targetLabels, Map<String, Object> targetPrimaryKey,
+                       Map<String, Object> relationshipKey) {
+            super(labels, primaryKey, relationshipType, targetLabels, targetPrimaryKey, relationshipKey);
+        }
+
+        @Override
+        public ChangeType getChangeType() {
+            return ChangeType.DELETE_RELATION;
+        }
+
+        @Override
+        public void accept(Visitor visitor) {
+            visitor.deleteRelation(this);
+        }
+    }
+
+    public static final class RelationPropertyChange extends RelationshipEvent {
+        private final Map<String, Object> changedProperties;
+        private final List<String> removedProperties;
+
+        RelationPropertyChange(List<String> labels, Map<String, Object> primaryKey, String relationshipType,
+                               List<String> targetLabels, Map<String, Object> targetPrimaryKey,
+                               Map<String, Object> relationshipKey, Map<String, Object> changed,
+                               List<String> removed) {
+            super(labels, primaryKey, relationshipType, targetLabels, targetPrimaryKey, relationshipKey);
+            this.changedProperties = readOnlyOrEmpty(changed);
+            this.removedProperties = readOnlyOrEmpty(removed);
+        }
+
+        // the new values of the properties the change sets.
+        public Map<String, Object> getChangedProperties() {
+            return changedProperties;
+        }
+
+        // the names of the properties the change removes.
+        public List<String> getRemovedProperties() {
+            return removedProperties;
+        }
+
+        @Override
+        public ChangeType getChangeType() {
+            return ChangeType.RELATION_PROPERTY_CHANGE;
+        }
+
+        @Override
+        public void accept(Visitor visitor) {
+            visitor.changeRelationProperties(this);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.neo4j.sync.engine;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jettison.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * com.neo4j.sync.engine.TransactionEventDecoder turns the transaction data of a TransactionRecord into the
+ * TransactionEvents the apply side consumes.  JSON payloads are read once, token by token, with a streaming
+ * parser: each event is built as its fields go by and dropped into the bucket for its change type, and the fields
+ * the apply side has no use for are skipped without being materialized.  BINARY payloads and locally captured
+ * changes are converted straight from their Audit records.  Values keep their type: integers arrive as longs,
+ * decimals as doubles, arrays as typed arrays and temporal and spatial values as themselves (see PropertyValues).
+ * Events of an unknown change type are ignored, as they always have been.
+ */
+
+public final class TransactionEventDecoder {
+
+    private static final String NODE_LABELS_KEY = "nodeLabels";
+    private static final String TARGET_NODE_LABELS_KEY = "targetNodeLabels";
+    private static final String RELATIONSHIP_KEY = "relationshipKey";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Map<String, ChangeType> CHANGE_TYPES = new HashMap<>();
+
+    static {
+        for (ChangeType changeType : ChangeType.values()) {
+            CHANGE_TYPES.put(changeType.getEventName(), changeType);
+        }
+    }
+
+    private TransactionEventDecoder() {
+    }
+
+    public static TransactionEvents decode(String transactionData) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createJsonParser(transactionData)) {
+            return readTransaction(parser);
+        }
+    }
+
+    // a UTF-8 encoded payload, decoded without building a String first.
+    public static TransactionEvents decode(byte[] transactionData) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createJsonParser(transactionData)) {
+            return readTransaction(parser);
+        }
+    }
+
+    public static TransactionEvents decode(JSONObject transactionData) throws IOException {
+        return decode(transactionData.toString());
+    }
+
+    // a single event already parsed into a JSONObject.
+    public static TransactionEvent decodeEvent(JSONObject event) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createJsonParser(event.toString())) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            return readEvent(parser);
+        }
+    }
+
+    // events decoded from a BINARY payload or captured locally.
+    public static TransactionEvents decode(List<Audit> audits) {
+        TransactionEvents events = new TransactionEvents();
+        for (Audit audit : audits) {
+            ChangeType changeType = audit.getChangeType() == null ? null : CHANGE_TYPES.get(audit.getChangeType());
+            if (changeType == null) {
+                continue;
+            }
+            Map<String, Object> changed = null;
+            List<String> removed = null;
+            if (audit.getProperties() != null) {
+                changed = new LinkedHashMap<>();
+                removed = new ArrayList<>();
+                for (PropertyChange change : audit.getProperties()) {
+                    addChange(change.getPropertyName(), change.getNewValue(), changed, removed);
+                }
+            }
+            events.add(TransactionEvent.of(changeType, audit.getNodeLabels(), audit.getPrimaryKey(),
+                    audit.getRelationshipLabel(), audit.getTargetNodeLabels(), audit.getTargetPrimaryKey(),
+                    audit.getRelationshipKey(), audit.getAllProperties(), changed, removed));
+        }
+        return events;
+    }
+
+    private static TransactionEvents readTransaction(JsonParser parser) throws IOException {
+        TransactionEvents events = new TransactionEvents();
+        boolean found = false;
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (TransactionDataParser.TRANSACTION_EVENTS_KEY.equals(field)) {
+                expect(parser, token, JsonToken.START_ARRAY);
+                found = true;
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    TransactionEvent event = readEvent(parser);
+                    if (event != null) {
+                        events.add(event);
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (!found) {
+            throw new IOException("Transaction data has no " + TransactionDataParser.TRANSACTION_EVENTS_KEY);
+        }
+        return events;
+    }
+
+    // reads the event the parser is positioned at; null if its change type is not one the apply side knows.
+    private static TransactionEvent readEvent(JsonParser parser) throws IOException {
+        String changeType = null;
+        List<String> nodeLabels = null;
+        Map<String, Object> primaryKey = null;
+        String relationshipType = null;
+        List<String> targetNodeLabels = null;
+        Map<String, Object> targetPrimaryKey = null;
+        Map<String, Object> relationshipKey = null;
+        Map<String, Object> allProperties = null;
+        Map<String, Object> changed = null;
+        List<String> removed = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case TransactionDataParser.CHANGE_TYPE_KEY:
+                    changeType = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                    break;
+                case NODE_LABELS_KEY:
+                    nodeLabels = readStrings(parser, token);
+                    break;
+                case TransactionDataParser.PRIMARY_KEY:
+                    primaryKey = readMap(parser, token);
+                    break;
+                case TransactionDataParser.RELATIONSHIP_LABEL_KEY:
+                    relationshipType = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                    break;
+                case TARGET_NODE_LABELS_KEY:
+                    targetNodeLabels = readStrings(parser, token);
+                    break;
+                case TransactionDataParser.TARGET_PRIMARY_KEY:
+                    targetPrimaryKey = readMap(parser, token);
+                    break;
+                case RELATIONSHIP_KEY:
+                    relationshipKey = readMap(parser, token);
+                    break;
+                case TransactionDataParser.ALL_PROPERTIES_KEY:
+                    allProperties = readMap(parser, token);
+                    break;
+                case TransactionDataParser.CHANGED_PROPERTIES_KEY:
+                    if (token == JsonToken.START_ARRAY) {
+                        changed = new LinkedHashMap<>();
+                        removed = new ArrayList<>();
+                        readChanges(parser, changed, removed);
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        ChangeType type = changeType == null ? null : CHANGE_TYPES.get(changeType);
+        if (type == null) {
+            return null;
+        }
+        return TransactionEvent.of(type, nodeLabels, primaryKey, relationshipType, targetNodeLabels,
+                targetPrimaryKey, relationshipKey, allProperties, changed, removed);
+    }
+
+    private static void readChanges(JsonParser parser, Map<String, Object> changed, List<String> removed) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String propertyName = null;
+            Object newValue = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (TransactionDataParser.PROPERTIES_KEY.equals(field)) {
+                    propertyName = parser.getText();
+                } else if (TransactionDataParser.NEW_VALUE.equals(field)) {
+                    newValue = readValue(parser, token);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            addChange(propertyName, newValue, changed, removed);
+        }
+    }
+
+    // a change without a new value removes the property.
+    private static void addChange(String propertyName, Object newValue, Map<String, Object> changed, List<String> removed) {
+        if (newValue == null) {
+            removed.add(propertyName);
+        } else {
+            changed.put(propertyName, newValue);
+        }
+    }
+
+    private static List<String> readStrings(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            values.add(parser.getText());
+        }
+        return values;
+    }
+
+    private static Map<String, Object> readMap(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            values.put(name, readValue(parser, parser.nextToken()));
+        }
+        return values;
+    }
+
+    private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER
+                        ? parser.getText() : parser.getLongValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            case START_ARRAY:
+                List<Object> values = new ArrayList<>();
+                JsonToken next;
+                while ((next = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    values.add(readValue(parser, next));
+                }
+                return PropertyValues.toArray(values);
+            case START_OBJECT:
+                return PropertyValues.fromObject(readMap(parser, token));
+            default:
+                return parser.getText();
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken token, JsonToken expected) throws IOException {
+        if (token != expected) {
+            throw new IOException(String.format("Expected %s but found %s at %s", expected, token,
+                    parser.getCurrentLocation()));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.neo4j.sync.engine;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * com.neo4j.sync.engine.TransactionEvents holds the events of one replicated transaction bucketed by change type.
+ * Events are added in one pass as they are decoded and iterated in the order they must be applied: node deletes,
+ * relationship deletes, node creates, relationship creates, node property changes and relationship property
+ * changes, each in the order it was captured.
+ */
+
+public class TransactionEvents implements Iterable<TransactionEvent> {
+
+    private static final ChangeType[] APPLY_ORDER = {
+            ChangeType.DELETE_NODE,
+            ChangeType.DELETE_RELATION,
+            ChangeType.ADD_NODE,
+            ChangeType.ADD_RELATION,
+            ChangeType.NODE_PROPERTY_CHANGE,
+            ChangeType.RELATION_PROPERTY_CHANGE
+    };
+
+    @SuppressWarnings("unchecked")
+    private final List<TransactionEvent>[] buckets = new List[ChangeType.values().length];
+    private int size;
+
+    void add(TransactionEvent event) {
+        int bucket = event.getChangeType().ordinal();
+        if (buckets[bucket] == null) {
+            buckets[bucket] = new ArrayList<>();
+        }
+        buckets[bucket].add(event);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // the events of one change type, in capture order.
+    public List<TransactionEvent> get(ChangeType changeType) {
+        List<TransactionEvent> bucket = buckets[changeType.ordinal()];
+        return bucket == null ? List.of() : bucket;
+    }
+
+    // the i-th event in apply order.
+    public TransactionEvent get(int index) {
+        int remaining = index;
+        for (ChangeType changeType : APPLY_ORDER) {
+            List<TransactionEvent> bucket = get(changeType);
+            if (remaining < bucket.size()) {
+                return bucket.get(remaining);
+            }
+            remaining -= bucket.size();
+        }
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    @Override
+    public Iterator<TransactionEvent> iterator() {
+        return new Iterator<TransactionEvent>() {
+            private int bucket;
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                while (bucket < APPLY_ORDER.length) {
+                    if (position < get(APPLY_ORDER[bucket]).size()) {
+                        return true;
+                    }
+                    bucket++;
+                    position = 0;
+                }
+                return false;
+            }
+
+            @Override
+            public TransactionEvent next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(APPLY_ORDER[bucket]).get(position++);
+            }
+        };
+    }
+}
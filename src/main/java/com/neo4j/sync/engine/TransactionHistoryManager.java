@@ -1,6 +1,9 @@
 package com.neo4j.sync.engine;
 
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
 import java.lang.String;
@@ -9,6 +12,9 @@ import java.util.Map;
 
 /***
  * The transaction history manager is used to keep track of the latest transaction replicated to a target database.
+ * Replication is tracked by the sequence of the last TransactionRecord applied; the timestamp is kept for
+ * existing callers.  Records applied out of order, past that watermark, each leave an AppliedTransactionRecord
+ * marker committed with them, which goes once the watermark passes it.
  * @author Chris Upkes
  */
 public class TransactionHistoryManager {
@@ -17,6 +23,19 @@ public class TransactionHistoryManager {
     private final static String LOCAL_TIMESTAMP_QUERY = "MATCH (ltr:LastTransactionReplicated:LocalTx {uuid:'SINGLETON'}) RETURN ltr.lastTimeRecorded";
     private final static String UPDATE_LAST_TRANSACTION_TIMESTAMP_QUERY = "MERGE (ltr:LastTransactionReplicated:LocalTx {uuid:'SINGLETON'}) " +
             "SET ltr.lastTimeRecorded = toInteger(%d)";
+    public static final String LAST_SEQUENCE_REPLICATED = "ltr.lastSequenceReplicated";
+    private final static String LOCAL_SEQUENCE_QUERY = "MATCH (ltr:LastTransactionReplicated:LocalTx {uuid:'SINGLETON'}) RETURN ltr.lastSequenceReplicated";
+    private final static String UPDATE_LAST_SEQUENCE_QUERY = "MERGE (ltr:LastTransactionReplicated:LocalTx {uuid:'SINGLETON'}) " +
+            "SET ltr.lastSequenceReplicated = toInteger(%d)";
+    public static final String LAST_LOCAL_SEQUENCE_REPLICATED = "ltr.lastLocalSequenceReplicated";
+    private final static String LOCAL_TRANSPORT_SEQUENCE_QUERY = "MATCH (ltr:LastTransactionReplicated:LocalTx {uuid:'SINGLETON'}) RETURN ltr.lastLocalSequenceReplicated";
+    private final static String UPDATE_LAST_LOCAL_SEQUENCE_QUERY = "MERGE (ltr:LastTransactionReplicated:LocalTx {uuid:'SINGLETON'}) " +
+            "SET ltr.lastLocalSequenceReplicated = toInteger(%d)";
+    // LocalTx keeps the markers, like the watermark node, from being captured on the target.
+    private final static Label APPLIED_RECORD = Label.label("AppliedTransactionRecord");
+    private final static Label LOCAL_TX = Label.label("LocalTx");
+    private final static String APPLIED_SEQUENCE = "sequence";
+    private final static String CLEAR_APPLIED_QUERY = "MATCH (m:AppliedTransactionRecord) WHERE m.sequence <= %d DELETE m";
 
     public static Long getLastReplicationTimestamp(GraphDatabaseService gds) {
 
@@ -56,6 +75,71 @@ public class TransactionHistoryManager {
 
     }
 
+    // returns the sequence of the last TransactionRecord replicated, 0 if nothing has been replicated yet.
+    public static long getLastReplicatedSequence(GraphDatabaseService gds) {
+        return readSequence(gds, LOCAL_SEQUENCE_QUERY, LAST_SEQUENCE_REPLICATED);
+    }
 
-}
+    // returns the sequence of the last change set a LocalReplicationTransport applied, 0 if none has been yet.
+    // It is numbered apart from the TransactionRecords, so it has a watermark of its own.
+    public static long getLastLocalReplicatedSequence(GraphDatabaseService gds) {
+        return readSequence(gds, LOCAL_TRANSPORT_SEQUENCE_QUERY, LAST_LOCAL_SEQUENCE_REPLICATED);
+    }
+
+    private static long readSequence(GraphDatabaseService gds, String query, String column) {
+
+        long sequence = 0L;
+
+        try (Transaction tx = gds.beginTx();
+             Result result = tx.execute(query))
+        {
+            while (result.hasNext()) {
+                Object lastSequence = result.next().get(column);
+                if (lastSequence != null) {
+                    sequence = (long) lastSequence;
+                }
+            }
+            tx.commit();
+        } catch (Exception e){
+            System.out.println(e.getMessage());
+        }
+
+        return sequence;
+    }
+
+    public static void setLastReplicatedSequence(GraphDatabaseService gds, long sequence) {
 
+        try (Transaction tx = gds.beginTx()) {
+            setLastReplicatedSequence(tx, sequence);
+            tx.commit();
+        }
+    }
+
+    // moves the watermark in the caller's transaction, so it commits together with the records it covers.
+    public static void setLastReplicatedSequence(Transaction tx, long sequence) {
+        tx.execute(String.format(UPDATE_LAST_SEQUENCE_QUERY, sequence));
+    }
+
+    // moves the local transport's watermark in the caller's transaction.
+    public static void setLastLocalReplicatedSequence(Transaction tx, long sequence) {
+        tx.execute(String.format(UPDATE_LAST_LOCAL_SEQUENCE_QUERY, sequence));
+    }
+
+    // marks the record as applied in the caller's transaction, so it commits together with the record.
+    public static void markApplied(Transaction tx, long sequence) {
+        tx.createNode(APPLIED_RECORD, LOCAL_TX).setProperty(APPLIED_SEQUENCE, sequence);
+    }
+
+    // true if the record was applied past the watermark and the watermark has not passed it since.
+    public static boolean isApplied(Transaction tx, long sequence) {
+        try (ResourceIterator<Node> markers = tx.findNodes(APPLIED_RECORD, APPLIED_SEQUENCE, sequence)) {
+            return markers.hasNext();
+        }
+    }
+
+    // moves the watermark and drops the markers it now covers.
+    public static void setLastReplicatedSequenceAndClearApplied(Transaction tx, long sequence) {
+        setLastReplicatedSequence(tx, sequence);
+        tx.execute(String.format(CLEAR_APPLIED_QUERY, sequence));
+    }
+}
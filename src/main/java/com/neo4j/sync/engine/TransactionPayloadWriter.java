@@ -0,0 +1,191 @@
+package com.neo4j.sync.engine;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * com.neo4j.sync.engine.TransactionPayloadWriter serializes the audit records of a transaction into the
+ * transaction data payload stored on the TransactionRecord.
+ * The events are streamed with a generator from one shared, preconfigured factory into a per-thread buffer
+ * that is reused from one transaction to the next, and the transactionEvents envelope is written in the same
+ * pass, so each transaction is serialized exactly once.  The JSON produced is the same as the ObjectMapper
+ * bean serialization of the Audit list it replaces, except for property values: arrays, temporal and spatial
+ * values are written by PropertyValues so that the target can restore their type.
+ */
+
+public final class TransactionPayloadWriter {
+
+    private static final String NODE_LABELS_KEY = "nodeLabels";
+    private static final String NODE_KEY = "nodeKey";
+    private static final String TARGET_NODE_LABELS_KEY = "targetNodeLabels";
+    private static final String TARGET_NODE_KEY = "targetNodeKey";
+    private static final String RELATIONSHIP_KEY = "relationshipKey";
+    private static final String UUID_KEY = "uuid";
+    private static final String TIMESTAMP_KEY = "timestamp";
+    private static final String TRANSACTION_ID_KEY = "transactionId";
+    private static final String OLD_VALUE_KEY = "oldValue";
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    // a single huge transaction shouldn't pin its buffer to the thread for good.
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getJsonFactory();
+    private static final ThreadLocal<PayloadBuffer> BUFFER = ThreadLocal.withInitial(PayloadBuffer::new);
+
+    private TransactionPayloadWriter() {
+    }
+
+    // returns the UTF-8 encoded payload.
+    public static byte[] write(List<Audit> audits) throws IOException {
+        PayloadBuffer buffer = serialize(audits);
+        try {
+            return Arrays.copyOf(buffer.bytes(), buffer.size());
+        } finally {
+            release(buffer);
+        }
+    }
+
+    // returns the payload as a String, decoded straight from the reusable buffer.
+    public static String writeString(List<Audit> audits) throws IOException {
+        PayloadBuffer buffer = serialize(audits);
+        try {
+            return new String(buffer.bytes(), 0, buffer.size(), StandardCharsets.UTF_8);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private static PayloadBuffer serialize(List<Audit> audits) throws IOException {
+        PayloadBuffer buffer = BUFFER.get();
+        buffer.reset();
+        try (JsonGenerator generator = JSON_FACTORY.createJsonGenerator(buffer, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeFieldName(TransactionDataParser.TRANSACTION_EVENTS_KEY);
+            generator.writeStartArray();
+            for (Audit audit : audits) {
+                writeAudit(generator, audit);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException | RuntimeException e) {
+            release(buffer);
+            throw e;
+        }
+        return buffer;
+    }
+
+    private static void writeAudit(JsonGenerator generator, Audit audit) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField(TransactionDataParser.CHANGE_TYPE_KEY, audit.getChangeType());
+        writeStrings(generator, NODE_LABELS_KEY, audit.getNodeLabels());
+        writeMap(generator, TransactionDataParser.PRIMARY_KEY, audit.getPrimaryKey());
+        writeMap(generator, NODE_KEY, audit.getNodeKey());
+        generator.writeStringField(TransactionDataParser.RELATIONSHIP_LABEL_KEY, audit.getRelationshipLabel());
+        writeStrings(generator, TARGET_NODE_LABELS_KEY, audit.getTargetNodeLabels());
+        writeMap(generator, TransactionDataParser.TARGET_PRIMARY_KEY, audit.getTargetPrimaryKey());
+        writeChanges(generator, audit.getProperties());
+        writeMap(generator, TransactionDataParser.ALL_PROPERTIES_KEY, audit.getAllProperties());
+        generator.writeStringField(UUID_KEY, audit.getUuid());
+        generator.writeFieldName(TIMESTAMP_KEY);
+        writeValue(generator, audit.getTimestamp());
+        generator.writeStringField(TRANSACTION_ID_KEY, audit.getTransactionId());
+        writeMap(generator, TARGET_NODE_KEY, audit.getTargetNodeKey());
+        writeMap(generator, RELATIONSHIP_KEY, audit.getRelationshipKey());
+        generator.writeEndObject();
+    }
+
+    private static void writeStrings(JsonGenerator generator, String fieldName, List<String> values) throws IOException {
+        generator.writeFieldName(fieldName);
+        if (values == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartArray();
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeMap(JsonGenerator generator, String fieldName, Map<String, Object> values) throws IOException {
+        generator.writeFieldName(fieldName);
+        if (values == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            writeValue(generator, entry.getValue());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeChanges(JsonGenerator generator, List<PropertyChange> changes) throws IOException {
+        generator.writeFieldName(TransactionDataParser.CHANGED_PROPERTIES_KEY);
+        if (changes == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartArray();
+        for (PropertyChange change : changes) {
+            generator.writeStartObject();
+            generator.writeStringField(TransactionDataParser.PROPERTIES_KEY, change.getPropertyName());
+            generator.writeFieldName(OLD_VALUE_KEY);
+            writeValue(generator, change.getOldValue());
+            generator.writeFieldName(TransactionDataParser.NEW_VALUE);
+            writeValue(generator, change.getNewValue());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else {
+            // arrays, temporal and spatial values keep their type.
+            PropertyValues.write(generator, value);
+        }
+    }
+
+    private static void release(PayloadBuffer buffer) {
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            BUFFER.remove();
+        }
+    }
+
+    // exposes the backing array so the payload can be decoded or copied without an intermediate copy.
+    private static final class PayloadBuffer extends ByteArrayOutputStream {
+
+        private PayloadBuffer() {
+            super(INITIAL_CAPACITY);
+        }
+
+        private byte[] bytes() {
+            return buf;
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+    }
+}
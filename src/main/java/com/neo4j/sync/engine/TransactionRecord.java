@@ -1,33 +1,117 @@
 package com.neo4j.sync.engine;
 
 
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
 /**
  * com.neo4j.sync.engine.TransactionRecord contains a collection of audit objects that reflect all of the changes resulting from
  * a single transaction.  I created this class with the assumption that the system may want to
  * serialize the transaction data in numerous ways.  This class is where a calling system would define
  * API requirements for retrieving the transaction data in another format.
- * i.e. getJSONTransactionData...getXMLTransactionData...at this writing we only support JSON.
+ * i.e. getJSONTransactionData...getXMLTransactionData...at this writing we support JSON and the BINARY
+ * encoding of the BinaryPayloadCodec.
+ * Instances are immutable so they can be handed from the committing thread to the TransactionRecordWriter.
  *
  * @author Chris Upkes
  */
 
 public class TransactionRecord {
+    public static final String TX_RECORD_LABEL = "TransactionRecord";
+    public static final String LOCAL_TX_LABEL = "LocalTx";
+    public static final String TX_RECORD_NODE_BEFORE_COMMIT_KEY = "transactionUUID";
+    public static final String TX_RECORD_STATUS_KEY = "status";
+    public static final String TX_RECORD_TX_DATA_KEY = "transactionData";
+    public static final String TX_RECORD_CREATE_TIME_KEY = "timeCreated";
+    public static final String TX_RECORD_INTERNAL_TX_ID_KEY = "internalTransactionId";
+    public static final String TX_RECORD_COMMIT_TIME_KEY = "commitTime";
+    public static final String TX_RECORD_PAYLOAD_KEY = "transactionPayload";
+    public static final String TX_RECORD_PAYLOAD_FORMAT_KEY = "payloadFormat";
+    public static final String TX_RECORD_PAYLOAD_CODEC_KEY = "payloadCodec";
+    public static final String TX_RECORD_SEQUENCE_KEY = TransactionSequence.SEQUENCE_KEY;
+    public static final String ST_TX_RECORD_TX_DATA_KEY = "transactionStatement";
+    public static final String ST_DATA_VALUE = "NO_STATEMENT";
+    public static final long NOT_COMMITTED = -1L;
+
     private final long timestampCreated;
     private final String status;
+    private final PayloadFormat payloadFormat;
+    private final PayloadCodec payloadCodec;
     private final String transactionData;
+    // BINARY or compressed payloads only.  Never modified once the record is built.
+    private final byte[] transactionPayload;
     private final String transactionUUID;
+    private final long internalTransactionId;
+    private final long commitTime;
+
     public TransactionRecord(long timestampCreated, String status, String transactionData, String transactionUUID) {
 
+        this(timestampCreated, status, PayloadFormat.JSON, PayloadCodec.NONE, wrapTransactionMessage(transactionData), null,
+                transactionUUID, NOT_COMMITTED, NOT_COMMITTED);
+    }
+
+    private TransactionRecord(long timestampCreated, String status, PayloadFormat payloadFormat, PayloadCodec payloadCodec,
+                              String transactionData, byte[] transactionPayload, String transactionUUID,
+                              long internalTransactionId, long commitTime) {
+
         this.timestampCreated = timestampCreated;
         this.status = status;
-        this.transactionData = this.wrapTransactionMessage(transactionData);
+        this.payloadFormat = payloadFormat;
+        this.payloadCodec = payloadCodec;
+        this.transactionData = transactionData;
+        this.transactionPayload = transactionPayload;
         this.transactionUUID = transactionUUID;
+        this.internalTransactionId = internalTransactionId;
+        this.commitTime = commitTime;
+    }
+
+    // builds a record around a payload that already carries the transactionEvents envelope,
+    // as written by the TransactionPayloadWriter.
+    public static TransactionRecord fromPayload(long timestampCreated, String status, String payload, String transactionUUID) {
+        return new TransactionRecord(timestampCreated, status, PayloadFormat.JSON, PayloadCodec.NONE, payload, null,
+                transactionUUID, NOT_COMMITTED, NOT_COMMITTED);
     }
 
+    // builds a record around a payload written by the BinaryPayloadCodec.
+    public static TransactionRecord fromBinaryPayload(long timestampCreated, String status, byte[] payload, String transactionUUID) {
+        return fromEncodedPayload(timestampCreated, status, PayloadFormat.BINARY, PayloadCodec.NONE, payload, transactionUUID);
+    }
+
+    // builds a record around a payload in the given format, already compressed with the given codec.
+    public static TransactionRecord fromEncodedPayload(long timestampCreated, String status, PayloadFormat payloadFormat,
+                                                       PayloadCodec payloadCodec, byte[] payload, String transactionUUID) {
+        return new TransactionRecord(timestampCreated, status, payloadFormat, payloadCodec, null, payload,
+                transactionUUID, NOT_COMMITTED, NOT_COMMITTED);
+    }
+
+    public PayloadFormat getPayloadFormat() {
+        return payloadFormat;
+    }
+
+    public PayloadCodec getPayloadCodec() {
+        return payloadCodec;
+    }
+
+    // the JSON payload; null for BINARY or compressed records.
     public String getTransactionData() {
         return transactionData;
     }
 
+    // the BINARY or compressed payload; null for uncompressed JSON records.
+    public byte[] getTransactionPayload() {
+        return transactionPayload;
+    }
+
+    // what the transaction log files record: the JSON itself, or a note of the encoded payload's size.
+    public String getLoggedTransactionData() {
+        if (transactionPayload != null) {
+            return String.format("{\"payloadFormat\":\"%s\",\"payloadCodec\":\"%s\",\"bytes\":%d}",
+                    payloadFormat, payloadCodec, transactionPayload.length);
+        }
+        return transactionData;
+    }
+
     public String getStatus() {
         return status;
     }
@@ -40,7 +124,50 @@ public class TransactionRecord {
         return transactionUUID;
     }
 
-    private String wrapTransactionMessage(String transactionData) {
+    public long getInternalTransactionId() {
+        return internalTransactionId;
+    }
+
+    public long getCommitTime() {
+        return commitTime;
+    }
+
+    public boolean isCommitted() {
+        return internalTransactionId != NOT_COMMITTED;
+    }
+
+    // returns a copy of this record stamped with the commit information of the captured transaction.
+    public TransactionRecord committed(long internalTransactionId, long commitTime) {
+        return new TransactionRecord(timestampCreated, status, payloadFormat, payloadCodec, transactionData,
+                transactionPayload, transactionUUID, internalTransactionId, commitTime);
+    }
+
+    // writes this record as a TransactionRecord node using the supplied transaction.
+    // the LocalTx label keeps the ReplicationJudge from capturing the write.  The sequence is assigned here,
+    // by the transaction that persists the record, so it follows the order in which records are committed.
+    public Node createNode(Transaction tx) {
+        Node txRecordNode = tx.createNode(Label.label(TX_RECORD_LABEL));
+        txRecordNode.addLabel(Label.label(LOCAL_TX_LABEL));
+        txRecordNode.setProperty(TX_RECORD_STATUS_KEY, status);
+        txRecordNode.setProperty(TX_RECORD_CREATE_TIME_KEY, timestampCreated);
+        txRecordNode.setProperty(TX_RECORD_NODE_BEFORE_COMMIT_KEY, transactionUUID);
+        txRecordNode.setProperty(TX_RECORD_PAYLOAD_FORMAT_KEY, payloadFormat.name());
+        txRecordNode.setProperty(TX_RECORD_PAYLOAD_CODEC_KEY, payloadCodec.name());
+        if (transactionPayload != null) {
+            txRecordNode.setProperty(TX_RECORD_PAYLOAD_KEY, transactionPayload);
+        } else {
+            txRecordNode.setProperty(TX_RECORD_TX_DATA_KEY, transactionData);
+        }
+        txRecordNode.setProperty(ST_TX_RECORD_TX_DATA_KEY, ST_DATA_VALUE);
+        if (isCommitted()) {
+            txRecordNode.setProperty(TX_RECORD_INTERNAL_TX_ID_KEY, internalTransactionId);
+            txRecordNode.setProperty(TX_RECORD_COMMIT_TIME_KEY, commitTime);
+        }
+        txRecordNode.setProperty(TX_RECORD_SEQUENCE_KEY, TransactionSequence.next(tx));
+        return txRecordNode;
+    }
+
+    private static String wrapTransactionMessage(String transactionData) {
         // the JSON from the is incomplete..
         // wrap the JSON array in a valid JSON root
         return "{\"transactionEvents\":" + transactionData + "}";
@@ -49,6 +176,3 @@ public class TransactionRecord {
 
 
 }
-
-
-
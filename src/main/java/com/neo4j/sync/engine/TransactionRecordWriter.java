@@ -0,0 +1,157 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * com.neo4j.sync.engine.TransactionRecordWriter persists TransactionRecord nodes off the commit path.
+ * The capture listener hands it committed, immutable records through a bounded queue and a single
+ * background thread drains the queue, writing up to the configured batch size of records per transaction.
+ * When the queue is full the configured CaptureQueuePolicy decides whether the committing thread
+ * waits for room or the record is dropped and counted.  A record that cannot be written is dropped and
+ * counted as well; both are reported to the Neo4j user log.
+ */
+
+public class TransactionRecordWriter {
+
+    private static final long POLL_TIMEOUT_MILLIS = 250L;
+
+    private final GraphDatabaseService database;
+    private final Log log;
+    private final BlockingQueue<TransactionRecord> queue;
+    private final int capacity;
+    private final CaptureQueuePolicy policy;
+    private final int batchSize;
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong writtenRecords = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean running;
+
+    public TransactionRecordWriter(GraphDatabaseService database, Log log) {
+        this(database, log, Configuration.getCaptureQueueCapacity(), Configuration.getCaptureQueuePolicy(),
+                Configuration.getCaptureWriteBatchSize());
+    }
+
+    public TransactionRecordWriter(GraphDatabaseService database, Log log, int capacity, CaptureQueuePolicy policy,
+                                   int batchSize) {
+        this.database = database;
+        this.log = log;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.batchSize = Math.max(1, batchSize);
+        this.writerThread = new Thread(this::drain, "TransactionRecordWriter");
+        this.writerThread.setDaemon(true);
+    }
+
+    public synchronized void start() {
+        if (!running) {
+            running = true;
+            writerThread.start();
+        }
+    }
+
+    // called from afterCommit.  Returns false if the record was dropped.
+    public boolean submit(TransactionRecord record) throws InterruptedException {
+        if (policy == CaptureQueuePolicy.BLOCK) {
+            queue.put(record);
+            return true;
+        }
+        if (!queue.offer(record)) {
+            droppedRecords.incrementAndGet();
+            log.warn(String.format("TransactionRecordWriter queue full, dropped TransactionRecord %s",
+                    record.getTransactionUUID()));
+            return false;
+        }
+        return true;
+    }
+
+    // stops accepting work once the queue has been flushed to the database.
+    public void stop() throws InterruptedException {
+        running = false;
+        writerThread.join();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public CaptureQueuePolicy getPolicy() {
+        return policy;
+    }
+
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    public long getWrittenRecords() {
+        return writtenRecords.get();
+    }
+
+    private void drain() {
+        List<TransactionRecord> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                TransactionRecord first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                // polling again would only be interrupted again; what is queued is written without waiting.
+                running = false;
+                batch.clear();
+                flushQueued(batch);
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flushQueued(List<TransactionRecord> batch) {
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<TransactionRecord> batch) {
+        try (Transaction tx = database.beginTx()) {
+            for (TransactionRecord record : batch) {
+                record.createNode(tx);
+            }
+            tx.commit();
+            writtenRecords.addAndGet(batch.size());
+            ChangeFeed.publish();
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                droppedRecords.incrementAndGet();
+                log.error(String.format("Could not write TransactionRecord %s, dropped it",
+                        batch.get(0).getTransactionUUID()), e);
+                return;
+            }
+            // one bad record must not take the rest of the batch with it, so retry them one at a time.
+            log.warn(String.format("Could not write %d TransactionRecords together, writing them one at a time: %s",
+                    batch.size(), e.getMessage()));
+            for (TransactionRecord record : batch) {
+                write(List.of(record));
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.neo4j.sync.engine;
 
-import org.codehaus.jackson.map.ObjectMapper;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
@@ -8,8 +9,10 @@ import org.neo4j.graphdb.event.LabelEntry;
 import org.neo4j.graphdb.event.PropertyEntry;
 import org.neo4j.graphdb.event.TransactionData;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,6 +20,17 @@ import java.util.Map;
 /***
  * The transaction recorder is used to capture and serialize transaction information maintained
  * by the Neo4j server as part of the transaction handling mechanism.
+ * Changes are collected per node id and per relationship id into slots indexed by ChangeType,
+ * using per-thread scratch maps that are cleared and reused for the next transaction, and the
+ * labels and primary key of a node are read once per transaction however many events touch it.
+ * With capturePropertyDeltas set, property change events carry only the changed and removed
+ * properties in their change list and an empty allProperties map.
+ * Relationship events carry the uuid of the relationship as its relationship key, so the target can
+ * tell it apart from other relationships of the same type between the same nodes.  With
+ * assignRelationshipKeys set, a relationship created without a uuid is given one before commit; this writes
+ * to the user's data, so the setting is off by default and such relationships are otherwise recorded without a key.
+ * Nodes and relationships the entity rules of the ReplicationFilter exclude are left out of the record,
+ * relationships together with an excluded end; the rest of the transaction is recorded as usual.
  * @author Ravi Anthapu
  * @author Chris Upkes
  */
@@ -25,10 +39,26 @@ public class TransactionRecorder {
     // if you must defy Neo4j coding conventions and define properties with uppercase names then
     //TODO: consider either changing properties to lowercase or change all uuid references to UUID.
     public static final String UUID = "uuid";
+    private static final String DONT_AUDIT = "DONT_AUDIT";
+    private static final int SLOTS = ChangeType.values().length;
+    // batch imports can grow the scratch maps; don't hold on to that memory between transactions.
+    private static final int MAX_RETAINED_ENTRIES = 4096;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
     private final TransactionData transactionData;
+    private final boolean capturePropertyDeltas;
+    private final boolean assignRelationshipKeys;
+    private final ReplicationFilter filter;
 
     public TransactionRecorder(TransactionData txData) {
+        this(txData, ReplicationJudge.getFilter());
+    }
+
+    public TransactionRecorder(TransactionData txData, ReplicationFilter filter) {
         this.transactionData = txData;
+        this.filter = filter;
+        this.capturePropertyDeltas = Configuration.isCapturePropertyDeltas();
+        this.assignRelationshipKeys = Configuration.isAssignRelationshipKeys();
     }
 
     // This method works on the transaction data object passed to the constructor
@@ -37,261 +67,221 @@ public class TransactionRecorder {
     // or another system.
 
     public TransactionRecord serializeTransaction() throws Exception {
-        ObjectMapper objectMapper = new ObjectMapper();
+        List<Audit> audits = captureAudits();
+        if (audits == null)
+        {
+            return null;
+        }
 
-        HashMap<Node, Map<String, AuditNode>> auditValues = new HashMap<>();
+        String transactionUUID = java.util.UUID.randomUUID().toString();
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+        long timestampCreated = timestamp.getTime();
+
+        if (Configuration.getPayloadFormat() == PayloadFormat.BINARY)
+        {
+            byte[] payload = BinaryPayloadCodec.encode(audits);
+            PayloadCodec codec = PayloadCompression.codecFor(payload.length);
+            return TransactionRecord.fromEncodedPayload(timestampCreated, "NEW", PayloadFormat.BINARY, codec,
+                    PayloadCompression.compress(codec, payload), transactionUUID);
+        }
+
+        // serialized once to UTF-8, envelope included, and sized by its encoded length.
+        byte[] payload = TransactionPayloadWriter.write(audits);
+        PayloadCodec codec = PayloadCompression.codecFor(payload.length);
+        if (codec != PayloadCodec.NONE)
+        {
+            return TransactionRecord.fromEncodedPayload(timestampCreated, "NEW", PayloadFormat.JSON, codec,
+                    PayloadCompression.compress(codec, payload), transactionUUID);
+        }
+        // uncompressed JSON is stored as a string property.
+        return TransactionRecord.fromPayload(timestampCreated, "NEW", new String(payload, StandardCharsets.UTF_8), transactionUUID);
+    }
 
+    // the audit records of the transaction as objects, for the LocalReplicationTransport, which hands them
+    // to another database in this JVM without serializing them.  Returns null if the transaction must not be audited.
+    public List<Audit> captureAudits()
+    {
+        Scratch scratch = SCRATCH.get();
+        try
+        {
+            return collectAudits(scratch);
+        }
+        finally
+        {
+            if (scratch.size() > MAX_RETAINED_ENTRIES)
+            {
+                SCRATCH.remove();
+            }
+            else
+            {
+                scratch.clear();
+            }
+        }
+    }
 
+    // collects the audit records for the transaction, in the order they were first seen.
+    // returns null if the transaction must not be audited.
+    private List<Audit> collectAudits(Scratch scratch)
+    {
+        // read the labels of every created node once; they are needed again for the audit.
         for (Node node : transactionData.createdNodes())
         {
-            Iterable<Label> labels = node.getLabels();
-            for (Label l : labels)
+            NodeKey key = nodeKey(node, scratch);
+            for (String label : key.labels)
             {
-                if (l.name().equalsIgnoreCase("DONT_AUDIT"))
+                if (label.equalsIgnoreCase(DONT_AUDIT))
                 {
                     // Delete the DONT_AUDIT node so that it's not persisted to the database
                     node.delete();
                     return null;
                 }
-
             }
         }
 
         for (Node createdNode : transactionData.createdNodes())
         {
-            processAddRemoveNode(createdNode, auditValues, AuditNode.ADD_NODE,
-                    transactionData);
+            processAddNode(createdNode, scratch);
         }
 
+        boolean nodesDeleted = false;
         for (Node deletedNode : transactionData.deletedNodes())
         {
-            processAddRemoveNode(deletedNode, auditValues, AuditNode.DELETE_NODE,
-                    transactionData);
+            if (!nodesDeleted)
+            {
+                indexRemovedLabels(scratch);
+                nodesDeleted = true;
+            }
+            processDeleteNode(deletedNode, scratch);
         }
 
         for (PropertyEntry<Node> propertyEntry : transactionData.assignedNodeProperties())
         {
-            processNodePropertyChange(propertyEntry, auditValues);
+            processNodePropertyChange(propertyEntry, scratch);
         }
 
         for (PropertyEntry<Node> propertyEntry : transactionData.removedNodeProperties())
         {
-            processNodePropertyChange(propertyEntry, auditValues);
+            processNodePropertyChange(propertyEntry, scratch);
         }
 
         for (Relationship createdRelationship : transactionData.createdRelationships())
         {
-            processAddRemoveRelationship(createdRelationship, auditValues,
-                        AuditNode.ADD_RELATION);
+            processAddRemoveRelationship(createdRelationship, scratch, ChangeType.ADD_RELATION);
         }
 
         for (Relationship deletedRelationship : transactionData.deletedRelationships())
         {
-            AuditNode auditNode = processAddRemoveRelationship(deletedRelationship, auditValues,
-                    AuditNode.DELETE_RELATION) ;
+            processAddRemoveRelationship(deletedRelationship, scratch, ChangeType.DELETE_RELATION);
         }
 
-        for (PropertyEntry<Relationship> propertyEntry : transactionData
-                .assignedRelationshipProperties())
+        for (PropertyEntry<Relationship> propertyEntry : transactionData.assignedRelationshipProperties())
         {
-            processRelationPropertyChange(propertyEntry, auditValues
-            );
+            processRelationPropertyChange(propertyEntry, scratch);
         }
-        for (PropertyEntry<Relationship> propertyEntry : transactionData
-                .removedRelationshipProperties())
+
+        for (PropertyEntry<Relationship> propertyEntry : transactionData.removedRelationshipProperties())
         {
-            processRelationPropertyChange(propertyEntry, auditValues
-            );
+            processRelationPropertyChange(propertyEntry, scratch);
         }
 
-        // Generates audit
-        List<AuditNode> nodesToProcess = new ArrayList<>();
-        String transactionUUID = java.util.UUID.randomUUID().toString();
-        //Long transactionId = transactionData.getTransactionId();
-        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-        //String timestampCreated = timestamp.toString();
-        long timestampCreated = timestamp.getTime();
-
-
-
-        for (Map<String, AuditNode> auditProps : auditValues.values())
+        List<Audit> audits = new ArrayList<>(scratch.audits.size());
+        for (Audit audit : scratch.audits)
         {
-            for (AuditNode auditNode : auditProps.values())
+            // This is most likely a deleted node or Add node. If the primary key
+            // can't be obtained for this node we need to ignore it.
+            if (audit.getPrimaryKey() == null && getDeletedNodePrimaryKey(audit) == null)
             {
-                if (auditNode.getAudit().getPrimaryKey() == null)
-                {
-                    // This is most likely a deleted node or Add node. Let's check the
-                    // primary
-                    // key
-                    // can be obtained for this node. If not we need to ignore the node.
-                    if (getDeletedNodePrimaryKey(auditNode) == null)
-                    {
-                        continue;
-                    }
-                }
-
-                auditNode.setNode(null);
-                nodesToProcess.add(auditNode);
+                continue;
             }
+            audits.add(audit);
         }
-
-
-        List<Audit> audits = new ArrayList<>();
-        for (AuditNode auditNode : nodesToProcess)
+        if (audits.isEmpty() && scratch.dropped())
         {
-            audits.add(auditNode.getAudit());
+            // everything the transaction touched is excluded.
+            return null;
         }
-        String data = objectMapper.writeValueAsString(audits);
-
-        // just for dev purposes
-        // TODO: remove!
-        System.out.println(data);
-
-        return  new TransactionRecord(timestampCreated, "NEW",  objectMapper.writeValueAsString(audits), transactionUUID);
-
+        return audits;
     }
 
-
-
-    // This method is used to create audit records for added and deleted nodes
-    private void processAddRemoveNode(Node node, Map<Node, Map<String, AuditNode>> auditValues,
-                                      String changeType, TransactionData transactionData)
+    // This method is used to create audit records for added nodes
+    private void processAddNode(Node node, Scratch scratch)
     {
-        Map<String, AuditNode> nodeChanges = auditValues.computeIfAbsent(node,
-                k -> new HashMap<>());
-
-        AuditNode auditNode = nodeChanges.get(changeType);
-        if (auditNode == null)
+        Audit[] nodeChanges = slots(scratch.nodeChanges, node.getId());
+        if (nodeChanges[ChangeType.ADD_NODE.ordinal()] == null)
         {
-            auditNode = new AuditNode();
-            auditNode.getAudit().setChangeType(changeType);
-            auditNode.setNode(node);
-
-            nodeChanges.put(changeType, auditNode);
-
-            if (changeType.equalsIgnoreCase(AuditNode.ADD_NODE))
+            NodeKey key = nodeKey(node, scratch);
+            if (!filter.isReplicatedNode(key.labels))
             {
-                List<String> nodeLabels = new ArrayList<>();
-                node.getLabels().forEach(entry -> nodeLabels.add(entry.name()));
-
-                auditNode.getAudit().setNodeLabels(nodeLabels);
+                scratch.droppedNodes.add(node.getId());
+                return;
+            }
+            Audit audit = newAudit(ChangeType.ADD_NODE, nodeChanges, scratch);
+            audit.setNodeLabels(key.labels);
+            audit.setPrimaryKey(getNodePrimaryKey(node, key));
+            audit.setAllProperties(node.getAllProperties());
+        }
+    }
 
-                auditNode.getAudit().setPrimaryKey(getNodePrimaryKey(node));
-                auditNode.getAudit().setAllProperties(node.getAllProperties());
+    // This method is used to create audit records for deleted nodes.  Their labels and properties
+    // can no longer be read from the node, so they are rebuilt from the removed labels and properties.
+    private void processDeleteNode(Node node, Scratch scratch)
+    {
+        long id = node.getId();
+        Audit[] nodeChanges = slots(scratch.nodeChanges, id);
+        if (nodeChanges[ChangeType.DELETE_NODE.ordinal()] == null)
+        {
+            List<String> nodeLabels = scratch.removedLabels.get(id);
+            if (nodeLabels == null)
+            {
+                nodeLabels = new ArrayList<>();
             }
-            else
+            if (!filter.isReplicatedNode(nodeLabels))
             {
-                List<String> nodeLabels = new ArrayList<>();
-                for (LabelEntry labelEntry : transactionData.removedLabels())
-                {
-                    if (labelEntry.node().getId() == node.getId())
-                    {
-                        // We found the Deleted node.
-                        String label = labelEntry.label().name();
-                        nodeLabels.add(label);
-                        auditNode.getAudit().setAllProperties(new HashMap<>());
-                    }
-                }
-                auditNode.getAudit().setNodeLabels(nodeLabels);
+                scratch.droppedNodes.add(id);
+                return;
             }
+            Audit audit = newAudit(ChangeType.DELETE_NODE, nodeChanges, scratch);
+            audit.setNodeLabels(nodeLabels);
+            audit.setAllProperties(new HashMap<>());
         }
     }
 
     // This method is used to create audit records for add and delete relationship
-    private AuditNode processAddRemoveRelationship(Relationship relationship,
-                                                   Map<Node, Map<String, AuditNode>> auditValues, String changeType
-    )
+    private void processAddRemoveRelationship(Relationship relationship, Scratch scratch, ChangeType changeType)
     {
-        Node node = relationship.getStartNode();
-        Map<String, AuditNode> nodeChanges = auditValues.get(node);
-        AuditNode deletedNode = null;
-
-        if (nodeChanges == null)
-        {
-            nodeChanges = new HashMap<>();
-            auditValues.put(node, nodeChanges);
-        }
-        else
+        if (isDropped(relationship, scratch))
         {
-            // Look if this node has deleted node changes.
-            // If so we need to look at the com.neo4j.sync.engine.AuditNode captured
-            // for this deleted node to read label and properties.
-            deletedNode = nodeChanges.get(AuditNode.DELETE_NODE);
+            return;
         }
-
-        AuditNode auditNode = nodeChanges.get(getRelationChangeType(changeType, relationship));
-        if (auditNode == null)
+        Audit[] relationshipChanges = slots(scratch.relationshipChanges, relationship.getId());
+        if (relationshipChanges[changeType.ordinal()] == null)
         {
-            auditNode = new AuditNode();
-            auditNode.getAudit().setChangeType(changeType);
-            auditNode.setNode(node);
-            if (deletedNode != null)
-            {
-                auditNode.getAudit().setNodeLabels(deletedNode.getAudit().getNodeLabels());
-                auditNode.getAudit().setPrimaryKey(getDeletedNodePrimaryKey(deletedNode));
-            }
-            else
-            {
-                List<String> nodeLabels = new ArrayList<>();
-                node.getLabels().forEach(entry -> nodeLabels.add(entry.name()));
-                auditNode.getAudit().setNodeLabels(nodeLabels);
-                auditNode.getAudit().setPrimaryKey(getNodePrimaryKey(node));
-            }
-            auditNode.getAudit().setRelationshipLabel(relationship.getType().name());
-            if (changeType.equals(AuditNode.ADD_RELATION))
+            Audit audit = newAudit(changeType, relationshipChanges, scratch);
+            setEndpoints(audit, relationship, scratch);
+            if (changeType == ChangeType.ADD_RELATION)
             {
-                auditNode.getAudit().setAllProperties(relationship.getAllProperties());
+                // the key is assigned first so that it is replicated with the other properties.
+                audit.setRelationshipKey(getRelationshipKey(relationship, assignRelationshipKeys));
+                audit.setAllProperties(relationship.getAllProperties());
             }
             else
             {
-                auditNode.getAudit().setAllProperties(new HashMap<>());
+                audit.setAllProperties(new HashMap<>());
             }
-
-            Node endNode = relationship.getEndNode();
-            deletedNode = checkForDeletedNode(endNode, auditValues);
-            if (deletedNode != null)
-            {
-                auditNode.getAudit().setTargetNodeLabels(deletedNode.getAudit().getNodeLabels());
-                auditNode.getAudit().setTargetPrimaryKey(getDeletedNodePrimaryKey(deletedNode));
-            }
-            else
-            {
-                List<String> nodeLabels = new ArrayList<>();
-                endNode.getLabels().forEach(entry -> nodeLabels.add(entry.name()));
-                auditNode.getAudit().setTargetNodeLabels(nodeLabels);
-                auditNode.getAudit().setTargetPrimaryKey(getNodePrimaryKey(endNode));
-            }
-
-            nodeChanges.put(getRelationChangeType(changeType, relationship), auditNode);
         }
-        return auditNode;
-    }
-
-    private AuditNode checkForDeletedNode(Node node, Map<Node, Map<String, AuditNode>> auditValues)
-    {
-        AuditNode aNode = null;
-        Map<String, AuditNode> nodeChanges = auditValues.get(node);
-        if (nodeChanges != null)
-        {
-            aNode = nodeChanges.get(AuditNode.DELETE_NODE);
-        }
-        return aNode;
     }
 
     // This method is used to create audit records for node property change
-    private void processNodePropertyChange(PropertyEntry<Node> propertyEntry,
-                                           Map<Node, Map<String, AuditNode>> auditValues
-    )
+    private void processNodePropertyChange(PropertyEntry<Node> propertyEntry, Scratch scratch)
     {
         Node node = propertyEntry.entity();
+        if (scratch.droppedNodes.contains(node.getId()))
+        {
+            return;
+        }
+        Audit[] nodeChanges = slots(scratch.nodeChanges, node.getId());
 
-        Map<String, AuditNode> nodeChanges = auditValues.computeIfAbsent(node,
-                k -> new HashMap<>());
-
-        AuditNode auditNode;
-
-        auditNode = nodeChanges.get(AuditNode.ADD_NODE);
-        if (auditNode != null)
+        if (nodeChanges[ChangeType.ADD_NODE.ordinal()] != null)
         {
             // There is a new node created for this. This means all the properties
             // that were added to the node using set will be called as node property changes.
@@ -299,160 +289,160 @@ public class TransactionRecorder {
             return;
         }
 
-        auditNode = nodeChanges.get(AuditNode.DELETE_NODE);
-        if (auditNode != null)
+        Audit audit = nodeChanges[ChangeType.DELETE_NODE.ordinal()];
+        if (audit != null)
         {
             // This node is deleted. This means all the properties
             // that were part of node will come as deleted properties.
             // We need to add them to the list here as node.getAllProperties() cannot be done.
-
-            if (auditNode.getAudit().getNodeLabels() != null)
+            audit.getAllProperties().put(propertyEntry.key(), propertyEntry.previouslyCommittedValue());
+            if (UUID.equals(propertyEntry.key()))
             {
-                // We will populate properties only if the node label is set. This won't be set for
-                // com.neo4j.sync.engine.Audit or Event nodes.
-                auditNode.getAudit().getAllProperties().put(propertyEntry.key(),
-                        propertyEntry.previouslyCommittedValue());
-                auditNode.getAudit().setPrimaryKey(getDeletedNodePrimaryKey(auditNode));
-
+                audit.setPrimaryKey(getDeletedNodePrimaryKey(audit));
             }
             return;
         }
 
-        auditNode = nodeChanges.get(AuditNode.NODE_PROPERTY_CHANGE);
-        if (auditNode == null)
+        audit = nodeChanges[ChangeType.NODE_PROPERTY_CHANGE.ordinal()];
+        if (audit == null)
         {
-            auditNode = new AuditNode();
-            auditNode.getAudit().setChangeType(AuditNode.NODE_PROPERTY_CHANGE);
-            auditNode.setNode(node);
-            List<String> nodeLabels = new ArrayList<>();
-            node.getLabels().forEach(entry -> nodeLabels.add(entry.name()));
-            auditNode.getAudit().setNodeLabels(nodeLabels);
-            auditNode.getAudit().setPrimaryKey(getNodePrimaryKey(node));
-            // REQUIREMENT: display all the node properties to handle updates
-            auditNode.getAudit().setAllProperties(node.getAllProperties());
-            nodeChanges.put(AuditNode.NODE_PROPERTY_CHANGE, auditNode);
+            NodeKey key = nodeKey(node, scratch);
+            if (!filter.isReplicatedNode(key.labels))
+            {
+                scratch.droppedNodes.add(node.getId());
+                return;
+            }
+            audit = newAudit(ChangeType.NODE_PROPERTY_CHANGE, nodeChanges, scratch);
+            audit.setNodeLabels(key.labels);
+            audit.setPrimaryKey(getNodePrimaryKey(node, key));
+            // REQUIREMENT: display all the node properties to handle updates,
+            // unless only the deltas are captured: the target applies the change list either way.
+            audit.setAllProperties(capturePropertyDeltas ? Collections.emptyMap() : node.getAllProperties());
+        }
 
+        recordPropertyChange(audit, propertyEntry);
+    }
+
+    // This method is used to create audit records for relationship property change
+    private void processRelationPropertyChange(PropertyEntry<Relationship> propertyEntry, Scratch scratch)
+    {
+        Relationship relationship = propertyEntry.entity();
+        Audit[] relationshipChanges = slots(scratch.relationshipChanges, relationship.getId());
+
+        if (relationshipChanges[ChangeType.ADD_RELATION.ordinal()] != null)
+        {
+            // There is a new relation created for this. The all properties would be set
+            // in handling the Add relation logic.
+            return;
         }
 
-        List<PropertyChange> changes = auditNode.getAudit().getProperties();
-        if (changes == null)
+        Audit audit = relationshipChanges[ChangeType.DELETE_RELATION.ordinal()];
+        if (audit != null)
         {
-            changes = new ArrayList<>();
-            auditNode.getAudit().setProperties(changes);
+            // This relation is deleted. This means all the properties
+            // that were part of it will come as deleted properties.
+            // We need to add them to the list here as relation.getAllProperties() cannot be done.
+            audit.getAllProperties().put(propertyEntry.key(), propertyEntry.previouslyCommittedValue());
+            if (UUID.equals(propertyEntry.key()))
+            {
+                audit.setRelationshipKey(Collections.singletonMap(UUID, propertyEntry.previouslyCommittedValue()));
+            }
+            return;
         }
 
-        PropertyChange change = new PropertyChange();
+        audit = relationshipChanges[ChangeType.RELATION_PROPERTY_CHANGE.ordinal()];
+        if (audit == null)
+        {
+            if (isDropped(relationship, scratch))
+            {
+                return;
+            }
+            audit = newAudit(ChangeType.RELATION_PROPERTY_CHANGE, relationshipChanges, scratch);
+            audit.setAllProperties(capturePropertyDeltas ? Collections.emptyMap() : relationship.getAllProperties());
+            audit.setRelationshipKey(getRelationshipKey(relationship, false));
+            setEndpoints(audit, relationship, scratch);
+        }
 
-        change.setPropertyName(propertyEntry.key());
-        try
+        if (UUID.equals(propertyEntry.key()))
         {
-            change.setNewValue(propertyEntry.value());
+            // The target still knows the relationship by the key it had before this transaction.
+            Object previousKey = previouslyCommittedValue(propertyEntry);
+            if (previousKey != null)
+            {
+                audit.setRelationshipKey(Collections.singletonMap(UUID, previousKey));
+            }
         }
-        catch (Exception e)
+
+        recordPropertyChange(audit, propertyEntry);
+    }
+
+    // the uuid of a relationship, assigned first if it has none and assign is set; null if it has none.
+    private Map<String, Object> getRelationshipKey(Relationship relationship, boolean assign)
+    {
+        Object uuid = relationship.getProperty(UUID, null);
+        if (uuid == null && assign)
         {
-            // Ignore this exception as when the property is removed this may throw an exception.
+            uuid = java.util.UUID.randomUUID().toString();
+            relationship.setProperty(UUID, uuid);
         }
+        return uuid != null ? Collections.singletonMap(UUID, uuid) : null;
+    }
+
+    private static Object previouslyCommittedValue(PropertyEntry<?> propertyEntry)
+    {
         try
         {
-            change.setOldValue(propertyEntry.previouslyCommittedValue());
+            return propertyEntry.previouslyCommittedValue();
         }
         catch (Exception e)
         {
-            // Ignore this exception as when the property is added for the first time this method
-            // may throw an exception.
-        }
-
-        // Only logging the property change, if the old value and new value are not same
-        if (change.getOldValue() == null
-                || change.getNewValue() == null
-                || !change.getOldValue().equals(change.getNewValue()))
-        {
-            changes.add(change);
+            // The property was added in this transaction.
+            return null;
         }
     }
 
-    // This method is used to create audit records for relationship property change
-    private void processRelationPropertyChange(PropertyEntry<Relationship> propertyEntry,
-                                               Map<Node, Map<String, AuditNode>> auditValues)
+    // sets the type and the labels and primary keys of both ends of a relationship.
+    // An end node deleted in this transaction is described by its DeleteNode audit.
+    private void setEndpoints(Audit audit, Relationship relationship, Scratch scratch)
     {
-        Relationship relationship = propertyEntry.entity();
         Node node = relationship.getStartNode();
-        Node endNode = relationship.getEndNode();
-        Map<String, AuditNode> nodeChanges = auditValues.computeIfAbsent(node,
-                k -> new HashMap<>());
-
-        AuditNode auditNode;
-
-        auditNode = nodeChanges.get(getRelationChangeType(AuditNode.ADD_RELATION, relationship));
-        if (auditNode != null)
+        Audit deletedNode = checkForDeletedNode(node, scratch);
+        if (deletedNode != null)
         {
-            // There is a new node created for this. This means all the properties
-            // that were added to the node using set will be called as node property changes.
-            // The all properties would be set in handling the Add relation logic.
-            return;
+            audit.setNodeLabels(deletedNode.getNodeLabels());
+            audit.setPrimaryKey(getDeletedNodePrimaryKey(deletedNode));
         }
-
-        auditNode = nodeChanges.get(getRelationChangeType(AuditNode.DELETE_RELATION, relationship));
-        if (auditNode != null)
+        else
         {
-            // This relation is deleted. This means all the properties
-            // that were part of node will come as deleted properties.
-            // We need to add them to the list here as relation.getAllProperties() cannot be done.
-
-            auditNode.getAudit().getAllProperties().put(propertyEntry.key(),
-                    propertyEntry.previouslyCommittedValue());
-            return;
+            NodeKey key = nodeKey(node, scratch);
+            audit.setNodeLabels(key.labels);
+            audit.setPrimaryKey(getNodePrimaryKey(node, key));
         }
 
-        auditNode = nodeChanges
-                .get(getRelationChangeType(AuditNode.RELATION_PROPERTY_CHANGE, relationship));
-        if (auditNode == null)
-        {
-            auditNode = new AuditNode();
-            auditNode.getAudit().setChangeType(AuditNode.RELATION_PROPERTY_CHANGE);
-            auditNode.setNode(node);
-            auditNode.getAudit().setAllProperties(relationship.getAllProperties());
-
-            AuditNode deletedNode = checkForDeletedNode(node, auditValues);
-
-            if (deletedNode != null)
-            {
-                auditNode.getAudit().setNodeLabels(deletedNode.getAudit().getNodeLabels());
-                auditNode.getAudit().setPrimaryKey(getDeletedNodePrimaryKey(deletedNode));
-            }
-            else
-            {
-                final List<String> nodeLabels = new ArrayList<>();
-                node.getLabels().forEach(entry -> nodeLabels.add(entry.name()));
-                auditNode.getAudit().setNodeLabels(nodeLabels);
-                auditNode.getAudit().setPrimaryKey(getNodePrimaryKey(node));
-            }
-
-            auditNode.getAudit().setRelationshipLabel(relationship.getType().name());
+        audit.setRelationshipLabel(relationship.getType().name());
 
-            deletedNode = checkForDeletedNode(endNode, auditValues);
-            if (deletedNode != null)
-            {
-                auditNode.getAudit().setTargetNodeLabels(deletedNode.getAudit().getNodeLabels());
-                auditNode.getAudit().setTargetPrimaryKey(getDeletedNodePrimaryKey(deletedNode));
-            }
-            else
-            {
-                final List<String> endNodeLabels = new ArrayList<>();
-                endNode.getLabels().forEach(entry -> endNodeLabels.add(entry.name()));
-                auditNode.getAudit().setTargetNodeLabels(endNodeLabels);
-                auditNode.getAudit().setTargetPrimaryKey(getNodePrimaryKey(endNode));
-            }
-
-            nodeChanges.put(getRelationChangeType(AuditNode.RELATION_PROPERTY_CHANGE, relationship),
-                    auditNode);
+        Node endNode = relationship.getEndNode();
+        deletedNode = checkForDeletedNode(endNode, scratch);
+        if (deletedNode != null)
+        {
+            audit.setTargetNodeLabels(deletedNode.getNodeLabels());
+            audit.setTargetPrimaryKey(getDeletedNodePrimaryKey(deletedNode));
+        }
+        else
+        {
+            NodeKey key = nodeKey(endNode, scratch);
+            audit.setTargetNodeLabels(key.labels);
+            audit.setTargetPrimaryKey(getNodePrimaryKey(endNode, key));
         }
+    }
 
-        List<PropertyChange> changes = auditNode.getAudit().getProperties();
+    private void recordPropertyChange(Audit audit, PropertyEntry<?> propertyEntry)
+    {
+        List<PropertyChange> changes = audit.getProperties();
         if (changes == null)
         {
             changes = new ArrayList<>();
-            auditNode.getAudit().setProperties(changes);
+            audit.setProperties(changes);
         }
 
         PropertyChange change = new PropertyChange();
@@ -466,7 +456,6 @@ public class TransactionRecorder {
         {
             // Ignore this exception as when the property is removed this may throw an exception.
         }
-
         try
         {
             change.setOldValue(propertyEntry.previouslyCommittedValue());
@@ -477,7 +466,7 @@ public class TransactionRecorder {
             // may throw an exception.
         }
 
-        // Only logging the relationship property change, if the old and new value are different
+        // Only logging the property change, if the old value and new value are not same
         if (change.getOldValue() == null
                 || change.getNewValue() == null
                 || !change.getOldValue().equals(change.getNewValue()))
@@ -486,72 +475,172 @@ public class TransactionRecorder {
         }
     }
 
-    private Map<String, Object> getNodePrimaryKey(Node n)
+    // a relationship is left out for its type, or together with an end that is left out.
+    private boolean isDropped(Relationship relationship, Scratch scratch)
     {
-        Map<String, Object> keyValues = new HashMap<>();
-        for (Label label : n.getLabels())
+        long id = relationship.getId();
+        if (scratch.droppedRelationships.contains(id))
         {
-            List<String> keyList = new ArrayList<>();
-            keyList.add(UUID) ;
-            if (keyList != null)
-            {
-                for (String s : keyList)
-                {
-                    Object o = n.getProperty(s);
-                    if (o != null)
-                    {
-                        keyValues.put(s, o);
-                    }
-                }
-            }
+            return true;
         }
-        if (keyValues.size() == 0)
+        if (!filter.isReplicatedType(relationship.getType())
+                || isDropped(relationship.getStartNode(), scratch)
+                || isDropped(relationship.getEndNode(), scratch))
         {
-            keyValues = null;
+            scratch.droppedRelationships.add(id);
+            return true;
         }
+        return false;
+    }
 
-        return keyValues;
+    // nodes deleted in this transaction have been judged by processDeleteNode already.
+    private boolean isDropped(Node node, Scratch scratch)
+    {
+        if (!filter.filtersNodes())
+        {
+            return false;
+        }
+        long id = node.getId();
+        if (scratch.droppedNodes.contains(id))
+        {
+            return true;
+        }
+        if (checkForDeletedNode(node, scratch) != null)
+        {
+            return false;
+        }
+        if (!filter.isReplicatedNode(nodeKey(node, scratch).labels))
+        {
+            scratch.droppedNodes.add(id);
+            return true;
+        }
+        return false;
     }
 
-    private Map<String, Object> getDeletedNodePrimaryKey(AuditNode auditNode)
+    private Audit checkForDeletedNode(Node node, Scratch scratch)
     {
-        Map<String, Object> keyValues = new HashMap<>();
+        Audit[] nodeChanges = scratch.nodeChanges.get(node.getId());
+        return nodeChanges != null ? nodeChanges[ChangeType.DELETE_NODE.ordinal()] : null;
+    }
 
-        if (auditNode.getAudit().getNodeLabels() == null)
+    // groups the removed labels by node id in one pass, rather than scanning them for every deleted node.
+    private void indexRemovedLabels(Scratch scratch)
+    {
+        for (LabelEntry labelEntry : transactionData.removedLabels())
         {
-            return null;
+            long id = labelEntry.node().getId();
+            List<String> nodeLabels = scratch.removedLabels.get(id);
+            if (nodeLabels == null)
+            {
+                nodeLabels = new ArrayList<>();
+                scratch.removedLabels.put(id, nodeLabels);
+            }
+            nodeLabels.add(labelEntry.label().name());
         }
+    }
 
-        for (String label : auditNode.getAudit().getNodeLabels())
+    private NodeKey nodeKey(Node node, Scratch scratch)
+    {
+        long id = node.getId();
+        NodeKey key = scratch.nodeKeys.get(id);
+        if (key == null)
         {
-            List<String> keyList = new ArrayList<>();
-            keyList.add(UUID) ;
-            Map<String, Object> properties = auditNode.getAudit().getAllProperties();
-
-            if (keyList != null
-                    && properties != null)
+            List<String> nodeLabels = new ArrayList<>();
+            for (Label label : node.getLabels())
             {
-                for (String s : keyList)
-                {
-                    Object o = properties.get(s);
-                    if (o != null)
-                    {
-                        keyValues.put(s, o);
-                    }
-                }
+                nodeLabels.add(label.name());
             }
+            key = new NodeKey(nodeLabels);
+            scratch.nodeKeys.put(id, key);
         }
+        return key;
+    }
 
-        if (keyValues.size() == 0)
+    // every labelled node is keyed by its uuid; a node without labels has no primary key.
+    private Map<String, Object> getNodePrimaryKey(Node n, NodeKey key)
+    {
+        if (!key.primaryKeyResolved)
         {
-            keyValues = null;
+            key.primaryKey = key.labels.isEmpty() ? null : Collections.singletonMap(UUID, n.getProperty(UUID));
+            key.primaryKeyResolved = true;
         }
-        return keyValues;
+        return key.primaryKey;
     }
 
-    private String getRelationChangeType(String changeType, Relationship r)
+    private Map<String, Object> getDeletedNodePrimaryKey(Audit audit)
     {
-        return String.format("%s_%d", changeType, r.getId());
+        if (audit.getNodeLabels() == null || audit.getNodeLabels().isEmpty() || audit.getAllProperties() == null)
+        {
+            return null;
+        }
+        Object uuid = audit.getAllProperties().get(UUID);
+        return uuid != null ? Collections.singletonMap(UUID, uuid) : null;
     }
 
+    private static Audit[] slots(LongObjectHashMap<Audit[]> changes, long id)
+    {
+        Audit[] slots = changes.get(id);
+        if (slots == null)
+        {
+            slots = new Audit[SLOTS];
+            changes.put(id, slots);
+        }
+        return slots;
+    }
+
+    private static Audit newAudit(ChangeType changeType, Audit[] slots, Scratch scratch)
+    {
+        Audit audit = new Audit();
+        audit.setChangeType(changeType.getEventName());
+        slots[changeType.ordinal()] = audit;
+        scratch.audits.add(audit);
+        return audit;
+    }
+
+    // labels and, once needed, the primary key of a node, read once per transaction.
+    private static final class NodeKey
+    {
+        private final List<String> labels;
+        private Map<String, Object> primaryKey;
+        private boolean primaryKeyResolved;
+
+        private NodeKey(List<String> labels)
+        {
+            this.labels = labels;
+        }
+    }
+
+    // per-thread working set, cleared after every transaction.
+    private static final class Scratch
+    {
+        private final LongObjectHashMap<Audit[]> nodeChanges = new LongObjectHashMap<>();
+        private final LongObjectHashMap<Audit[]> relationshipChanges = new LongObjectHashMap<>();
+        private final LongObjectHashMap<NodeKey> nodeKeys = new LongObjectHashMap<>();
+        private final LongObjectHashMap<List<String>> removedLabels = new LongObjectHashMap<>();
+        // the ids of the nodes and relationships the filter leaves out.
+        private final LongHashSet droppedNodes = new LongHashSet();
+        private final LongHashSet droppedRelationships = new LongHashSet();
+        private final List<Audit> audits = new ArrayList<>();
+
+        private boolean dropped()
+        {
+            return !droppedNodes.isEmpty() || !droppedRelationships.isEmpty();
+        }
+
+        private int size()
+        {
+            return Math.max(audits.size(), nodeKeys.size());
+        }
+
+        private void clear()
+        {
+            nodeChanges.clear();
+            relationshipChanges.clear();
+            nodeKeys.clear();
+            removedLabels.clear();
+            droppedNodes.clear();
+            droppedRelationships.clear();
+            audits.clear();
+        }
+    }
 }
@@ -0,0 +1,83 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * com.neo4j.sync.engine.TransactionSequence hands out the sequence numbers stamped on TransactionRecord nodes.
+ * The counter lives on a singleton ReplicationSequence node.  The transaction writing a record takes the write
+ * lock on that node, increments the counter and keeps the lock until it commits, so sequences are assigned in
+ * commit order, a rolled back record never consumes one and a reader that has seen sequence n has also seen
+ * every sequence below n.  The replication engine pulls, tracks and prunes records by range scans on the
+ * indexed sequence property.  The change sets handed to a LocalReplicationTransport are numbered the same way,
+ * from a counter on a LocalReplicationSequence node of their own.
+ */
+
+public final class TransactionSequence {
+
+    public static final String SEQUENCE_LABEL = "ReplicationSequence";
+    public static final String LOCAL_SEQUENCE_LABEL = "LocalReplicationSequence";
+    public static final String SEQUENCE_KEY = "sequence";
+    public static final String SEQUENCE_INDEX_NAME = "transaction_record_sequence";
+
+    private static final String UUID = "uuid";
+    private static final String SINGLETON = "SINGLETON";
+    private static final String CREATE_SEQUENCE_INDEX = "CREATE INDEX " + SEQUENCE_INDEX_NAME + " IF NOT EXISTS " +
+            "FOR (tr:" + TransactionRecord.TX_RECORD_LABEL + ") ON (tr." + SEQUENCE_KEY + ")";
+    private static final String MERGE_SEQUENCE_NODE = mergeSequenceNode(SEQUENCE_LABEL);
+
+    private TransactionSequence() {
+    }
+
+    // creates the sequence index and the counter node.  Called when the extension starts, before anything is captured.
+    public static void initialize(GraphDatabaseService gds) {
+        try (Transaction tx = gds.beginTx()) {
+            tx.execute(CREATE_SEQUENCE_INDEX);
+            tx.commit();
+        }
+        try (Transaction tx = gds.beginTx()) {
+            tx.execute(MERGE_SEQUENCE_NODE);
+            tx.commit();
+        }
+    }
+
+    // creates the counter node of the given label.  Called before anything is numbered from it.
+    public static void initializeCounter(GraphDatabaseService gds, String sequenceLabel) {
+        try (Transaction tx = gds.beginTx()) {
+            tx.execute(mergeSequenceNode(sequenceLabel));
+            tx.commit();
+        }
+    }
+
+    // returns the next sequence number.  The lock taken here is held until the supplied transaction ends.
+    public static long next(Transaction tx) {
+        return next(tx, SEQUENCE_LABEL);
+    }
+
+    // returns the next sequence number of the counter on the node of the given label.
+    public static long next(Transaction tx, String sequenceLabel) {
+        Node sequenceNode = tx.findNode(Label.label(sequenceLabel), UUID, SINGLETON);
+        if (sequenceNode == null) {
+            // the extension normally creates the node at startup.
+            tx.execute(mergeSequenceNode(sequenceLabel));
+            sequenceNode = tx.findNode(Label.label(sequenceLabel), UUID, SINGLETON);
+        }
+        tx.acquireWriteLock(sequenceNode);
+        long sequence = (long) sequenceNode.getProperty(SEQUENCE_KEY, 0L) + 1;
+        sequenceNode.setProperty(SEQUENCE_KEY, sequence);
+        return sequence;
+    }
+
+    // the last sequence number committed, without taking the lock.
+    public static long current(Transaction tx, String sequenceLabel) {
+        Node sequenceNode = tx.findNode(Label.label(sequenceLabel), UUID, SINGLETON);
+        return sequenceNode == null ? 0L : (long) sequenceNode.getProperty(SEQUENCE_KEY, 0L);
+    }
+
+    private static String mergeSequenceNode(String sequenceLabel) {
+        return "MERGE (rs:" + sequenceLabel + ":" + TransactionRecord.LOCAL_TX_LABEL +
+                " {" + UUID + ":'" + SINGLETON + "'}) ON CREATE SET rs." + SEQUENCE_KEY + " = 0";
+    }
+}
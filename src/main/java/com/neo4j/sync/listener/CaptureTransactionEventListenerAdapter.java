@@ -6,7 +6,6 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
-import org.neo4j.graphdb.event.LabelEntry;
 import org.neo4j.graphdb.event.TransactionData;
 import org.neo4j.graphdb.event.TransactionEventListener;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
@@ -20,34 +19,42 @@ import org.neo4j.logging.LogProvider;
  * The listener adapter is intended to capture client transactions and record tx history for replication.
  * Change capture happens before commit and logging occurs after.
  * Transaction records are written locally and pulled by the destination server.
+ * In ATOMIC capture mode the record is written inside the captured transaction and in ASYNC capture mode
+ * the records are persisted in batches by a TransactionRecordWriter instead.
  * Clients can also read a copy of the transaction history from the transaction replication log files.
  * </p>
  *
  * @author Chris Upkes
  * @author Jim Webber
  */
-public class CaptureTransactionEventListenerAdapter implements TransactionEventListener<Node> {
+public class CaptureTransactionEventListenerAdapter implements TransactionEventListener<TransactionRecord> {
     public static final String LOCAL_TX = "LocalTx";
 
     //public static final String INTEGRATION_DATABASE = "INTEGRATION.DATABASE";
 
-    private final String TX_RECORD_LABEL = "TransactionRecord";
-    private final String TX_RECORD_NODE_BEFORE_COMMIT_KEY = "transactionUUID";
-    private final String TX_RECORD_STATUS_KEY = "status";
-    private final String TX_RECORD_TX_DATA_KEY = "transactionData";
-    private final String TX_RECORD_CREATE_TIME_KEY = "timeCreated";
-    private final String ST_TX_RECORD_TX_DATA_KEY = "transactionStatement";
-    private final String ST_DATA_VALUE = "NO_STATEMENT";
-
-    private String beforeCommitTxId;
-    private long transactionTimestamp;
-    private String txData;
-    private boolean logTransaction = false;
+    private final CaptureMode captureMode;
+    private final TransactionRecordWriter recordWriter;
     private boolean replicate = true;
     private boolean justUpdatedTr = false;
 
+    public CaptureTransactionEventListenerAdapter() {
+        this(CaptureMode.NESTED, null);
+    }
+
+    public CaptureTransactionEventListenerAdapter(TransactionRecordWriter recordWriter) {
+        this(CaptureMode.ASYNC, recordWriter);
+    }
+
+    public CaptureTransactionEventListenerAdapter(CaptureMode captureMode, TransactionRecordWriter recordWriter) {
+        if (captureMode == CaptureMode.ASYNC && recordWriter == null) {
+            throw new IllegalArgumentException("ASYNC capture requires a TransactionRecordWriter");
+        }
+        this.captureMode = captureMode;
+        this.recordWriter = recordWriter;
+    }
+
     @Override
-    public Node beforeCommit(TransactionData data, Transaction transaction, GraphDatabaseService sourceDatabase)
+    public TransactionRecord beforeCommit(TransactionData data, Transaction transaction, GraphDatabaseService sourceDatabase)
             throws Exception {
 
         // REGARDING DDL AND DCL: We can grab index info from the transaction object if we really want to go there.
@@ -56,47 +63,49 @@ public class CaptureTransactionEventListenerAdapter implements TransactionEventL
 
         System.out.println("In the beforeCommit method of our event listener");
 
+        TransactionRecord txRecord = null;
         if (ReplicationJudge.approved(data) && !this.justUpdatedTr) {
             // get a handle to the transaction recorder.  This will grab information from the Transaction Data object
             // and populate a transaction record that we can use to both write a TransactionRecord node to the
             // local database and also to log the transaction in any of the logs.
             TransactionRecorder txRecorder = new TransactionRecorder(data);
-            TransactionRecord txRecord = txRecorder.serializeTransaction();
-            // let's grab the uuid of the transaction and a timestamp for logging in afterCommit and rollback
-            // methods.
-            this.beforeCommitTxId = txRecord.getTransactionUUID();
-            this.transactionTimestamp = System.currentTimeMillis();
-            txData = txRecord.getTransactionData();
-
-            // Populate the TransactionRecord node with required transaction replay and history
-            // data and write locally.
-            try (Transaction tx = sourceDatabase.beginTx()) {
-                Node txRecordNode = tx.createNode(Label.label(TX_RECORD_LABEL));
-                txRecordNode.addLabel(Label.label(LOCAL_TX));
-                txRecordNode.setProperty(TX_RECORD_STATUS_KEY, txRecord.getStatus());
-                txRecordNode.setProperty(TX_RECORD_CREATE_TIME_KEY, txRecord.getTimestampCreated());
-                txRecordNode.setProperty(TX_RECORD_NODE_BEFORE_COMMIT_KEY, txRecord.getTransactionUUID());
-                txRecordNode.setProperty(TX_RECORD_TX_DATA_KEY, txRecord.getTransactionData());
-                txRecordNode.setProperty(ST_TX_RECORD_TX_DATA_KEY, ST_DATA_VALUE);
-
-                tx.commit();
-            } catch (Exception e) {
-                // TODO: figure out how to get a working handle to the internal logger.
-                //getLog(sourceDatabase).error(e.getMessage(), e);
-                e.printStackTrace();
-            } finally {
-                logTransaction = true;
-
+            txRecord = txRecorder.serializeTransaction();
+
+            if (txRecord != null) {
+                switch (captureMode) {
+                    case NESTED:
+                        // Populate the TransactionRecord node with required transaction replay and history
+                        // data and write locally.
+                        try (Transaction tx = sourceDatabase.beginTx()) {
+                            txRecord.createNode(tx);
+                            tx.commit();
+                        } catch (Exception e) {
+                            // TODO: figure out how to get a working handle to the internal logger.
+                            //getLog(sourceDatabase).error(e.getMessage(), e);
+                            e.printStackTrace();
+                        }
+                        break;
+                    case ATOMIC:
+                        // the record rides along in the user's transaction: no extra commit, no afterCommit
+                        // update and nothing left behind on rollback.  Writes made here are not fed back
+                        // through the listener, and the TransactionRecord / LocalTx labels keep the
+                        // ReplicationJudge from approving the record should it ever be seen.
+                        // the record is written before commit, so it has no internal id or commit time, and the
+                        // sequence lock taken here is held by the user's transaction until it commits.
+                        txRecord.createNode(transaction);
+                        break;
+                    case ASYNC:
+                        // the immutable record is handed to the writer from afterCommit, so a rolled back
+                        // transaction never reaches the queue and the commit path pays for nothing but the hand-off.
+                        break;
+                }
             }
-
-        } else {
-            logTransaction = false;
         }
         this.justUpdatedTr = false;
 
-        // I tried returning the txRecordNode in the above try - catch statement and I didn't get a handle
-        // to it in the afterCommit.  Should double-check.
-        return null;
+        // the record is our state object.  Neo4j hands it back to afterCommit / afterRollback
+        // for this transaction only, so concurrent commits no longer share listener fields.
+        return txRecord;
     }
 
     private Log getLog(GraphDatabaseService databaseService) {
@@ -104,7 +113,7 @@ public class CaptureTransactionEventListenerAdapter implements TransactionEventL
     }
 
     @Override
-    public void afterCommit(TransactionData data, Node startNode, GraphDatabaseService sourceDatabase) {
+    public void afterCommit(TransactionData data, TransactionRecord txRecord, GraphDatabaseService sourceDatabase) {
         // log our committed transactions to the transaction log.
         // we can then compare any written nodes in the transaction log that also exist in the rollback logs.
 
@@ -113,26 +122,45 @@ public class CaptureTransactionEventListenerAdapter implements TransactionEventL
         // if (!Configuration.isInitialized()) Configuration.InitializeFromDB(sourceDatabase);
         // if (!TransactionFileLogger.isAreSettingsInitialized()) TransactionFileLogger.initSettings(Configuration.getLogSettings());
         // the transaction logging you see below has hard-coded file locations.
-        if (logTransaction) {
+        if (txRecord != null) {
             try {
-                TransactionFileLogger.AppendTransactionLog(txData, beforeCommitTxId, data.getTransactionId(),
-                        transactionTimestamp);
+                TransactionFileLogger.AppendTransactionLog(txRecord.getLoggedTransactionData(), txRecord.getTransactionUUID(),
+                        data.getTransactionId(), txRecord.getTimestampCreated());
             } catch (Exception e) {
                 //getLog(sourceDatabase).error(e.getMessage(), e);
                 System.out.println(e.getMessage());
-            } finally {
-                logTransaction = false;
             }
-            // TODO:  Figure out how to handle TransactionRecord nodes that don't have an InternalTransactionId
-            try (Transaction tx = sourceDatabase.beginTx()) {
-                Node txRecordNode = tx.findNode(Label.label(TX_RECORD_LABEL), TX_RECORD_NODE_BEFORE_COMMIT_KEY, beforeCommitTxId);
-                txRecordNode.setProperty("internalTransactionId", data.getTransactionId());
-                txRecordNode.setProperty("commitTime", data.getCommitTime());
-                this.justUpdatedTr = true;
-                tx.commit();
-            } catch (Exception e) {
-                //getLog(sourceDatabase).error(e.getMessage(), e);
-                e.printStackTrace();
+
+            switch (captureMode) {
+                case ASYNC:
+                    try {
+                        recordWriter.submit(txRecord.committed(data.getTransactionId(), data.getCommitTime()));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        e.printStackTrace();
+                    }
+                    break;
+                case NESTED:
+                    // TODO:  Figure out how to handle TransactionRecord nodes that don't have an InternalTransactionId
+                    try (Transaction tx = sourceDatabase.beginTx()) {
+                        Node txRecordNode = tx.findNode(Label.label(TransactionRecord.TX_RECORD_LABEL),
+                                TransactionRecord.TX_RECORD_NODE_BEFORE_COMMIT_KEY, txRecord.getTransactionUUID());
+                        txRecordNode.setProperty(TransactionRecord.TX_RECORD_INTERNAL_TX_ID_KEY, data.getTransactionId());
+                        txRecordNode.setProperty(TransactionRecord.TX_RECORD_COMMIT_TIME_KEY, data.getCommitTime());
+                        this.justUpdatedTr = true;
+                        tx.commit();
+                    } catch (Exception e) {
+                        //getLog(sourceDatabase).error(e.getMessage(), e);
+                        e.printStackTrace();
+                    }
+                    break;
+                case ATOMIC:
+                    // the record committed with the user's data; the internal id is only in the file log.
+                    break;
+            }
+            // NESTED and ATOMIC records are committed by now; the TransactionRecordWriter publishes ASYNC ones.
+            if (captureMode != CaptureMode.ASYNC) {
+                ChangeFeed.publish();
             }
         }
         System.out.println("In the afterCommit method of our event listener");
@@ -140,15 +168,16 @@ public class CaptureTransactionEventListenerAdapter implements TransactionEventL
     }
 
     @Override
-    public void afterRollback(TransactionData data, Node startNode, GraphDatabaseService sourceDatabase) {
+    public void afterRollback(TransactionData data, TransactionRecord txRecord, GraphDatabaseService sourceDatabase) {
         // identify transactions that have rolled backed with their transaction UUID values so that we can
         // compare to the transaction log and look for written transaction records that were rolled back.
         // TODO: use the refactored file logger initialized from the database.
         System.out.println("In the afterRollback method of our event listener");
 
-        if (replicate) {
+        // only NESTED capture can leave an orphaned TransactionRecord behind.
+        if (replicate && txRecord != null && captureMode == CaptureMode.NESTED) {
             try {
-                TransactionFileLogger.AppendRollbackTransactionLog(this.beforeCommitTxId, this.transactionTimestamp);
+                TransactionFileLogger.AppendRollbackTransactionLog(txRecord.getTransactionUUID(), txRecord.getTimestampCreated());
             } catch (Exception e) {
                 // log exception
                 //getLog(sourceDatabase).error(e.getMessage(), e);
@@ -157,8 +186,3 @@ public class CaptureTransactionEventListenerAdapter implements TransactionEventL
         }
     }
 }
-
-
-
-
-
@@ -0,0 +1,59 @@
+package com.neo4j.sync.listener;
+
+import com.neo4j.sync.engine.Audit;
+import com.neo4j.sync.engine.LocalReplicationTransport;
+import com.neo4j.sync.engine.ReplicationJudge;
+import com.neo4j.sync.engine.TransactionRecorder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListener;
+
+import java.util.List;
+
+
+/**
+ * Protocol is as follows.
+ * <p>
+ * The local capture listener feeds a LocalReplicationTransport, which replicates to another database in the
+ * same DBMS.  The changes are captured before commit, while the transaction still holds its locks, numbered
+ * there and written to the source in the same transaction as the transport's durable handoff; they are handed
+ * to the transport after commit, and a rollback takes the number and the handoff with it.  It runs alongside the
+ * CaptureTransactionEventListenerAdapter, which keeps recording TransactionRecords for remote targets.
+ * </p>
+ */
+public class LocalCaptureTransactionEventListener implements TransactionEventListener<LocalReplicationTransport.ChangeSet> {
+
+    private final LocalReplicationTransport transport;
+
+    public LocalCaptureTransactionEventListener(LocalReplicationTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public LocalReplicationTransport.ChangeSet beforeCommit(TransactionData data, Transaction transaction,
+                                                            GraphDatabaseService sourceDatabase) throws Exception {
+        if (!ReplicationJudge.approved(data)) {
+            return null;
+        }
+        List<Audit> audits = new TransactionRecorder(data).captureAudits();
+        if (audits == null || audits.isEmpty()) {
+            return null;
+        }
+        return transport.reserve(transaction, audits);
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, LocalReplicationTransport.ChangeSet changeSet,
+                            GraphDatabaseService sourceDatabase) {
+        if (changeSet != null) {
+            transport.submit(changeSet);
+        }
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, LocalReplicationTransport.ChangeSet changeSet,
+                              GraphDatabaseService sourceDatabase) {
+        // the counter was rolled back with the transaction, so the number is handed out again.
+    }
+}
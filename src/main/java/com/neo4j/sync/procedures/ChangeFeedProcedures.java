@@ -0,0 +1,90 @@
+package com.neo4j.sync.procedures;
+
+import com.neo4j.sync.engine.ChangeFeed;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+import org.neo4j.procedure.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Protocol is as follows.
+ * <p>
+ * the change feed procedure returns up to limit TransactionRecords with a sequence greater than the cursor,
+ * in sequence order.  When there are none it blocks until the capture side publishes a new record or the
+ * timeout passes, so a target can follow the source with a long poll instead of polling on a fixed interval.
+ * </p>
+ */
+
+public class ChangeFeedProcedures {
+
+    @Context
+    public Log log;
+    @Context
+    public GraphDatabaseService gds;
+
+    private final static String CHANGE_FEED_QUERY = "MATCH (tr:TransactionRecord) WHERE tr.sequence > $cursor " +
+            "RETURN tr.transactionUUID AS uuid, tr.sequence AS sequence, tr.timeCreated AS timeCreated, " +
+            "tr.transactionData AS transactionData, tr.transactionStatement AS transactionStatement, " +
+            "tr.payloadFormat AS payloadFormat, tr.payloadCodec AS payloadCodec, tr.transactionPayload AS transactionPayload " +
+            "ORDER BY tr.sequence LIMIT $limit";
+
+    @Procedure(name = "changeFeed", mode = Mode.READ)
+    @Description("returns the TransactionRecords after the cursor, waiting up to timeoutMillis for new ones.")
+    public Stream<ChangeFeedRecord> changeFeed(@Name(value = "cursor") long cursor,
+                                               @Name(value = "limit", defaultValue = "100") long limit,
+                                               @Name(value = "timeoutMillis", defaultValue = "10000") long timeoutMillis) {
+        try {
+            // read the generation first: a record published after it wakes the wait below.
+            long generation = ChangeFeed.generation();
+            List<ChangeFeedRecord> records = read(cursor, limit);
+            if (records.isEmpty() && ChangeFeed.awaitPublished(generation, timeoutMillis)) {
+                records = read(cursor, limit);
+            }
+            return records.stream();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Stream.empty();
+        }
+    }
+
+    // each read runs in its own transaction so it sees records committed while we were waiting.
+    private List<ChangeFeedRecord> read(long cursor, long limit) {
+        List<ChangeFeedRecord> records = new ArrayList<>();
+        try (Transaction tx = gds.beginTx();
+             Result result = tx.execute(CHANGE_FEED_QUERY, Map.of("cursor", cursor, "limit", limit))) {
+            while (result.hasNext()) {
+                records.add(new ChangeFeedRecord(result.next()));
+            }
+            tx.commit();
+        }
+        return records;
+    }
+
+    public static class ChangeFeedRecord {
+        public final String uuid;
+        public final Long sequence;
+        public final Long timeCreated;
+        public final String transactionData;
+        public final String transactionStatement;
+        public final String payloadFormat;
+        public final String payloadCodec;
+        public final byte[] transactionPayload;
+
+        public ChangeFeedRecord(Map<String, Object> row) {
+            this.uuid = (String) row.get("uuid");
+            this.sequence = (Long) row.get("sequence");
+            this.timeCreated = (Long) row.get("timeCreated");
+            this.transactionData = (String) row.get("transactionData");
+            this.transactionStatement = (String) row.get("transactionStatement");
+            this.payloadFormat = (String) row.get("payloadFormat");
+            this.payloadCodec = (String) row.get("payloadCodec");
+            this.transactionPayload = (byte[]) row.get("transactionPayload");
+        }
+    }
+}
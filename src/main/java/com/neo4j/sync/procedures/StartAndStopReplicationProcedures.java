@@ -1,6 +1,7 @@
 package com.neo4j.sync.procedures;
 
 import com.neo4j.sync.engine.AddressResolver;
+import com.neo4j.sync.engine.FlowController;
 import com.neo4j.sync.engine.ReplicationEngine;
 import com.neo4j.sync.engine.TransactionFileLogger;
 import org.neo4j.driver.Driver;
@@ -131,7 +132,7 @@ public class StartAndStopReplicationProcedures {
     @Procedure(name = "replicationStatus", mode = Mode.WRITE)
     @Description("returns whether the replication engine is running on this server.")
     public Stream<Output> replicationStatus() {
-        Output output = new Output(ReplicationEngine.instance().status());
+        Output output = new Output(ReplicationEngine.instance());
         try {
             TransactionFileLogger.AppendPollingLog("Procedure starting: " + new Date(System.currentTimeMillis()));
         } catch (IOException e) {
@@ -142,9 +143,16 @@ public class StartAndStopReplicationProcedures {
 
     public static class Output {
         public final String status;
-
-        public Output(ReplicationEngine.Status status) {
-            this.status = status.toString().toLowerCase();
+        public final Long pollIntervalMillis;
+        public final Long batchSize;
+        public final Long lagMillis;
+
+        public Output(ReplicationEngine engine) {
+            this.status = engine.status().toString().toLowerCase();
+            FlowController flowController = engine.flowController();
+            this.pollIntervalMillis = flowController.getIntervalMillis();
+            this.batchSize = (long) flowController.getBatchSize();
+            this.lagMillis = flowController.getLagMillis();
         }
     }
 
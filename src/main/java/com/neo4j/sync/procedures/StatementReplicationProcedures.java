@@ -1,5 +1,7 @@
 package com.neo4j.sync.procedures;
 
+import com.neo4j.sync.engine.ChangeFeed;
+import com.neo4j.sync.engine.TransactionSequence;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
@@ -38,6 +40,7 @@ public class StatementReplicationProcedures {
     private final static String ST_TX_RECORD_LABEL = "StatementRecord";
     private final static String ST_TX_RECORD_TX_DATA_KEY = "transactionStatement";
     private final static String ST_DATA_JSON = "{\"statement\":\"true\"}";
+    private final static String TX_RECORD_SEQUENCE_KEY = TransactionSequence.SEQUENCE_KEY;
 
     @Procedure(name = "replicateStatement", mode = Mode.WRITE)
     @Description("commits the statement and creates a StatementRecord for replication.")
@@ -67,7 +70,10 @@ public class StatementReplicationProcedures {
             txRecordNode.setProperty(TX_RECORD_NODE_BEFORE_COMMIT_KEY, UUID.randomUUID().toString());
             txRecordNode.setProperty(ST_TX_RECORD_TX_DATA_KEY, statement);
             txRecordNode.setProperty(TX_RECORD_TX_DATA_KEY, ST_DATA_JSON);
+            // statement records share the sequence of the captured records so they replay in commit order.
+            txRecordNode.setProperty(TX_RECORD_SEQUENCE_KEY, TransactionSequence.next(tx));
             tx.commit();
+            ChangeFeed.publish();
             log.info("StatementRecord written for statement: " + statement);
         } catch (Exception e) {
             log.error(e.getMessage());
@@ -1,6 +1,14 @@
 package com.neo4j.sync.start;
 
+import com.neo4j.sync.engine.CaptureMode;
+import com.neo4j.sync.engine.Configuration;
+import com.neo4j.sync.engine.LocalReplicationTransport;
+import com.neo4j.sync.engine.ReplicationFilter;
+import com.neo4j.sync.engine.ReplicationJudge;
+import com.neo4j.sync.engine.TransactionRecordWriter;
+import com.neo4j.sync.engine.TransactionSequence;
 import com.neo4j.sync.listener.CaptureTransactionEventListenerAdapter;
+import com.neo4j.sync.listener.LocalCaptureTransactionEventListener;
 import org.neo4j.annotations.service.ServiceProvider;
 import org.neo4j.configuration.ConfigUtils;
 import org.neo4j.dbms.api.DatabaseManagementService;
@@ -72,6 +80,10 @@ public class SyncExtensionFactory extends ExtensionFactory<SyncExtensionFactory.
 
 
         CaptureTransactionEventListenerAdapter listener;
+        TransactionRecordWriter recordWriter;
+        LocalCaptureTransactionEventListener localListener;
+        LocalReplicationTransport localTransport;
+        AvailabilityListener availabilityListener;
 
         public static GraphDatabaseService getDatabase(String databaseName) {
             return DEPENDENCIES.databaseManagementService().database(databaseName);
@@ -101,34 +113,73 @@ public class SyncExtensionFactory extends ExtensionFactory<SyncExtensionFactory.
         public void start() throws Exception {
             //log.info("check if auto is enabled and kick off the replication engine");
             // call a static method to get a handle to the Config object (neo4j.conf)
-            availabilityGuard.addListener(new AvailabilityListener() {
+            if (!this.db1.databaseName().equalsIgnoreCase("neo4j")) {
+                return;
+            }
+            // the database cannot run transactions until it reports itself available, and the ReplicationSettings
+            // node must be read before the capture is set up, so everything happens once it is.
+            this.availabilityListener = new AvailabilityListener() {
                 @Override
                 public void available() {
-                   System.out.println("Some db is available");
+                    initialize();
                 }
 
-
-
                 @Override
                 public void unavailable() {
-                    // Do nothing, the dbms is not available.
-                    System.out.println("Some db is no longer available");
+                    // Do nothing, the database is not available.
                 }
-            });
-            // TODO: determine if we can use methods in the availabilityGuard interface to initialize our app
-
-
-
+            };
+            availabilityGuard.addListener(this.availabilityListener);
+        }
 
-            System.out.println("calling the start method in the new lifecycle adapter");
-            //TODO: Uncomment this line and remove the same initialization code that you'll find in the tests.
-            if (this.db1.databaseName().equalsIgnoreCase("neo4j")) {
-                System.out.println("registering the listener with the default database");
-                this.listener = new CaptureTransactionEventListenerAdapter();
-                this.databaseManagementService.registerTransactionEventListener(this.db1.databaseName(), this.listener);
+        // reads the settings and registers the listeners.  Called each time the database becomes available,
+        // but only the first call does anything.
+        private synchronized void initialize() {
+            if (this.listener != null) {
+                return;
+            }
+            // the ReplicationSettings node decides the capture mode, the filter rules and the local target,
+            // so it is read before any of them is used.
+            try {
+                Configuration.InitializeFromDB(this.db1);
+            } catch (Exception e) {
+                log.getUserLog(SyncExtensionFactory.class).error("Could not read the replication settings; using the defaults", e);
+            }
+            // compile the include / exclude rules once, before the first transaction is judged.
+            ReplicationJudge.setFilter(ReplicationFilter.compile());
+            // the sequence index and counter should exist before the first TransactionRecord is written;
+            // should this fail the counter is created by the first record and the index is left to the operator.
+            try {
+                TransactionSequence.initialize(this.db1);
+            } catch (Exception e) {
+                log.getUserLog(SyncExtensionFactory.class).error("Could not create the TransactionRecord sequence index", e);
+            }
+            if (Configuration.getCaptureMode() == CaptureMode.ASYNC) {
+                this.recordWriter = new TransactionRecordWriter(this.db1, log.getUserLog(TransactionRecordWriter.class));
+                this.recordWriter.start();
+                this.listener = new CaptureTransactionEventListenerAdapter(this.recordWriter);
+            } else {
+                this.listener = new CaptureTransactionEventListenerAdapter(Configuration.getCaptureMode(), null);
+            }
+            this.databaseManagementService.registerTransactionEventListener(this.db1.databaseName(), this.listener);
+            log.getUserLog(SyncExtensionFactory.class).info("Capturing transactions on %s in %s mode",
+                    this.db1.databaseName(), Configuration.getCaptureMode());
+
+            // a co-located target (e.g. INTEGRATION.DATABASE) is fed in-process; it may start after this database.
+            String localTarget = Configuration.getLocalTargetDatabase();
+            if (localTarget != null && !localTarget.isEmpty()) {
+                try {
+                    LocalReplicationTransport transport = new LocalReplicationTransport(this.db1,
+                            () -> this.databaseManagementService.database(localTarget),
+                            log.getUserLog(LocalReplicationTransport.class));
+                    transport.start();
+                    this.localTransport = transport;
+                    this.localListener = new LocalCaptureTransactionEventListener(this.localTransport);
+                    this.databaseManagementService.registerTransactionEventListener(this.db1.databaseName(), this.localListener);
+                } catch (Exception e) {
+                    log.getUserLog(SyncExtensionFactory.class).error("Could not start replicating to " + localTarget, e);
+                }
             }
-
-
         }
 
         //        private boolean autoRestart() {
@@ -136,10 +187,23 @@ public class SyncExtensionFactory extends ExtensionFactory<SyncExtensionFactory.
 //            return false;
 //        }
         @Override
-        public void shutdown()
+        public synchronized void shutdown() throws Exception
         {
-            System.out.println("calling the shutdown method in the new lifecycle adapter");
+            if (this.availabilityListener != null) {
+                availabilityGuard.removeListener(this.availabilityListener);
+            }
+            if (this.listener == null) {
+                return;
+            }
             this.databaseManagementService.unregisterTransactionEventListener(this.db1.databaseName(), this.listener);
+            // flush whatever the listener already handed over before the database goes away.
+            if (this.recordWriter != null) {
+                this.recordWriter.stop();
+            }
+            if (this.localListener != null) {
+                this.databaseManagementService.unregisterTransactionEventListener(this.db1.databaseName(), this.localListener);
+                this.localTransport.stop();
+            }
         }
 
 
@@ -0,0 +1,126 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApplySchedulerTest {
+
+    private final ExecutorService workers = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
+    @Test
+    void recordsSharingAKeyApplyInSourceOrder() throws Exception {
+        List<Long> appliedOrder = Collections.synchronizedList(new ArrayList<>());
+        List<Long> watermarks = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        ApplyScheduler scheduler = new ApplyScheduler(workers, record -> {
+            if (record.sequence() == 1) {
+                await(releaseFirst);
+            }
+            appliedOrder.add(record.sequence());
+        }, watermarks::add, 0, 10, 1);
+
+        scheduler.submit(nodeRecord(1, "a"));
+        scheduler.submit(nodeRecord(2, "b"));
+        scheduler.submit(nodeRecord(3, "a"));
+        // 2 touches another node and must not wait for 1.
+        waitFor(() -> appliedOrder.contains(2L));
+        assertFalse(appliedOrder.contains(3L));
+        // the watermark cannot pass the outstanding record 1.
+        assertTrue(watermarks.isEmpty());
+        releaseFirst.countDown();
+
+        assertEquals(3, scheduler.drain());
+        assertTrue(appliedOrder.indexOf(1L) < appliedOrder.indexOf(3L));
+        assertEquals(3L, watermarks.get(watermarks.size() - 1));
+        for (int i = 1; i < watermarks.size(); i++) {
+            assertTrue(watermarks.get(i - 1) < watermarks.get(i));
+        }
+    }
+
+    @Test
+    void recordsWithoutAFootprintAreBarriers() throws Exception {
+        List<Long> appliedOrder = Collections.synchronizedList(new ArrayList<>());
+        ApplyScheduler scheduler = new ApplyScheduler(workers, record -> {
+            if (record.sequence() == 1) {
+                sleep(100);
+            }
+            appliedOrder.add(record.sequence());
+        }, sequence -> { }, 0, 10, 1);
+
+        scheduler.submit(nodeRecord(1, "a"));
+        scheduler.submit(ReplicationPipeline.DecodedRecord.statement(2, "RETURN 1"));
+        scheduler.submit(nodeRecord(3, "b"));
+
+        assertEquals(3, scheduler.drain());
+        assertEquals(List.of(1L, 2L, 3L), appliedOrder);
+    }
+
+    @Test
+    void aFailedRecordHoldsTheWatermarkAndTheRecordsAfterIt() throws Exception {
+        List<Long> appliedOrder = Collections.synchronizedList(new ArrayList<>());
+        List<Long> watermarks = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch failed = new CountDownLatch(1);
+        ApplyScheduler scheduler = new ApplyScheduler(workers, record -> {
+            if (record.sequence() == 2) {
+                failed.countDown();
+                throw new IllegalStateException("deadlock outlasted the retries");
+            }
+            appliedOrder.add(record.sequence());
+        }, watermarks::add, 0, 10, 1);
+
+        scheduler.submit(nodeRecord(1, "a"));
+        scheduler.submit(nodeRecord(2, "b"));
+        await(failed);
+        // 3 touches the failed record's node and must not be applied ahead of it.
+        scheduler.submit(nodeRecord(3, "b"));
+
+        assertThrows(IllegalStateException.class, scheduler::drain);
+        assertEquals(List.of(1L), appliedOrder);
+        assertEquals(1L, watermarks.get(watermarks.size() - 1));
+    }
+
+    private ReplicationPipeline.DecodedRecord nodeRecord(long sequence, String uuid) throws Exception {
+        String change = "{\"transactionEvents\":[{\"changeType\":\"NodePropertyChange\",\"primaryKey\":{\"uuid\":\"" + uuid + "\"}}]}";
+        return ReplicationPipeline.DecodedRecord.events(sequence, 0, TransactionEventDecoder.decode(change));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            sleep(10);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.neo4j.sync.engine;
+
+import com.neo4j.sync.listener.CaptureTransactionEventListenerAdapter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListener;
+import org.neo4j.graphdb.event.TransactionEventListenerAdapter;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.neo4j.configuration.GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class AtomicCaptureTest {
+
+    private static final Label PERSON = Label.label("Person");
+    private static final Label TRANSACTION_RECORD = Label.label(TransactionRecord.TX_RECORD_LABEL);
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    @Inject
+    public DatabaseManagementService managementService;
+
+    private final CaptureTransactionEventListenerAdapter listener =
+            new CaptureTransactionEventListenerAdapter(CaptureMode.ATOMIC, null);
+
+    @BeforeEach
+    void registerListener() {
+        TransactionSequence.initialize(graphDatabaseAPI);
+        managementService.registerTransactionEventListener(DEFAULT_DATABASE_NAME, listener);
+    }
+
+    @AfterEach
+    void unregisterListener() {
+        managementService.unregisterTransactionEventListener(DEFAULT_DATABASE_NAME, listener);
+    }
+
+    @Test
+    void theRecordCommitsWithTheUserData() {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            tx.createNode(PERSON).setProperty("uuid", "Rosa");
+            tx.commit();
+        }
+
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            assertNotNull(tx.findNode(PERSON, "uuid", "Rosa"));
+            List<Node> records = tx.findNodes(TRANSACTION_RECORD).stream().collect(Collectors.toList());
+            assertEquals(1, records.size());
+            Node record = records.get(0);
+            assertEquals(1L, record.getProperty(TransactionRecord.TX_RECORD_SEQUENCE_KEY));
+            assertTrue(((String) record.getProperty(TransactionRecord.TX_RECORD_TX_DATA_KEY)).contains("Rosa"));
+            // the record is written before the commit assigns them.
+            assertFalse(record.hasProperty(TransactionRecord.TX_RECORD_INTERNAL_TX_ID_KEY));
+            assertFalse(record.hasProperty(TransactionRecord.TX_RECORD_COMMIT_TIME_KEY));
+            tx.commit();
+        }
+    }
+
+    @Test
+    void theRecordRollsBackWithTheUserData() {
+        // registered after the capture listener, so it fails the commit once the record has been written.
+        TransactionEventListener<Object> veto = new TransactionEventListenerAdapter<>() {
+            @Override
+            public Object beforeCommit(TransactionData data, Transaction transaction, GraphDatabaseService databaseService) {
+                throw new IllegalStateException("vetoed");
+            }
+        };
+        managementService.registerTransactionEventListener(DEFAULT_DATABASE_NAME, veto);
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            tx.createNode(PERSON).setProperty("uuid", "Karl");
+            assertThrows(Exception.class, tx::commit);
+        } finally {
+            managementService.unregisterTransactionEventListener(DEFAULT_DATABASE_NAME, veto);
+        }
+
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            tx.createNode(PERSON).setProperty("uuid", "Emma");
+            tx.commit();
+        }
+
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            assertNull(tx.findNode(PERSON, "uuid", "Karl"));
+            List<Node> records = tx.findNodes(TRANSACTION_RECORD).stream().collect(Collectors.toList());
+            assertEquals(1, records.size());
+            assertTrue(((String) records.get(0).getProperty(TransactionRecord.TX_RECORD_TX_DATA_KEY)).contains("Emma"));
+            // the rolled back transaction gave its sequence back as well.
+            assertEquals(1L, records.get(0).getProperty(TransactionRecord.TX_RECORD_SEQUENCE_KEY));
+            tx.commit();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.neo4j.sync.engine;
+
+import com.neo4j.sync.exceptions.TransactionDataParseException;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.neo4j.values.storable.CoordinateReferenceSystem;
+import org.neo4j.values.storable.DurationValue;
+import org.neo4j.values.storable.Values;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryPayloadCodecTest {
+
+    @Test
+    void roundTripsEveryPropertyType() throws Exception {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("uuid", "a");
+        properties.put("flag", true);
+        properties.put("byte", (byte) -3);
+        properties.put("short", (short) 300);
+        properties.put("int", -70000);
+        properties.put("long", Long.MAX_VALUE);
+        properties.put("float", 1.5f);
+        properties.put("double", -2.25d);
+        properties.put("char", 'x');
+        properties.put("date", LocalDate.of(2020, 2, 29));
+        properties.put("localTime", LocalTime.of(23, 59, 58, 123));
+        properties.put("time", OffsetTime.of(10, 0, 0, 0, ZoneOffset.ofHours(-5)));
+        properties.put("localDateTime", LocalDateTime.of(1969, 7, 20, 20, 17, 40, 5));
+        properties.put("dateTime", ZonedDateTime.of(2021, 3, 28, 1, 30, 0, 0, ZoneId.of("Europe/London")));
+        properties.put("duration", DurationValue.duration(14, 3, 3600, 500));
+        properties.put("point", Values.pointValue(CoordinateReferenceSystem.WGS84, 12.5, 55.7));
+        properties.put("longs", new long[]{1, -1, 1L << 40});
+        properties.put("strings", new String[]{"x", "ÿ"});
+
+        Audit audit = audit(ChangeType.ADD_NODE, properties);
+        Audit decoded = BinaryPayloadCodec.decode(BinaryPayloadCodec.encode(List.of(audit))).get(0);
+
+        assertEquals(audit.getChangeType(), decoded.getChangeType());
+        assertEquals(audit.getNodeLabels(), decoded.getNodeLabels());
+        assertEquals(audit.getPrimaryKey(), decoded.getPrimaryKey());
+        assertNull(decoded.getRelationshipLabel());
+        assertNull(decoded.getProperties());
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            Object value = decoded.getAllProperties().get(entry.getKey());
+            if (entry.getValue().getClass().isArray()) {
+                assertEquals(Values.of(entry.getValue()), Values.of(value), entry.getKey());
+            } else {
+                assertEquals(entry.getValue(), value, entry.getKey());
+            }
+        }
+    }
+
+    @Test
+    void roundTripsPropertyChanges() throws Exception {
+        Audit audit = audit(ChangeType.NODE_PROPERTY_CHANGE, Map.of("uuid", "a"));
+        List<PropertyChange> changes = new ArrayList<>();
+        PropertyChange removed = new PropertyChange();
+        removed.setPropertyName("name");
+        removed.setOldValue("before");
+        changes.add(removed);
+        audit.setProperties(changes);
+
+        PropertyChange decoded = BinaryPayloadCodec.decode(BinaryPayloadCodec.encode(List.of(audit))).get(0).getProperties().get(0);
+
+        assertEquals("name", decoded.getPropertyName());
+        assertEquals("before", decoded.getOldValue());
+        assertNull(decoded.getNewValue());
+    }
+
+    @Test
+    void roundTripsTheRelationshipKey() throws Exception {
+        Audit audit = audit(ChangeType.DELETE_RELATION, Map.of("uuid", "a"));
+        audit.setRelationshipLabel("KNOWS");
+        audit.setTargetNodeLabels(List.of("Test"));
+        audit.setTargetPrimaryKey(Map.of("uuid", "b"));
+        audit.setRelationshipKey(Map.of("uuid", "r"));
+
+        Audit decoded = BinaryPayloadCodec.decode(BinaryPayloadCodec.encode(List.of(audit))).get(0);
+
+        assertEquals(Map.of("uuid", "r"), decoded.getRelationshipKey());
+        assertEquals(Map.of("uuid", "b"), decoded.getTargetPrimaryKey());
+    }
+
+    @Test
+    void isSmallerThanJsonAndDecodesToTheSameEvents() throws Exception {
+        List<Audit> audits = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            audits.add(audit(ChangeType.ADD_NODE, Map.of("uuid", "node-" + i, "count", (long) i)));
+        }
+
+        byte[] binary = BinaryPayloadCodec.encode(audits);
+        byte[] json = TransactionPayloadWriter.write(audits);
+        assertTrue(binary.length < json.length / 2, binary.length + " vs " + json.length);
+
+        List<Map<String, JSONObject>> fromBinary = TransactionDataParser.getTransactionEvents(BinaryPayloadCodec.decode(binary));
+        List<Map<String, JSONObject>> fromJson = TransactionDataParser.getTransactionEvents(new JSONObject(new String(json, "UTF-8")));
+        assertEquals(fromJson.size(), fromBinary.size());
+        JSONObject event = fromBinary.get(7).get(TransactionDataParser.ADD_NODE);
+        assertEquals("node-7", TransactionDataParser.getPrimaryKey(event).get("uuid"));
+        assertArrayEquals(TransactionDataParser.getNodeLabels(fromJson.get(7).get(TransactionDataParser.ADD_NODE)),
+                TransactionDataParser.getNodeLabels(event));
+    }
+
+    @Test
+    void rejectsPayloadsItDidNotWrite() {
+        assertThrows(TransactionDataParseException.class, () -> BinaryPayloadCodec.decode("{}".getBytes()));
+        assertThrows(TransactionDataParseException.class, () -> BinaryPayloadCodec.decode(new byte[]{'N', 'S', 1, 5}));
+    }
+
+    private Audit audit(ChangeType changeType, Map<String, Object> properties) {
+        Audit audit = new Audit();
+        audit.setChangeType(changeType.getEventName());
+        audit.setNodeLabels(List.of("Test"));
+        audit.setPrimaryKey(Map.of("uuid", properties.get("uuid")));
+        audit.setAllProperties(properties);
+        return audit;
+    }
+}
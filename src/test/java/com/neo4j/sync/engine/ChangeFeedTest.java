@@ -0,0 +1,43 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChangeFeedTest {
+
+    @Test
+    void waitersAreWokenByAPublish() throws Exception {
+        long generation = ChangeFeed.generation();
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return ChangeFeed.awaitPublished(generation, 5000);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        ChangeFeed.publish();
+
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void aPublishBeforeTheWaitIsNotLost() throws Exception {
+        long generation = ChangeFeed.generation();
+        ChangeFeed.publish();
+
+        assertTrue(ChangeFeed.awaitPublished(generation, 0));
+    }
+
+    @Test
+    void waitingTimesOutWithoutAPublish() throws Exception {
+        long started = System.currentTimeMillis();
+
+        assertFalse(ChangeFeed.awaitPublished(ChangeFeed.generation(), 50));
+        assertTrue(System.currentTimeMillis() - started >= 40);
+    }
+}
@@ -0,0 +1,74 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    private CircuitBreaker breaker() {
+        return new CircuitBreaker(3, new Backoff(1000L, 60000L), now::get);
+    }
+
+    @Test
+    void opensAfterTheThresholdOfFailuresInARow() {
+        CircuitBreaker breaker = breaker();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void letsATrialThroughOnceTheOpenTimeHasPassed() {
+        CircuitBreaker breaker = breaker();
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onFailure();
+
+        now.addAndGet(breaker.retryDelayMillis());
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertFalse(breaker.hasFailures());
+    }
+
+    @Test
+    void aFailedTrialOpensItAgain() {
+        CircuitBreaker breaker = breaker();
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onFailure();
+        now.addAndGet(breaker.retryDelayMillis());
+        assertTrue(breaker.allowRequest());
+
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void backoffDelaysAreJitteredWithinTheirCeiling() {
+        Backoff backoff = new Backoff(1000L, 8000L);
+        for (int i = 0; i < 100; i++) {
+            long first = backoff.delayMillis(0);
+            long third = backoff.delayMillis(2);
+            long capped = backoff.delayMillis(10);
+            assertTrue(first >= 500 && first <= 1000);
+            assertTrue(third >= 2000 && third <= 4000);
+            assertTrue(capped >= 4000 && capped <= 8000);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.net.ServerAddress;
+import org.neo4j.logging.NullLog;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClusterHealthMonitorTest {
+
+    private final ServerAddress core1 = ServerAddress.of("core1", 7687);
+    private final ServerAddress core2 = ServerAddress.of("core2", 7687);
+    private final ServerAddress core3 = ServerAddress.of("core3", 7687);
+    private final Map<ServerAddress, Long> latencies = new HashMap<>();
+    private final Set<ServerAddress> down = new HashSet<>();
+    private final List<ServerAddress> probed = new ArrayList<>();
+
+    // probes only when the test calls probeDue.
+    private ClusterHealthMonitor monitor() {
+        ClusterHealthMonitor monitor = new ClusterHealthMonitor(List.of(core1, core2, core3), address -> {
+            probed.add(address);
+            if (down.contains(address)) {
+                throw new IOException("connection refused");
+            }
+            return latencies.get(address);
+        }, new Backoff(60000L, 60000L), 60000L, NullLog.getInstance());
+        monitor.stop();
+        return monitor;
+    }
+
+    // probes once and resolves, as the driver would after the first scheduled probe.
+    private List<ServerAddress> probeAndResolve(ClusterHealthMonitor monitor) {
+        monitor.probeDue();
+        return new ArrayList<>(monitor.resolve());
+    }
+
+    @Test
+    void healthyMembersAreListedFastestFirst() {
+        latencies.put(core1, 9_000_000L);
+        latencies.put(core2, 1_000_000L);
+        latencies.put(core3, 5_000_000L);
+
+        assertEquals(List.of(core2, core3, core1), probeAndResolve(monitor()));
+    }
+
+    @Test
+    void failedMembersGoLastAndAreNotProbedUntilTheirBackoffPasses() {
+        latencies.put(core1, 1_000_000L);
+        latencies.put(core2, 2_000_000L);
+        latencies.put(core3, 3_000_000L);
+        down.add(core1);
+        ClusterHealthMonitor monitor = monitor();
+
+        assertEquals(List.of(core2, core3, core1), probeAndResolve(monitor));
+
+        probed.clear();
+        down.clear();
+        assertEquals(List.of(core2, core3, core1), probeAndResolve(monitor));
+        assertFalse(probed.contains(core1));
+    }
+
+    @Test
+    void everyMemberIsReturnedWhenNoneIsHealthy() {
+        down.addAll(List.of(core1, core2, core3));
+
+        ClusterHealthMonitor monitor = monitor();
+        monitor.probeDue();
+
+        assertEquals(Set.of(core1, core2, core3), monitor.resolve());
+    }
+
+    @Test
+    void resolvingDoesNotWaitOnTheProbes() throws Exception {
+        CountDownLatch probing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ClusterHealthMonitor monitor = new ClusterHealthMonitor(List.of(core1, core2), address -> {
+            probing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1_000_000L;
+        }, new Backoff(60000L, 60000L), 60000L, NullLog.getInstance());
+        try {
+            // the first resolve starts the probes and answers with every member as given.
+            assertEquals(List.of(core1, core2), new ArrayList<>(monitor.resolve()));
+            assertTrue(probing.await(10, TimeUnit.SECONDS));
+
+            assertEquals(List.of(core1, core2),
+                    assertTimeoutPreemptively(Duration.ofSeconds(10), () -> new ArrayList<>(monitor.resolve())));
+        } finally {
+            release.countDown();
+            monitor.stop();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlowControllerTest {
+
+    private FlowController adaptive() {
+        return new FlowController(true, 100, 1000, 1000L, 60000L, 2000L, 1024L * 1024, 10000L);
+    }
+
+    @Test
+    void fullPagesGrowTheBatchAndShortenTheInterval() {
+        FlowController flow = adaptive();
+
+        flow.onPoll(100, 0, 10, 1024);
+
+        assertEquals(200, flow.getBatchSize());
+        assertEquals(30000L, flow.getIntervalMillis());
+    }
+
+    @Test
+    void slowCommitsHalveTheBatch() {
+        FlowController flow = adaptive();
+        flow.onPoll(100, 0, 10, 1024);
+        flow.onPoll(200, 0, 10, 1024);
+
+        flow.onPoll(300, 0, 5000, 1024);
+
+        assertEquals(150, flow.getBatchSize());
+    }
+
+    @Test
+    void idlePollsBackOffUpToTheMaximumInterval() {
+        FlowController flow = adaptive();
+        flow.onPoll(100, 20000, 10, 1024);
+        flow.onPoll(100, 20000, 10, 1024);
+        assertEquals(15000L, flow.getIntervalMillis());
+
+        flow.onPoll(0, 0, 0, 0);
+        assertEquals(16000L, flow.getIntervalMillis());
+        for (int i = 0; i < 100; i++) {
+            flow.onPoll(0, 0, 0, 0);
+        }
+        assertEquals(60000L, flow.getIntervalMillis());
+    }
+
+    @Test
+    void fixedSettingsOnlyReportLag() {
+        FlowController flow = new FlowController(false, 100, 1000, 1000L, 60000L, 2000L, 1024L * 1024, 10000L);
+
+        flow.onPoll(100, 12345, 5000, 1024);
+
+        assertEquals(100, flow.getBatchSize());
+        assertEquals(60000L, flow.getIntervalMillis());
+        assertEquals(12345L, flow.getLagMillis());
+    }
+}
@@ -0,0 +1,149 @@
+package com.neo4j.sync.engine;
+
+import com.neo4j.sync.listener.LocalCaptureTransactionEventListener;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.NullLog;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.neo4j.configuration.GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class LocalReplicationTransportTest {
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    @Test
+    void appliesCommittedChangesWithoutTransactionRecords() throws Exception {
+        DatabaseManagementService sourceDbms = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        try {
+            GraphDatabaseService source = sourceDbms.database(DEFAULT_DATABASE_NAME);
+            LocalReplicationTransport transport = new LocalReplicationTransport(source, () -> graphDatabaseAPI,
+                    NullLog.getInstance(), 100, 10);
+            transport.start();
+            sourceDbms.registerTransactionEventListener(DEFAULT_DATABASE_NAME, new LocalCaptureTransactionEventListener(transport));
+
+            write(source, "CREATE (:Person {uuid:'Rosa'})", true);
+            write(source, "CREATE (:Person {uuid:'Karl'})", false);
+            write(source, "CREATE (:Person {uuid:'Emma'})", true);
+            transport.stop();
+
+            assertEquals(2, transport.getAppliedChangeSets());
+            // the rolled back transaction gave its number back.
+            assertEquals(2L, transport.getLastAppliedSequence());
+            assertEquals(2L, TransactionHistoryManager.getLastLocalReplicatedSequence(graphDatabaseAPI));
+            // the watermark of pulled TransactionRecords is left alone.
+            assertEquals(0L, TransactionHistoryManager.getLastReplicatedSequence(graphDatabaseAPI));
+            try (Transaction tx = graphDatabaseAPI.beginTx()) {
+                assertNotNull(tx.findNode(Label.label("Person"), "uuid", "Rosa"));
+                assertNotNull(tx.findNode(Label.label("Person"), "uuid", "Emma"));
+                assertNull(tx.findNode(Label.label("Person"), "uuid", "Karl"));
+                assertFalse(tx.findNodes(Label.label(TransactionRecord.TX_RECORD_LABEL)).hasNext());
+                tx.commit();
+            }
+            try (Transaction tx = source.beginTx()) {
+                assertFalse(tx.findNodes(Label.label(TransactionRecord.TX_RECORD_LABEL)).hasNext());
+                // the handoff nodes go once the change sets are applied.
+                assertFalse(tx.findNodes(Label.label(LocalReplicationTransport.CHANGE_SET_LABEL)).hasNext());
+                tx.commit();
+            }
+        } finally {
+            sourceDbms.shutdown();
+        }
+    }
+
+    @Test
+    void appliesChangeSetsInSequenceOrderWhateverOrderTheyArriveIn() throws Exception {
+        DatabaseManagementService sourceDbms = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        try {
+            GraphDatabaseService source = sourceDbms.database(DEFAULT_DATABASE_NAME);
+            LocalReplicationTransport transport = new LocalReplicationTransport(source, () -> graphDatabaseAPI,
+                    NullLog.getInstance(), 100, 10);
+            transport.start();
+            waitFor(transport::isRecovered);
+            LocalReplicationTransport.ChangeSet first = reserve(source, transport);
+            LocalReplicationTransport.ChangeSet second = reserve(source, transport);
+
+            transport.submit(second);
+            Thread.sleep(300);
+            assertEquals(0L, transport.getLastAppliedSequence());
+
+            transport.submit(first);
+            transport.stop();
+            assertEquals(2L, transport.getLastAppliedSequence());
+        } finally {
+            sourceDbms.shutdown();
+        }
+    }
+
+    @Test
+    void changeSetsWhoseHandoffWasLostAreReadBackFromTheSource() throws Exception {
+        DatabaseManagementService sourceDbms = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        try {
+            GraphDatabaseService source = sourceDbms.database(DEFAULT_DATABASE_NAME);
+            LocalReplicationTransport stopped = new LocalReplicationTransport(source, () -> graphDatabaseAPI,
+                    NullLog.getInstance(), 100, 10);
+            stopped.start();
+            sourceDbms.registerTransactionEventListener(DEFAULT_DATABASE_NAME, new LocalCaptureTransactionEventListener(stopped));
+            write(source, "CREATE (:Person {uuid:'Rosa'})", true);
+            stopped.stop();
+            // committed on the source, but the DBMS stops before it is handed over.
+            write(source, "CREATE (:Person {uuid:'Emma'})", true);
+
+            LocalReplicationTransport transport = new LocalReplicationTransport(source, () -> graphDatabaseAPI,
+                    NullLog.getInstance(), 100, 10);
+            transport.start();
+            waitFor(() -> transport.getLastAppliedSequence() == 2L);
+            transport.stop();
+
+            assertEquals(2L, TransactionHistoryManager.getLastLocalReplicatedSequence(graphDatabaseAPI));
+            try (Transaction tx = graphDatabaseAPI.beginTx()) {
+                assertNotNull(tx.findNode(Label.label("Person"), "uuid", "Rosa"));
+                assertNotNull(tx.findNode(Label.label("Person"), "uuid", "Emma"));
+                tx.commit();
+            }
+        } finally {
+            sourceDbms.shutdown();
+        }
+    }
+
+    private static LocalReplicationTransport.ChangeSet reserve(GraphDatabaseService source, LocalReplicationTransport transport) {
+        try (Transaction tx = source.beginTx()) {
+            LocalReplicationTransport.ChangeSet changeSet = transport.reserve(tx, List.of());
+            tx.commit();
+            return changeSet;
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private void write(GraphDatabaseService database, String statement, boolean commit) {
+        try (Transaction tx = database.beginTx()) {
+            tx.execute(statement);
+            if (commit) {
+                tx.commit();
+            } else {
+                tx.rollback();
+            }
+        }
+    }
+}
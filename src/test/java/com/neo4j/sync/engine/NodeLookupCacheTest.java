@@ -0,0 +1,102 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class NodeLookupCacheTest {
+
+    private static final String HUB = "{\"transactionEvents\":[" +
+            "{\"changeType\":\"AddNode\",\"nodeLabels\":[\"Person\"],\"primaryKey\":{\"uuid\":\"hub\"},\"allProperties\":{\"uuid\":\"hub\"}}," +
+            "{\"changeType\":\"AddNode\",\"nodeLabels\":[\"Person\"],\"primaryKey\":{\"uuid\":\"a\"},\"allProperties\":{\"uuid\":\"a\"}}," +
+            "{\"changeType\":\"AddRelation\",\"nodeLabels\":[\"Person\"],\"primaryKey\":{\"uuid\":\"a\"},\"relationshipLabel\":\"KNOWS\"," +
+            "\"targetNodeLabels\":[\"Person\"],\"targetPrimaryKey\":{\"uuid\":\"hub\"},\"allProperties\":{}}," +
+            "{\"changeType\":\"AddRelation\",\"nodeLabels\":[\"Person\"],\"primaryKey\":{\"uuid\":\"b\"},\"relationshipLabel\":\"KNOWS\"," +
+            "\"targetNodeLabels\":[\"Person\"],\"targetPrimaryKey\":{\"uuid\":\"hub\"},\"allProperties\":{}}," +
+            "{\"changeType\":\"AddRelation\",\"nodeLabels\":[\"Person\"],\"primaryKey\":{\"uuid\":\"b\"},\"relationshipLabel\":\"LIKES\"," +
+            "\"targetNodeLabels\":[\"Person\"],\"targetPrimaryKey\":{\"uuid\":\"hub\"},\"allProperties\":{}}" +
+            "]}";
+
+    private static final Label PERSON = Label.label("Person");
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    @Test
+    void resolvesEachEndpointOncePerTransaction() throws Exception {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            tx.execute("CREATE (:Person:LocalTx {uuid:'b'})");
+            tx.commit();
+        }
+
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            NodeLookupCache cache = new NodeLookupCache();
+            new TransactionDataHandler(TransactionEventDecoder.decode(HUB), tx, null, cache).executeCRUDOperation();
+            tx.commit();
+
+            // the created nodes are never looked up; b is looked up once.
+            assertEquals(1, cache.getMisses());
+            assertEquals(5, cache.getHits());
+        }
+
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            Node hub = tx.findNode(PERSON, "uuid", "hub");
+            assertEquals(3, hub.getDegree());
+            tx.commit();
+        }
+    }
+
+    @Test
+    void remembersMissesUntilTheNodeIsCreated() {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            NodeLookupCache cache = new NodeLookupCache();
+            assertNull(cache.find(tx, PERSON, "uuid", 7L));
+            assertNull(cache.find(tx, PERSON, "uuid", 7L));
+            assertEquals(1, cache.getMisses());
+
+            Node node = tx.createNode(PERSON);
+            node.setProperty("uuid", 7L);
+            cache.created(node, List.of(PERSON), Map.of("uuid", 7L));
+            assertEquals(node, cache.find(tx, PERSON, "uuid", 7));
+            assertEquals(1, cache.getMisses());
+            tx.commit();
+        }
+    }
+
+    @Test
+    void forgetsDeletedNodesAndChangedKeys() {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            tx.execute("CREATE (:Person {uuid:'a'}), (:Person {uuid:'b'})");
+            tx.commit();
+        }
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            NodeLookupCache cache = new NodeLookupCache();
+            Node a = cache.find(tx, PERSON, "uuid", "a");
+            assertNotNull(a);
+            a.delete();
+            cache.deleted(List.of(PERSON), Map.of("uuid", "a"));
+            assertNull(cache.find(tx, PERSON, "uuid", "a"));
+
+            Node b = cache.find(tx, PERSON, "uuid", "b");
+            b.setProperty("uuid", "c");
+            cache.propertyChanged("name");
+            assertEquals(b, cache.find(tx, PERSON, "uuid", "b"));
+            cache.propertyChanged("uuid");
+            assertNull(cache.find(tx, PERSON, "uuid", "b"));
+            assertEquals(b, cache.find(tx, PERSON, "uuid", "c"));
+            tx.commit();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.neo4j.sync.engine;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+
+// the ReplicationJudge as it was before the single-pass rewrite, without its diagnostic dump.  Kept as the
+// reference for ReplicationJudgeEquivalenceTest and the baseline for ReplicationJudgeBenchmark.
+final class OriginalReplicationJudge {
+
+    private OriginalReplicationJudge() {
+    }
+
+    static boolean approved(TransactionData data) {
+        if (data.createdNodes().iterator().hasNext() && !data.assignedLabels().iterator().hasNext()) {
+            return false;
+        }
+        for (LabelEntry le : data.assignedLabels()) {
+            if (le.label().name().equals("LocalTx") || le.label().name().equals("DoNotReplicate") ||
+                    le.label().name().equals("TransactionRecord")) {
+                return false;
+            }
+        }
+        if (data.createdNodes().iterator().hasNext() && !data.assignedNodeProperties().iterator().hasNext()) {
+            return false;
+        }
+        for (Relationship rel : data.deletedRelationships()) {
+            if (rel.getStartNode().hasLabel(Label.label("LocalTx"))) {
+                return false;
+            }
+        }
+        for (Node node : data.deletedNodes()) {
+            if (node.hasLabel(Label.label("LocalTx"))) {
+                return false;
+            }
+        }
+        for (Relationship rel : data.createdRelationships()) {
+            if (rel.getStartNode().hasLabel(Label.label("LocalTx"))) {
+                return false;
+            }
+        }
+        for (PropertyEntry<Relationship> pe : data.assignedRelationshipProperties()) {
+            if (pe.entity().getStartNode().hasLabel(Label.label("LocalTx")) || !pe.entity().hasProperty("uuid")) {
+                return false;
+            }
+        }
+        for (PropertyEntry<Node> ne : data.assignedNodeProperties()) {
+            if (!ne.entity().hasProperty("uuid")) {
+                return false;
+            }
+            for (Label label : ne.entity().getLabels()) {
+                if (label.name().equals("LastTransactionReplicated")) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
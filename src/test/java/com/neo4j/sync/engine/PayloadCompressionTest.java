@@ -0,0 +1,41 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadCompressionTest {
+
+    @Test
+    void onlyPayloadsAboveTheThresholdAreCompressed() {
+        int threshold = Configuration.getPayloadCompressionThreshold();
+
+        assertEquals(PayloadCodec.NONE, PayloadCompression.codecFor(threshold));
+        assertEquals(Configuration.getPayloadCodec(), PayloadCompression.codecFor(threshold + 1));
+    }
+
+    @Test
+    void gzipRoundTripsAndShrinksRepetitivePayloads() throws Exception {
+        StringBuilder json = new StringBuilder("{\"transactionEvents\":[");
+        for (int i = 0; i < 10000; i++) {
+            json.append("{\"changeType\":\"AddNode\",\"nodeLabels\":[\"Test\"],\"primaryKey\":{\"uuid\":\"").append(i).append("\"}},");
+        }
+        json.append("{}]}");
+        byte[] payload = json.toString().getBytes(StandardCharsets.UTF_8);
+
+        byte[] compressed = PayloadCompression.compress(PayloadCodec.GZIP, payload);
+
+        assertTrue(compressed.length < payload.length / 10, compressed.length + " vs " + payload.length);
+        assertArrayEquals(payload, PayloadCompression.decompress(PayloadCodec.GZIP, compressed));
+    }
+
+    @Test
+    void noneLeavesThePayloadAlone() throws Exception {
+        byte[] payload = "{}".getBytes(StandardCharsets.UTF_8);
+
+        assertSame(payload, PayloadCompression.compress(PayloadCodec.NONE, payload));
+        assertSame(payload, PayloadCompression.decompress(PayloadCodec.NONE, payload));
+    }
+}
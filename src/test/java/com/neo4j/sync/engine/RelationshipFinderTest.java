@@ -0,0 +1,95 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class RelationshipFinderTest {
+
+    private static final String ENDPOINTS = "\"nodeLabels\":[\"Person\"],\"primaryKey\":{\"uuid\":\"a\"}," +
+            "\"relationshipLabel\":\"KNOWS\",\"targetNodeLabels\":[\"Person\"],\"targetPrimaryKey\":{\"uuid\":\"hub\"}";
+
+    private static final Label PERSON = Label.label("Person");
+    private static final RelationshipType KNOWS = RelationshipType.withName("KNOWS");
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    @BeforeEach
+    void createSupernode() {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            tx.execute("CREATE (hub:Person:LocalTx {uuid:'hub'}), (a:Person:LocalTx {uuid:'a'}), " +
+                    "(a)-[:KNOWS {uuid:'r1', since:1}]->(hub), (a)-[:KNOWS {uuid:'r2', since:2}]->(hub) " +
+                    "WITH hub UNWIND range(1, 500) AS i CREATE (:Person:LocalTx {uuid:'p' + i})-[:KNOWS]->(hub)");
+            tx.commit();
+        }
+    }
+
+    @Test
+    void deletesOnlyTheKeyedRelationship() throws Exception {
+        apply("{\"changeType\":\"DeleteRelation\"," + ENDPOINTS + ",\"relationshipKey\":{\"uuid\":\"r2\"}}");
+
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            List<Relationship> left = relationshipsOfA(tx);
+            assertEquals(1, left.size());
+            assertEquals("r1", left.get(0).getProperty("uuid"));
+            assertEquals(501, tx.findNode(PERSON, "uuid", "hub").getDegree(KNOWS));
+            tx.commit();
+        }
+    }
+
+    @Test
+    void changesOnlyTheKeyedRelationship() throws Exception {
+        apply("{\"changeType\":\"RelationPropertyChange\"," + ENDPOINTS + ",\"relationshipKey\":{\"uuid\":\"r1\"}," +
+                "\"properties\":[{\"propertyName\":\"since\",\"newValue\":10}]}");
+
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            for (Relationship relationship : relationshipsOfA(tx)) {
+                long expected = "r1".equals(relationship.getProperty("uuid")) ? 10L : 2L;
+                assertEquals(expected, ((Number) relationship.getProperty("since")).longValue());
+            }
+            tx.commit();
+        }
+    }
+
+    @Test
+    void eventsWithoutAKeyApplyToEveryRelationshipBetweenTheNodes() throws Exception {
+        apply("{\"changeType\":\"DeleteRelation\"," + ENDPOINTS + "}");
+
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            assertTrue(relationshipsOfA(tx).isEmpty());
+            assertEquals(500, tx.findNode(PERSON, "uuid", "hub").getDegree(KNOWS));
+            tx.commit();
+        }
+    }
+
+    private void apply(String event) throws Exception {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            new TransactionDataHandler(TransactionEventDecoder.decode("{\"transactionEvents\":[" + event + "]}"), tx)
+                    .executeCRUDOperation();
+            tx.commit();
+        }
+    }
+
+    private static List<Relationship> relationshipsOfA(Transaction tx) {
+        Node a = tx.findNode(PERSON, "uuid", "a");
+        List<Relationship> relationships = new ArrayList<>();
+        a.getRelationships(KNOWS).forEach(relationships::add);
+        return relationships;
+    }
+}
@@ -0,0 +1,80 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicationFilterTest {
+
+    @Test
+    void defaultsReproduceTheOriginalJudgeRules() {
+        ReplicationFilter filter = ReplicationFilter.defaults();
+
+        assertTrue(filter.isExcludedAssignedLabel(Label.label("LocalTx")));
+        assertTrue(filter.isExcludedAssignedLabel(Label.label("DoNotReplicate")));
+        assertTrue(filter.isExcludedAssignedLabel(Label.label("TransactionRecord")));
+        assertFalse(filter.isExcludedAssignedLabel(Label.label("Test")));
+        assertTrue(filter.isExcludedUpdatedLabel(Label.label("LastTransactionReplicated")));
+        assertTrue(filter.isExcludedEndpointLabel(Label.label("LocalTx")));
+        assertFalse(filter.isExcludedEndpointLabel(Label.label("DoNotReplicate")));
+        assertFalse(filter.hasIncludedLabels());
+        assertTrue(filter.isReplicatedType(RelationshipType.withName("CONNECTED_TO")));
+    }
+
+    @Test
+    void excludedLabelFamiliesLeaveNodesOutWithoutVetoing() {
+        ReplicationFilter filter = new ReplicationFilter(List.of("SessionCache", "Metric"), List.of(), List.of(),
+                List.of(), List.of(), List.of(), List.of(), List.of(), List.of());
+
+        assertTrue(filter.isExcludedLabel(Label.label("Metric")));
+        assertFalse(filter.isReplicatedNode(List.of("Person", "Metric")));
+        assertTrue(filter.isReplicatedNode(List.of("Person")));
+        assertFalse(filter.isExcludedAssignedLabel(Label.label("Metric")));
+        assertFalse(filter.isExcludedUpdatedLabel(Label.label("SessionCache")));
+        assertFalse(filter.isExcludedEndpointLabel(Label.label("SessionCache")));
+        assertFalse(filter.isExcludedLabel(Label.label("Person")));
+    }
+
+    @Test
+    void includedLabelsLeaveOtherNodesOut() {
+        ReplicationFilter filter = new ReplicationFilter(List.of(), List.of(), List.of(), List.of(),
+                List.of("Person"), List.of(), List.of(), List.of(), List.of());
+
+        assertTrue(filter.isReplicatedNode(List.of("Person", "Employee")));
+        assertFalse(filter.isReplicatedNode(List.of("Employee")));
+        assertTrue(ReplicationFilter.defaults().isReplicatedNode(List.of("Employee")));
+    }
+
+    @Test
+    void relationshipTypeRules() {
+        ReplicationFilter excluding = new ReplicationFilter(List.of(), List.of(), List.of(), List.of(), List.of(),
+                List.of("VISITED"), List.of(), List.of(), List.of());
+        assertFalse(excluding.isReplicatedType(RelationshipType.withName("VISITED")));
+        assertTrue(excluding.isReplicatedType(RelationshipType.withName("KNOWS")));
+
+        ReplicationFilter including = new ReplicationFilter(List.of(), List.of(), List.of(), List.of(), List.of(),
+                List.of(), List.of("KNOWS"), List.of(), List.of());
+        assertTrue(including.isReplicatedType(RelationshipType.withName("KNOWS")));
+        assertFalse(including.isReplicatedType(RelationshipType.withName("VISITED")));
+    }
+
+    @Test
+    void requiredPropertiesMustAllBePresent() {
+        ReplicationFilter filter = new ReplicationFilter(List.of(), List.of(), List.of(), List.of(), List.of(),
+                List.of(), List.of(), List.of("uuid", "tenant"), List.of());
+        Node node = mock(Node.class);
+        when(node.hasProperty("uuid")).thenReturn(true);
+        when(node.hasProperty("tenant")).thenReturn(false);
+
+        assertFalse(filter.hasRequiredNodeProperties(node));
+        when(node.hasProperty("tenant")).thenReturn(true);
+        assertTrue(filter.hasRequiredNodeProperties(node));
+    }
+}
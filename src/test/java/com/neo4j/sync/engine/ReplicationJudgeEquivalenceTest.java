@@ -0,0 +1,132 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListenerAdapter;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.neo4j.configuration.GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+
+/**
+ * Checks that the single-pass ReplicationJudge, run with the default ReplicationFilter, reaches the same verdict as
+ * the original multi-pass judge on real TransactionData from inside beforeCommit, for each of the rules the
+ * original applied.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class ReplicationJudgeEquivalenceTest {
+
+    private static final Label PERSON = Label.label("Person");
+    private static final RelationshipType KNOWS = RelationshipType.withName("KNOWS");
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    @Inject
+    public DatabaseManagementService managementService;
+
+    @AfterEach
+    void restoreFilter() {
+        ReplicationJudge.setFilter(ReplicationFilter.defaults());
+    }
+
+    @Test
+    void approvesAnImport() {
+        // a hub node connected to a few thousand new nodes, the shape of a typical import.
+        assertTrue(verdict(tx -> {
+            Node hub = tx.createNode(Label.label("Hub"));
+            hub.setProperty("uuid", "hub");
+            for (int i = 0; i < 2000; i++) {
+                Node node = tx.createNode(Label.label("Test"));
+                node.setProperty("uuid", "node-" + i);
+                node.setProperty("name", "name-" + i);
+                Relationship rel = hub.createRelationshipTo(node, RelationshipType.withName("CONNECTED_TO"));
+                rel.setProperty("uuid", "rel-" + i);
+            }
+        }));
+    }
+
+    @Test
+    void vetoesOurOwnLabels() {
+        assertFalse(verdict(tx -> tx.createNode(PERSON, Label.label("LocalTx")).setProperty("uuid", "a")));
+        assertFalse(verdict(tx -> tx.createNode(PERSON, Label.label("DoNotReplicate")).setProperty("uuid", "b")));
+    }
+
+    @Test
+    void vetoesNodesWithoutLabelsOrProperties() {
+        assertFalse(verdict(tx -> tx.createNode().setProperty("uuid", "a")));
+        assertFalse(verdict(tx -> tx.createNode(PERSON)));
+        assertFalse(verdict(tx -> tx.createNode(PERSON).setProperty("name", "no uuid")));
+    }
+
+    @Test
+    void vetoesRelationshipPropertiesWithoutAUuid() {
+        write(tx -> {
+            tx.createNode(PERSON).setProperty("uuid", "a");
+            tx.createNode(PERSON).setProperty("uuid", "b");
+        });
+
+        assertFalse(verdict(tx -> tx.findNode(PERSON, "uuid", "a")
+                .createRelationshipTo(tx.findNode(PERSON, "uuid", "b"), KNOWS).setProperty("since", 2020)));
+        assertTrue(verdict(tx -> tx.findNode(PERSON, "uuid", "a")
+                .createRelationshipTo(tx.findNode(PERSON, "uuid", "b"), KNOWS).setProperty("uuid", "ab")));
+    }
+
+    @Test
+    void vetoesWritesTouchingLocalNodes() {
+        write(tx -> {
+            tx.createNode(PERSON).setProperty("uuid", "a");
+            tx.createNode(Label.label("LocalTx")).setProperty("uuid", "local");
+            tx.createNode(Label.label("LastTransactionReplicated")).setProperty("uuid", "watermark");
+        });
+
+        assertFalse(verdict(tx -> tx.findNode(Label.label("LocalTx"), "uuid", "local")
+                .createRelationshipTo(tx.findNode(PERSON, "uuid", "a"), KNOWS)));
+        assertFalse(verdict(tx -> tx.findNode(Label.label("LastTransactionReplicated"), "uuid", "watermark")
+                .setProperty("lastSequenceReplicated", 1L)));
+        assertTrue(verdict(tx -> tx.findNode(PERSON, "uuid", "a").setProperty("name", "Anna")));
+    }
+
+    // runs the work with both judges deciding on its TransactionData and returns their common verdict.
+    private boolean verdict(Consumer<Transaction> work) {
+        Boolean[] verdicts = new Boolean[2];
+        TransactionEventListenerAdapter<Object> judges = new TransactionEventListenerAdapter<>() {
+            @Override
+            public Object beforeCommit(TransactionData data, Transaction transaction, GraphDatabaseService databaseService) {
+                verdicts[0] = OriginalReplicationJudge.approved(data);
+                verdicts[1] = ReplicationJudge.approved(data);
+                return null;
+            }
+        };
+        managementService.registerTransactionEventListener(DEFAULT_DATABASE_NAME, judges);
+        try {
+            write(work);
+        } finally {
+            managementService.unregisterTransactionEventListener(DEFAULT_DATABASE_NAME, judges);
+        }
+        assertNotNull(verdicts[0]);
+        assertEquals(verdicts[0], verdicts[1]);
+        return verdicts[1];
+    }
+
+    private void write(Consumer<Transaction> work) {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            work.accept(tx);
+            tx.commit();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListener;
+import org.neo4j.graphdb.event.TransactionEventListenerAdapter;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.neo4j.configuration.GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class ReplicationJudgeTest {
+
+    private static final Label PERSON = Label.label("Person");
+    private static final Label SESSION = Label.label("Session");
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    @Inject
+    public DatabaseManagementService managementService;
+
+    @AfterEach
+    void restoreFilter() {
+        ReplicationJudge.setFilter(ReplicationFilter.defaults());
+    }
+
+    @Test
+    void excludedEntitiesAreLeftOutOfAnOtherwiseReplicatedTransaction() throws Exception {
+        ReplicationJudge.setFilter(new ReplicationFilter(List.of("Session"),
+                ReplicationFilter.DEFAULT_EXCLUDE_ASSIGNED_LABELS, ReplicationFilter.DEFAULT_EXCLUDE_UPDATED_LABELS,
+                ReplicationFilter.DEFAULT_EXCLUDE_ENDPOINT_LABELS, List.of(), List.of("VISITED"), List.of(),
+                ReplicationFilter.DEFAULT_REQUIRED_PROPERTIES, List.of()));
+        Verdict verdict = new Verdict();
+
+        capture(verdict, tx -> {
+            Node a = tx.createNode(PERSON);
+            a.setProperty("uuid", "a");
+            Node b = tx.createNode(PERSON);
+            b.setProperty("uuid", "b");
+            // a session node has no uuid of its own.
+            Node session = tx.createNode(SESSION);
+            session.setProperty("token", "t");
+            a.createRelationshipTo(b, RelationshipType.withName("KNOWS"));
+            a.createRelationshipTo(b, RelationshipType.withName("VISITED"));
+            session.createRelationshipTo(a, RelationshipType.withName("OWNS"));
+        });
+
+        assertTrue(verdict.approved);
+        TransactionEvents events = TransactionEventDecoder.decode(verdict.record.getTransactionData());
+        assertEquals(2, events.get(ChangeType.ADD_NODE).size());
+        assertEquals(1, events.get(ChangeType.ADD_RELATION).size());
+        TransactionEvent.AddRelation knows = (TransactionEvent.AddRelation) events.get(ChangeType.ADD_RELATION).get(0);
+        assertEquals("KNOWS", knows.getRelationshipType().name());
+
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            // the excluded session is still committed, only not replicated.
+            assertNotNull(tx.findNode(SESSION, "token", "t"));
+            tx.commit();
+        }
+
+        capture(verdict, tx -> tx.findNode(SESSION, "token", "t").setProperty("token", "u"));
+
+        assertTrue(verdict.approved);
+        assertNull(verdict.record);
+    }
+
+    @Test
+    void ourOwnWritesStillVetoTheTransaction() {
+        Verdict verdict = new Verdict();
+
+        capture(verdict, tx -> {
+            Node node = tx.createNode(PERSON, Label.label("LocalTx"));
+            node.setProperty("uuid", "replicated");
+        });
+
+        assertFalse(verdict.approved);
+    }
+
+    private void capture(Verdict verdict, Consumer<Transaction> work) {
+        TransactionEventListener<Object> judge = new TransactionEventListenerAdapter<>() {
+            @Override
+            public Object beforeCommit(TransactionData data, Transaction transaction, GraphDatabaseService databaseService) throws Exception {
+                verdict.approved = ReplicationJudge.approved(data);
+                verdict.record = verdict.approved ? new TransactionRecorder(data).serializeTransaction() : null;
+                return null;
+            }
+        };
+        managementService.registerTransactionEventListener(DEFAULT_DATABASE_NAME, judge);
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            work.accept(tx);
+            tx.commit();
+        } finally {
+            managementService.unregisterTransactionEventListener(DEFAULT_DATABASE_NAME, judge);
+        }
+    }
+
+    private static final class Verdict {
+        private boolean approved;
+        private TransactionRecord record;
+    }
+}
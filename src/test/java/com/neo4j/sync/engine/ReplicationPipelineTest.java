@@ -0,0 +1,404 @@
+package com.neo4j.sync.engine;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.exceptions.ServiceUnavailableException;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListener;
+import org.neo4j.graphdb.event.TransactionEventListenerAdapter;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.neo4j.configuration.GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class ReplicationPipelineTest {
+
+    private static final Pattern PAGE = Pattern.compile("tr.sequence > (\\d+) .* LIMIT (\\d+)");
+    private static final Label PERSON = Label.label("Person");
+    private static final RelationshipType KNOWS = RelationshipType.withName("KNOWS");
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    @Inject
+    public DatabaseManagementService managementService;
+
+    private final List<ReplicationPipeline> pipelines = new ArrayList<>();
+    private final int applyGroupSize = Configuration.getApplyGroupSize();
+    private final boolean capturePropertyDeltas = Configuration.isCapturePropertyDeltas();
+
+    @AfterEach
+    void shutdown() {
+        pipelines.forEach(ReplicationPipeline::shutdown);
+        // the settings are static; put back what the other tests run with.
+        if (Configuration.getApplyGroupSize() != applyGroupSize) {
+            setting(Configuration.APPLY_GROUP_SIZE_KEY, applyGroupSize);
+        }
+        if (Configuration.isCapturePropertyDeltas() != capturePropertyDeltas) {
+            setting(Configuration.CAPTURE_PROPERTY_DELTAS_KEY, capturePropertyDeltas);
+        }
+    }
+
+    @Test
+    void aFailedFetchStopsTheApplierBeforeTheNextRun() {
+        Source source = new Source();
+        for (long sequence = 1; sequence <= 6; sequence++) {
+            source.add(sequence, addPerson("p" + sequence));
+        }
+        // the first run loses the source after four records.
+        source.failAfter = 4;
+        ReplicationPipeline pipeline = pipeline(source, 1);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            assertThrows(ServiceUnavailableException.class, () -> pipeline.run(0, 100));
+            long resumeFrom = TransactionHistoryManager.getLastReplicatedSequence(graphDatabaseAPI);
+            // nothing is applied past the watermark once run has returned.
+            assertEquals(resumeFrom, pipeline.getLastAppliedSequence());
+            assertTrue(resumeFrom <= 4);
+
+            source.failAfter = -1;
+            pipeline.run(resumeFrom, 100);
+        });
+
+        assertEquals(6L, TransactionHistoryManager.getLastReplicatedSequence(graphDatabaseAPI));
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            for (int i = 1; i <= 6; i++) {
+                assertNotNull(tx.findNode(PERSON, "uuid", "p" + i));
+            }
+            tx.commit();
+        }
+    }
+
+    @Test
+    void recordsMarkedAppliedPastTheWatermarkAreNotAppliedAgain() throws Exception {
+        Source source = new Source();
+        for (long sequence = 1; sequence <= 3; sequence++) {
+            source.add(sequence, addPerson("p" + sequence));
+        }
+        // a concurrent run applied record 2 and stopped before persisting a watermark past it.
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            TransactionHistoryManager.markApplied(tx, 2);
+            tx.commit();
+        }
+
+        assertEquals(3, pipeline(source, 1).run(0, 100));
+
+        assertEquals(3L, TransactionHistoryManager.getLastReplicatedSequence(graphDatabaseAPI));
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            assertNotNull(tx.findNode(PERSON, "uuid", "p1"));
+            assertNull(tx.findNode(PERSON, "uuid", "p2"));
+            assertNotNull(tx.findNode(PERSON, "uuid", "p3"));
+            tx.commit();
+        }
+    }
+
+    @Test
+    void concurrentRunsMarkTheirRecordsUntilTheWatermarkPassesThem() throws Exception {
+        Source source = new Source();
+        for (long sequence = 1; sequence <= 8; sequence++) {
+            source.add(sequence, addPerson("p" + sequence));
+        }
+
+        assertEquals(8, pipeline(source, 4).run(0, 100));
+
+        assertEquals(8L, TransactionHistoryManager.getLastReplicatedSequence(graphDatabaseAPI));
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            for (int i = 1; i <= 8; i++) {
+                assertNotNull(tx.findNode(PERSON, "uuid", "p" + i));
+                assertFalse(TransactionHistoryManager.isApplied(tx, i));
+            }
+            tx.commit();
+        }
+    }
+
+    @Test
+    void aFailingRecordIsSkippedAndTheRestOfItsGroupCommitsWithTheWatermark() throws Exception {
+        Source source = new Source();
+        source.add(1, addPerson("p1"));
+        source.add(2, addPerson("p2"));
+        source.add(3, "{\"transactionEvents\":[{\"changeType\":");
+        source.add(4, addPerson("p4"));
+        setting(Configuration.APPLY_GROUP_SIZE_KEY, 10);
+        List<Boolean> watermarkMoved = new ArrayList<>();
+        TransactionEventListener<Object> commits = new TransactionEventListenerAdapter<>() {
+            @Override
+            public void afterCommit(TransactionData data, Object state, GraphDatabaseService databaseService) {
+                boolean createdPeople = false;
+                for (Node node : data.createdNodes()) {
+                    createdPeople |= node.hasLabel(PERSON);
+                }
+                if (createdPeople) {
+                    boolean moved = false;
+                    for (PropertyEntry<Node> property : data.assignedNodeProperties()) {
+                        moved |= "lastSequenceReplicated".equals(property.key());
+                    }
+                    watermarkMoved.add(moved);
+                }
+            }
+        };
+        managementService.registerTransactionEventListener(DEFAULT_DATABASE_NAME, commits);
+        try {
+            assertEquals(4, pipeline(source, 1).run(0, 100));
+        } finally {
+            managementService.unregisterTransactionEventListener(DEFAULT_DATABASE_NAME, commits);
+        }
+
+        assertEquals(4L, TransactionHistoryManager.getLastReplicatedSequence(graphDatabaseAPI));
+        // the group failed on record 3 and was applied again one record at a time.
+        assertEquals(List.of(true, true, true), watermarkMoved);
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            assertNotNull(tx.findNode(PERSON, "uuid", "p1"));
+            assertNotNull(tx.findNode(PERSON, "uuid", "p2"));
+            assertNotNull(tx.findNode(PERSON, "uuid", "p4"));
+            tx.commit();
+        }
+    }
+
+    @Test
+    void aSchemaStatementIsCommittedOnItsOwnAndReplicated() throws Exception {
+        Source source = new Source();
+        source.add(1, addPerson("p1"));
+        source.addStatement(2, "CREATE INDEX person_name FOR (n:Person) ON (n.name)");
+        source.add(3, addPerson("p3"));
+
+        assertEquals(3, pipeline(source, 1).run(0, 100));
+
+        assertEquals(3L, TransactionHistoryManager.getLastReplicatedSequence(graphDatabaseAPI));
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            assertNotNull(tx.schema().getIndexByName("person_name"));
+            assertNotNull(tx.findNode(PERSON, "uuid", "p3"));
+            tx.commit();
+        }
+    }
+
+    @Test
+    void aShortPageEndsTheRun() throws Exception {
+        Source source = new Source();
+        for (long sequence = 1; sequence <= 5; sequence++) {
+            source.add(sequence, addPerson("p" + sequence));
+        }
+
+        assertEquals(5, pipeline(source, 1).run(0, 2));
+
+        assertEquals(List.of(2, 2, 1), source.pageSizes());
+        assertEquals(5L, TransactionHistoryManager.getLastReplicatedSequence(graphDatabaseAPI));
+    }
+
+    @Test
+    void aFullLastPageIsFollowedByAnEmptyOne() throws Exception {
+        Source source = new Source();
+        for (long sequence = 1; sequence <= 4; sequence++) {
+            source.add(sequence, addPerson("p" + sequence));
+        }
+
+        assertEquals(4, pipeline(source, 1).run(0, 2));
+
+        assertEquals(List.of(2, 2, 0), source.pageSizes());
+    }
+
+    @Test
+    void aDeltaOnlyRecordReplaysOnTheTarget() throws Exception {
+        setting(Configuration.CAPTURE_PROPERTY_DELTAS_KEY, true);
+        String people = "CREATE (:Person {uuid:'p1', name:'Rosa', city:'Berlin', age:30})" +
+                "-[:KNOWS {uuid:'k1', since:2000, note:'school'}]->(:Person {uuid:'p2'})";
+        DatabaseManagementService sourceDbms = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        String transactionData;
+        try {
+            GraphDatabaseService sourceDb = sourceDbms.database(DEFAULT_DATABASE_NAME);
+            write(sourceDb, people);
+            String[] captured = new String[1];
+            TransactionEventListener<Object> recorder = new TransactionEventListenerAdapter<>() {
+                @Override
+                public Object beforeCommit(TransactionData data, Transaction transaction, GraphDatabaseService databaseService) throws Exception {
+                    captured[0] = new TransactionRecorder(data).serializeTransaction().getTransactionData();
+                    return null;
+                }
+            };
+            sourceDbms.registerTransactionEventListener(DEFAULT_DATABASE_NAME, recorder);
+            try {
+                write(sourceDb, "MATCH (a:Person {uuid:'p1'})-[k:KNOWS]->() SET a.name = 'Rosa L', k.since = 2001 REMOVE a.city, k.note");
+            } finally {
+                sourceDbms.unregisterTransactionEventListener(DEFAULT_DATABASE_NAME, recorder);
+            }
+            transactionData = captured[0];
+        } finally {
+            sourceDbms.shutdown();
+        }
+
+        // the record carries the changes only.
+        List<Map<String, JSONObject>> events = TransactionDataParser.getTransactionEvents(new JSONObject(transactionData));
+        assertEquals(2, events.size());
+        for (Map<String, JSONObject> event : events) {
+            JSONObject change = event.values().iterator().next();
+            assertEquals(0, change.getJSONObject(TransactionDataParser.ALL_PROPERTIES_KEY).length());
+        }
+        TransactionEvents decoded = TransactionEventDecoder.decode(transactionData);
+        TransactionEvent.NodePropertyChange nodeChange =
+                (TransactionEvent.NodePropertyChange) decoded.get(ChangeType.NODE_PROPERTY_CHANGE).get(0);
+        assertEquals(Map.of("name", "Rosa L"), nodeChange.getChangedProperties());
+        assertEquals(List.of("city"), nodeChange.getRemovedProperties());
+        TransactionEvent.RelationPropertyChange relationChange =
+                (TransactionEvent.RelationPropertyChange) decoded.get(ChangeType.RELATION_PROPERTY_CHANGE).get(0);
+        assertEquals(Map.of("since", 2001L), relationChange.getChangedProperties());
+        assertEquals(List.of("note"), relationChange.getRemovedProperties());
+
+        write(graphDatabaseAPI, people);
+        Source source = new Source();
+        source.add(1, transactionData);
+        assertEquals(1, pipeline(source, 1).run(0, 100));
+
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            Node rosa = tx.findNode(PERSON, "uuid", "p1");
+            assertEquals(Map.of("uuid", "p1", "name", "Rosa L", "age", 30L), rosa.getAllProperties());
+            Relationship knows = rosa.getSingleRelationship(KNOWS, Direction.OUTGOING);
+            assertEquals(Map.of("uuid", "k1", "since", 2001L), knows.getAllProperties());
+            tx.commit();
+        }
+    }
+
+    private ReplicationPipeline pipeline(Source source, int applyParallelism) {
+        ReplicationPipeline pipeline = new ReplicationPipeline(source.driver(), graphDatabaseAPI, 2, 2, applyParallelism);
+        pipelines.add(pipeline);
+        return pipeline;
+    }
+
+    private void setting(String key, Object value) {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            Label label = Label.label(Configuration.REPLICATION_SETTINGS_LABEL);
+            Node settings = tx.findNode(label, Configuration.REPLICATION_SETTINGS_PK, Configuration.REPLICATION_SETTINGS_PK_VALUE);
+            if (settings == null) {
+                settings = tx.createNode(label);
+                settings.setProperty(Configuration.REPLICATION_SETTINGS_PK, Configuration.REPLICATION_SETTINGS_PK_VALUE);
+            }
+            settings.setProperty(key, value);
+            tx.commit();
+        }
+        Configuration.InitializeFromDB(graphDatabaseAPI);
+    }
+
+    private static void write(GraphDatabaseService db, String statement) {
+        try (Transaction tx = db.beginTx()) {
+            tx.execute(statement);
+            tx.commit();
+        }
+    }
+
+    static String addPerson(String uuid) {
+        return "{\"transactionEvents\":[{\"changeType\":\"AddNode\",\"nodeLabels\":[\"Person\"]," +
+                "\"primaryKey\":{\"uuid\":\"" + uuid + "\"},\"allProperties\":{\"uuid\":\"" + uuid + "\"}}]}";
+    }
+
+    // the source's TransactionRecords, served through a mocked driver one page at a time.
+    static final class Source {
+        private final Map<Long, String> records = new LinkedHashMap<>();
+        private final Map<Long, String> statements = new LinkedHashMap<>();
+        private final List<Integer> pageSizes = new ArrayList<>();
+        // the number of records a page delivers before the connection is lost, -1 for never.
+        private volatile int failAfter = -1;
+
+        void add(long sequence, String transactionData) {
+            records.put(sequence, transactionData);
+        }
+
+        // a StatementRecord, as the statement replication procedures write it.
+        void addStatement(long sequence, String statement) {
+            records.put(sequence, "{\"statement\":\"true\"}");
+            statements.put(sequence, statement);
+        }
+
+        List<Integer> pageSizes() {
+            return pageSizes;
+        }
+
+        Driver driver() {
+            Driver driver = mock(Driver.class);
+            when(driver.session(any(SessionConfig.class))).thenAnswer(invocation -> session());
+            return driver;
+        }
+
+        private Session session() {
+            Session session = mock(Session.class);
+            when(session.run(anyString())).thenAnswer(invocation -> page(invocation.getArgument(0)));
+            return session;
+        }
+
+        private Result page(String query) {
+            Matcher matcher = PAGE.matcher(query);
+            assertTrue(matcher.find(), query);
+            long cursor = Long.parseLong(matcher.group(1));
+            int limit = Integer.parseInt(matcher.group(2));
+            List<Record> page = new ArrayList<>();
+            for (Map.Entry<Long, String> entry : records.entrySet()) {
+                if (entry.getKey() > cursor && page.size() < limit) {
+                    page.add(record(entry.getKey(), entry.getValue(), statements.get(entry.getKey())));
+                }
+            }
+            pageSizes.add(page.size());
+
+            int failAt = failAfter;
+            Iterator<Record> iterator = page.iterator();
+            Result result = mock(Result.class);
+            int[] served = new int[1];
+            when(result.hasNext()).thenAnswer(invocation -> {
+                if (served[0] == failAt) {
+                    throw new ServiceUnavailableException("connection to the source lost");
+                }
+                return iterator.hasNext();
+            });
+            when(result.next()).thenAnswer(invocation -> {
+                served[0]++;
+                return iterator.next();
+            });
+            return result;
+        }
+
+        private static Record record(long sequence, String transactionData, String statement) {
+            Map<String, Value> columns = new LinkedHashMap<>();
+            columns.put("tr.sequence", Values.value(sequence));
+            columns.put("tr.timeCreated", Values.value(System.currentTimeMillis()));
+            columns.put("tr.transactionData", Values.value(transactionData));
+            if (statement != null) {
+                columns.put("tr.transactionStatement", Values.value(statement));
+            }
+            Record record = mock(Record.class);
+            when(record.get(anyString())).thenAnswer(invocation -> columns.getOrDefault(invocation.getArgument(0), Values.NULL));
+            return record;
+        }
+    }
+}
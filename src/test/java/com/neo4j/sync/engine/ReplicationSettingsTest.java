@@ -0,0 +1,95 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class ReplicationSettingsTest {
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    private CaptureMode captureMode;
+    private List<String> excludeLabels;
+    private PayloadFormat payloadFormat;
+    private int applyGroupSize;
+    private boolean provisionIndexes;
+    private String localTargetDatabase;
+
+    @BeforeEach
+    void rememberSettings() {
+        captureMode = Configuration.getCaptureMode();
+        excludeLabels = Configuration.getExcludeLabels();
+        payloadFormat = Configuration.getPayloadFormat();
+        applyGroupSize = Configuration.getApplyGroupSize();
+        provisionIndexes = Configuration.isProvisionIndexes();
+        localTargetDatabase = Configuration.getLocalTargetDatabase();
+    }
+
+    @AfterEach
+    void restoreSettings() {
+        // the settings are static; put back what the other tests run with.
+        writeSettings(captureMode.name(), String.join(",", excludeLabels), payloadFormat.name(), applyGroupSize,
+                provisionIndexes, localTargetDatabase);
+        Configuration.InitializeFromDB(graphDatabaseAPI);
+    }
+
+    @Test
+    void readsTheReplicationSettingsNode() {
+        FeedMode feedMode = Configuration.getFeedMode();
+        writeSettings("async", "Session, Metrics", "binary", 8, false, "INTEGRATION.DATABASE");
+
+        Configuration.InitializeFromDB(graphDatabaseAPI);
+
+        assertTrue(Configuration.isInitialized());
+        assertEquals(CaptureMode.ASYNC, Configuration.getCaptureMode());
+        assertEquals(List.of("Session", "Metrics"), Configuration.getExcludeLabels());
+        assertEquals(PayloadFormat.BINARY, Configuration.getPayloadFormat());
+        assertEquals(8, Configuration.getApplyGroupSize());
+        assertFalse(Configuration.isProvisionIndexes());
+        assertEquals("INTEGRATION.DATABASE", Configuration.getLocalTargetDatabase());
+        // settings the node does not carry keep their values.
+        assertEquals(feedMode, Configuration.getFeedMode());
+    }
+
+    @Test
+    void keepsTheSettingsWithoutASettingsNode() {
+        Configuration.InitializeFromDB(graphDatabaseAPI);
+
+        assertTrue(Configuration.isInitialized());
+        assertEquals(captureMode, Configuration.getCaptureMode());
+        assertEquals(applyGroupSize, Configuration.getApplyGroupSize());
+    }
+
+    private void writeSettings(String captureMode, String excludeLabels, String payloadFormat, int applyGroupSize,
+                               boolean provisionIndexes, String localTargetDatabase) {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            Label label = Label.label(Configuration.REPLICATION_SETTINGS_LABEL);
+            Node settings = tx.findNode(label, Configuration.REPLICATION_SETTINGS_PK, Configuration.REPLICATION_SETTINGS_PK_VALUE);
+            if (settings == null) {
+                settings = tx.createNode(label);
+                settings.setProperty(Configuration.REPLICATION_SETTINGS_PK, Configuration.REPLICATION_SETTINGS_PK_VALUE);
+            }
+            settings.setProperty(Configuration.CAPTURE_MODE_KEY, captureMode);
+            settings.setProperty(Configuration.EXCLUDE_LABELS_KEY, excludeLabels);
+            settings.setProperty(Configuration.PAYLOAD_FORMAT_KEY, payloadFormat);
+            settings.setProperty(Configuration.APPLY_GROUP_SIZE_KEY, applyGroupSize);
+            settings.setProperty(Configuration.PROVISION_INDEXES_KEY, provisionIndexes);
+            settings.setProperty(Configuration.LOCAL_TARGET_DATABASE_KEY, localTargetDatabase);
+            tx.commit();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class SchemaProvisionerTest {
+
+    private static final String EMPLOYEE = "{\"transactionEvents\":[{\"changeType\":\"AddNode\"," +
+            "\"nodeLabels\":[\"Person\",\"Employee\"],\"primaryKey\":{\"uuid\":\"a\"},\"allProperties\":{\"uuid\":\"a\"}}]}";
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    @Test
+    void createsAMissingIndexOnceAndReportsIt() throws Exception {
+        SchemaProvisioner provisioner = new SchemaProvisioner(graphDatabaseAPI, true);
+        try {
+            provisioner.observe(TransactionEventDecoder.decode(EMPLOYEE));
+            provisioner.observe(TransactionEventDecoder.decode(EMPLOYEE));
+
+            awaitIndexed(provisioner, "Person", "uuid");
+            assertEquals("CREATED", provisioner.getProvisioned().get("Person:uuid"));
+            assertEquals(1, provisioner.getProvisioned().size());
+            assertFalse(provisioner.isIndexed("Employee", "uuid"));
+        } finally {
+            provisioner.shutdown();
+        }
+    }
+
+    @Test
+    void leavesTheSchemaAloneWhenProvisioningIsOff() throws Exception {
+        SchemaProvisioner provisioner = new SchemaProvisioner(graphDatabaseAPI, false);
+        try {
+            provisioner.observe(TransactionEventDecoder.decode(EMPLOYEE));
+            assertTrue(provisioner.getProvisioned().isEmpty());
+            try (Transaction tx = graphDatabaseAPI.beginTx()) {
+                assertFalse(tx.schema().getIndexes(Label.label("Person")).iterator().hasNext());
+                tx.commit();
+            }
+        } finally {
+            provisioner.shutdown();
+        }
+    }
+
+    @Test
+    void searchesByTheMostSelectiveIndexedLabel() {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            tx.execute("CREATE INDEX FOR (n:Person) ON (n.uuid)");
+            tx.execute("CREATE INDEX FOR (n:Employee) ON (n.uuid)");
+            tx.commit();
+        }
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            tx.schema().awaitIndexesOnline(1, java.util.concurrent.TimeUnit.MINUTES);
+            tx.execute("UNWIND range(1, 10) AS i CREATE (:Person {uuid: 'p' + i})");
+            tx.execute("UNWIND range(1, 2) AS i CREATE (:Person:Employee {uuid: 'e' + i})");
+            tx.commit();
+        }
+
+        SchemaProvisioner provisioner = new SchemaProvisioner(graphDatabaseAPI, false);
+        try {
+            Label person = Label.label("Person");
+            Label employee = Label.label("Employee");
+            Label unindexed = Label.label("Contractor");
+            assertEquals(employee, provisioner.searchLabel(List.of(person, employee), "uuid"));
+            assertEquals(person, provisioner.searchLabel(List.of(unindexed, person), "uuid"));
+            assertEquals(unindexed, provisioner.searchLabel(List.of(unindexed), "uuid"));
+            assertEquals(person, provisioner.searchLabel(List.of(person, employee), "name"));
+        } finally {
+            provisioner.shutdown();
+        }
+    }
+
+    private static void awaitIndexed(SchemaProvisioner provisioner, String label, String key) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000L;
+        while (!provisioner.isIndexed(label, key) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(provisioner.isIndexed(label, key));
+    }
+}
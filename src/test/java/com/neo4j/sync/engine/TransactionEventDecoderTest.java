@@ -0,0 +1,139 @@
+package com.neo4j.sync.engine;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.values.storable.CoordinateReferenceSystem;
+import org.neo4j.values.storable.DurationValue;
+import org.neo4j.values.storable.Values;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionEventDecoderTest {
+
+    private static final String TRANSACTION = "{\"transactionEvents\":[" +
+            "{\"changeType\":\"AddRelation\",\"nodeLabels\":[\"Person\"],\"primaryKey\":{\"uuid\":\"a\"}," +
+            "\"relationshipLabel\":\"FOLLOWS\",\"targetNodeLabels\":[\"Person\"],\"targetPrimaryKey\":{\"uuid\":\"b\"}," +
+            "\"allProperties\":{\"since\":2019},\"uuid\":\"ignored\",\"nodeKey\":{\"id\":[1,2]}}," +
+            "{\"changeType\":\"AddNode\",\"nodeLabels\":[\"Person\",\"Employee\"],\"primaryKey\":{\"uuid\":\"a\"}," +
+            "\"allProperties\":{\"uuid\":\"a\",\"age\":42,\"score\":1.5,\"active\":true}}," +
+            "{\"changeType\":\"NodePropertyChange\",\"nodeLabels\":[\"Person\"],\"primaryKey\":{\"uuid\":\"b\"}," +
+            "\"properties\":[{\"propertyName\":\"name\",\"oldValue\":null,\"newValue\":\"Karl\"}," +
+            "{\"propertyName\":\"nickname\",\"oldValue\":\"K\",\"newValue\":null}]}," +
+            "{\"changeType\":\"AddNode\",\"nodeLabels\":[\"Person\"],\"primaryKey\":{\"uuid\":\"b\"},\"allProperties\":{\"uuid\":\"b\"}}," +
+            "{\"changeType\":\"DeleteNode\",\"nodeLabels\":[\"Person\"],\"primaryKey\":{\"uuid\":\"c\"}}," +
+            "{\"changeType\":\"Unknown\"}" +
+            "]}";
+
+    @Test
+    void bucketsEventsByChangeTypeInApplyOrder() throws Exception {
+        TransactionEvents events = TransactionEventDecoder.decode(TRANSACTION);
+
+        List<ChangeType> order = new ArrayList<>();
+        events.forEach(event -> order.add(event.getChangeType()));
+        assertEquals(List.of(ChangeType.DELETE_NODE, ChangeType.ADD_NODE, ChangeType.ADD_NODE,
+                ChangeType.ADD_RELATION, ChangeType.NODE_PROPERTY_CHANGE), order);
+        assertEquals(5, events.size());
+        assertEquals("b", events.get(ChangeType.ADD_NODE).get(1).getPrimaryKey().get("uuid"));
+        assertSame(events.get(ChangeType.ADD_RELATION).get(0), events.get(3));
+    }
+
+    @Test
+    void matchesTheEventsOfTheJsonObjectParser() throws Exception {
+        TransactionEvents events = TransactionEventDecoder.decode(TRANSACTION.getBytes(StandardCharsets.UTF_8));
+        List<Map<String, JSONObject>> parsed = TransactionDataParser.getTransactionEvents(new JSONObject(TRANSACTION));
+
+        assertEquals(parsed.size(), events.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            JSONObject expected = parsed.get(i).get(events.get(i).getChangeType().getEventName());
+            assertNotNull(expected);
+            assertArrayEquals(TransactionDataParser.getNodeLabels(expected), labelNames(events.get(i).getLabels()));
+            assertEquals(TransactionDataParser.getPrimaryKey(expected), events.get(i).getPrimaryKey());
+        }
+    }
+
+    @Test
+    void decodesFieldsTheApplySideUses() throws Exception {
+        TransactionEvents events = TransactionEventDecoder.decode(TRANSACTION);
+
+        TransactionEvent.AddRelation relation = (TransactionEvent.AddRelation) events.get(ChangeType.ADD_RELATION).get(0);
+        assertEquals("FOLLOWS", relation.getRelationshipType().name());
+        assertEquals(Map.of("uuid", "b"), relation.getPrimaryKey(NodeDirection.TARGET));
+        assertArrayEquals(new String[]{"Person", "LocalTx"}, labelNames(relation.getLabels(NodeDirection.TARGET)));
+        assertEquals(2019L, relation.getProperties().get("since"));
+
+        TransactionEvent.AddNode node = (TransactionEvent.AddNode) events.get(ChangeType.ADD_NODE).get(0);
+        assertEquals(42L, node.getProperties().get("age"));
+        assertEquals(1.5, node.getProperties().get("score"));
+        assertEquals(Boolean.TRUE, node.getProperties().get("active"));
+
+        TransactionEvent.NodePropertyChange change =
+                (TransactionEvent.NodePropertyChange) events.get(ChangeType.NODE_PROPERTY_CHANGE).get(0);
+        assertEquals(Map.of("name", "Karl"), change.getChangedProperties());
+        assertEquals(List.of("nickname"), change.getRemovedProperties());
+    }
+
+    @Test
+    void keepsTheTypeOfWrittenValues() throws Exception {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("uuid", 7L);
+        properties.put("scores", new long[]{1, 2});
+        properties.put("ratios", new double[]{0.5, 2});
+        properties.put("flags", new boolean[]{true, false});
+        properties.put("tags", new String[]{"a", "b"});
+        properties.put("born", LocalDate.of(1970, 1, 2));
+        properties.put("seen", ZonedDateTime.of(2020, 5, 6, 7, 8, 9, 0, ZoneId.of("Europe/Paris")));
+        properties.put("stay", DurationValue.duration(1, 2, 3, 4));
+        properties.put("home", Values.pointValue(CoordinateReferenceSystem.WGS84, 12.5, 56.25));
+
+        Audit audit = new Audit();
+        audit.setChangeType(ChangeType.NODE_PROPERTY_CHANGE.getEventName());
+        audit.setNodeLabels(List.of("Person"));
+        audit.setPrimaryKey(Map.of("uuid", 7L));
+        List<PropertyChange> changes = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            PropertyChange propertyChange = new PropertyChange();
+            propertyChange.setPropertyName(entry.getKey());
+            propertyChange.setNewValue(entry.getValue());
+            changes.add(propertyChange);
+        }
+        audit.setProperties(changes);
+        audit.setAllProperties(properties);
+
+        TransactionEvents events = TransactionEventDecoder.decode(TransactionPayloadWriter.write(List.of(audit)));
+
+        TransactionEvent.NodePropertyChange change = (TransactionEvent.NodePropertyChange) events.get(0);
+        Map<String, Object> changed = change.getChangedProperties();
+        assertEquals(7L, change.getPrimaryKey().get("uuid"));
+        assertArrayEquals(new long[]{1, 2}, (long[]) changed.get("scores"));
+        assertArrayEquals(new double[]{0.5, 2}, (double[]) changed.get("ratios"));
+        assertArrayEquals(new boolean[]{true, false}, (boolean[]) changed.get("flags"));
+        assertArrayEquals(new String[]{"a", "b"}, (String[]) changed.get("tags"));
+        assertEquals(properties.get("born"), changed.get("born"));
+        assertEquals(properties.get("seen"), changed.get("seen"));
+        assertEquals(properties.get("stay"), changed.get("stay"));
+        assertEquals(properties.get("home"), changed.get("home"));
+    }
+
+    private static String[] labelNames(List<Label> labels) {
+        String[] names = new String[labels.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = labels.get(i).name();
+        }
+        return names;
+    }
+
+    @Test
+    void rejectsDataWithoutTransactionEvents() {
+        assertThrows(java.io.IOException.class, () -> TransactionEventDecoder.decode("{\"statement\":\"true\"}"));
+    }
+}
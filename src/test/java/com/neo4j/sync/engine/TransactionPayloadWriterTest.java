@@ -0,0 +1,54 @@
+package com.neo4j.sync.engine;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TransactionPayloadWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writesTheSameJsonAsTheObjectMapperInsideTheEnvelope() throws Exception {
+        Audit added = new Audit();
+        added.setChangeType(ChangeType.ADD_NODE.getEventName());
+        added.setNodeLabels(List.of("Test"));
+        added.setPrimaryKey(Map.of("uuid", "a"));
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("uuid", "a");
+        properties.put("count", 3L);
+        properties.put("ratio", 0.5d);
+        properties.put("active", true);
+        properties.put("tags", new String[]{"x", "y"});
+        added.setAllProperties(properties);
+
+        Audit changed = new Audit();
+        changed.setChangeType(ChangeType.NODE_PROPERTY_CHANGE.getEventName());
+        changed.setNodeLabels(List.of("Test"));
+        changed.setPrimaryKey(Map.of("uuid", "b"));
+        changed.setAllProperties(Map.of("uuid", "b"));
+        PropertyChange change = new PropertyChange();
+        change.setPropertyName("name");
+        change.setOldValue("before");
+        List<PropertyChange> changes = new ArrayList<>();
+        changes.add(change);
+        changed.setProperties(changes);
+
+        List<Audit> audits = List.of(added, changed);
+        String expected = "{\"transactionEvents\":" + objectMapper.writeValueAsString(audits) + "}";
+
+        assertEquals(objectMapper.readTree(expected), objectMapper.readTree(TransactionPayloadWriter.writeString(audits)));
+        assertEquals(objectMapper.readTree(expected), objectMapper.readTree(TransactionPayloadWriter.write(audits)));
+    }
+
+    @Test
+    void writesAnEmptyEnvelope() throws Exception {
+        assertEquals("{\"transactionEvents\":[]}", TransactionPayloadWriter.writeString(List.of()));
+    }
+}
@@ -0,0 +1,87 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.NullLog;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class TransactionRecordWriterTest {
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    @Test
+    void writesQueuedRecordsInBatches() throws Exception {
+        TransactionRecordWriter writer = new TransactionRecordWriter(graphDatabaseAPI, NullLog.getInstance(), 100, CaptureQueuePolicy.BLOCK, 10);
+        writer.start();
+        for (int i = 0; i < 25; i++) {
+            writer.submit(newRecord().committed(i, System.currentTimeMillis()));
+        }
+        writer.stop();
+
+        assertEquals(25, writer.getWrittenRecords());
+        assertEquals(0, writer.getQueueDepth());
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            long count = tx.findNodes(Label.label(TransactionRecord.TX_RECORD_LABEL)).stream().count();
+            assertEquals(25, count);
+            Node record = tx.findNode(Label.label(TransactionRecord.TX_RECORD_LABEL),
+                    TransactionRecord.TX_RECORD_INTERNAL_TX_ID_KEY, 7L);
+            assertNotNull(record);
+            assertTrue(record.hasLabel(Label.label(TransactionRecord.LOCAL_TX_LABEL)));
+            tx.commit();
+        }
+    }
+
+    @Test
+    void dropPolicyCountsRecordsThatDoNotFit() throws Exception {
+        // the writer is never started, so nothing drains the queue.
+        TransactionRecordWriter writer = new TransactionRecordWriter(graphDatabaseAPI, NullLog.getInstance(), 2, CaptureQueuePolicy.DROP, 10);
+
+        assertTrue(writer.submit(newRecord()));
+        assertTrue(writer.submit(newRecord()));
+        assertFalse(writer.submit(newRecord()));
+
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(1, writer.getDroppedRecords());
+    }
+
+    @Test
+    void recordsThatCannotBeWrittenAreCountedAsDropped() throws Exception {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            tx.execute("CREATE CONSTRAINT ON (tr:" + TransactionRecord.TX_RECORD_LABEL + ") ASSERT tr." +
+                    TransactionRecord.TX_RECORD_NODE_BEFORE_COMMIT_KEY + " IS UNIQUE");
+            tx.commit();
+        }
+        TransactionRecordWriter writer = new TransactionRecordWriter(graphDatabaseAPI, NullLog.getInstance(), 100,
+                CaptureQueuePolicy.BLOCK, 10);
+        String duplicate = UUID.randomUUID().toString();
+        writer.submit(newRecord());
+        writer.submit(newRecord(duplicate));
+        writer.submit(newRecord(duplicate));
+        writer.start();
+        writer.stop();
+
+        // the batch fails on the duplicate and is written again one record at a time.
+        assertEquals(2, writer.getWrittenRecords());
+        assertEquals(1, writer.getDroppedRecords());
+    }
+
+    private TransactionRecord newRecord() {
+        return newRecord(UUID.randomUUID().toString());
+    }
+
+    private TransactionRecord newRecord(String transactionUUID) {
+        return new TransactionRecord(System.currentTimeMillis(), "NEW", "[]", transactionUUID);
+    }
+}
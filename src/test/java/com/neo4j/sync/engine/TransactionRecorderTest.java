@@ -0,0 +1,166 @@
+package com.neo4j.sync.engine;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListener;
+import org.neo4j.graphdb.event.TransactionEventListenerAdapter;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.neo4j.configuration.GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class TransactionRecorderTest {
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    @Inject
+    public DatabaseManagementService managementService;
+
+    @AfterEach
+    void restoreSettings() {
+        // the settings are static; put back what the other tests run with.
+        if (Configuration.isAssignRelationshipKeys()) {
+            assignRelationshipKeys(false);
+        }
+    }
+
+    @Test
+    void recordsOneEventPerEntityAndChangeType() throws Exception {
+        TransactionRecord[] record = new TransactionRecord[1];
+
+        capture(record, tx -> {
+            Node a = tx.createNode(Label.label("Test"));
+            a.setProperty("uuid", "a");
+            a.setProperty("name", "first");
+            Node b = tx.createNode(Label.label("Test"));
+            b.setProperty("uuid", "b");
+            a.createRelationshipTo(b, () -> "CONNECTED_TO").setProperty("uuid", "ab");
+        });
+
+        List<Map<String, JSONObject>> events = TransactionDataParser.getTransactionEvents(new JSONObject(record[0].getTransactionData()));
+        assertEquals(3, events.size());
+        assertEquals(2, count(events, TransactionDataParser.ADD_NODE));
+        assertEquals(1, count(events, TransactionDataParser.ADD_RELATION));
+        JSONObject relation = events.get(2).get(TransactionDataParser.ADD_RELATION);
+        assertEquals("a", relation.getJSONObject(TransactionDataParser.PRIMARY_KEY).getString("uuid"));
+        assertEquals("b", relation.getJSONObject(TransactionDataParser.TARGET_PRIMARY_KEY).getString("uuid"));
+    }
+
+    @Test
+    void deletedNodesAreDescribedByTheirRemovedLabelsAndProperties() throws Exception {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            Node node = tx.createNode(Label.label("Test"));
+            node.setProperty("uuid", "gone");
+            tx.commit();
+        }
+        TransactionRecord[] record = new TransactionRecord[1];
+
+        capture(record, tx -> tx.findNode(Label.label("Test"), "uuid", "gone").delete());
+
+        List<Map<String, JSONObject>> events = TransactionDataParser.getTransactionEvents(new JSONObject(record[0].getTransactionData()));
+        assertEquals(1, events.size());
+        JSONObject deleted = events.get(0).get(TransactionDataParser.DELETE_NODE);
+        assertEquals("gone", deleted.getJSONObject(TransactionDataParser.PRIMARY_KEY).getString("uuid"));
+        assertEquals("Test", deleted.getJSONArray("nodeLabels").getString(0));
+    }
+
+    @Test
+    void relationshipsWithoutAUuidAreLeftAsTheyAreByDefault() throws Exception {
+        TransactionRecord[] record = new TransactionRecord[1];
+
+        capture(record, tx -> {
+            Node a = tx.createNode(Label.label("Test"));
+            a.setProperty("uuid", "a");
+            Node b = tx.createNode(Label.label("Test"));
+            b.setProperty("uuid", "b");
+            a.createRelationshipTo(b, () -> "CONNECTED_TO");
+        });
+
+        TransactionEvent.AddRelation added = (TransactionEvent.AddRelation) TransactionEventDecoder
+                .decode(record[0].getTransactionData()).get(ChangeType.ADD_RELATION).get(0);
+        assertNull(added.getRelationshipKey());
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            tx.findNode(Label.label("Test"), "uuid", "a").getRelationships().forEach(r -> assertFalse(r.hasProperty("uuid")));
+            tx.commit();
+        }
+    }
+
+    @Test
+    void relationshipsAreKeyedByTheUuidTheyAreGiven() throws Exception {
+        assignRelationshipKeys(true);
+        TransactionRecord[] record = new TransactionRecord[1];
+
+        capture(record, tx -> {
+            Node a = tx.createNode(Label.label("Test"));
+            a.setProperty("uuid", "a");
+            Node b = tx.createNode(Label.label("Test"));
+            b.setProperty("uuid", "b");
+            a.createRelationshipTo(b, () -> "CONNECTED_TO");
+        });
+
+        TransactionEvent.AddRelation added = (TransactionEvent.AddRelation) TransactionEventDecoder
+                .decode(record[0].getTransactionData()).get(ChangeType.ADD_RELATION).get(0);
+        Object uuid = added.getRelationshipKey().get("uuid");
+        assertNotNull(uuid);
+        assertEquals(uuid, added.getProperties().get("uuid"));
+
+        capture(record, tx -> tx.findNode(Label.label("Test"), "uuid", "a").getRelationships().forEach(r -> r.delete()));
+
+        TransactionEvent.DeleteRelation deleted = (TransactionEvent.DeleteRelation) TransactionEventDecoder
+                .decode(record[0].getTransactionData()).get(ChangeType.DELETE_RELATION).get(0);
+        assertEquals(Map.of("uuid", uuid), deleted.getRelationshipKey());
+    }
+
+    private void capture(TransactionRecord[] record, Consumer<Transaction> work) {
+        TransactionEventListener<Object> recorder = new TransactionEventListenerAdapter<>() {
+            @Override
+            public Object beforeCommit(TransactionData data, Transaction transaction, GraphDatabaseService databaseService) throws Exception {
+                record[0] = new TransactionRecorder(data).serializeTransaction();
+                return null;
+            }
+        };
+        managementService.registerTransactionEventListener(DEFAULT_DATABASE_NAME, recorder);
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            work.accept(tx);
+            tx.commit();
+        } finally {
+            managementService.unregisterTransactionEventListener(DEFAULT_DATABASE_NAME, recorder);
+        }
+        assertNotNull(record[0]);
+    }
+
+    private void assignRelationshipKeys(boolean assign) {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            Label label = Label.label(Configuration.REPLICATION_SETTINGS_LABEL);
+            Node settings = tx.findNode(label, Configuration.REPLICATION_SETTINGS_PK, Configuration.REPLICATION_SETTINGS_PK_VALUE);
+            if (settings == null) {
+                settings = tx.createNode(label);
+                settings.setProperty(Configuration.REPLICATION_SETTINGS_PK, Configuration.REPLICATION_SETTINGS_PK_VALUE);
+            }
+            settings.setProperty(Configuration.ASSIGN_RELATIONSHIP_KEYS_KEY, assign);
+            tx.commit();
+        }
+        Configuration.InitializeFromDB(graphDatabaseAPI);
+    }
+
+    private long count(List<Map<String, JSONObject>> events, String changeType) {
+        return events.stream().filter(event -> event.containsKey(changeType)).count();
+    }
+}
@@ -0,0 +1,70 @@
+package com.neo4j.sync.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.extension.ImpermanentDbmsExtension;
+import org.neo4j.test.extension.Inject;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
+@ImpermanentDbmsExtension
+public class TransactionSequenceTest {
+
+    @Inject
+    public GraphDatabaseAPI graphDatabaseAPI;
+
+    @Test
+    void recordsAreNumberedInCommitOrderWithoutGaps() {
+        TransactionSequence.initialize(graphDatabaseAPI);
+
+        writeRecord(true);
+        writeRecord(false);
+        writeRecord(true);
+        writeRecord(true);
+
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            List<Long> sequences = tx.findNodes(Label.label(TransactionRecord.TX_RECORD_LABEL)).stream()
+                    .map(node -> (Long) node.getProperty(TransactionRecord.TX_RECORD_SEQUENCE_KEY))
+                    .sorted()
+                    .collect(Collectors.toList());
+            assertEquals(List.of(1L, 2L, 3L), sequences);
+            tx.commit();
+        }
+    }
+
+    @Test
+    void createsTheCounterWhenTheExtensionDidNot() {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            assertEquals(1L, TransactionSequence.next(tx));
+            assertEquals(2L, TransactionSequence.next(tx));
+            tx.commit();
+        }
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            long counters = tx.findNodes(Label.label(TransactionSequence.SEQUENCE_LABEL)).stream().count();
+            assertEquals(1, counters);
+            Node counter = tx.findNodes(Label.label(TransactionSequence.SEQUENCE_LABEL)).next();
+            assertTrue(counter.hasLabel(Label.label(TransactionRecord.LOCAL_TX_LABEL)));
+            tx.commit();
+        }
+    }
+
+    private void writeRecord(boolean commit) {
+        try (Transaction tx = graphDatabaseAPI.beginTx()) {
+            new TransactionRecord(System.currentTimeMillis(), "NEW", "[]", UUID.randomUUID().toString()).createNode(tx);
+            if (commit) {
+                tx.commit();
+            } else {
+                tx.rollback();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.neo4j.sync.start;
+
+import com.neo4j.sync.engine.CaptureMode;
+import com.neo4j.sync.engine.Configuration;
+import com.neo4j.sync.engine.ReplicationFilter;
+import com.neo4j.sync.engine.ReplicationJudge;
+import com.neo4j.sync.engine.TransactionRecord;
+import com.neo4j.sync.engine.TransactionSequence;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.neo4j.configuration.GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+
+public class SyncExtensionFactoryTest {
+
+    private static final Label PERSON = Label.label("Person");
+
+    @TempDir
+    public File home;
+
+    @Test
+    void theExtensionAppliesTheSettingsNodeWhenTheDatabaseStarts() {
+        CaptureMode captureMode = Configuration.getCaptureMode();
+        List<String> excludeLabels = Configuration.getExcludeLabels();
+        assertNotEquals(CaptureMode.ATOMIC, captureMode);
+
+        DatabaseManagementService dbms = new TestDatabaseManagementServiceBuilder(home).build();
+        try {
+            writeSettings(dbms.database(DEFAULT_DATABASE_NAME), CaptureMode.ATOMIC.name(), "Session");
+        } finally {
+            dbms.shutdown();
+        }
+
+        // the extension reads the node once the restarted database is available.
+        dbms = new TestDatabaseManagementServiceBuilder(home).build();
+        GraphDatabaseService db = dbms.database(DEFAULT_DATABASE_NAME);
+        try {
+            assertEquals(CaptureMode.ATOMIC, Configuration.getCaptureMode());
+            assertEquals(List.of("Session"), Configuration.getExcludeLabels());
+            try (Transaction tx = db.beginTx()) {
+                assertNotNull(tx.schema().getIndexByName(TransactionSequence.SEQUENCE_INDEX_NAME));
+                tx.commit();
+            }
+
+            // and the capture listener is registered.
+            try (Transaction tx = db.beginTx()) {
+                tx.createNode(PERSON).setProperty("uuid", "Rosa");
+                tx.commit();
+            }
+            try (Transaction tx = db.beginTx()) {
+                Node record = tx.findNodes(Label.label(TransactionRecord.TX_RECORD_LABEL)).next();
+                assertTrue(((String) record.getProperty(TransactionRecord.TX_RECORD_TX_DATA_KEY)).contains("Rosa"));
+                tx.commit();
+            }
+        } finally {
+            // the settings are static; put back what the other tests run with.
+            writeSettings(db, captureMode.name(), String.join(",", excludeLabels));
+            Configuration.InitializeFromDB(db);
+            ReplicationJudge.setFilter(ReplicationFilter.defaults());
+            dbms.shutdown();
+        }
+    }
+
+    private static void writeSettings(GraphDatabaseService db, String captureMode, String excludeLabels) {
+        try (Transaction tx = db.beginTx()) {
+            Label label = Label.label(Configuration.REPLICATION_SETTINGS_LABEL);
+            Node settings = tx.findNode(label, Configuration.REPLICATION_SETTINGS_PK, Configuration.REPLICATION_SETTINGS_PK_VALUE);
+            if (settings == null) {
+                settings = tx.createNode(label);
+                settings.setProperty(Configuration.REPLICATION_SETTINGS_PK, Configuration.REPLICATION_SETTINGS_PK_VALUE);
+            }
+            settings.setProperty(Configuration.CAPTURE_MODE_KEY, captureMode);
+            settings.setProperty(Configuration.EXCLUDE_LABELS_KEY, excludeLabels);
+            tx.commit();
+        }
+    }
+}